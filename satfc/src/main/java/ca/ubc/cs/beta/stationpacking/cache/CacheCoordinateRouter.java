@@ -0,0 +1,97 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import lombok.Getter;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Decides which of several SATFC servers owns a cache coordinate, using consistent hashing so that adding or removing a server only moves the coordinates of that server.
+ * Servers are identified by their base URL. The client and every server must be given the same list of URLs (in any order) to agree on ownership.
+ */
+@ThreadSafe
+public class CacheCoordinateRouter {
+
+    // Each server is placed at this many points on the ring, to even out the share of coordinates each one gets
+    private static final int VIRTUAL_NODES = 128;
+    private static final HashFunction HASH = Hashing.murmur3_32();
+
+    @Getter
+    private final List<String> nodes;
+    private final NavigableMap<Integer, String> ring;
+
+    public CacheCoordinateRouter(List<String> nodes) {
+        Preconditions.checkArgument(!nodes.isEmpty(), "Need at least one node to route to");
+        this.nodes = ImmutableList.copyOf(nodes);
+        ring = new TreeMap<>();
+        for (String node : nodes) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(HASH.hashString(node + "#" + i, StandardCharsets.UTF_8).asInt(), node);
+            }
+        }
+    }
+
+    /**
+     * @param serverURLs one or more base server URLs, separated by commas
+     */
+    public static CacheCoordinateRouter fromServerURLs(String serverURLs) {
+        return new CacheCoordinateRouter(Splitter.on(',').trimResults().omitEmptyStrings().splitToList(serverURLs));
+    }
+
+    /**
+     * @return the node that owns the coordinate
+     */
+    public String route(CacheCoordinate coordinate) {
+        final int hash = hash(coordinate);
+        final Map.Entry<Integer, String> entry = ring.ceilingEntry(hash);
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+    /**
+     * Spread coordinates over shards within a single server. The shard does not depend on the position of the coordinate on the ring, so shards stay balanced even though a server only owns part of the ring.
+     * @return a shard index between 0 (inclusive) and numShards (exclusive)
+     */
+    public static int shardOf(CacheCoordinate coordinate, int numShards) {
+        return Hashing.consistentHash(hash(coordinate), numShards);
+    }
+
+    private static int hash(CacheCoordinate coordinate) {
+        return HASH.newHasher()
+                .putString(coordinate.getDomainHash(), StandardCharsets.UTF_8)
+                .putString(coordinate.getInterferenceHash(), StandardCharsets.UTF_8)
+                .hash()
+                .asInt();
+    }
+
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+import com.google.common.collect.BiMap;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
+
+/**
+ * The compact encoding of a cache entry in redis: a single hash field holding a format version, the station bitset and either the assignment (SAT) or the domains (UNSAT).
+ * The assignment is one channel byte per station of the bitset, in permutation order. Bitsets are written either as their raw bytes or as varint gaps between set bits,
+ * whichever is shorter: entries with few stations, and the narrow domains of UNSAT entries, are much smaller as gaps, while dense bitsets are smaller as raw bytes.
+ * <p>
+ * Entries written before this encoding existed have one hash field per part (see {@link RedisCacher}). They are still read, and can be rewritten with {@link RedisCacher#migrateEncoding(int)}.
+ */
+public class CacheEntryEncoding {
+
+    public static final byte VERSION = 1;
+
+    private static final byte RAW = 0;
+    private static final byte GAPS = 1;
+
+    public static byte[] encode(ISATFCCacheEntry entry) {
+        if (entry instanceof ContainmentCacheSATEntry) {
+            return encodeSAT(entry.getBitSet(), ((ContainmentCacheSATEntry) entry).getChannels());
+        } else if (entry instanceof ContainmentCacheUNSATEntry) {
+            return encodeUNSAT(entry.getBitSet(), ((ContainmentCacheUNSATEntry) entry).getDomainsBitSet());
+        }
+        throw new IllegalArgumentException("Unknown type of cache entry " + entry.getClass());
+    }
+
+    public static byte[] encodeSAT(BitSet stations, byte[] channels) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(8 + channels.length + stations.length() / 8);
+        out.write(VERSION);
+        writeBitSet(out, stations);
+        out.write(channels, 0, channels.length);
+        return out.toByteArray();
+    }
+
+    public static byte[] encodeUNSAT(BitSet stations, BitSet domains) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(16 + stations.length() / 8 + domains.length() / 8);
+        out.write(VERSION);
+        writeBitSet(out, stations);
+        writeBitSet(out, domains);
+        return out.toByteArray();
+    }
+
+    public static ContainmentCacheSATEntry decodeSAT(byte[] bytes, String key, BiMap<Station, Integer> permutation, String auction) {
+        final ByteBuffer buffer = open(bytes, key);
+        final BitSet stations = readBitSet(buffer);
+        final byte[] channels = new byte[buffer.remaining()];
+        buffer.get(channels);
+        return new ContainmentCacheSATEntry(stations, channels, key, permutation, auction);
+    }
+
+    public static ContainmentCacheUNSATEntry decodeUNSAT(byte[] bytes, String key, BiMap<Station, Integer> permutation, String auction) {
+        final ByteBuffer buffer = open(bytes, key);
+        final BitSet stations = readBitSet(buffer);
+        final BitSet domains = readBitSet(buffer);
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Entry " + key + " has " + buffer.remaining() + " unexpected trailing bytes");
+        }
+        return new ContainmentCacheUNSATEntry(stations, domains, key, permutation, auction);
+    }
+
+    private static ByteBuffer open(byte[] bytes, String key) {
+        if (bytes.length == 0 || bytes[0] != VERSION) {
+            throw new IllegalArgumentException("Entry " + key + " is in an unknown format" + (bytes.length > 0 ? " (version " + bytes[0] + ")" : ""));
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.get();
+        return buffer;
+    }
+
+    private static void writeBitSet(ByteArrayOutputStream out, BitSet bitSet) {
+        final byte[] raw = bitSet.toByteArray();
+        final int rawSize = varIntSize(raw.length) + raw.length;
+        final int cardinality = bitSet.cardinality();
+        // Only count the gaps until they are known to be longer than the raw form
+        int gapsSize = varIntSize(cardinality);
+        for (int bit = bitSet.nextSetBit(0), previous = -1; bit >= 0 && gapsSize < rawSize; previous = bit, bit = bitSet.nextSetBit(bit + 1)) {
+            gapsSize += varIntSize(bit - previous - 1);
+        }
+        if (gapsSize < rawSize) {
+            out.write(GAPS);
+            writeVarInt(out, cardinality);
+            for (int bit = bitSet.nextSetBit(0), previous = -1; bit >= 0; previous = bit, bit = bitSet.nextSetBit(bit + 1)) {
+                writeVarInt(out, bit - previous - 1);
+            }
+        } else {
+            out.write(RAW);
+            writeVarInt(out, raw.length);
+            out.write(raw, 0, raw.length);
+        }
+    }
+
+    private static BitSet readBitSet(ByteBuffer buffer) {
+        final byte form = buffer.get();
+        if (form == RAW) {
+            final byte[] raw = new byte[readVarInt(buffer)];
+            buffer.get(raw);
+            return BitSet.valueOf(raw);
+        } else if (form == GAPS) {
+            final int cardinality = readVarInt(buffer);
+            final BitSet bitSet = new BitSet();
+            int bit = -1;
+            for (int i = 0; i < cardinality; i++) {
+                bit += readVarInt(buffer) + 1;
+                bitSet.set(bit);
+            }
+            return bitSet;
+        }
+        throw new IllegalArgumentException("Unknown bitset form " + form);
+    }
+
+    private static int varIntSize(int value) {
+        return value < (1 << 7) ? 1 : value < (1 << 14) ? 2 : value < (1 << 21) ? 3 : value < (1 << 28) ? 4 : 5;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+}
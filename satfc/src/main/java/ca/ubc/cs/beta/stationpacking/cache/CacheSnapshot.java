@@ -0,0 +1,328 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.cache.RedisCacher.ContainmentCacheInitData;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
+import lombok.Data;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A local copy of the cache entries held by a server, so that a restart does not have to pull every entry out of redis again.
+ * The snapshot is stamped with the value of {@link RedisCacher#HASH_NUM} when it was taken: only the redis entries numbered after it need to be read on restore.
+ * <p>
+ * Layout (big endian): int magic, int version, long hash num, int number of coordinates, then one section per coordinate:
+ * domain hash, interference hash, int number of SAT entries, int number of UNSAT entries, long length of the entries, and the entries themselves.
+ * Each entry is its key number, its auction (empty if none), its station bitset and either its assignment bytes (SAT) or its domain bitset (UNSAT).
+ * Sections can be skipped over without being parsed, so they are decoded in parallel.
+ */
+@Slf4j
+public class CacheSnapshot {
+
+    private static final int MAGIC = 0x53504353; // "SPCS"
+    private static final int VERSION = 1;
+
+    @Data
+    public static class Snapshot {
+        private final long hashNum;
+        private final ContainmentCacheInitData entries;
+    }
+
+    /**
+     * A snapshot whose sections are held undecoded, for when the permutation of a coordinate is only known once it is used.
+     * Sections that are never decoded can be written back as they are.
+     */
+    static class LazySnapshot {
+        @Getter
+        private final long hashNum;
+        private final Map<CacheCoordinate, Section> sections;
+
+        private LazySnapshot(long hashNum, Map<CacheCoordinate, Section> sections) {
+            this.hashNum = hashNum;
+            this.sections = sections;
+        }
+
+        static LazySnapshot empty() {
+            return new LazySnapshot(0, ImmutableMap.of());
+        }
+
+        /**
+         * @return the entries of the coordinate, none if the snapshot does not have the coordinate
+         */
+        ContainmentCacheInitData decode(CacheCoordinate coordinate, ImmutableBiMap<Station, Integer> permutation) {
+            final ListMultimap<CacheCoordinate, ContainmentCacheSATEntry> SATResults = ArrayListMultimap.create();
+            final ListMultimap<CacheCoordinate, ContainmentCacheUNSATEntry> UNSATResults = ArrayListMultimap.create();
+            final Section section = sections.get(coordinate);
+            if (section != null) {
+                final Section copy = section.copy();
+                copy.decode(permutation, false, false);
+                SATResults.putAll(coordinate, copy.SATEntries);
+                UNSATResults.putAll(coordinate, copy.UNSATEntries);
+            }
+            return new ContainmentCacheInitData(SATResults, UNSATResults);
+        }
+
+        /**
+         * @return the sections of the other coordinates
+         */
+        LazySnapshot without(Set<CacheCoordinate> coordinates) {
+            return new LazySnapshot(hashNum, Maps.filterKeys(sections, coordinate -> !coordinates.contains(coordinate)));
+        }
+    }
+
+    /**
+     * Write a snapshot. The file is replaced atomically, so a crash while writing leaves the previous snapshot intact.
+     * Entries numbered after hashNum are left out, since they will be read from redis on restore anyway.
+     * @param hashNum value of {@link RedisCacher#HASH_NUM} before the entries were collected
+     */
+    public static void write(Path file, long hashNum, ContainmentCacheInitData entries) throws IOException {
+        write(file, hashNum, entries, LazySnapshot.empty());
+    }
+
+    /**
+     * Write a snapshot of the entries, along with the undecoded sections of another snapshot.
+     * @param carriedOver sections to copy as they are, for coordinates that are not in the entries. They must not have entries numbered after hashNum
+     */
+    static void write(Path file, long hashNum, ContainmentCacheInitData entries, LazySnapshot carriedOver) throws IOException {
+        Preconditions.checkArgument(carriedOver.getHashNum() <= hashNum, "Carried over sections have entries up to %s, after %s", carriedOver.getHashNum(), hashNum);
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int numSAT = 0;
+        int numUNSAT = 0;
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            final List<CacheCoordinate> coordinates = new ArrayList<>(entries.getCaches());
+            final List<Section> carriedOverSections = carriedOver.sections.values().stream()
+                    .filter(section -> !entries.getCaches().contains(section.coordinate))
+                    .collect(Collectors.toList());
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(hashNum);
+            out.writeInt(coordinates.size() + carriedOverSections.size());
+            for (CacheCoordinate coordinate : coordinates) {
+                final ByteArrayOutputStream sectionBytes = new ByteArrayOutputStream();
+                final DataOutputStream section = new DataOutputStream(sectionBytes);
+                final List<ContainmentCacheSATEntry> SATEntries = filter(entries.getSATResults().get(coordinate), hashNum);
+                final List<ContainmentCacheUNSATEntry> UNSATEntries = filter(entries.getUNSATResults().get(coordinate), hashNum);
+                for (ContainmentCacheSATEntry entry : SATEntries) {
+                    writeEntryHeader(section, entry);
+                    writeBytes(section, entry.getChannels());
+                }
+                for (ContainmentCacheUNSATEntry entry : UNSATEntries) {
+                    writeEntryHeader(section, entry);
+                    writeBytes(section, entry.getDomainsBitSet().toByteArray());
+                }
+                section.flush();
+                out.writeUTF(coordinate.getDomainHash());
+                out.writeUTF(coordinate.getInterferenceHash());
+                out.writeInt(SATEntries.size());
+                out.writeInt(UNSATEntries.size());
+                out.writeLong(sectionBytes.size());
+                sectionBytes.writeTo(out);
+                numSAT += SATEntries.size();
+                numUNSAT += UNSATEntries.size();
+            }
+            for (Section section : carriedOverSections) {
+                final byte[] sectionBytes = new byte[section.buffer.remaining()];
+                section.buffer.duplicate().get(sectionBytes);
+                out.writeUTF(section.coordinate.getDomainHash());
+                out.writeUTF(section.coordinate.getInterferenceHash());
+                out.writeInt(section.numSAT);
+                out.writeInt(section.numUNSAT);
+                out.writeLong(sectionBytes.length);
+                out.write(sectionBytes);
+                numSAT += section.numSAT;
+                numUNSAT += section.numUNSAT;
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Wrote snapshot of {} SAT and {} UNSAT entries up to entry {} to {}", numSAT, numUNSAT, hashNum, file);
+    }
+
+    /**
+     * @param permutations gives the permutation of each coordinate
+     * @param coordinateFilter only coordinates passing this filter are read
+     */
+    public static Snapshot read(Path file, Function<CacheCoordinate, ImmutableBiMap<Station, Integer>> permutations, Predicate<CacheCoordinate> coordinateFilter, boolean skipSAT, boolean skipUNSAT) throws IOException {
+        final List<Section> sections = new ArrayList<>();
+        final long hashNum = readSections(file, coordinateFilter, false, sections);
+        sections.parallelStream().forEach(section -> section.decode(permutations.apply(section.coordinate), skipSAT, skipUNSAT));
+        final ListMultimap<CacheCoordinate, ContainmentCacheSATEntry> SATResults = ArrayListMultimap.create();
+        final ListMultimap<CacheCoordinate, ContainmentCacheUNSATEntry> UNSATResults = ArrayListMultimap.create();
+        for (Section section : sections) {
+            SATResults.putAll(section.coordinate, section.SATEntries);
+            UNSATResults.putAll(section.coordinate, section.UNSATEntries);
+        }
+        log.info("Read snapshot of {} SAT and {} UNSAT entries up to entry {} from {}", SATResults.size(), UNSATResults.size(), hashNum, file);
+        return new Snapshot(hashNum, new ContainmentCacheInitData(SATResults, UNSATResults));
+    }
+
+    /**
+     * Read the sections of every coordinate without decoding them. They are copied to memory, so the file can be replaced while they are held
+     */
+    static LazySnapshot readLazily(Path file) throws IOException {
+        final List<Section> sections = new ArrayList<>();
+        final long hashNum = readSections(file, coordinate -> true, true, sections);
+        final Map<CacheCoordinate, Section> sectionsByCoordinate = new HashMap<>();
+        sections.forEach(section -> sectionsByCoordinate.put(section.coordinate, section));
+        log.info("Read snapshot of {} coordinates up to entry {} from {}", sectionsByCoordinate.size(), hashNum, file);
+        return new LazySnapshot(hashNum, sectionsByCoordinate);
+    }
+
+    /**
+     * Only read the section headers, the entries are mapped (or copied) to be decoded later
+     * @return the hash num of the snapshot
+     */
+    private static long readSections(Path file, Predicate<CacheCoordinate> coordinateFilter, boolean copy, List<Section> sections) throws IOException {
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            Preconditions.checkState(raf.readInt() == MAGIC, "%s is not a cache snapshot", file);
+            final int version = raf.readInt();
+            Preconditions.checkState(version == VERSION, "Unsupported cache snapshot version %s", version);
+            final long hashNum = raf.readLong();
+            final int numCoordinates = raf.readInt();
+            for (int i = 0; i < numCoordinates; i++) {
+                final CacheCoordinate coordinate = new CacheCoordinate(raf.readUTF(), raf.readUTF());
+                final int numSAT = raf.readInt();
+                final int numUNSAT = raf.readInt();
+                final long length = raf.readLong();
+                final long offset = raf.getFilePointer();
+                if (coordinateFilter.test(coordinate)) {
+                    final ByteBuffer buffer;
+                    if (copy) {
+                        final byte[] bytes = new byte[Math.toIntExact(length)];
+                        raf.readFully(bytes);
+                        buffer = ByteBuffer.wrap(bytes);
+                    } else {
+                        buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+                    }
+                    sections.add(new Section(coordinate, numSAT, numUNSAT, buffer));
+                }
+                raf.seek(offset + length);
+            }
+            return hashNum;
+        }
+    }
+
+    private static <T extends ISATFCCacheEntry> List<T> filter(List<T> entries, long hashNum) {
+        final List<T> filtered = new ArrayList<>(entries.size());
+        for (T entry : entries) {
+            if (entry.getKey() != null && CacheUtils.parseKey(entry.getKey()).getNum() <= hashNum) {
+                filtered.add(entry);
+            }
+        }
+        return filtered;
+    }
+
+    private static void writeEntryHeader(DataOutputStream out, ISATFCCacheEntry entry) throws IOException {
+        out.writeLong(CacheUtils.parseKey(entry.getKey()).getNum());
+        writeBytes(out, (entry.getAuction() != null ? entry.getAuction() : "").getBytes(StandardCharsets.UTF_8));
+        writeBytes(out, entry.getBitSet().toByteArray());
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static class Section {
+        private final CacheCoordinate coordinate;
+        private final int numSAT;
+        private final int numUNSAT;
+        private final ByteBuffer buffer;
+        private final List<ContainmentCacheSATEntry> SATEntries = new ArrayList<>();
+        private final List<ContainmentCacheUNSATEntry> UNSATEntries = new ArrayList<>();
+
+        Section(CacheCoordinate coordinate, int numSAT, int numUNSAT, ByteBuffer buffer) {
+            this.coordinate = coordinate;
+            this.numSAT = numSAT;
+            this.numUNSAT = numUNSAT;
+            this.buffer = buffer;
+        }
+
+        // a section that decodes from the start of the same bytes
+        Section copy() {
+            return new Section(coordinate, numSAT, numUNSAT, buffer.duplicate());
+        }
+
+        void decode(ImmutableBiMap<Station, Integer> permutation, boolean skipSAT, boolean skipUNSAT) {
+            for (int i = 0; i < numSAT; i++) {
+                final long num = buffer.getLong();
+                final String auction = readAuction(buffer);
+                final BitSet bitSet = BitSet.valueOf(readBytes(buffer));
+                final byte[] channels = readBytes(buffer);
+                if (!skipSAT) {
+                    SATEntries.add(new ContainmentCacheSATEntry(bitSet, channels, coordinate.toKey(SATResult.SAT, num), permutation, auction));
+                }
+            }
+            for (int i = 0; i < numUNSAT && !skipUNSAT; i++) {
+                final long num = buffer.getLong();
+                final String auction = readAuction(buffer);
+                final BitSet bitSet = BitSet.valueOf(readBytes(buffer));
+                final BitSet domains = BitSet.valueOf(readBytes(buffer));
+                UNSATEntries.add(new ContainmentCacheUNSATEntry(bitSet, domains, coordinate.toKey(SATResult.UNSAT, num), permutation, auction));
+            }
+        }
+
+        private static byte[] readBytes(ByteBuffer buffer) {
+            final byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        private static String readAuction(ByteBuffer buffer) {
+            final String auction = new String(readBytes(buffer), StandardCharsets.UTF_8);
+            return auction.isEmpty() ? null : auction;
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.cache.CacheSnapshot.LazySnapshot;
+import ca.ubc.cs.beta.stationpacking.cache.RedisCacher.ContainmentCacheInitData;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.ISatisfiabilityCache;
+import ca.ubc.cs.beta.stationpacking.cache.containment.transformer.ICacheEntryTransformer;
+import ca.ubc.cs.beta.stationpacking.cache.containment.transformer.UHFRestrictionTransformer;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * The containment caches living in this JVM, one per cache coordinate, for when there is no SATFCServer.
+ * A cache is made the first time its coordinate is used. If a snapshot file is given, each cache starts from the entries of its coordinate in the snapshot (a SATFCServer snapshot works too), and the snapshot is rewritten on close.
+ * The snapshot is read once, when the locator is made, and the coordinates that were not used are written back as they were.
+ * Results are screened like the SATFCServer does with its default settings: only the UHF part of a result is kept, and only if the cache can't already prove it.
+ */
+@Slf4j
+@ThreadSafe
+public class EmbeddedCacheLocator implements ICacheLocator, AutoCloseable {
+
+    private final ISatisfiabilityCacheFactory cacheFactory;
+    private final Path snapshotFile;
+    // null if there is no snapshot to start from, or it could not be read
+    private final LazySnapshot snapshot;
+    private final Map<CacheCoordinate, ISatisfiabilityCache> caches = new ConcurrentHashMap<>();
+    // numbers the entries, so that they get keys like the ones of the SATFCServer and can be written to a snapshot
+    private final AtomicLong entryNum = new AtomicLong();
+    @Getter
+    private final ICacheEntryFilter screener;
+    @Getter
+    private final ICacheEntryTransformer transformer;
+
+    /**
+     * @param snapshotFile file to read the caches from and write them back to on close, or null to start empty and not save anything
+     */
+    public EmbeddedCacheLocator(String snapshotFile) {
+        this.cacheFactory = new SatisfiabilityCacheFactory(1, 1);
+        this.snapshotFile = snapshotFile != null ? Paths.get(snapshotFile) : null;
+        this.snapshot = readSnapshot(this.snapshotFile);
+        if (snapshot != null) {
+            entryNum.set(snapshot.getHashNum());
+        }
+        this.screener = new NewInfoEntryFilter(this);
+        this.transformer = new UHFRestrictionTransformer();
+    }
+
+    /**
+     * @return the cache of the coordinate, made (and filled from the snapshot) if this is the first time the coordinate is used
+     */
+    public ISatisfiabilityCache getOrCreate(CacheCoordinate coordinate, ImmutableBiMap<Station, Integer> permutation) {
+        return caches.computeIfAbsent(coordinate, c -> create(c, permutation));
+    }
+
+    private LazySnapshot readSnapshot(Path snapshotFile) {
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            return null;
+        }
+        try {
+            return CacheSnapshot.readLazily(snapshotFile);
+        } catch (IOException | RuntimeException e) {
+            // Writing over it on close would lose its entries, so set it aside
+            final Path unreadable = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".unreadable");
+            log.error("Could not read cache snapshot {}, starting with empty caches and moving it to {}", snapshotFile, unreadable, e);
+            try {
+                Files.move(snapshotFile, unreadable, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException moveException) {
+                log.error("Could not move cache snapshot {}", snapshotFile, moveException);
+            }
+            return null;
+        }
+    }
+
+    private ISatisfiabilityCache create(CacheCoordinate coordinate, ImmutableBiMap<Station, Integer> permutation) {
+        final ISatisfiabilityCache cache = cacheFactory.create(permutation);
+        if (snapshot != null) {
+            try {
+                final ContainmentCacheInitData entries = snapshot.decode(coordinate, permutation);
+                cache.addAllSAT(entries.getSATResults().get(coordinate));
+                cache.addAllUNSAT(entries.getUNSATResults().get(coordinate));
+                log.info("Read {} SAT and {} UNSAT entries for coordinate {} from snapshot {}", cache.getNumSATEntries(), cache.getNumUNSATEntries(), coordinate, snapshotFile);
+            } catch (RuntimeException e) {
+                log.error("Could not decode the entries of coordinate {} from cache snapshot {}, starting with an empty cache", coordinate, snapshotFile, e);
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return a new key for an entry of the coordinate
+     */
+    public String nextKey(CacheCoordinate coordinate, SATResult result) {
+        return coordinate.toKey(result, entryNum.incrementAndGet());
+    }
+
+    @Override
+    public ISatisfiabilityCache locate(CacheCoordinate coordinate) {
+        final ISatisfiabilityCache cache = caches.get(coordinate);
+        if (cache == null) {
+            throw new IllegalStateException("No embedded cache was made for coordinate " + coordinate);
+        }
+        return cache;
+    }
+
+    @Override
+    public Set<CacheCoordinate> getCoordinates() {
+        return ImmutableSet.copyOf(caches.keySet());
+    }
+
+    @Override
+    public void close() {
+        if (snapshotFile == null) {
+            return;
+        }
+        try {
+            // Entries numbered after this are left out of the snapshot, so read it before collecting the entries
+            final long hashNum = entryNum.get();
+            final ListMultimap<CacheCoordinate, ContainmentCacheSATEntry> SATEntries = ArrayListMultimap.create();
+            final ListMultimap<CacheCoordinate, ContainmentCacheUNSATEntry> UNSATEntries = ArrayListMultimap.create();
+            caches.forEach((coordinate, cache) -> {
+                SATEntries.putAll(coordinate, cache.getSATEntries());
+                UNSATEntries.putAll(coordinate, cache.getUNSATEntries());
+            });
+            // The coordinates that were not used are copied from the snapshot that was read
+            final LazySnapshot untouched = snapshot != null ? snapshot.without(caches.keySet()) : LazySnapshot.empty();
+            CacheSnapshot.write(snapshotFile, hashNum, new ContainmentCacheInitData(SATEntries, UNSATEntries), untouched);
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not write cache snapshot {}", snapshotFile, e);
+        }
+    }
+
+}
@@ -34,4 +34,11 @@ public interface ISATFCCacheEntry {
 
     SATResult getResult();
 
+    /**
+     * @return the redis key of the entry, or null if it has not been stored yet
+     */
+    String getKey();
+
+    String getAuction();
+
 }
@@ -21,28 +21,38 @@
  */
 package ca.ubc.cs.beta.stationpacking.cache;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-import containmentcache.ICacheEntry;
-import org.springframework.data.redis.core.Cursor;
-import org.springframework.data.redis.core.ScanOptions;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.serializer.StringRedisSerializer;
-
 import com.google.common.base.Preconditions;
-import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import ca.ubc.cs.beta.stationpacking.base.Station;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
@@ -51,144 +61,132 @@ import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.DataManager;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.ManagerBundle;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
 import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
+import ca.ubc.cs.beta.stationpacking.utils.IRedisStore;
+import ca.ubc.cs.beta.stationpacking.utils.IRedisStore.IRedisBatch;
 import ca.ubc.cs.beta.stationpacking.utils.StationPackingUtils;
 import ca.ubc.cs.beta.stationpacking.utils.Watch;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import redis.clients.jedis.BinaryJedis;
-import redis.clients.jedis.Pipeline;
-import redis.clients.jedis.Response;
-import redis.clients.jedis.Transaction;
 
 /**
  * Created by newmanne on 02/12/14.
  * Interfaces with redis to store and retrieve CacheEntry's
  */
 @Slf4j
-public class RedisCacher {
+public class RedisCacher implements AutoCloseable {
 
     private final static int SAT_PIPELINE_SIZE = 10000;
     private final static int UNSAT_PIPELINE_SIZE = 2500;
+    // times a batch of the encoding migration is read again when its entries keep changing
+    private final static int MIGRATION_ATTEMPTS = 10;
     public static final String HASH_NUM = "SATFC:HASHNUM";
 
     private final DataManager dataManager;
-    private final StringRedisTemplate redisTemplate;
-    private final BinaryJedis binaryJedis;
-    private final StringRedisSerializer stringRedisSerializer = new StringRedisSerializer();
+    private final IRedisStore redis;
+    // whether new entries also get the bitset and assignment (or domains) fields, for readers that do not know the encoded field yet
+    private final boolean writeLegacyFields;
 
-    public RedisCacher(DataManager dataManager, StringRedisTemplate redisTemplate, BinaryJedis binaryJedis) {
-        this.dataManager = dataManager;
-        this.redisTemplate = redisTemplate;
-        this.binaryJedis = binaryJedis;
+    /**
+     * @param redis the connection to redis. It is not shared: the cacher should be used by one thread at a time, unless the store itself is thread safe
+     */
+    public RedisCacher(DataManager dataManager, IRedisStore redis) {
+        this(dataManager, redis, false);
     }
 
-    public ISATFCCacheEntry cacheEntryFromKey(String key) {
-        return cacheEntryFromKeyAndAnswer(key, binaryJedis.hgetAll(stringRedisSerializer.serialize(key)));
+    /**
+     * @param writeLegacyFields also write the fields of the older format with each new entry, so that servers that have not been upgraded yet can read it.
+     *                          Turn it off once every reader understands {@link #ENTRY_KEY}, and run {@link #migrateEncoding} to remove the extra fields
+     */
+    public RedisCacher(DataManager dataManager, IRedisStore redis, boolean writeLegacyFields) {
+        this.dataManager = dataManager;
+        this.redis = redis;
+        this.writeLegacyFields = writeLegacyFields;
     }
 
-    public ISATFCCacheEntry cacheEntryFromKeyAndAnswer(String key, final Map<byte[], byte[]> answer) {
-        final CacheUtils.ParsedKey parsedKey = CacheUtils.parseKey(key);
-        final CacheCoordinate coordinate = CacheCoordinate.fromKey(key);
-        final ImmutableBiMap<Station, Integer> permutation = dataManager.getData(coordinate).getPermutation();
-        final Map<String, byte[]> stringKeyAnswer = answer.entrySet().stream().collect(Collectors.toMap(entry -> stringRedisSerializer.deserialize(entry.getKey()), Map.Entry::getValue));
-        if (parsedKey.getResult().equals(SATResult.SAT)) {
-            return parseSATEntry(stringKeyAnswer, key, permutation);
-        } else {
-            return parseUNSATEntry(stringKeyAnswer, key, permutation);
-        }
+    public ISATFCCacheEntry cacheEntryFromKey(String key) {
+        return cacheEntryFromFields(key, redis.hmget(key, fieldsOf(key)));
     }
 
     public static final String ASSIGNMENT_KEY = "assignment";
     public static final String BITSET_KEY = "bitset";
     public static final String NAME_KEY = "name";
     public static final String DOMAINS_KEY = "domains";
-    private static final Set<String> SAT_REQUIRED_KEYS = Sets.newHashSet(ASSIGNMENT_KEY, BITSET_KEY);
-    private static final Set<String> UNSAT_REQUIRED_KEYS = Sets.newHashSet(DOMAINS_KEY, BITSET_KEY);
+    // The whole entry, in the format of CacheEntryEncoding. Older entries have the bitset and assignment (or domains) fields instead
+    public static final String ENTRY_KEY = "entry";
+    // The fields an entry can be made of, in the order in which they are read
+    private static final String[] SAT_FIELDS = {ENTRY_KEY, NAME_KEY, BITSET_KEY, ASSIGNMENT_KEY};
+    private static final String[] UNSAT_FIELDS = {ENTRY_KEY, NAME_KEY, BITSET_KEY, DOMAINS_KEY};
 
-    private ContainmentCacheSATEntry parseSATEntry(Map<String, byte[]> entry, String key, ImmutableBiMap<Station, Integer> permutation) {
-        if (!entry.keySet().containsAll(SAT_REQUIRED_KEYS)) {
-            throw new IllegalArgumentException("Entry does not contain required keys " + SAT_REQUIRED_KEYS + ". Only have keys " + entry.keySet());
-        }
-        final BitSet bitSet = BitSet.valueOf(entry.get(BITSET_KEY));
-        final byte[] channels = entry.get(ASSIGNMENT_KEY);
-        final String name = stringRedisSerializer.deserialize(entry.get(NAME_KEY));
-        final String auction = StationPackingUtils.parseAuctionFromName(name);
-        return new ContainmentCacheSATEntry(bitSet, channels, key, permutation, auction);
+    private static String[] fieldsOf(String key) {
+        return CacheUtils.parseKey(key).getResult().equals(SATResult.SAT) ? SAT_FIELDS : UNSAT_FIELDS;
     }
 
-    private ContainmentCacheUNSATEntry parseUNSATEntry(Map<String, byte[]> entry, String key, ImmutableBiMap<Station, Integer> permutation) {
-        if (!entry.keySet().containsAll(UNSAT_REQUIRED_KEYS)) {
-            throw new IllegalArgumentException("Entry does not contain required keys " + UNSAT_REQUIRED_KEYS + ". Only have keys " + entry.keySet());
+    /**
+     * @param fields the values of {@link #fieldsOf} the key, in the same order
+     */
+    private ISATFCCacheEntry cacheEntryFromFields(String key, List<byte[]> fields) {
+        final String[] fieldNames = fieldsOf(key);
+        final boolean SAT = fieldNames == SAT_FIELDS;
+        final CacheCoordinate coordinate = CacheCoordinate.fromKey(key);
+        final ImmutableBiMap<Station, Integer> permutation = dataManager.getData(coordinate).getPermutation();
+        // The name is optional
+        final String auction = StationPackingUtils.parseAuctionFromName(decode(fields.get(1)));
+        final byte[] packed = fields.get(0);
+        if (packed != null) {
+            return SAT ? CacheEntryEncoding.decodeSAT(packed, key, permutation, auction) : CacheEntryEncoding.decodeUNSAT(packed, key, permutation, auction);
+        }
+        for (int i = 2; i < fieldNames.length; i++) {
+            if (fields.get(i) == null) {
+                throw new IllegalArgumentException("Entry " + key + " does not contain required field " + fieldNames[i]);
+            }
+        }
+        final BitSet bitSet = BitSet.valueOf(fields.get(2));
+        if (SAT) {
+            return new ContainmentCacheSATEntry(bitSet, fields.get(3), key, permutation, auction);
+        } else {
+            return new ContainmentCacheUNSATEntry(bitSet, BitSet.valueOf(fields.get(3)), key, permutation, auction);
         }
-        final BitSet bitSet = BitSet.valueOf(entry.get(BITSET_KEY));
-        final BitSet domains = BitSet.valueOf(entry.get(DOMAINS_KEY));
-        final String name = stringRedisSerializer.deserialize(entry.get(NAME_KEY));
-        final String auction = StationPackingUtils.parseAuctionFromName(name);
-        return new ContainmentCacheUNSATEntry(bitSet, domains, key, permutation, auction);
     }
 
     public <T extends ISATFCCacheEntry> String cacheResult(CacheCoordinate coordinate, T entry, String name) {
-        final long newID = redisTemplate.boundValueOps(HASH_NUM).increment(1);
+        final long newID = redis.incr(HASH_NUM);
         final String key = coordinate.toKey(entry.getResult(), newID);
-        final byte[] keyBytes = stringRedisSerializer.serialize(key);
-        final Transaction multi = binaryJedis.multi();
-            multi.hset(keyBytes, stringRedisSerializer.serialize(BITSET_KEY), entry.getBitSet().toByteArray());
-            if (entry instanceof ContainmentCacheSATEntry) {
-                multi.hset(keyBytes, stringRedisSerializer.serialize(ASSIGNMENT_KEY), ((ContainmentCacheSATEntry) entry).getChannels());
-            } else if (entry instanceof ContainmentCacheUNSATEntry) {
-                multi.hset(keyBytes, stringRedisSerializer.serialize(DOMAINS_KEY), ((ContainmentCacheUNSATEntry) entry).getDomainsBitSet().toByteArray());
+        final IRedisBatch multi = redis.multi();
+            multi.hset(key, ENTRY_KEY, CacheEntryEncoding.encode(entry));
+            if (writeLegacyFields) {
+                multi.hset(key, BITSET_KEY, entry.getBitSet().toByteArray());
+                if (entry instanceof ContainmentCacheSATEntry) {
+                    multi.hset(key, ASSIGNMENT_KEY, ((ContainmentCacheSATEntry) entry).getChannels());
+                } else if (entry instanceof ContainmentCacheUNSATEntry) {
+                    multi.hset(key, DOMAINS_KEY, ((ContainmentCacheUNSATEntry) entry).getDomainsBitSet().toByteArray());
+                }
             }
             if (name != null) {
-                multi.hset(keyBytes, stringRedisSerializer.serialize(NAME_KEY), stringRedisSerializer.serialize(name));
+                multi.hset(key, NAME_KEY, name.getBytes(StandardCharsets.UTF_8));
             }
-        multi.exec();
+        multi.execute();
         if (name != null) {
             log.info("Adding result for {} to cache with key {}", name, key);
         }
         return key;
     }
 
-    public <CONTAINMENT_CACHE_ENTRY extends ISATFCCacheEntry> ListMultimap<CacheCoordinate, CONTAINMENT_CACHE_ENTRY> processResults(Set<String> keys, SATResult entryTypeName, int partitionSize, boolean validateSAT) {
+    /**
+     * @return the number of the last entry added to redis
+     */
+    public long getHashNum() {
+        final String hashNum = redis.get(HASH_NUM);
+        return hashNum != null ? Long.parseLong(hashNum) : 0;
+    }
+
+    public <CONTAINMENT_CACHE_ENTRY extends ISATFCCacheEntry> ListMultimap<CacheCoordinate, CONTAINMENT_CACHE_ENTRY> processResults(Collection<String> keys, SATResult entryTypeName, int partitionSize, boolean validateSAT) {
         final ListMultimap<CacheCoordinate, CONTAINMENT_CACHE_ENTRY> results = ArrayListMultimap.create();
         final AtomicInteger numProcessed = new AtomicInteger();
         Lists.partition(new ArrayList<>(keys), partitionSize).stream().forEach(keyChunk -> {
             log.info("Processed {} {} keys out of {}", numProcessed, entryTypeName, keys.size());
-            final List<String> orderedKeys = new ArrayList<>();
-            final List<Response<Map<byte[], byte[]>>> responses = new ArrayList<>();
-            final Pipeline p = binaryJedis.pipelined();
-            for (String key : keyChunk) {
-                numProcessed.incrementAndGet();
-                final CacheCoordinate coordinate = CacheCoordinate.fromKey(key);
-                final ImmutableBiMap<Station, Integer> permutation = dataManager.getData(coordinate).getPermutation();
-                if (permutation == null) {
-                    log.warn("Skipping cache entry from key {}. Could not find a permutation known for coordinate {}. This probably means that the cache entry does not correspond to any known constraint folders ({})", key, coordinate, dataManager.getCoordinateToBundle().keySet());
-                    continue;
-                }
-                orderedKeys.add(key);
-                responses.add(p.hgetAll(stringRedisSerializer.serialize(key)));
-            }
-            p.sync();
-            Preconditions.checkState(responses.size() == orderedKeys.size(), "Different number of queries and answers from redis!");
-            for (int i = 0; i < responses.size(); i++) {
-                final String key = orderedKeys.get(i);
-                final CacheCoordinate coordinate = CacheCoordinate.fromKey(key);
-                final Map<byte[], byte[]> answer = responses.get(i).get();
-                try {
-                    final ISATFCCacheEntry cacheEntry = cacheEntryFromKeyAndAnswer(key, answer);
-                    if (entryTypeName.equals(SATResult.SAT) && validateSAT) {
-                        ContainmentCacheSATEntry satEntry = (ContainmentCacheSATEntry) cacheEntry;
-                        final Map<Integer, Set<Station>> assignment = ((ContainmentCacheSATEntry) cacheEntry).getAssignmentChannelToStation();
-                        final ManagerBundle managerBundle = dataManager.getData(coordinate);
-                        boolean valid = StationPackingUtils.weakVerify(managerBundle.getStationManager(), managerBundle.getConstraintManager(), satEntry.getAssignmentStationToChannel());
-                        if (!valid) {
-                            throw new IllegalStateException("Cache entry for key " + key + " contains an invalid assignment!");
-                        }
-                    }
-                    results.put(coordinate, (CONTAINMENT_CACHE_ENTRY) cacheEntry);
-                } catch (Exception e) {
-                    log.error("Error making cache entry for key {}", key, e);
-                }
-
+            numProcessed.addAndGet(keyChunk.size());
+            for (ISATFCCacheEntry cacheEntry : fetchEntries(keyChunk, validateSAT)) {
+                results.put(CacheCoordinate.fromKey(cacheEntry.getKey()), (CONTAINMENT_CACHE_ENTRY) cacheEntry);
             }
         });
         log.info("Finished processing {} {} entries", numProcessed, entryTypeName);
@@ -198,20 +196,151 @@ public class RedisCacher {
         return results;
     }
 
+    /**
+     * Read the entries for a batch of keys in a single pipeline, asking only for the fields that make up each entry.
+     * Keys that do not belong to a known coordinate, or that can't be turned into a (valid) entry, are logged and skipped
+     */
+    private List<ISATFCCacheEntry> fetchEntries(List<String> keys, boolean validateSAT) {
+        final List<String> orderedKeys = new ArrayList<>();
+        final List<Supplier<List<byte[]>>> responses = new ArrayList<>();
+        final IRedisBatch p = redis.pipelined();
+        for (String key : keys) {
+            final String[] fields;
+            try {
+                fields = fieldsOf(key);
+            } catch (RuntimeException e) {
+                if (!key.equals(HASH_NUM)) {
+                    log.warn("Exception parsing key " + key, e);
+                }
+                continue;
+            }
+            final CacheCoordinate coordinate = CacheCoordinate.fromKey(key);
+            if (!dataManager.getCoordinateToBundle().containsKey(coordinate)) {
+                log.warn("Skipping cache entry from key {}. Could not find a permutation known for coordinate {}. This probably means that the cache entry does not correspond to any known constraint folders ({})", key, coordinate, dataManager.getCoordinateToBundle().keySet());
+                continue;
+            }
+            orderedKeys.add(key);
+            responses.add(p.hmget(key, fields));
+        }
+        p.execute();
+        final List<ISATFCCacheEntry> entries = new ArrayList<>(orderedKeys.size());
+        for (int i = 0; i < orderedKeys.size(); i++) {
+            final String key = orderedKeys.get(i);
+            try {
+                final ISATFCCacheEntry cacheEntry = cacheEntryFromFields(key, responses.get(i).get());
+                if (cacheEntry instanceof ContainmentCacheSATEntry && validateSAT) {
+                    final ManagerBundle managerBundle = dataManager.getData(CacheCoordinate.fromKey(key));
+                    boolean valid = StationPackingUtils.weakVerify(managerBundle.getStationManager(), managerBundle.getConstraintManager(), ((ContainmentCacheSATEntry) cacheEntry).getAssignmentStationToChannel());
+                    if (!valid) {
+                        throw new IllegalStateException("Cache entry for key " + key + " contains an invalid assignment!");
+                    }
+                }
+                entries.add(cacheEntry);
+            } catch (Exception e) {
+                log.error("Error making cache entry for key {}", key, e);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Read the entries for a stream of key batches with several connections at once. The calling thread produces the batches (e.g. by scanning redis),
+     * while numThreads threads, each with a cacher of its own, pipeline the reads and decode the entries. At most two batches per thread are waiting
+     * to be read at any time, so that the producer does not run far ahead of redis.
+     * @param cacherFactory makes the cacher of each reading thread. It is closed once the stream is done
+     * @param consumer called from the reading threads with every batch and the entries read from it (keys that could not be read have no entry)
+     */
+    public static void streamEntries(Iterator<List<String>> keyBatches, Supplier<RedisCacher> cacherFactory, int numThreads, boolean validateSAT, BiConsumer<List<String>, List<ISATFCCacheEntry>> consumer) {
+        Preconditions.checkArgument(numThreads > 0, "Need at least one thread to read from redis");
+        final BlockingQueue<List<String>> batches = new ArrayBlockingQueue<>(2 * numThreads);
+        final List<String> endOfStream = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Redis-Reader-Thread-%d").build());
+        final List<Future<?>> readers = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            readers.add(executor.submit(() -> {
+                try (RedisCacher cacher = cacherFactory.get()) {
+                    List<String> batch;
+                    while ((batch = batches.take()) != endOfStream) {
+                        List<ISATFCCacheEntry> entries;
+                        try {
+                            entries = cacher.fetchEntries(batch, validateSAT);
+                        } catch (RuntimeException e) {
+                            log.error("Could not read a batch of {} entries from redis", batch.size(), e);
+                            entries = Collections.emptyList();
+                        }
+                        consumer.accept(batch, entries);
+                    }
+                }
+                return null;
+            }));
+        }
+        executor.shutdown();
+        try {
+            while (keyBatches.hasNext()) {
+                putBatch(batches, keyBatches.next(), readers);
+            }
+            for (int i = 0; i < numThreads; i++) {
+                putBatch(batches, endOfStream, readers);
+            }
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading entries from redis", e);
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            throw new IllegalStateException("Could not read entries from redis", e.getCause());
+        }
+    }
+
+    // Readers only stop early on failure, in which case the queue may never drain
+    private static void putBatch(BlockingQueue<List<String>> batches, List<String> batch, List<Future<?>> readers) throws InterruptedException, ExecutionException {
+        while (!batches.offer(batch, 1, TimeUnit.SECONDS)) {
+            for (Future<?> reader : readers) {
+                if (reader.isDone()) {
+                    reader.get();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the keys of the entries in batches of a size that is read well in a single pipeline
+     */
+    public static Iterator<List<String>> batches(CacheKeys keys) {
+        return Iterators.concat(
+                Iterators.partition(keys.getSATKeys().values().iterator(), SAT_PIPELINE_SIZE),
+                Iterators.partition(keys.getUNSATKeys().values().iterator(), UNSAT_PIPELINE_SIZE));
+    }
+
     public ContainmentCacheInitData getContainmentCacheInitData(long limit, boolean skipSAT, boolean skipUNSAT, boolean validateSAT) {
-        log.info("Pulling precache data from redis");
+        return getContainmentCacheInitData(scanKeys(limit, skipSAT, skipUNSAT, coordinate -> true, 0), validateSAT);
+    }
+
+    /**
+     * Find the keys of the cache entries, without reading the entries themselves
+     * @param coordinateFilter only entries whose coordinate passes this filter are kept
+     * @param afterNum only entries numbered after this are kept (e.g. because the older ones come from a snapshot)
+     */
+    public CacheKeys scanKeys(long limit, boolean skipSAT, boolean skipUNSAT, Predicate<CacheCoordinate> coordinateFilter, long afterNum) {
+        log.info("Scanning redis for cache keys");
         final Watch watch = Watch.constructAutoStartWatch();
 
         final Set<String> SATKeys = new HashSet<>();
         final Set<String> UNSATKeys = new HashSet<>();
 
-        final Cursor<byte[]> scan = redisTemplate.getConnectionFactory().getConnection().scan(ScanOptions.scanOptions().build());
+        final Iterator<String> scan = redis.scan();
         while (SATKeys.size() + UNSATKeys.size() < limit && scan.hasNext()) {
-            final String key = new String(scan.next());
+            final String key = scan.next();
             if (key.equals(HASH_NUM)) {
                 continue;
             }
             final CacheUtils.ParsedKey parsedKey = CacheUtils.parseKey(key);
+            if (parsedKey.getNum() <= afterNum) {
+                continue;
+            }
             if (parsedKey.getResult().equals(SATResult.SAT) && !skipSAT) {
                 SATKeys.add(key);
             } else if (parsedKey.getResult().equals(SATResult.UNSAT) && !skipUNSAT) {
@@ -219,20 +348,49 @@ public class RedisCacher {
             }
         }
 
-        // filter out coordinates we don't know about
-        SATKeys.removeIf(key -> !dataManager.getCoordinateToBundle().containsKey(CacheCoordinate.fromKey(key)));
-        UNSATKeys.removeIf(key -> !dataManager.getCoordinateToBundle().containsKey(CacheCoordinate.fromKey(key)));
+        // filter out coordinates we don't know about (or don't want)
+        SATKeys.removeIf(key -> !isWanted(CacheCoordinate.fromKey(key), coordinateFilter));
+        UNSATKeys.removeIf(key -> !isWanted(CacheCoordinate.fromKey(key), coordinateFilter));
 
         log.info("Found " + SATKeys.size() + " SAT keys");
         log.info("Found " + UNSATKeys.size() + " UNSAT keys");
+        log.info("It took {}s to scan redis for cache keys", watch.getElapsedTime());
+        return new CacheKeys(Multimaps.index(SATKeys, CacheCoordinate::fromKey), Multimaps.index(UNSATKeys, CacheCoordinate::fromKey));
+    }
+
+    /**
+     * Read the cache entries for the given keys
+     */
+    public ContainmentCacheInitData getContainmentCacheInitData(CacheKeys keys, boolean validateSAT) {
+        log.info("Pulling precache data from redis");
+        final Watch watch = Watch.constructAutoStartWatch();
 
-        final ListMultimap<CacheCoordinate, ContainmentCacheSATEntry> SATResults = processResults(SATKeys, SATResult.SAT, SAT_PIPELINE_SIZE, validateSAT);
-        final ListMultimap<CacheCoordinate, ContainmentCacheUNSATEntry> UNSATResults = processResults(UNSATKeys, SATResult.UNSAT, UNSAT_PIPELINE_SIZE, false);
+        final ListMultimap<CacheCoordinate, ContainmentCacheSATEntry> SATResults = processResults(keys.getSATKeys().values(), SATResult.SAT, SAT_PIPELINE_SIZE, validateSAT);
+        final ListMultimap<CacheCoordinate, ContainmentCacheUNSATEntry> UNSATResults = processResults(keys.getUNSATKeys().values(), SATResult.UNSAT, UNSAT_PIPELINE_SIZE, false);
 
         log.info("It took {}s to pull precache data from redis", watch.getElapsedTime());
         return new ContainmentCacheInitData(SATResults, UNSATResults);
     }
 
+    private boolean isWanted(CacheCoordinate coordinate, Predicate<CacheCoordinate> coordinateFilter) {
+        return dataManager.getCoordinateToBundle().containsKey(coordinate) && coordinateFilter.test(coordinate);
+    }
+
+    @Data
+    public static class CacheKeys {
+        private final ListMultimap<CacheCoordinate, String> SATKeys;
+        private final ListMultimap<CacheCoordinate, String> UNSATKeys;
+
+        /**
+         * @return only the keys of one coordinate
+         */
+        public CacheKeys forCoordinate(CacheCoordinate coordinate) {
+            return new CacheKeys(
+                    ImmutableListMultimap.<CacheCoordinate, String>builder().putAll(coordinate, SATKeys.get(coordinate)).build(),
+                    ImmutableListMultimap.<CacheCoordinate, String>builder().putAll(coordinate, UNSATKeys.get(coordinate)).build());
+        }
+    }
+
     @Data
     public static class ContainmentCacheInitData {
         private final ListMultimap<CacheCoordinate, ContainmentCacheSATEntry> SATResults;
@@ -248,7 +406,7 @@ public class RedisCacher {
      * @param collection collection of SAT entries
      */
     public void deleteSATCollection(List<ContainmentCacheSATEntry> collection) {
-        redisTemplate.delete(collection.stream().map(ContainmentCacheSATEntry::getKey).collect(Collectors.toList()));
+        deleteEntries(collection);
     }
 
     /**
@@ -256,29 +414,117 @@ public class RedisCacher {
      * @param collection collection of UNSAT entries
      */
     public void deleteUNSATCollection(List<ContainmentCacheUNSATEntry> collection){
-        redisTemplate.delete(collection.stream().map(ContainmentCacheUNSATEntry::getKey).collect(Collectors.toList()));
+        deleteEntries(collection);
     }
 
-    public Iterable<ISATFCCacheEntry> iterateSAT() {
-        final Cursor<byte[]> scan = redisTemplate.getConnectionFactory().getConnection().scan(ScanOptions.scanOptions().build());
-        return () -> new AbstractIterator<ISATFCCacheEntry>() {
-
-            @Override
-            protected ISATFCCacheEntry computeNext() {
-                while (scan.hasNext()) {
-                    final String key = new String(scan.next());
-                    try {
-                        return cacheEntryFromKey(key);
-                    } catch (Exception e) {
-                        if (!key.equals(HASH_NUM)) {
-                            log.warn("Exception parsing key " + key, e);
-                        }
-                        continue;
-                    }
+    /**
+     * Removes the cache entries in Redis, a pipeline at a time. Entries that were never stored are skipped
+     */
+    public void deleteEntries(Collection<? extends ISATFCCacheEntry> entries) {
+        final List<String> keys = entries.stream().map(ISATFCCacheEntry::getKey).filter(key -> key != null).collect(Collectors.toList());
+        for (List<String> keyChunk : Lists.partition(keys, SAT_PIPELINE_SIZE)) {
+            final IRedisBatch p = redis.pipelined();
+            for (String key : keyChunk) {
+                p.del(key);
+            }
+            p.execute();
+        }
+        log.info("Deleted {} entries from redis", keys.size());
+    }
+
+    /**
+     * Rewrite the entries that are still stored as separate fields in the format of {@link CacheEntryEncoding}, a batch of keys at a time.
+     * This is safe to run while servers are using the cache: the encoded field is written before the old fields are removed, and readers prefer it.
+     * The keys of a batch are watched while they are read, so a batch in which an entry was changed or deleted in the meantime is read again instead of being written (and bringing the entry back).
+     * Entries that were written with both formats (see {@link #RedisCacher(DataManager, IRedisStore, boolean)}) lose their old fields, so only run this once no cacher writes them anymore.
+     * @return the number of entries that were rewritten
+     */
+    public long migrateEncoding(int batchSize) {
+        final Watch watch = Watch.constructAutoStartWatch();
+        long numMigrated = 0;
+        final Iterator<List<String>> keyBatches = Iterators.partition(redis.scan(), batchSize);
+        while (keyBatches.hasNext()) {
+            final List<String> entryKeys = keyBatches.next().stream().filter(key -> {
+                try {
+                    fieldsOf(key);
+                    return true;
+                } catch (RuntimeException e) {
+                    // Not a cache entry
+                    return false;
                 }
-                return endOfData();
+            }).collect(Collectors.toList());
+            int attempts = 0;
+            int batchMigrated;
+            while ((batchMigrated = migrateBatch(entryKeys)) < 0) {
+                if (++attempts == MIGRATION_ATTEMPTS) {
+                    log.warn("Entries of a batch kept changing while being migrated, skipping {} keys from {}. Run the migration again to get them", entryKeys.size(), entryKeys.get(0));
+                    batchMigrated = 0;
+                    break;
+                }
+                log.debug("An entry changed while its batch was being migrated, trying again");
             }
-        };
+            numMigrated += batchMigrated;
+            log.info("Migrated {} entries so far", numMigrated);
+        }
+        log.info("Migrated {} entries in {}s", numMigrated, watch.getElapsedTime());
+        return numMigrated;
+    }
+
+    /**
+     * @return the number of entries that were rewritten, or -1 if one of the keys changed while the entries were read, in which case none was
+     */
+    private int migrateBatch(List<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        redis.watch(keys.toArray(new String[keys.size()]));
+        final List<Supplier<List<byte[]>>> responses = new ArrayList<>();
+        final IRedisBatch read = redis.pipelined();
+        for (String key : keys) {
+            responses.add(read.hmget(key, fieldsOf(key)));
+        }
+        read.execute();
+        // Executing the transaction, even an empty one, is also what stops watching the keys
+        final IRedisBatch write = redis.multi();
+        int numMigrated = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            final String key = keys.get(i);
+            final List<byte[]> fields = responses.get(i).get();
+            final boolean SAT = fieldsOf(key) == SAT_FIELDS;
+            if (fields.get(0) != null) {
+                if (fields.get(2) != null || fields.get(3) != null) {
+                    // Written in both formats
+                    write.hdel(key, BITSET_KEY, SAT ? ASSIGNMENT_KEY : DOMAINS_KEY);
+                    numMigrated++;
+                }
+                continue;
+            }
+            if (fields.get(2) == null || fields.get(3) == null) {
+                // Not a complete entry
+                continue;
+            }
+            final BitSet bitSet = BitSet.valueOf(fields.get(2));
+            write.hset(key, ENTRY_KEY, SAT ? CacheEntryEncoding.encodeSAT(bitSet, fields.get(3)) : CacheEntryEncoding.encodeUNSAT(bitSet, BitSet.valueOf(fields.get(3))));
+            write.hdel(key, BITSET_KEY, SAT ? ASSIGNMENT_KEY : DOMAINS_KEY);
+            numMigrated++;
+        }
+        return write.execute() ? numMigrated : -1;
+    }
+
+    /**
+     * Iterate over every entry in redis (despite the name, SAT and UNSAT alike), reading them a pipeline at a time as the keys are scanned
+     */
+    public Iterable<ISATFCCacheEntry> iterateSAT() {
+        return () -> Iterators.concat(Iterators.transform(Iterators.partition(redis.scan(), SAT_PIPELINE_SIZE), keyChunk -> fetchEntries(keyChunk, false).iterator()));
+    }
+
+    @Override
+    public void close() {
+        redis.close();
+    }
+
+    private static String decode(byte[] bytes) {
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
     }
 
 }
\ No newline at end of file
@@ -33,11 +33,9 @@ import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
 import ca.ubc.cs.beta.stationpacking.cache.containment.SatisfiabilityCache;
 import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.ISatisfiabilityCache;
-import containmentcache.IContainmentCache;
-import containmentcache.ILockableContainmentCache;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.LeftRightContainmentCache;
 import containmentcache.bitset.opt.MultiPermutationBitSetCache;
 import containmentcache.bitset.opt.sortedset.redblacktree.RedBlackTree;
-import containmentcache.decorators.BufferedThreadSafeCacheDecorator;
 import containmentcache.util.PermutationUtils;
 import lombok.extern.slf4j.Slf4j;
 
@@ -47,8 +45,6 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class SatisfiabilityCacheFactory implements ISatisfiabilityCacheFactory {
 
-    private static final int SAT_BUFFER_SIZE = 100;
-    private static final int UNSAT_BUFFER_SIZE = 3;
     private final int numPermutations;
     private final long seed;
 
@@ -68,11 +64,9 @@ public class SatisfiabilityCacheFactory implements ISatisfiabilityCacheFactory {
             permutations = ImmutableList.of();
         }
 
-        // 2) Create the actual caches
-        final IContainmentCache<Station, ContainmentCacheSATEntry> undecoratedSATCache = new MultiPermutationBitSetCache<>(permutation, permutations, RedBlackTree::new);
-        final ILockableContainmentCache<Station, ContainmentCacheSATEntry> SATCache = BufferedThreadSafeCacheDecorator.makeBufferedThreadSafe(undecoratedSATCache, SAT_BUFFER_SIZE);
-        final IContainmentCache<Station, ContainmentCacheUNSATEntry> undecoratedUNSATCache = new MultiPermutationBitSetCache<>(permutation, permutations, RedBlackTree::new);
-        final ILockableContainmentCache<Station, ContainmentCacheUNSATEntry> UNSATCache = BufferedThreadSafeCacheDecorator.makeBufferedThreadSafe(undecoratedUNSATCache, UNSAT_BUFFER_SIZE);
+        // 2) Create the actual caches. Each is kept twice so that readers never wait on writers
+        final LeftRightContainmentCache<Station, ContainmentCacheSATEntry> SATCache = new LeftRightContainmentCache<>(() -> new MultiPermutationBitSetCache<>(permutation, permutations, RedBlackTree::new));
+        final LeftRightContainmentCache<Station, ContainmentCacheUNSATEntry> UNSATCache = new LeftRightContainmentCache<>(() -> new MultiPermutationBitSetCache<>(permutation, permutations, RedBlackTree::new));
         return new SatisfiabilityCache(permutation, SATCache, UNSATCache);
     }
 }
\ No newline at end of file
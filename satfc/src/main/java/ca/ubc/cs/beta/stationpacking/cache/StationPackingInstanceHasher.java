@@ -21,11 +21,17 @@
  */
 package ca.ubc.cs.beta.stationpacking.cache;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
 import com.google.common.base.Charsets;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 
+import ca.ubc.cs.beta.stationpacking.base.Station;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
 
 /**
@@ -43,4 +49,27 @@ public class StationPackingInstanceHasher {
         return hash;
     }
 
+    /**
+     * @return a hash of a set of stations, that does not depend on the order in which the stations are given
+     */
+    public static HashCode hashStations(Collection<Station> aStations) {
+        final Hasher hasher = fHashFuction.newHasher();
+        aStations.stream().mapToInt(Station::getID).sorted().forEach(hasher::putInt);
+        return hasher.hash();
+    }
+
+    /**
+     * @return a hash of station domains, that does not depend on the order in which the stations or channels are given
+     */
+    public static HashCode hashDomains(Map<Station, Set<Integer>> aDomains) {
+        final Hasher hasher = fHashFuction.newHasher();
+        aDomains.keySet().stream().sorted().forEach(station -> {
+            hasher.putInt(station.getID());
+            aDomains.get(station).stream().mapToInt(Integer::intValue).sorted().forEach(hasher::putInt);
+            // Channels are positive, so this separates the domains of consecutive stations
+            hasher.putInt(-1);
+        });
+        return hasher.hash();
+    }
+
 }
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.containment;
+
+import java.util.Collections;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Answer to a batch of cache queries. The i-th SAT and UNSAT results answer the i-th query of the batch.
+ * A query that did not ask for a SAT (resp. UNSAT) lookup has a failed SAT (resp. UNSAT) result.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ContainmentCacheBatchResult {
+
+    private List<ContainmentCacheSATResult> SATResults;
+    private List<ContainmentCacheUNSATResult> UNSATResults;
+
+    // return failed results for a batch of the given size, that represents an error or that none of the problems were solvable via the cache
+    public static ContainmentCacheBatchResult failure(int size) {
+        return new ContainmentCacheBatchResult(Collections.nCopies(size, ContainmentCacheSATResult.failure()), Collections.nCopies(size, ContainmentCacheUNSATResult.failure()));
+    }
+}
@@ -21,8 +21,10 @@
  */
 package ca.ubc.cs.beta.stationpacking.cache.containment;
 
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -94,9 +96,67 @@ public class ContainmentCacheSATEntry implements ICacheEntry<Station>, ISATFCCac
 
     // aInstance is already known to be a subset of this entry
     public boolean isSolutionTo(StationPackingInstance aInstance) {
-        final ImmutableMap<Station, Set<Integer>> domains = aInstance.getDomains();
-        final Map<Integer, Integer> stationToChannel = getAssignmentStationToChannel();
-        return domains.entrySet().stream().allMatch(entry -> entry.getValue().contains(stationToChannel.get(entry.getKey().getID())));
+        return isSolutionTo(new SolutionQuery(aInstance, permutation));
+    }
+
+    /**
+     * Same as {@link #isSolutionTo(StationPackingInstance)}, but does not allocate: the query's stations and this entry's stations are walked together in permutation order.
+     * The query is already known to be a subset of this entry.
+     */
+    public boolean isSolutionTo(SolutionQuery query) {
+        int j = 0;
+        int bit = bitSet.nextSetBit(0);
+        for (int q = 0; q < query.bits.length; q++) {
+            final int queryBit = query.bits[q];
+            while (bit >= 0 && bit < queryBit) {
+                bit = bitSet.nextSetBit(bit + 1);
+                j++;
+            }
+            if (bit != queryBit || !query.domains.get(q).contains(Byte.toUnsignedInt(channels[j]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of stations of the query that this entry assigns to a channel of their domain. Same walk as {@link #isSolutionTo(SolutionQuery)}, but the query does not have to be a subset of this entry
+     */
+    public int countSolvedStations(SolutionQuery query) {
+        int solved = 0;
+        int j = 0;
+        int bit = bitSet.nextSetBit(0);
+        for (int q = 0; q < query.bits.length && bit >= 0; q++) {
+            final int queryBit = query.bits[q];
+            while (bit >= 0 && bit < queryBit) {
+                bit = bitSet.nextSetBit(bit + 1);
+                j++;
+            }
+            if (bit == queryBit && query.domains.get(q).contains(Byte.toUnsignedInt(channels[j]))) {
+                solved++;
+            }
+        }
+        return solved;
+    }
+
+    /**
+     * A query instance translated to the permutation of the cache, so that it can be checked against many entries.
+     */
+    public static class SolutionQuery {
+
+        // Bits of the query's stations, in increasing order, and the domain of the station at each of these bits
+        private final int[] bits;
+        private final List<Set<Integer>> domains;
+
+        public SolutionQuery(StationPackingInstance aInstance, ImmutableBiMap<Station, Integer> permutation) {
+            final ImmutableMap<Station, Set<Integer>> instanceDomains = aInstance.getDomains();
+            bits = instanceDomains.keySet().stream().mapToInt(permutation::get).sorted().toArray();
+            final Map<Integer, Station> inversePermutation = permutation.inverse();
+            domains = new ArrayList<>(bits.length);
+            for (int bit : bits) {
+                domains.add(instanceDomains.get(inversePermutation.get(bit)));
+            }
+        }
     }
 
     public Map<Integer, Set<Station>> getAssignmentChannelToStation() {
@@ -24,12 +24,17 @@ package ca.ubc.cs.beta.stationpacking.cache.containment;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -37,13 +42,21 @@ import java.util.stream.StreamSupport;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
 
 import ca.ubc.cs.beta.stationpacking.base.Station;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.ISATFCCacheEntry;
+import ca.ubc.cs.beta.stationpacking.cache.StationPackingInstanceHasher;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.CacheEntryUsage;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.CacheFilterProgress;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.CacheQueryStatistics;
 import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.ISatisfiabilityCache;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.LeftRightContainmentCache;
 import ca.ubc.cs.beta.stationpacking.datamanagers.stations.IStationManager;
-import containmentcache.ILockableContainmentCache;
 import containmentcache.SimpleCacheSet;
+import lombok.Data;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -53,15 +66,26 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class SatisfiabilityCache implements ISatisfiabilityCache {
 
-    final ILockableContainmentCache<Station, ContainmentCacheSATEntry> SATCache;
-    final ILockableContainmentCache<Station, ContainmentCacheUNSATEntry> UNSATCache;
+    final LeftRightContainmentCache<Station, ContainmentCacheSATEntry> SATCache;
+    final LeftRightContainmentCache<Station, ContainmentCacheUNSATEntry> UNSATCache;
     @Getter
     final ImmutableBiMap<Station, Integer> permutation;
+    // Exact match indices, checked before walking the containment caches: SAT entries by station set, and UNSAT entries by domains
+    final Map<HashCode, ContainmentCacheSATEntry> SATExactIndex = new ConcurrentHashMap<>();
+    final Map<HashCode, ContainmentCacheUNSATEntry> UNSATExactIndex = new ConcurrentHashMap<>();
+    @Getter
+    final CacheQueryStatistics SATStatistics = new CacheQueryStatistics();
+    @Getter
+    final CacheQueryStatistics UNSATStatistics = new CacheQueryStatistics();
+    // approximate size of the entries themselves, not counting the containment cache indices
+    final LongAdder entryBytes = new LongAdder();
+    // hits of every entry, to choose what to evict
+    final CacheEntryUsage<ISATFCCacheEntry> usage = new CacheEntryUsage<>();
 
     public SatisfiabilityCache(
             BiMap<Station, Integer> permutation,
-            ILockableContainmentCache<Station, ContainmentCacheSATEntry> SATCache,
-            ILockableContainmentCache<Station, ContainmentCacheUNSATEntry> UNSATCache) {
+            LeftRightContainmentCache<Station, ContainmentCacheSATEntry> SATCache,
+            LeftRightContainmentCache<Station, ContainmentCacheUNSATEntry> UNSATCache) {
         this.permutation = ImmutableBiMap.copyOf(permutation);
         this.SATCache = SATCache;
         this.UNSATCache = UNSATCache;
@@ -69,53 +93,176 @@ public class SatisfiabilityCache implements ISatisfiabilityCache {
 
     @Override
     public ContainmentCacheSATResult proveSATBySuperset(final StationPackingInstance aInstance, final Predicate<ContainmentCacheSATEntry> ignorePredicate) {
-        // try to narrow down the entries we have to search by only looking at supersets
-        try {
-            SATCache.getReadLock().lock();
-            final Iterable<ContainmentCacheSATEntry> iterable = SATCache.getSupersets(new SimpleCacheSet<Station>(aInstance.getStations(), permutation));
-            return StreamSupport.stream(iterable.spliterator(), false)
-                    /**
-                     * The entry must contain at least every station in the query in order to provide a solution (hence superset)
-                     * The entry should also be a solution to the problem, which it will be as long as the solution can project onto the query's domains since they come from the set of interference constraints
-                     */
-                    .filter(entry -> entry.isSolutionTo(aInstance))
-                    .filter(ignorePredicate)
-                    .map(entry -> new ContainmentCacheSATResult(entry.getAssignmentChannelToStation(), entry.getKey()))
-                    .findAny()
-                    .orElse(ContainmentCacheSATResult.failure());
-        } finally {
-            SATCache.getReadLock().unlock();
+        return proveSATBySuperset(aInstance, ignorePredicate, true);
+    }
+
+    /**
+     * @param record whether to count this query in the statistics. Queries made while filtering the cache are not
+     */
+    private ContainmentCacheSATResult proveSATBySuperset(final StationPackingInstance aInstance, final Predicate<ContainmentCacheSATEntry> ignorePredicate, boolean record) {
+        // Translate the query once, so that checking each candidate does not allocate
+        final ContainmentCacheSATEntry.SolutionQuery query = new ContainmentCacheSATEntry.SolutionQuery(aInstance, permutation);
+        final int[] examined = {0};
+        final int[] rejected = {0};
+        // an entry for exactly these stations is a solution as long as its channels are in the domains
+        final ContainmentCacheSATEntry exactMatch = SATExactIndex.get(StationPackingInstanceHasher.hashStations(aInstance.getStations()));
+        ContainmentCacheSATEntry hit = null;
+        if (exactMatch != null) {
+            examined[0]++;
+            if (exactMatch.isSolutionTo(query) && ignorePredicate.test(exactMatch)) {
+                hit = exactMatch;
+            } else {
+                rejected[0]++;
+            }
         }
+        if (hit == null) {
+            // try to narrow down the entries we have to search by only looking at supersets
+            hit = SATCache.read(cache -> {
+                final Iterable<ContainmentCacheSATEntry> iterable = cache.getSupersets(new SimpleCacheSet<Station>(aInstance.getStations(), permutation));
+                /**
+                 * The entry must contain at least every station in the query in order to provide a solution (hence superset)
+                 * The entry should also be a solution to the problem, which it will be as long as the solution can project onto the query's domains since they come from the set of interference constraints
+                 */
+                for (ContainmentCacheSATEntry entry : iterable) {
+                    examined[0]++;
+                    if (entry.isSolutionTo(query) && ignorePredicate.test(entry)) {
+                        return entry;
+                    }
+                    rejected[0]++;
+                }
+                return null;
+            });
+        }
+        if (record) {
+            SATStatistics.record(hit != null, examined[0], rejected[0]);
+            if (hit != null) {
+                usage.hit(hit);
+            }
+        }
+        return hit != null ? new ContainmentCacheSATResult(hit.getAssignmentChannelToStation(), hit.getKey()) : ContainmentCacheSATResult.failure();
     }
 
     @Override
     public ContainmentCacheUNSATResult proveUNSATBySubset(final StationPackingInstance aInstance) {
-        // try to narrow down the entries we have to search by only looking at subsets
-        try {
-            UNSATCache.getReadLock().lock();
-            final Iterable<ContainmentCacheUNSATEntry> iterable = UNSATCache.getSubsets(new SimpleCacheSet<Station>(aInstance.getStations(), permutation));
-            return StreamSupport.stream(iterable.spliterator(), false)
+        final int[] examined = {0};
+        final int[] rejected = {0};
+        final ContainmentCacheUNSATEntry exactMatch = UNSATExactIndex.get(StationPackingInstanceHasher.hashDomains(aInstance.getDomains()));
+        ContainmentCacheUNSATEntry hit = null;
+        if (exactMatch != null) {
+            examined[0]++;
+            if (isSupersetOrEqualToByDomains(exactMatch.getDomains(), aInstance.getDomains())) {
+                hit = exactMatch;
+            } else {
+                rejected[0]++;
+            }
+        }
+        if (hit == null) {
+            // try to narrow down the entries we have to search by only looking at subsets
+            hit = UNSATCache.read(cache -> {
+                final Iterable<ContainmentCacheUNSATEntry> iterable = cache.getSubsets(new SimpleCacheSet<Station>(aInstance.getStations(), permutation));
                 /*
                  * The entry's stations should be a subset of the query's stations (so as to be less constrained)
                  * and each station in the entry must have larger than or equal to the corresponding station domain in the target (so as to be less constrained)
                  */
-                    .filter(entry -> isSupersetOrEqualToByDomains(entry.getDomains(), aInstance.getDomains()))
-                    .map(entry -> new ContainmentCacheUNSATResult(entry.getKey()))
-                    .findAny()
-                    .orElse(ContainmentCacheUNSATResult.failure());
-        } finally {
-            UNSATCache.getReadLock().unlock();
+                for (ContainmentCacheUNSATEntry entry : iterable) {
+                    examined[0]++;
+                    if (isSupersetOrEqualToByDomains(entry.getDomains(), aInstance.getDomains())) {
+                        return entry;
+                    }
+                    rejected[0]++;
+                }
+                return null;
+            });
+        }
+        UNSATStatistics.record(hit != null, examined[0], rejected[0]);
+        if (hit != null) {
+            usage.hit(hit);
+            return new ContainmentCacheUNSATResult(hit.getKey());
         }
+        return ContainmentCacheUNSATResult.failure();
     }
 
     @Override
     public void add(ContainmentCacheSATEntry SATEntry) {
         SATCache.add(SATEntry);
+        SATExactIndex.put(StationPackingInstanceHasher.hashStations(SATEntry.getElements()), SATEntry);
+        final long bytes = approximateBytes(SATEntry);
+        entryBytes.add(bytes);
+        usage.added(SATEntry, bytes);
     }
 
     @Override
     public void add(ContainmentCacheUNSATEntry UNSATEntry) {
         UNSATCache.add(UNSATEntry);
+        UNSATExactIndex.put(StationPackingInstanceHasher.hashDomains(UNSATEntry.getDomains()), UNSATEntry);
+        final long bytes = approximateBytes(UNSATEntry);
+        entryBytes.add(bytes);
+        usage.added(UNSATEntry, bytes);
+    }
+
+    @Override
+    public void remove(ContainmentCacheSATEntry SATEntry) {
+        // Another entry for the same stations may have replaced this one in the index
+        SATExactIndex.remove(StationPackingInstanceHasher.hashStations(SATEntry.getElements()), SATEntry);
+        SATCache.remove(SATEntry);
+        entryBytes.add(-approximateBytes(SATEntry));
+        usage.removed(SATEntry);
+    }
+
+    @Override
+    public void remove(ContainmentCacheUNSATEntry UNSATEntry) {
+        UNSATExactIndex.remove(StationPackingInstanceHasher.hashDomains(UNSATEntry.getDomains()), UNSATEntry);
+        UNSATCache.remove(UNSATEntry);
+        entryBytes.add(-approximateBytes(UNSATEntry));
+        usage.removed(UNSATEntry);
+    }
+
+    // Object headers and references of an entry, its bit sets and its key, on a 64 bit jvm
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private static long approximateBytes(ContainmentCacheSATEntry entry) {
+        return ENTRY_OVERHEAD_BYTES + entry.getChannels().length + entry.getBitSet().size() / Byte.SIZE + keyBytes(entry.getKey());
+    }
+
+    private static long approximateBytes(ContainmentCacheUNSATEntry entry) {
+        return ENTRY_OVERHEAD_BYTES + (entry.getBitSet().size() + entry.getDomainsBitSet().size()) / Byte.SIZE + keyBytes(entry.getKey());
+    }
+
+    private static long keyBytes(String key) {
+        return key != null ? 2L * key.length() : 0;
+    }
+
+    @Override
+    public int getNumSATEntries() {
+        return SATCache.size();
+    }
+
+    @Override
+    public int getNumUNSATEntries() {
+        return UNSATCache.size();
+    }
+
+    @Override
+    public long getApproximateHeapBytes() {
+        return entryBytes.sum();
+    }
+
+    @Override
+    public List<CacheEntryUsage.Candidate<ISATFCCacheEntry>> getEvictionCandidates(int n) {
+        return usage.leastUseful(n);
+    }
+
+    @Override
+    public void evict(List<CacheEntryUsage.Candidate<ISATFCCacheEntry>> candidates) {
+        for (CacheEntryUsage.Candidate<ISATFCCacheEntry> candidate : candidates) {
+            final ISATFCCacheEntry entry = candidate.getEntry();
+            if (entry instanceof ContainmentCacheSATEntry) {
+                remove((ContainmentCacheSATEntry) entry);
+            } else {
+                remove((ContainmentCacheUNSATEntry) entry);
+            }
+            usage.evicted(candidate.getUtility());
+        }
     }
 
     /**
@@ -136,119 +283,163 @@ public class SatisfiabilityCache implements ISatisfiabilityCache {
 
     /**
      * removes redundant SAT entries from this SATCache
+     * Each entry is checked with its own index lookup and its own (short) read of the cache, in parallel, so writers never have to wait for the whole filtering to finish
      *
      * @return list of cache entries to be removed
      */
     @Override
-    public List<ContainmentCacheSATEntry> filterSAT(IStationManager stationManager, boolean strong) {
-        List<ContainmentCacheSATEntry> prunableEntries = Collections.synchronizedList(new ArrayList<>());
-        Iterable<ContainmentCacheSATEntry> satEntries = SATCache.getSets();
-
-        final AtomicLong counter = new AtomicLong();
-        SATCache.getReadLock().lock();
-        try {
-            StreamSupport.stream(satEntries.spliterator(), true)
-                    .forEach(cacheEntry -> {
-                        if (counter.getAndIncrement() % 1000 == 0) {
-                            log.info("Scanned {} / {} entries; Found {} prunables", counter.get(), SATCache.size(), prunableEntries.size());
-                        }
-                        if ((strong && shouldFilterStrong(cacheEntry, stationManager)) || (!strong && shouldFilterWeak(cacheEntry))) {
-                            prunableEntries.add(cacheEntry);
-                        }
-                    });
-        } finally {
-            SATCache.getReadLock().unlock();
-        }
+    public List<ContainmentCacheSATEntry> filterSAT(IStationManager stationManager, boolean strong, CacheFilterProgress progress) {
+        // Entries with few stations have the most supersets. Sorting keeps entries of similar cost together when the work is split, and gives each entry a rank to break ties between equivalent entries
+        final List<ContainmentCacheSATEntry> entries = getSATEntries();
+        entries.sort(Comparator.comparingInt(entry -> entry.getBitSet().cardinality()));
+        final Map<ContainmentCacheSATEntry, Integer> ranks = ranks(entries);
+        final List<ContainmentCacheSATEntry> prunableEntries = filter(entries, progress, cacheEntry -> {
+            // Of two entries with the same assignment, only the one with the lowest rank is pruned
+            final Predicate<ContainmentCacheSATEntry> canPrune = entry -> entry != cacheEntry && (!cacheEntry.hasMoreSolvingPower(entry) || ranks.getOrDefault(entry, -1) > ranks.get(cacheEntry));
+            return strong ? shouldFilterStrong(cacheEntry, stationManager, canPrune) : shouldFilterWeak(cacheEntry, canPrune);
+        });
 
-        prunableEntries.forEach(SATCache::remove);
+        // Removing has to wait until we are done reading
+        prunableEntries.forEach(this::remove);
         return prunableEntries;
     }
 
-    private boolean shouldFilterWeak(ContainmentCacheSATEntry cacheEntry) {
-        Iterable<ContainmentCacheSATEntry> supersets = SATCache.getSupersets(cacheEntry);
-        return StreamSupport.stream(supersets.spliterator(), false)
-                        .filter(entry -> entry.hasMoreSolvingPower(cacheEntry))
-                        .findAny().isPresent();
+    private boolean shouldFilterWeak(ContainmentCacheSATEntry cacheEntry, Predicate<ContainmentCacheSATEntry> canPrune) {
+        return SATCache.read(cache -> StreamSupport.stream(cache.getSupersets(cacheEntry).spliterator(), false)
+                .anyMatch(entry -> entry.hasMoreSolvingPower(cacheEntry) && canPrune.test(entry)));
     }
 
-    private boolean shouldFilterStrong(ContainmentCacheSATEntry cacheEntry, IStationManager stationManager) {
+    private boolean shouldFilterStrong(ContainmentCacheSATEntry cacheEntry, IStationManager stationManager, Predicate<ContainmentCacheSATEntry> canPrune) {
         final Map<Station, Set<Integer>> domains = new HashMap<>();
         for (Map.Entry<Integer, Integer> e : cacheEntry.getAssignmentStationToChannel().entrySet()) {
             final Station station = stationManager.getStationfromID(e.getKey());
             domains.put(station, stationManager.getRestrictedDomain(station, e.getValue(), false));
         }
         final StationPackingInstance i = new StationPackingInstance(domains);
-        return proveSATBySuperset(i, entry -> entry != cacheEntry).isValid();
+        return proveSATBySuperset(i, canPrune, false).isValid();
     }
 
     /**
      * removes redundant UNSAT entries from this UNSATCache
+     * Each entry is checked with its own index lookup and its own (short) read of the cache, in parallel, so writers never have to wait for the whole filtering to finish
      *
      * @return list of cache entries to be removed
      */
     @Override
-    public List<ContainmentCacheUNSATEntry> filterUNSAT() {
-        List<ContainmentCacheUNSATEntry> prunableEntries = new ArrayList<>();
-        Iterable<ContainmentCacheUNSATEntry> unsatEntries = UNSATCache.getSets();
+    public List<ContainmentCacheUNSATEntry> filterUNSAT(CacheFilterProgress progress) {
+        // Entries with many stations have the most subsets. Sorting keeps entries of similar cost together when the work is split, and gives each entry a rank to break ties between equivalent entries
+        final List<ContainmentCacheUNSATEntry> entries = getUNSATEntries();
+        entries.sort(Comparator.comparingInt((ContainmentCacheUNSATEntry entry) -> entry.getBitSet().cardinality()).reversed());
+        final Map<ContainmentCacheUNSATEntry, Integer> ranks = ranks(entries);
+        final List<ContainmentCacheUNSATEntry> prunableEntries = filter(entries, progress, cacheEntry -> UNSATCache.read(cache ->
+                // For two UNSAT problems P and Q, if Q has less stations to pack,
+                // and each station has more candidate channels, then Q is less restrictive than P
+                // Of two entries with the same domains, only the one with the lowest rank is pruned
+                StreamSupport.stream(cache.getSubsets(cacheEntry).spliterator(), false)
+                        .anyMatch(entry -> entry.isLessRestrictive(cacheEntry) && (!cacheEntry.isLessRestrictive(entry) || ranks.getOrDefault(entry, -1) > ranks.get(cacheEntry)))
+        ));
+
+        prunableEntries.forEach(this::remove);
+        return prunableEntries;
+    }
 
+    private static <T> Map<T, Integer> ranks(List<T> entries) {
+        final Map<T, Integer> ranks = new IdentityHashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            ranks.put(entries.get(i), i);
+        }
+        return ranks;
+    }
 
-        final AtomicLong counter = new AtomicLong();
-        UNSATCache.getReadLock().lock();
+    /**
+     * Check every entry on a dedicated fork join pool, stopping early if the filtering is cancelled
+     * @return the prunable entries
+     */
+    private static <T> List<T> filter(List<T> entries, CacheFilterProgress progress, Predicate<T> isPrunable) {
+        progress.addToTotal(entries.size());
+        final List<T> prunableEntries = Collections.synchronizedList(new ArrayList<>());
+        final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
         try {
-            unsatEntries.forEach(cacheEntry -> {
-                if (counter.getAndIncrement() % 1000 == 0) {
-                    log.info("Scanned {} / {} entries; Found {} prunables", counter.get(), UNSATCache.size(), prunableEntries.size());
+            pool.submit(() -> entries.parallelStream().forEach(entry -> {
+                if (progress.isCancelled()) {
+                    return;
                 }
-                Iterable<ContainmentCacheUNSATEntry> subsets = UNSATCache.getSubsets(cacheEntry);
-                // For two UNSAT problems P and Q, if Q has less stations to pack,
-                // and each station has more candidate channels, then Q is less restrictive than P
-                Optional<ContainmentCacheUNSATEntry> lessRestrictiveUNSAT =
-                        StreamSupport.stream(subsets.spliterator(), true)
-                                .filter(entry -> entry.isLessRestrictive(cacheEntry))
-                                .findAny();
-                if (lessRestrictiveUNSAT.isPresent()) {
-                    prunableEntries.add(cacheEntry);
+                final boolean prunable = isPrunable.test(entry);
+                if (prunable) {
+                    prunableEntries.add(entry);
                 }
-            });
+                if (progress.scanned(prunable) % 1000 == 0) {
+                    log.info("{}", progress);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while filtering the cache", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error while filtering the cache", e.getCause());
         } finally {
-            UNSATCache.getReadLock().unlock();
+            // On cancellation or interruption, do not leave the remaining tasks running
+            pool.shutdownNow();
         }
-
-        prunableEntries.forEach(UNSATCache::remove);
+        log.info("{}", progress);
         return prunableEntries;
     }
 
+    @Override
+    public List<ContainmentCacheSATEntry> getSATEntries() {
+        return SATCache.read(cache -> Lists.newArrayList(cache.getSets()));
+    }
+
+    @Override
+    public List<ContainmentCacheUNSATEntry> getUNSATEntries() {
+        return UNSATCache.read(cache -> Lists.newArrayList(cache.getSets()));
+    }
+
+    /**
+     * Only the k best entries so far are kept, in a min heap. An entry is only walked if it has enough stations to beat the worst of them
+     */
     @Override
     public List<ContainmentCacheSATEntry> findMaxIntersections(StationPackingInstance instance, int k) {
-        BitSet bitSet = new SimpleCacheSet<>(instance.getStations(), permutation).getBitSet();
-        ImmutableMap<Station, Set<Integer>> domains = instance.getDomains();
-        SATCache.getReadLock().lock();
-        try {
-            return StreamSupport.stream(SATCache.getSets().spliterator(), false)
-                    .sorted((a, b) -> {
-                        final BitSet aCopy = (BitSet) a.getBitSet().clone();
-                        final BitSet bCopy = (BitSet) b.getBitSet().clone();
-                        aCopy.and(bitSet);
-                        bCopy.and(bitSet);
-                        aCopy.stream().forEach(i -> {
-                            Station station = permutation.inverse().get(i);
-                            if (!domains.get(station).contains(a.getAssignmentStationToChannel().get(station.getID()))) {
-                                aCopy.clear(i);
-                            }
-                        });
-                        bCopy.stream().forEach(i -> {
-                            Station station = permutation.inverse().get(i);
-                            if (!domains.get(station).contains(b.getAssignmentStationToChannel().get(station.getID()))) {
-                                bCopy.clear(i);
-                            }
-                        });
-                        return Integer.compare(aCopy.cardinality(), bCopy.cardinality());
-                    })
-                    .limit(k)
-                    .collect(Collectors.toList());
-        } finally {
-            SATCache.getReadLock().unlock();
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        final ContainmentCacheSATEntry.SolutionQuery query = new ContainmentCacheSATEntry.SolutionQuery(instance, permutation);
+        final int numStations = instance.getStations().size();
+        final PriorityQueue<ScoredEntry> best = new PriorityQueue<>(k + 1, Comparator.comparingInt(ScoredEntry::getScore));
+        SATCache.read(cache -> {
+            for (ContainmentCacheSATEntry entry : cache.getSets()) {
+                if (best.size() == k) {
+                    final int worstScore = best.peek().getScore();
+                    if (worstScore == numStations) {
+                        // Nothing can beat the current top k
+                        break;
+                    } else if (Math.min(entry.getBitSet().cardinality(), numStations) <= worstScore) {
+                        continue;
+                    }
+                }
+                final int score = entry.countSolvedStations(query);
+                if (best.size() < k) {
+                    best.add(new ScoredEntry(entry, score));
+                } else if (score > best.peek().getScore()) {
+                    best.poll();
+                    best.add(new ScoredEntry(entry, score));
+                }
+            }
+            return null;
+        });
+        final List<ContainmentCacheSATEntry> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(best.poll().getEntry());
         }
+        Collections.reverse(result);
+        return result;
+    }
+
+    @Data
+    private static class ScoredEntry {
+        private final ContainmentCacheSATEntry entry;
+        // number of stations of the query instance that the entry assigns to a channel of their domain
+        private final int score;
     }
 
 }
@@ -0,0 +1,189 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import lombok.Data;
+
+/**
+ * Usage of the entries of a cache, used to decide which entries to evict when the cache grows too large.
+ * Each entry gets a slot in parallel arrays holding its number of hits, its size and the inflation value at its last hit (its recency).
+ * Entries are ranked with greedy dual size frequency (GDSF): utility = inflation at last hit + hits / size.
+ * The inflation value is raised to the utility of each evicted entry, so an entry that has not been hit in a while ends up below the entries hit since, whatever its hit count.
+ * <p>
+ * Hits are recorded on every cache hit, so they only take the read lock and update their slot atomically: they never wait on each other or on {@link #leastUseful}.
+ * Only adding and removing entries (which may move the arrays) take the write lock.
+ */
+public class CacheEntryUsage<T> {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+    // Guarded by the write lock for writes: slots, entries, freeSlots, sizes and the array references
+    private final Map<T, Integer> slots = new IdentityHashMap<>();
+    private final List<T> entries = new ArrayList<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private long[] sizes = new long[INITIAL_CAPACITY];
+    // Updated under the read lock by hits
+    private AtomicIntegerArray hits = new AtomicIntegerArray(INITIAL_CAPACITY);
+    // bits of the doubles
+    private AtomicLongArray lastHitInflation = new AtomicLongArray(INITIAL_CAPACITY);
+    private final AtomicLong inflation = new AtomicLong(Double.doubleToLongBits(0));
+
+    /**
+     * @param size the (approximate) number of bytes the entry takes
+     */
+    public void added(T entry, long size) {
+        writeLock.lock();
+        try {
+            if (slots.containsKey(entry)) {
+                return;
+            }
+            final int slot;
+            if (freeSlots.isEmpty()) {
+                slot = entries.size();
+                entries.add(entry);
+                if (slot == sizes.length) {
+                    final int capacity = 2 * sizes.length;
+                    sizes = Arrays.copyOf(sizes, capacity);
+                    final AtomicIntegerArray newHits = new AtomicIntegerArray(capacity);
+                    final AtomicLongArray newLastHitInflation = new AtomicLongArray(capacity);
+                    for (int i = 0; i < slot; i++) {
+                        newHits.set(i, hits.get(i));
+                        newLastHitInflation.set(i, lastHitInflation.get(i));
+                    }
+                    hits = newHits;
+                    lastHitInflation = newLastHitInflation;
+                }
+            } else {
+                slot = freeSlots.pop();
+                entries.set(slot, entry);
+            }
+            slots.put(entry, slot);
+            // Being added counts as a first hit, otherwise new entries would be the first to go
+            hits.set(slot, 1);
+            sizes[slot] = Math.max(size, 1);
+            lastHitInflation.set(slot, inflation.get());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void removed(T entry) {
+        writeLock.lock();
+        try {
+            final Integer slot = slots.remove(entry);
+            if (slot != null) {
+                entries.set(slot, null);
+                freeSlots.push(slot);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void hit(T entry) {
+        readLock.lock();
+        try {
+            final Integer slot = slots.get(entry);
+            if (slot != null) {
+                hits.incrementAndGet(slot);
+                lastHitInflation.set(slot, inflation.get());
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Raise the inflation value after an entry was evicted
+     */
+    public void evicted(double utility) {
+        inflation.accumulateAndGet(Double.doubleToLongBits(utility), (current, candidate) -> Double.longBitsToDouble(candidate) > Double.longBitsToDouble(current) ? candidate : current);
+    }
+
+    /**
+     * @return up to n entries with the lowest utility, lowest first. Hits recorded during the scan may or may not be counted
+     */
+    public List<Candidate<T>> leastUseful(int n) {
+        if (n <= 0) {
+            return new ArrayList<>();
+        }
+        // Max heap of the n lowest utilities seen so far
+        final PriorityQueue<Candidate<T>> lowest = new PriorityQueue<>(n + 1, Comparator.comparingDouble((Candidate<T> candidate) -> candidate.getUtility()).reversed());
+        readLock.lock();
+        try {
+            for (int slot = 0; slot < entries.size(); slot++) {
+                final T entry = entries.get(slot);
+                if (entry == null) {
+                    continue;
+                }
+                final double utility = Double.longBitsToDouble(lastHitInflation.get(slot)) + (double) hits.get(slot) / sizes[slot];
+                if (lowest.size() < n) {
+                    lowest.add(new Candidate<>(entry, utility));
+                } else if (utility < lowest.peek().getUtility()) {
+                    lowest.poll();
+                    lowest.add(new Candidate<>(entry, utility));
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        final List<Candidate<T>> candidates = new ArrayList<>(lowest);
+        Collections.sort(candidates, Comparator.comparingDouble(Candidate::getUtility));
+        return candidates;
+    }
+
+    public int size() {
+        readLock.lock();
+        try {
+            return slots.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Data
+    public static class Candidate<T> {
+        private final T entry;
+        private final double utility;
+    }
+
+}
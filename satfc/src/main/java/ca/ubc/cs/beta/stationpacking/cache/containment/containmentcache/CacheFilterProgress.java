@@ -0,0 +1,76 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a cache filtering run. It is updated by the threads doing the filtering and can be read (or used to cancel the run) from any thread.
+ * A cancelled run stops looking at new entries, and only the entries found to be prunable so far are removed.
+ */
+public class CacheFilterProgress {
+
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong prunable = new AtomicLong();
+    private volatile boolean cancelled = false;
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getScanned() {
+        return scanned.get();
+    }
+
+    public long getPrunable() {
+        return prunable.get();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public void addToTotal(long entries) {
+        total.addAndGet(entries);
+    }
+
+    /**
+     * @return the number of entries scanned so far, including this one
+     */
+    public long scanned(boolean isPrunable) {
+        if (isPrunable) {
+            prunable.incrementAndGet();
+        }
+        return scanned.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "Scanned " + getScanned() + " / " + getTotal() + " entries; Found " + getPrunable() + " prunables" + (cancelled ? " (cancelled)" : "");
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of the queries answered by one side (SAT or UNSAT) of a cache. A candidate is an entry returned by the containment cache (or the exact match index) that had to be verified against the query.
+ * Updated by every thread answering queries, and readable from any thread.
+ */
+public class CacheQueryStatistics {
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder candidatesExamined = new LongAdder();
+    private final LongAdder candidatesExaminedOnHits = new LongAdder();
+    private final LongAdder candidatesRejected = new LongAdder();
+
+    /**
+     * @param examined the number of candidates verified to answer the query, including the one that answered it on a hit
+     * @param rejected the number of candidates that failed verification
+     */
+    public void record(boolean hit, int examined, int rejected) {
+        queries.increment();
+        candidatesExamined.add(examined);
+        candidatesRejected.add(rejected);
+        if (hit) {
+            hits.increment();
+            candidatesExaminedOnHits.add(examined);
+        }
+    }
+
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getCandidatesExamined() {
+        return candidatesExamined.sum();
+    }
+
+    public long getCandidatesRejected() {
+        return candidatesRejected.sum();
+    }
+
+    public double getHitRatio() {
+        final long numQueries = getQueries();
+        return numQueries > 0 ? (double) getHits() / numQueries : Double.NaN;
+    }
+
+    /**
+     * @return the mean number of candidates examined before a verified hit
+     */
+    public double getMeanCandidatesPerHit() {
+        final long numHits = getHits();
+        return numHits > 0 ? (double) candidatesExaminedOnHits.sum() / numHits : Double.NaN;
+    }
+
+    @Override
+    public String toString() {
+        return getHits() + " hits out of " + getQueries() + " queries; " + getCandidatesExamined() + " candidates examined, " + getCandidatesRejected() + " rejected";
+    }
+
+}
@@ -29,6 +29,7 @@ import com.google.common.collect.ImmutableBiMap;
 
 import ca.ubc.cs.beta.stationpacking.base.Station;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.ISATFCCacheEntry;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
@@ -55,9 +56,63 @@ public interface ISatisfiabilityCache {
     default void addAllUNSAT(Collection<ContainmentCacheUNSATEntry> UNSATEntries) {
         UNSATEntries.forEach(this::add);
     }
+    void remove(ContainmentCacheSATEntry SATEntry);
+    void remove(ContainmentCacheUNSATEntry UNSATEntry);
 
-    List<ContainmentCacheSATEntry> filterSAT(IStationManager stationManager, boolean strong);
-    List<ContainmentCacheUNSATEntry> filterUNSAT();
+    /**
+     * Remove the SAT entries that are made redundant by another entry
+     * @param strong if true, an entry is redundant when another entry solves the problem of its stations restricted to the channels their assignment allows, otherwise only when another entry has more solving power
+     * @param progress reports the progress of the filtering, and can be used to cancel it
+     * @return the entries that were removed
+     */
+    List<ContainmentCacheSATEntry> filterSAT(IStationManager stationManager, boolean strong, CacheFilterProgress progress);
+    default List<ContainmentCacheSATEntry> filterSAT(IStationManager stationManager, boolean strong) {
+        return filterSAT(stationManager, strong, new CacheFilterProgress());
+    }
+
+    /**
+     * Remove the UNSAT entries that are implied by a less restrictive UNSAT entry
+     * @param progress reports the progress of the filtering, and can be used to cancel it
+     * @return the entries that were removed
+     */
+    List<ContainmentCacheUNSATEntry> filterUNSAT(CacheFilterProgress progress);
+    default List<ContainmentCacheUNSATEntry> filterUNSAT() {
+        return filterUNSAT(new CacheFilterProgress());
+    }
+
+    /**
+     * @return a copy of every SAT entry currently in the cache
+     */
+    List<ContainmentCacheSATEntry> getSATEntries();
+    /**
+     * @return a copy of every UNSAT entry currently in the cache
+     */
+    List<ContainmentCacheUNSATEntry> getUNSATEntries();
+
+    /**
+     * @return counts of the SAT queries answered so far, not including the ones made to filter the cache
+     */
+    CacheQueryStatistics getSATStatistics();
+    /**
+     * @return counts of the UNSAT queries answered so far
+     */
+    CacheQueryStatistics getUNSATStatistics();
+
+    int getNumSATEntries();
+    int getNumUNSATEntries();
+    /**
+     * @return a rough estimate of the memory used by the entries, not counting the containment cache indices
+     */
+    long getApproximateHeapBytes();
+
+    /**
+     * @return up to n entries (SAT or UNSAT) that are the least useful to keep, least useful first
+     */
+    List<CacheEntryUsage.Candidate<ISATFCCacheEntry>> getEvictionCandidates(int n);
+    /**
+     * Remove entries returned by {@link #getEvictionCandidates(int)}
+     */
+    void evict(List<CacheEntryUsage.Candidate<ISATFCCacheEntry>> candidates);
 
     List<ContainmentCacheSATEntry> findMaxIntersections(final StationPackingInstance instance, int k);
 
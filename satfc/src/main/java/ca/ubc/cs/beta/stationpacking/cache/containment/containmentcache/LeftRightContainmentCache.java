@@ -0,0 +1,170 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import containmentcache.ICacheSet;
+import containmentcache.IContainmentCache;
+
+/**
+ * Makes a (non thread safe) containment cache safe for concurrent use without ever blocking readers.
+ * Two copies of the cache are kept (they share the entries, only the index is duplicated). Readers always use the copy that is currently published,
+ * and writers apply their changes to the other copy, publish it, wait for the readers that were still on the old copy to leave, and then apply the same changes to the old copy (the "left-right" technique).
+ * <p>
+ * Readers only touch two striped counters, so reads scale with the number of cores. Writes are queued, and whichever writer holds the write lock applies every queued change in one batch,
+ * so writers waiting on readers do not pile up behind each other.
+ * <p>
+ * Everything a reader does with the cache must happen within {@link #read(Function)}: the iterables returned by the underlying cache are lazy and must not escape.
+ * A query must not write to the cache: the write would wait forever for the query to leave.
+ */
+public class LeftRightContainmentCache<E, C extends ICacheSet<E>> {
+
+    private final IContainmentCache<E, C>[] caches;
+    private final LongAdder[] ingress = {new LongAdder(), new LongAdder()};
+    private final LongAdder[] egress = {new LongAdder(), new LongAdder()};
+    private volatile int leftRight = 0;
+    private volatile int versionIndex = 0;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Queue<PendingWrite> pendingWrites = new ConcurrentLinkedQueue<>();
+    // how many reads the current thread is in, to catch writes from within a read
+    private final ThreadLocal<int[]> readDepth = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * @param cacheSupplier creates an empty cache. Called twice.
+     */
+    @SuppressWarnings("unchecked")
+    public LeftRightContainmentCache(Supplier<IContainmentCache<E, C>> cacheSupplier) {
+        caches = new IContainmentCache[]{cacheSupplier.get(), cacheSupplier.get()};
+    }
+
+    /**
+     * Run a read only query against the cache. Never blocks, and can be nested.
+     */
+    public <T> T read(Function<IContainmentCache<E, C>, T> query) {
+        final int[] depth = readDepth.get();
+        final int vi = versionIndex;
+        ingress[vi].increment();
+        depth[0]++;
+        try {
+            return query.apply(caches[leftRight]);
+        } finally {
+            depth[0]--;
+            egress[vi].increment();
+        }
+    }
+
+    public int size() {
+        return read(IContainmentCache::size);
+    }
+
+    public void add(C set) {
+        write(cache -> cache.add(set));
+    }
+
+    public void remove(C set) {
+        write(cache -> cache.remove(set));
+    }
+
+    private void write(Consumer<IContainmentCache<E, C>> change) {
+        if (readDepth.get()[0] > 0) {
+            throw new IllegalStateException("Cannot write to the cache from within a read");
+        }
+        final PendingWrite write = new PendingWrite(change);
+        pendingWrites.add(write);
+        // Whoever holds the lock applies our change along with its own. The change can be taken by a batch that is still waiting on readers,
+        // so we wait until it is marked done, so that a write is visible as soon as this method returns
+        writeLock.lock();
+        try {
+            if (!write.done) {
+                flush();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void flush() {
+        final int size = pendingWrites.size();
+        if (size == 0) {
+            return;
+        }
+        final List<PendingWrite> batch = drain(size);
+        final int published = leftRight;
+        final int hidden = 1 - published;
+        apply(batch, caches[hidden]);
+        leftRight = hidden;
+        // Readers may still be using the previously published copy. Move new readers to the other indicator, then wait for both indicators to drain
+        final int previousVersion = versionIndex;
+        final int nextVersion = 1 - previousVersion;
+        waitForReaders(nextVersion);
+        versionIndex = nextVersion;
+        waitForReaders(previousVersion);
+        apply(batch, caches[published]);
+        // The writers are waiting on the write lock, which the caller holds, so they see this once it is released
+        for (PendingWrite write : batch) {
+            write.done = true;
+        }
+    }
+
+    private List<PendingWrite> drain(int size) {
+        final List<PendingWrite> batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            batch.add(pendingWrites.poll());
+        }
+        return batch;
+    }
+
+    private void apply(List<PendingWrite> batch, IContainmentCache<E, C> cache) {
+        for (PendingWrite write : batch) {
+            write.change.accept(cache);
+        }
+    }
+
+    private void waitForReaders(int vi) {
+        // egress must be read before ingress: a reader always arrives before it leaves, so seeing equal counts this way means nobody was inside
+        while (egress[vi].sum() != ingress[vi].sum()) {
+            Thread.yield();
+        }
+    }
+
+    private class PendingWrite {
+
+        private final Consumer<IContainmentCache<E, C>> change;
+        // only read and written with the write lock held
+        private boolean done = false;
+
+        PendingWrite(Consumer<IContainmentCache<E, C>> change) {
+            this.change = change;
+        }
+    }
+
+}
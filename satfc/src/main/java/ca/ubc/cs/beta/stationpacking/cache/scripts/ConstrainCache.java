@@ -39,6 +39,7 @@ import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.ManagerBundle;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
 import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
 import ca.ubc.cs.beta.stationpacking.utils.GuavaCollectors;
+import ca.ubc.cs.beta.stationpacking.utils.IRedisStore;
 import ca.ubc.cs.beta.stationpacking.utils.RedisUtils;
 import ca.ubc.cs.beta.stationpacking.utils.StationPackingUtils;
 import com.beust.jcommander.Parameter;
@@ -48,9 +49,10 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import lombok.Cleanup;
 import lombok.Getter;
-import redis.clients.jedis.Jedis;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 
 /**
@@ -106,6 +108,10 @@ public class ConstrainCache {
         @Parameter(names = "-IGNORE-UNSAT", description = "Whether to ignore UNSAT entries")
         private boolean ignoreUNSAT = true;
 
+        @Getter
+        @Parameter(names = "-THREADS", description = "Number of problems solved at once (the number of async workers of the facades)")
+        private int numThreads = Runtime.getRuntime().availableProcessors();
+
     }
 
 
@@ -123,8 +129,7 @@ public class ConstrainCache {
             log.warn("No server URL specified. This script likely won't have side effects...");
         }
 
-        final Jedis jedis = options.getFacadeParameters().fRedisParameters.getJedis();
-
+        Preconditions.checkArgument(options.getNumThreads() > 0, "Need at least one thread");
         final Set<Station> requiredStations = options.getRequiredStations();
         log.info("Retrying every cache entry that does not contain stations {}", requiredStations);
 
@@ -134,69 +139,110 @@ public class ConstrainCache {
         final ManagerBundle managerBundle = dataManager.getData(options.getMasterConstraintFolder());
         final CacheCoordinate masterCoordinate = managerBundle.getCacheCoordinate();
 
-        log.info("Migrating all cache entries to match constraints in {} ({})", options.getMasterConstraintFolder(), masterCoordinate);
+        log.info("Migrating all cache entries to match constraints in {} ({}) with {} threads", options.getMasterConstraintFolder(), masterCoordinate, options.getNumThreads());
 
-        // Load up a facade
+        // Both facades solve on THREADS async workers. This thread only claims entries, and hands their problems to the workers
         @Cleanup
-        final SATFCFacade facade = SATFCFacadeBuilder.builderFromParameters(options.facadeParameters).build();
-
+        final SATFCFacade facade = SATFCFacadeBuilder.builderFromParameters(options.facadeParameters).setNumAsyncWorkers(options.getNumThreads()).build();
         @Cleanup
-        final SATFCFacade unsatFacade = SATFCFacadeBuilder.builderFromParameters(options.facadeParameters).setConfigFile(InternalSATFCConfigFile.UNSAT_LABELLER).build();
+        final SATFCFacade unsatFacade = SATFCFacadeBuilder.builderFromParameters(options.facadeParameters).setConfigFile(InternalSATFCConfigFile.UNSAT_LABELLER).setNumAsyncWorkers(options.getNumThreads()).build();
+        @Cleanup
+        final IRedisStore redis = options.getFacadeParameters().fRedisParameters.newRedisStore();
+        final RedisCacher redisCacher = new RedisCacher(dataManager, redis);
+        final Iterator<ISATFCCacheEntry> localEntries = options.isDistributed() ? null : redisCacher.iterateSAT().iterator();
+
+        // Enough problems are queued to keep every worker busy while the next entries are claimed, without reading the whole cache into memory
+        final int maxInFlight = 2 * options.getNumThreads();
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        long numProcessed = 0;
+        ISATFCCacheEntry cacheEntry;
+        while ((cacheEntry = options.isDistributed() ? claimEntry(options, redis, redisCacher) : nextEntry(localEntries)) != null) {
+            inFlight.acquire();
+            final String key = cacheEntry.getKey();
+            CompletableFuture<SATFCResult> solve = null;
+            try {
+                solve = processEntry(options, requiredStations, managerBundle, masterCoordinate, facade, unsatFacade, cacheEntry);
+            } catch (RuntimeException e) {
+                log.error("Could not process cache entry {}", key, e);
+            }
+            if (solve == null) {
+                inFlight.release();
+            } else {
+                solve.whenComplete((result, e) -> {
+                    if (e != null) {
+                        log.error("Could not process cache entry {}", key, e);
+                    }
+                    inFlight.release();
+                });
+            }
+            if (++numProcessed % 1000 == 0) {
+                log.info("Processed {} entries", numProcessed);
+            }
+        }
+        // Wait for the problems that are still being solved
+        inFlight.acquire(maxInFlight);
+        log.info("Finished processing {} entries. You should now restart the SATFCServer", numProcessed);
+    }
 
-        final RedisCacher redisCacher = new RedisCacher(dataManager, options.getFacadeParameters().fRedisParameters.getStringRedisTemplate(), options.getFacadeParameters().fRedisParameters.getBinaryJedis());
+    private static ISATFCCacheEntry nextEntry(Iterator<ISATFCCacheEntry> entries) {
+        return entries.hasNext() ? entries.next() : null;
+    }
 
-        if (!options.isDistributed()) {
-            for (ISATFCCacheEntry cacheEntry : redisCacher.iterateSAT()) {
-                processEntry(options, requiredStations, managerBundle, masterCoordinate, facade, unsatFacade, cacheEntry);
+    /**
+     * @return the entry of the next key of the queue that is a cache entry, or null once the queue is empty
+     */
+    private static ISATFCCacheEntry claimEntry(FilterMandatoryStationsOptions options, IRedisStore redis, RedisCacher cacher) {
+        final String queueName = options.getFacadeParameters().fRedisParameters.fRedisQueue;
+        while (true) {
+            final String key = redis.rpoplpush(RedisUtils.makeKey(queueName), RedisUtils.makeKey(queueName, RedisUtils.PROCESSING_QUEUE));
+            if (key == null) {
+                return null;
             }
-        } else {
-            String key;
-            String queueName = options.getFacadeParameters().fRedisParameters.fRedisQueue;
-            while (true) {
-                key = jedis.rpoplpush(RedisUtils.makeKey(queueName), RedisUtils.makeKey(queueName, RedisUtils.PROCESSING_QUEUE));
-                if (key == null) {
-                    break;
-                }
-                final CacheUtils.ParsedKey parsedKey;
-                try {
-                    parsedKey = CacheUtils.parseKey(key);
-                } catch (Exception e) {
-                    if (!key.equals(RedisCacher.HASH_NUM)) {
-                        log.warn("Exception parsing key " + key, e);
-                    }
-                    continue;
+            try {
+                CacheUtils.parseKey(key);
+            } catch (Exception e) {
+                if (!key.equals(RedisCacher.HASH_NUM)) {
+                    log.warn("Exception parsing key " + key, e);
                 }
-                processEntry(options, requiredStations, managerBundle, masterCoordinate, facade, unsatFacade, redisCacher.cacheEntryFromKey(key));
+                continue;
+            }
+            try {
+                return cacher.cacheEntryFromKey(key);
+            } catch (RuntimeException e) {
+                log.error("Could not read cache entry {}", key, e);
             }
         }
-        log.info("Finished. You should now restart the SATFCServer");
     }
 
-    private static void processEntry(FilterMandatoryStationsOptions options, Set<Station> requiredStations, ManagerBundle managerBundle, CacheCoordinate masterCoordinate, SATFCFacade facade, SATFCFacade unsatFacade, ISATFCCacheEntry cacheEntry) {
+    /**
+     * @return the solve of the problem made from the entry, or null if the entry does not need to be solved
+     */
+    private static CompletableFuture<SATFCResult> processEntry(FilterMandatoryStationsOptions options, Set<Station> requiredStations, ManagerBundle managerBundle, CacheCoordinate masterCoordinate, SATFCFacade facade, SATFCFacade unsatFacade, ISATFCCacheEntry cacheEntry) {
         if (cacheEntry instanceof ContainmentCacheSATEntry) {
-            processSATEntry((ContainmentCacheSATEntry) cacheEntry, requiredStations, options, facade, managerBundle);
+            return processSATEntry((ContainmentCacheSATEntry) cacheEntry, requiredStations, options, facade, managerBundle);
         } else if (cacheEntry instanceof ContainmentCacheUNSATEntry) {
             if (!options.isIgnoreUNSAT()) {
-                processUNSATEntry((ContainmentCacheUNSATEntry) cacheEntry, masterCoordinate, options, unsatFacade, managerBundle);
+                return processUNSATEntry((ContainmentCacheUNSATEntry) cacheEntry, masterCoordinate, options, unsatFacade, managerBundle);
             }
+            return null;
         } else {
             throw new IllegalStateException("Cache entry neither sat or unsat?");
         }
     }
 
-    public static void processUNSATEntry(ContainmentCacheUNSATEntry entry, CacheCoordinate masterCoordinate, FilterMandatoryStationsOptions options, SATFCFacade unsatFacade, ManagerBundle managerBundle) {
+    public static CompletableFuture<SATFCResult> processUNSATEntry(ContainmentCacheUNSATEntry entry, CacheCoordinate masterCoordinate, FilterMandatoryStationsOptions options, SATFCFacade unsatFacade, ManagerBundle managerBundle) {
         final CacheCoordinate coordinate = CacheCoordinate.fromKey(entry.getKey());
         boolean rightCoordinate = coordinate.equals(masterCoordinate);
         if (!rightCoordinate) {
             log.debug("Key {} is not in right coordinate and UNSAT, skipping", entry.getKey());
-            return; // We can't do anything with this
+            return null; // We can't do anything with this
         }
         final Map<Integer, Set<Integer>> domains = entry.getDomains().entrySet().stream().collect(Collectors.toMap(k -> k.getKey().getID(), Map.Entry::getValue));
-        unsatFacade.solve(domains, new HashMap<>(), options.facadeParameters.fInstanceParameters.Cutoff, options.facadeParameters.fInstanceParameters.Seed, managerBundle.getInterferenceFolder());
+        return unsatFacade.solveAsync(domains, new HashMap<>(), options.facadeParameters.fInstanceParameters.Cutoff, options.facadeParameters.fInstanceParameters.Seed, managerBundle.getInterferenceFolder());
     }
 
 
-    public static void processSATEntry(ContainmentCacheSATEntry entry, Set<? extends Station> requiredStations, FilterMandatoryStationsOptions options, SATFCFacade facade, ManagerBundle managerBundle) {
+    public static CompletableFuture<SATFCResult> processSATEntry(ContainmentCacheSATEntry entry, Set<? extends Station> requiredStations, FilterMandatoryStationsOptions options, SATFCFacade facade, ManagerBundle managerBundle) {
         log.info("Entry {} stats: Domain size is {}", entry.getKey(), entry.getElements().size());
         final int maxChannel = options.getMaxChannel();
 
@@ -217,7 +263,7 @@ public class ConstrainCache {
             domains = previousAssignment.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> Collections.singleton(e.getValue())));
         } else {
             if (options.isNoSolve()) {
-                return;
+                return null;
             }
             // B) I have to be resolved.
             domains = new HashMap<>();
@@ -242,41 +288,61 @@ public class ConstrainCache {
             }
             // Make the previous assignment compatible with these domains
 
-            previousAssignment = Maps.filterEntries(entry.getAssignmentStationToChannel(), e -> domains.get(e.getKey()) != null && domains.get(e.getKey()).contains(e.getValue()));
+            previousAssignment = new HashMap<>(Maps.filterEntries(entry.getAssignmentStationToChannel(), e -> domains.get(e.getKey()) != null && domains.get(e.getKey()).contains(e.getValue())));
 
             log.debug("Pre prev assign size is {}", previousAssignment.size());
 
-            // Make the previous assignment at least consistent in a stupid greedy way
-            List<Integer> stations = new ArrayList<>(previousAssignment.keySet());
-            for (Integer s1 : stations) {
-                if (previousAssignment.containsKey(s1)) {
-                    for (Integer s2 : stations) {
-                        if (previousAssignment.containsKey(s2) && !Objects.equals(s1, s2)) {
-                            if (!constraintManager.isSatisfyingAssignment(new Station(s1), previousAssignment.get(s1), new Station(s2), previousAssignment.get(s2))) {
-                                // Violation! Remove s1 arbitrarily and continue
-                                previousAssignment.remove(s1);
-                                break;
-                            }
-                        }
-                    }
-                }
-            }
+            // Make the previous assignment at least consistent in a greedy way
+            removeConflicts(previousAssignment, constraintManager);
         }
 
         if (!domains.values().stream().anyMatch(Set::isEmpty)) {
             // This will cause a re-cache of the newly done solution (unless something already exists in the cache)
             log.trace("Domains are {}", domains);
             log.info("Solving problem domain size is {}, prev assign size is {}", domains.size(), previousAssignment.size());
-            final SATFCResult solve = facade.solve(domains, previousAssignment, options.facadeParameters.fInstanceParameters.Cutoff, options.facadeParameters.fInstanceParameters.Seed, managerBundle.getInterferenceFolder());
-            if (solve.getResult().equals(SATResult.SAT)) {
-                log.info("Re-solve successful");
-            } else {
-                log.info("Re-solve failed, {}", solve.getResult());
-            }
+            return facade.solveAsync(domains, previousAssignment, options.facadeParameters.fInstanceParameters.Cutoff, options.facadeParameters.fInstanceParameters.Seed, managerBundle.getInterferenceFolder()).thenApply(solve -> {
+                if (solve.getResult().equals(SATResult.SAT)) {
+                    log.info("Re-solve of {} successful", entry.getKey());
+                } else {
+                    log.info("Re-solve of {} failed, {}", entry.getKey(), solve.getResult());
+                }
+                return solve;
+            });
         } else {
             log.info("Skipping re-solve due to empty domain");
+            return null;
         }
+    }
 
+    /**
+     * Go through the stations of an assignment in order, and remove each one that interferes with a station that is still assigned.
+     * Only the stations that can interfere with a station are looked at: those listed by the constraint manager for its channel, and those assigned to the channel or the two below it (which may list it)
+     */
+    static void removeConflicts(Map<Integer, Integer> assignment, IConstraintManager constraintManager) {
+        final Map<Integer, Set<Station>> channelToStations = StationPackingUtils.channelToStationFromStationToChannel(assignment);
+        for (Integer id : new ArrayList<>(assignment.keySet())) {
+            final Station station = new Station(id);
+            final int channel = assignment.get(id);
+            if (interferes(station, channel, channelToStations, constraintManager)) {
+                assignment.remove(id);
+                channelToStations.get(channel).remove(station);
+            }
+        }
+    }
+
+    private static boolean interferes(Station station, int channel, Map<Integer, Set<Station>> channelToStations, IConstraintManager constraintManager) {
+        final Set<Station> sameChannel = channelToStations.getOrDefault(channel, Collections.emptySet());
+        final Set<Station> oneAbove = channelToStations.getOrDefault(channel + 1, Collections.emptySet());
+        final Set<Station> twoAbove = channelToStations.getOrDefault(channel + 2, Collections.emptySet());
+        if (constraintManager.getCOInterferingStations(station, channel).stream().anyMatch(other -> !other.equals(station) && sameChannel.contains(other))
+                || constraintManager.getADJplusOneInterferingStations(station, channel).stream().anyMatch(oneAbove::contains)
+                || constraintManager.getADJplusTwoInterferingStations(station, channel).stream().anyMatch(twoAbove::contains)) {
+            return true;
+        }
+        // Constraints are not necessarily listed on both stations
+        return sameChannel.stream().anyMatch(other -> !other.equals(station) && constraintManager.getCOInterferingStations(other, channel).contains(station))
+                || channelToStations.getOrDefault(channel - 1, Collections.emptySet()).stream().anyMatch(other -> constraintManager.getADJplusOneInterferingStations(other, channel - 1).contains(station))
+                || channelToStations.getOrDefault(channel - 2, Collections.emptySet()).stream().anyMatch(other -> constraintManager.getADJplusTwoInterferingStations(other, channel - 2).contains(station));
     }
 
-}
\ No newline at end of file
+}
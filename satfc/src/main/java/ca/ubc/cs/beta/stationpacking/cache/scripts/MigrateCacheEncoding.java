@@ -0,0 +1,69 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.scripts;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParametersDelegate;
+
+import ca.ubc.cs.beta.aeatk.misc.jcommander.JCommanderHelper;
+import ca.ubc.cs.beta.aeatk.misc.options.UsageTextField;
+import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
+import ca.ubc.cs.beta.stationpacking.cache.CacheEntryEncoding;
+import ca.ubc.cs.beta.stationpacking.cache.RedisCacher;
+import ca.ubc.cs.beta.stationpacking.execution.parameters.RedisParameters;
+import ca.ubc.cs.beta.stationpacking.facade.SATFCFacadeBuilder;
+import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.DataManager;
+import ch.qos.logback.classic.Level;
+import lombok.Cleanup;
+import lombok.Getter;
+
+/**
+ * Rewrites every cache entry in redis that is still stored as separate fields in the compact format of {@link CacheEntryEncoding}.
+ * Servers can keep using the cache while this runs, since they read both formats.
+ */
+public class MigrateCacheEncoding {
+
+    @UsageTextField(title = "Cache encoding migration script", description = "Rewrite the cache entries in redis in the compact encoding")
+    public static class MigrateCacheEncodingOptions extends AbstractOptions {
+
+        @ParametersDelegate
+        @Getter
+        private RedisParameters redisParameters = new RedisParameters();
+
+        @Parameter(names = "-BATCH-SIZE", description = "Number of keys to rewrite in each pipeline")
+        @Getter
+        private int batchSize = 1000;
+
+    }
+
+    public static void main(String[] args) throws Exception {
+        final MigrateCacheEncodingOptions options = new MigrateCacheEncodingOptions();
+        JCommanderHelper.parseCheckingForHelpAndVersion(args, options);
+        SATFCFacadeBuilder.initializeLogging(Level.INFO, null);
+
+        // The migration works on the raw fields, so it does not need to know about any constraint set
+        @Cleanup
+        final RedisCacher redisCacher = new RedisCacher(new DataManager(), options.getRedisParameters().newRedisStore());
+        redisCacher.migrateEncoding(options.getBatchSize());
+    }
+
+}
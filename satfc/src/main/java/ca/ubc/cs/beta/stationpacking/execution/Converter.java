@@ -26,6 +26,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -57,6 +58,7 @@ import ca.ubc.cs.beta.stationpacking.base.Station;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
 import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.IConstraintManager;
 import ca.ubc.cs.beta.stationpacking.datamanagers.stations.IStationManager;
+import ca.ubc.cs.beta.stationpacking.execution.problemgenerators.ProblemCorpusWriter;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.DataManager;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.ManagerBundle;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.bundles.yaml.EncodingType;
@@ -80,7 +82,8 @@ public class Converter {
 
     private static enum OutType {
         INSTANCE,
-        CNF
+        CNF,
+        CORPUS
     }
 
     @UsageTextField(title = "Converter Parameters", description = "Parameters needed to convert station packing instances.")
@@ -106,6 +109,9 @@ public class Converter {
         @Parameter(names = "--out-type", description = "what to convert instances to.")
         OutType fOutType = OutType.INSTANCE;
 
+        @Parameter(names = "--corpus-name", description = "Name of the corpus file (in the out directory) when converting to CORPUS.")
+        String fCorpusName = "instances.corpus";
+
         @ParametersDelegate
         private LoggingOptions fLoggingOptions = new ConsoleOnlyLoggingOptions();
 
@@ -388,6 +394,17 @@ public class Converter {
         String outputDir = parameters.fOutDirectory != null ? parameters.fOutDirectory : "";
 
         OutType outType = parameters.fOutType;
+        final ProblemCorpusWriter corpusWriter;
+        if (outType == OutType.CORPUS) {
+            final String corpusFilename = FilenameUtils.concat(outputDir, parameters.fCorpusName);
+            try {
+                corpusWriter = new ProblemCorpusWriter(Paths.get(corpusFilename));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not create corpus file " + corpusFilename + ".", e);
+            }
+        } else {
+            corpusWriter = null;
+        }
         int i = 0;
         for (String problemFilename : problemFilenames) {
             if (i % 50 == 0) {
@@ -520,12 +537,30 @@ public class Converter {
                         throw new IllegalStateException("Could not write CNF to file.");
                     }
 
+                    break;
+                case CORPUS:
+                    // The corpus keeps the folder name without the prefix, the reader resolves it against its own interferences folder
+                    final String corpusFoldername = spec.getDataFoldername() != null ? spec.getDataFoldername() : parameters.fInterferenceFolder;
+                    try {
+                        corpusWriter.add(FilenameUtils.getBaseName(source), new StationPackingProblemSpecs(source, spec.getDomains(), spec.getPreviousAssignment(), corpusFoldername, spec.getCutoff()));
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Could not write instance " + source + " to corpus.", e);
+                    }
                     break;
                 default:
                     throw new ParameterException("Unrecognized out type " + outType + ".");
             }
         }
 
+        if (corpusWriter != null) {
+            try {
+                corpusWriter.close();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write corpus index.", e);
+            }
+            log.info("Wrote {} instances to corpus.", corpusWriter.size());
+        }
+
     }
 
 
@@ -24,9 +24,16 @@ package ca.ubc.cs.beta.stationpacking.execution;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import ca.ubc.cs.beta.stationpacking.datamanagers.stations.IStationManager;
 import ca.ubc.cs.beta.stationpacking.execution.extendedcache.CSVStationDB;
@@ -43,6 +50,7 @@ import com.beust.jcommander.ParameterException;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
 
+import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFactory;
 import ca.ubc.cs.beta.aeatk.misc.jcommander.JCommanderHelper;
 import ca.ubc.cs.beta.aeatk.misc.returnvalues.AEATKReturnValues;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.init.TargetAlgorithmEvaluatorLoader;
@@ -52,6 +60,7 @@ import ca.ubc.cs.beta.stationpacking.execution.parameters.SATFCFacadeParameters;
 import ca.ubc.cs.beta.stationpacking.execution.problemgenerators.CutoffChooserFactory;
 import ca.ubc.cs.beta.stationpacking.execution.problemgenerators.ICutoffChooser;
 import ca.ubc.cs.beta.stationpacking.execution.problemgenerators.IProblemReader;
+import ca.ubc.cs.beta.stationpacking.execution.problemgenerators.PrefetchingProblemReader;
 import ca.ubc.cs.beta.stationpacking.execution.problemgenerators.ProblemGeneratorFactory;
 import ca.ubc.cs.beta.stationpacking.execution.problemgenerators.SATFCFacadeProblem;
 import ca.ubc.cs.beta.stationpacking.facade.SATFCFacade;
@@ -82,6 +91,8 @@ public class SATFCFacadeExecutor {
             try (final SATFCFacade satfc = SATFCFacadeBuilder.builderFromParameters(parameters).build()) {
                 if (parameters.augment) {
                     augment(parameters, log, satfc);
+                } else if (parameters.numWorkers > 1) {
+                    solveProblemsWithWorkers(parameters, log, satfc);
                 } else {
                     solveProblems(parameters, log, satfc);
                 }
@@ -144,13 +155,7 @@ public class SATFCFacadeExecutor {
                     problem.getInstanceName()
             );
             log.info("..done!");
-            if (!log.isInfoEnabled()) {
-                System.out.println(result.getResult());
-                System.out.println(result.getRuntime());
-                System.out.println(result.getWitnessAssignment());
-            } else {
-                log.info("Result:" + System.lineSeparator() + result.getResult() + System.lineSeparator() + result.getRuntime() + System.lineSeparator() + result.getWitnessAssignment());
-            }
+            logResult(log, result);
             problemReader.onPostProblem(problem, result);
             metricWriter.writeMetrics();
             SATFCMetrics.clear();
@@ -160,6 +165,79 @@ public class SATFCFacadeExecutor {
         metricWriter.onFinished();
     }
 
+    /**
+     * Solve problems with several workers, each using its own facade (a facade only solves one problem at a time).
+     * Upcoming problems are read on a background thread while the workers solve. Results are reported (to the problem reader and the metric writer) one at a time, in the order the problems were read.
+     */
+    private static void solveProblemsWithWorkers(SATFCFacadeParameters parameters, Logger log, SATFCFacade satfc) throws Exception {
+        final int numWorkers = parameters.numWorkers;
+        log.info("Solving problems with {} workers", numWorkers);
+        final IProblemReader problemReader = new PrefetchingProblemReader(ProblemGeneratorFactory.createFromParameters(parameters), numWorkers);
+        final ICutoffChooser cutoffChooser = CutoffChooserFactory.createFromParameters(parameters);
+        final IMetricWriter metricWriter = MetricWriterFactory.createFromParameters(parameters);
+        final BlockingQueue<SATFCFacade> idleFacades = new ArrayBlockingQueue<>(numWorkers);
+        final List<SATFCFacade> workerFacades = new ArrayList<>();
+        idleFacades.add(satfc);
+        final ExecutorService workers = Executors.newFixedThreadPool(numWorkers, new SequentiallyNamedThreadFactory("SATFC Executor Worker", true));
+        try {
+            for (int i = 1; i < numWorkers; i++) {
+                final SATFCFacade workerFacade = SATFCFacadeBuilder.builderFromParameters(parameters).build();
+                workerFacades.add(workerFacade);
+                idleFacades.add(workerFacade);
+            }
+            // completes once every problem read so far has been reported
+            CompletableFuture<Void> reported = CompletableFuture.completedFuture(null);
+            SATFCFacadeProblem problem;
+            while (!reported.isCompletedExceptionally() && (problem = problemReader.getNextProblem()) != null) {
+                final SATFCFacadeProblem workerProblem = problem;
+                final double cutoff = cutoffChooser.getCutoff(problem);
+                // wait for a free worker
+                final SATFCFacade facade = idleFacades.take();
+                log.info("Beginning problem {} with cutoff {}", problem.getInstanceName(), cutoff);
+                final CompletableFuture<SATFCResult> solved = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return facade.solve(
+                                workerProblem.getDomains(),
+                                workerProblem.getPreviousAssignment(),
+                                cutoff,
+                                parameters.fInstanceParameters.Seed,
+                                workerProblem.getStationConfigFolder(),
+                                workerProblem.getInstanceName()
+                        );
+                    } finally {
+                        idleFacades.add(facade);
+                    }
+                }, workers);
+                reported = reported.thenAcceptBoth(solved, (ignored, result) -> {
+                    log.info("Problem {} done!", workerProblem.getInstanceName());
+                    logResult(log, result);
+                    problemReader.onPostProblem(workerProblem, result);
+                    metricWriter.writeMetrics(workerProblem.getInstanceName());
+                    SATFCMetrics.clear(workerProblem.getInstanceName());
+                });
+            }
+            reported.join();
+        } finally {
+            workers.shutdownNow();
+            for (SATFCFacade workerFacade : workerFacades) {
+                workerFacade.close();
+            }
+        }
+        log.info("Finished all of the problems!");
+        problemReader.onFinishedAllProblems();
+        metricWriter.onFinished();
+    }
+
+    private static void logResult(Logger log, SATFCResult result) {
+        if (!log.isInfoEnabled()) {
+            System.out.println(result.getResult());
+            System.out.println(result.getRuntime());
+            System.out.println(result.getWitnessAssignment());
+        } else {
+            log.info("Result:" + System.lineSeparator() + result.getResult() + System.lineSeparator() + result.getRuntime() + System.lineSeparator() + result.getWitnessAssignment());
+        }
+    }
+
     private static Logger parseParameter(String[] args, SATFCFacadeParameters parameters) {
         Logger log;
         try {
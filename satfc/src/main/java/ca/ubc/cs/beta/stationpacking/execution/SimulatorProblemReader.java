@@ -3,6 +3,7 @@ package ca.ubc.cs.beta.stationpacking.execution;
 import ca.ubc.cs.beta.stationpacking.execution.problemgenerators.SATFCFacadeProblem;
 import ca.ubc.cs.beta.stationpacking.facade.SATFCResult;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.utils.IRedisStore;
 import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
 import ca.ubc.cs.beta.stationpacking.utils.RedisUtils;
 import com.fasterxml.jackson.annotation.JsonCreator;
@@ -14,7 +15,6 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.experimental.Builder;
 import lombok.extern.slf4j.Slf4j;
-import redis.clients.jedis.Jedis;
 
 import java.io.IOException;
 import java.util.Map;
@@ -23,13 +23,13 @@ import java.util.Set;
 @Slf4j
 public class SimulatorProblemReader extends AProblemReader {
 
-    private final Jedis jedis;
+    private final IRedisStore redis;
     private final String queueName;
     private String activeProblemKey;
     private SimulatorMessage activeMessage;
 
-    public SimulatorProblemReader(Jedis jedis, String queueName) {
-        this.jedis = jedis;
+    public SimulatorProblemReader(IRedisStore redis, String queueName) {
+        this.redis = redis;
         this.queueName = queueName;
         log.info("Reading instances from queue {}", RedisUtils.makeKey(queueName));
     }
@@ -38,10 +38,10 @@ public class SimulatorProblemReader extends AProblemReader {
     public SATFCFacadeProblem getNextProblem() {
         SATFCFacadeProblem problem = null;
         while (true) {
-            activeProblemKey = jedis.rpoplpush(RedisUtils.makeKey(queueName), RedisUtils.processing(queueName));
+            activeProblemKey = redis.rpoplpush(RedisUtils.makeKey(queueName), RedisUtils.processing(queueName));
             if (activeProblemKey == null) {
                 // Look at the first job in the processing queue. Could result in multiple workers doing the job, but that's OK. It's for errors anyways.
-                activeProblemKey = jedis.lindex(RedisUtils.processing(queueName), 0);
+                activeProblemKey = redis.lindex(RedisUtils.processing(queueName), 0);
                 if (activeProblemKey == null) {
                     // Need to wait for a problem to appear
                     try {
@@ -56,7 +56,7 @@ public class SimulatorProblemReader extends AProblemReader {
                 }
             }
 
-            final String activeProblemString = jedis.get(activeProblemKey);
+            final String activeProblemString = redis.get(activeProblemKey);
             // Race condition...
             if (activeProblemString == null) {
                 continue;
@@ -82,9 +82,9 @@ public class SimulatorProblemReader extends AProblemReader {
         super.onPostProblem(problem, result);
 
         // Put the reply back!
-        jedis.lpush(activeMessage.getReplyQueue(), JSONUtils.toString(new SATFCSimulatorReply(result, activeMessage.getId())));
+        redis.lpush(activeMessage.getReplyQueue(), JSONUtils.toString(new SATFCSimulatorReply(result, activeMessage.getId())));
 
-        final long numDeleted = jedis.lrem(RedisUtils.processing(queueName), 1, activeProblemKey);
+        final long numDeleted = redis.lrem(RedisUtils.processing(queueName), 1, activeProblemKey);
         if (numDeleted != 1) {
             log.error("Couldn't delete problem {} from the processing queue!", activeProblemKey);
         }
@@ -21,45 +21,157 @@
  */
 package ca.ubc.cs.beta.stationpacking.execution.metricwriters;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
-import com.google.common.io.Files;
 
+import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFactory;
+import ca.ubc.cs.beta.stationpacking.metrics.InstanceInfo;
 import ca.ubc.cs.beta.stationpacking.metrics.SATFCMetrics;
 import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Created by newmanne on 29/05/15.
- * Write metrics to a file on disk, appending each problem's metrics as a line of json
+ * Write metrics to a file on disk, appending each problem's metrics as a line of json (or, in smile mode, as a 4 byte length followed by the record in binary Smile format)
+ * Records are serialized by the caller and queued; a background thread writes them out in batches and periodically syncs the file to disk, so solving threads never wait on the file system
  */
 @Slf4j
 public class FileMetricsWriter implements IMetricWriter {
 
-    private final File metricsFile;
+    private static final long FLUSH_INTERVAL_MS = 200;
+    private static final long SYNC_INTERVAL_MS = 5000;
+    private static final int MAX_BATCH_BYTES = 1 << 20;
+
+    private final String metricsFileName;
+    private final FileChannel channel;
+    private final Queue<byte[]> pendingRecords;
+    // records are copied here and written out together, only used by the flusher
+    private final ByteBuffer batch;
+    private final ScheduledExecutorService flusher;
+    private final ObjectMapper smileMapper;
+    private final Thread shutdownHook;
+    private long lastSync;
 
     public FileMetricsWriter(String metricsFileName) {
-        this.metricsFile = new File(metricsFileName);
-        if (this.metricsFile.exists()) {
-            this.metricsFile.delete();
+        this(metricsFileName, false);
+    }
+
+    /**
+     * @param smile if true, write records in binary Smile format instead of json
+     */
+    public FileMetricsWriter(String metricsFileName, boolean smile) {
+        this.metricsFileName = metricsFileName;
+        try {
+            channel = FileChannel.open(Paths.get(metricsFileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Couldn't open metrics file " + metricsFileName, e);
         }
+        smileMapper = smile ? JSONUtils.getSmileMapper() : null;
+        pendingRecords = new ConcurrentLinkedQueue<>();
+        batch = ByteBuffer.allocateDirect(MAX_BATCH_BYTES);
+        lastSync = System.currentTimeMillis();
+        flusher = Executors.newSingleThreadScheduledExecutor(new SequentiallyNamedThreadFactory("SATFC Metrics Writer", true));
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        // don't lose the last records if the JVM exits without calling onFinished
+        shutdownHook = new Thread(this::close, "SATFC Metrics Writer Shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
     }
 
     @Override
     public void writeMetrics() {
-        SATFCMetrics.doWithMetrics(info -> {
+        SATFCMetrics.doWithMetrics(this::enqueue);
+    }
+
+    @Override
+    public void writeMetrics(String instanceName) {
+        SATFCMetrics.doWithMetrics(instanceName, this::enqueue);
+    }
+
+    // serialization happens while holding the metrics lock, since the info can still be modified by late events
+    private void enqueue(InstanceInfo info) {
+        try {
+            if (smileMapper != null) {
+                final byte[] smileBytes = smileMapper.writeValueAsBytes(info);
+                pendingRecords.add(ByteBuffer.allocate(Integer.BYTES + smileBytes.length).putInt(smileBytes.length).put(smileBytes).array());
+            } else {
+                pendingRecords.add((JSONUtils.toString(info) + System.lineSeparator()).getBytes(Charsets.UTF_8));
+            }
+        } catch (JsonProcessingException e) {
+            log.error("Couldn't serialize metrics for file " + metricsFileName, e);
+        }
+    }
+
+    private synchronized void flush() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            byte[] record;
+            while ((record = pendingRecords.poll()) != null) {
+                if (record.length > batch.remaining()) {
+                    writeBatch();
+                }
+                if (record.length > batch.capacity()) {
+                    writeFully(ByteBuffer.wrap(record));
+                } else {
+                    batch.put(record);
+                }
+            }
+            writeBatch();
+            if (System.currentTimeMillis() - lastSync >= SYNC_INTERVAL_MS) {
+                channel.force(false);
+                lastSync = System.currentTimeMillis();
+            }
+        } catch (IOException e) {
+            log.error("Couldn't save metrics to file " + metricsFileName, e);
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        batch.flip();
+        writeFully(batch);
+        batch.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private synchronized void close() {
+        if (channel.isOpen()) {
+            flusher.shutdownNow();
+            flush();
             try {
-                Files.append(JSONUtils.toString(info) + System.lineSeparator(), metricsFile, Charsets.UTF_8);
+                channel.force(false);
+                channel.close();
             } catch (IOException e) {
-                log.error("Couldn't save metrics to file " + metricsFile.getAbsolutePath(), e);
+                log.error("Couldn't close metrics file " + metricsFileName, e);
             }
-        });
+        }
     }
 
     @Override
     public void onFinished() {
+        close();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // already shutting down
+        }
         SATFCMetrics.report();
     }
 
@@ -32,5 +32,12 @@ public interface IMetricWriter {
      */
     void writeMetrics();
 
+    /**
+     * Write metrics for the problem with the given name. Use this when several problems can be in progress at the same time
+     */
+    default void writeMetrics(String instanceName) {
+        writeMetrics();
+    }
+
     void onFinished();
 }
@@ -33,7 +33,7 @@ public class MetricWriterFactory {
     public static IMetricWriter createFromParameters(SATFCFacadeParameters parameters) {
         if (parameters.fMetricsFile != null) {
             SATFCMetrics.init();
-            return new FileMetricsWriter(parameters.fMetricsFile);
+            return new FileMetricsWriter(parameters.fMetricsFile, parameters.metricsSmile);
         } else {
             // a void implementation that does nothing
             return new VoidMetricWriter();
@@ -46,6 +46,11 @@ public class MetricWriterFactory {
 
         }
 
+        @Override
+        public void writeMetrics(String instanceName) {
+
+        }
+
         @Override
         public void onFinished() {
 
@@ -25,15 +25,14 @@ import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
-import org.springframework.data.redis.core.StringRedisTemplate;
 
 import com.beust.jcommander.Parameter;
 
 import ca.ubc.cs.beta.aeatk.misc.options.OptionLevel;
 import ca.ubc.cs.beta.aeatk.misc.options.UsageTextField;
 import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
-import redis.clients.jedis.BinaryJedis;
+import ca.ubc.cs.beta.stationpacking.utils.IRedisStore;
+import ca.ubc.cs.beta.stationpacking.utils.JedisRedisStore;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisShardInfo;
 
@@ -66,11 +65,18 @@ public class RedisParameters extends AbstractOptions implements AutoCloseable {
         return new JedisShardInfo(fRedisHost, fRedisPort, timeout);
     }
 
-    public BinaryJedis getBinaryJedis() {
-        return new BinaryJedis(getShardInfo());
+    /**
+     * @return a store over the shared connection of {@link #getJedis()}
+     */
+    public IRedisStore getRedisStore() {
+        return new JedisRedisStore(getJedis());
     }
-    public StringRedisTemplate getStringRedisTemplate() {
-        return new StringRedisTemplate(new JedisConnectionFactory(getShardInfo()));
+
+    /**
+     * @return a store with its own connection, which the caller should close
+     */
+    public IRedisStore newRedisStore() {
+        return new JedisRedisStore(new Jedis(getShardInfo()));
     }
 
     public boolean areValid() {
@@ -32,7 +32,16 @@ import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
 @UsageTextField(title="SATFC Caching Parameters",description="Parameters for the SATFC problem cache.")
 public class SATFCCachingParameters extends AbstractOptions {
 
-    @Parameter(names = {"--serverURL", "-SERVER-URL"}, description = "base URL for the SATFC server", required = false)
+    @Parameter(names = {"--serverURL", "-SERVER-URL"}, description = "base URL for the SATFC server (or a comma separated list of base URLs, if the cache is split over several servers)", required = false)
     public String serverURL;
 
+    @Parameter(names = {"--serverBinaryProtocol", "-SERVER-BINARY-PROTOCOL"}, description = "talk to the SATFC server in binary (Smile) instead of json. Requires a server that supports it", required = false)
+    public boolean binaryProtocol = false;
+
+    @Parameter(names = {"--embeddedCache", "-EMBEDDED-CACHE"}, description = "keep the containment cache in this process instead of using a SATFC server", required = false)
+    public boolean embeddedCache = false;
+
+    @Parameter(names = {"--embeddedCacheSnapshot", "-EMBEDDED-CACHE-SNAPSHOT"}, description = "file the embedded cache is read from on start up and written back to on shutdown (a SATFC server snapshot works too)", required = false)
+    public String embeddedCacheSnapshot;
+
 }
@@ -66,6 +66,9 @@ public class SATFCFacadeParameters extends AbstractOptions implements AutoClosea
     @Parameter(names = "-INSTANCES-FILE", description = "file listing each instance file on a separate line")
     public String fFileOfInstanceFiles;
     @UsageTextField(level = OptionLevel.DEVELOPER)
+    @Parameter(names = "-CORPUS-FILE", description = "binary problem corpus (see Converter --out-type CORPUS)")
+    public String fCorpusFile;
+    @UsageTextField(level = OptionLevel.DEVELOPER)
     @Parameter(names = "-CSV-ROOT", description = "Root of CSV auction directory")
     public String fCsvRoot;
     @UsageTextField(level = OptionLevel.DEVELOPER)
@@ -75,11 +78,17 @@ public class SATFCFacadeParameters extends AbstractOptions implements AutoClosea
     @Parameter(names = {"-METRICS-FILE", "-OUTPUT-FILE"}, description = "Causes the FileMetricWriter to be used, outputs a file with metrics (may cause performance loss)")
     public String fMetricsFile;
     @UsageTextField(level = OptionLevel.DEVELOPER)
+    @Parameter(names = "-METRICS-SMILE", description = "Write the metrics file in binary Smile format (length prefixed records) instead of one line of json per problem")
+    public boolean metricsSmile = false;
+    @UsageTextField(level = OptionLevel.DEVELOPER)
     @Parameter(names = "-INTERFERENCES-FOLDER", description = "folder containing all the other interference folders")
     public String fInterferencesFolder = System.getenv("SATFC_INTERFERENCE");
     @UsageTextField(level = OptionLevel.DEVELOPER)
     @Parameter(names = "-CUTOFF-FILE", description = "file listing each instance and the corresponding cutoff")
     public String fCutoffFile;
+    @UsageTextField(level = OptionLevel.DEVELOPER)
+    @Parameter(names = {"-WORKERS", "--workers"}, description = "Number of problems to solve concurrently (each worker has its own facade). With more than one worker, problems are read ahead of time on a background thread")
+    public int numWorkers = 1;
 
     // Augmentation worker options
     @UsageTextField(level = OptionLevel.DEVELOPER)
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.execution.problemgenerators;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+
+import ca.ubc.cs.beta.stationpacking.execution.AProblemReader;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads problems from a binary corpus written by {@link ProblemCorpusWriter}.
+ * The file is memory mapped, and any problem can be decoded directly from its offset in the index, so no parsing happens ahead of time.
+ * Problems are read in order by {@link #getNextProblem()}, but {@link #getProblem(int)} gives random access.
+ */
+@Slf4j
+public class CorpusProblemReader extends AProblemReader {
+
+    private final String interferencesFolder;
+    private final MappedByteBuffer buffer;
+    private final int numProblems;
+    private final long indexOffset;
+    private int listIndex = 0;
+
+    /**
+     * @param corpusFile the corpus file
+     * @param interferencesFolder folder containing the interference folders named in the corpus
+     */
+    public CorpusProblemReader(String corpusFile, String interferencesFolder) {
+        this.interferencesFolder = interferencesFolder;
+        final Path path = Paths.get(corpusFile);
+        log.info("Reading instances from corpus {}", corpusFile);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Preconditions.checkArgument(channel.size() <= Integer.MAX_VALUE, "Corpus %s is too large to be mapped (%s bytes)", corpusFile, channel.size());
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read corpus " + corpusFile, e);
+        }
+        Preconditions.checkArgument(buffer.capacity() >= ProblemCorpusWriter.HEADER_SIZE && buffer.getInt(0) == ProblemCorpusWriter.MAGIC, "%s is not a problem corpus", corpusFile);
+        final int version = buffer.getInt(4);
+        Preconditions.checkArgument(version == ProblemCorpusWriter.VERSION, "Unsupported corpus version %s", version);
+        numProblems = buffer.getInt(8);
+        indexOffset = buffer.getLong(12);
+        Preconditions.checkArgument(indexOffset + 8L * numProblems <= buffer.capacity(), "Corpus %s is truncated", corpusFile);
+    }
+
+    /**
+     * @return number of problems in the corpus
+     */
+    public int size() {
+        return numProblems;
+    }
+
+    /**
+     * Decode a single problem. Safe to call from several threads.
+     * @param i index of the problem in the corpus
+     */
+    public SATFCFacadeProblem getProblem(int i) {
+        Preconditions.checkElementIndex(i, numProblems);
+        // Each call gets its own view of the mapping so that positions are not shared
+        final ByteBuffer in = buffer.duplicate();
+        in.position((int) buffer.getLong((int) (indexOffset + 8L * i)));
+        final String name = readString(in);
+        final String interferenceFolder = readString(in);
+        final double cutoff = in.getDouble();
+        final int numStations = readVarInt(in);
+        final Map<Integer, Set<Integer>> domains = new HashMap<>(numStations * 2);
+        final Map<Integer, Integer> previousAssignment = new HashMap<>();
+        final Set<Integer> channels = new HashSet<>();
+        int station = 0;
+        for (int s = 0; s < numStations; s++) {
+            station += readVarInt(in);
+            final int previousChannel = readVarInt(in);
+            if (previousChannel > 0) {
+                previousAssignment.put(station, previousChannel);
+            }
+            final int domainSize = readVarInt(in);
+            final Set<Integer> domain = new HashSet<>(domainSize * 2);
+            int channel = 0;
+            for (int c = 0; c < domainSize; c++) {
+                channel += readVarInt(in);
+                domain.add(channel);
+            }
+            channels.addAll(domain);
+            domains.put(station, domain);
+        }
+        return new SATFCFacadeProblem(
+                new HashSet<>(domains.keySet()),
+                channels,
+                domains,
+                previousAssignment,
+                interferencesFolder + File.separator + interferenceFolder,
+                name,
+                Double.isNaN(cutoff) ? -1 : cutoff
+        );
+    }
+
+    @Override
+    public SATFCFacadeProblem getNextProblem() {
+        if (listIndex >= numProblems) {
+            return null;
+        }
+        log.info("This is problem {} out of {}", index, numProblems);
+        return getProblem(listIndex++);
+    }
+
+    private static String readString(ByteBuffer in) {
+        final byte[] utf8 = new byte[in.getShort() & 0xFFFF];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.execution.problemgenerators;
+
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import ca.ubc.cs.beta.stationpacking.facade.SATFCResult;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads problems from another reader ahead of time on a background thread, so that reading and parsing the upcoming problems overlaps with solving.
+ * At most capacity problems are read ahead. Calls to the underlying reader are serialized, so it does not need to be thread safe.
+ */
+@Slf4j
+public class PrefetchingProblemReader implements IProblemReader {
+
+    private final IProblemReader reader;
+    // an empty optional marks the end of the problems
+    private final BlockingQueue<Optional<SATFCFacadeProblem>> prefetchedProblems;
+    private volatile RuntimeException prefetchException;
+    private boolean exhausted = false;
+
+    public PrefetchingProblemReader(IProblemReader reader, int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Must prefetch at least one problem");
+        this.reader = reader;
+        this.prefetchedProblems = new ArrayBlockingQueue<>(capacity);
+        final Thread prefetchThread = new Thread(this::prefetch, "SATFC Problem Prefetcher");
+        prefetchThread.setDaemon(true);
+        prefetchThread.start();
+    }
+
+    private void prefetch() {
+        SATFCFacadeProblem problem;
+        do {
+            try {
+                synchronized (reader) {
+                    problem = reader.getNextProblem();
+                }
+            } catch (RuntimeException e) {
+                log.error("Error reading the next problem", e);
+                prefetchException = e;
+                problem = null;
+            }
+            Uninterruptibles.putUninterruptibly(prefetchedProblems, Optional.ofNullable(problem));
+        } while (problem != null);
+    }
+
+    @Override
+    public SATFCFacadeProblem getNextProblem() {
+        if (exhausted) {
+            return null;
+        }
+        final Optional<SATFCFacadeProblem> problem = Uninterruptibles.takeUninterruptibly(prefetchedProblems);
+        if (!problem.isPresent()) {
+            exhausted = true;
+            if (prefetchException != null) {
+                throw prefetchException;
+            }
+        }
+        return problem.orElse(null);
+    }
+
+    @Override
+    public void onPostProblem(SATFCFacadeProblem problem, SATFCResult result) {
+        synchronized (reader) {
+            reader.onPostProblem(problem, result);
+        }
+    }
+
+    @Override
+    public void onFinishedAllProblems() {
+        synchronized (reader) {
+            reader.onFinishedAllProblems();
+        }
+    }
+
+}
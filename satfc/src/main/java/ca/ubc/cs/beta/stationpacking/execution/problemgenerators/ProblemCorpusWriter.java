@@ -0,0 +1,167 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.execution.problemgenerators;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
+
+import ca.ubc.cs.beta.stationpacking.execution.Converter;
+
+/**
+ * Writes many station packing problems into a single binary corpus file, to be read back with {@link CorpusProblemReader}.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * header:  int magic, int version, int number of problems, long offset of the index
+ * records: name, interference folder (short length + UTF-8 bytes), double cutoff (NaN if none), varint number of stations,
+ *          then for each station in increasing ID order: varint ID delta, varint previous channel (0 if none), varint domain size, varint channel deltas
+ * index:   one long offset per record
+ * </pre>
+ * Station IDs and domain channels are sorted and delta encoded, so most of them fit in a single byte.
+ * The interference folder is stored as given in the specs (i.e. relative to the interferences folder of whoever reads the corpus).
+ */
+public class ProblemCorpusWriter implements Closeable {
+
+    static final int MAGIC = 0x53504350; // "SPCP"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+
+    private final FileChannel channel;
+    private final List<Long> offsets;
+    private long position;
+
+    public ProblemCorpusWriter(Path corpusFile) throws IOException {
+        channel = FileChannel.open(corpusFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        offsets = new ArrayList<>();
+        position = HEADER_SIZE;
+        channel.position(position);
+    }
+
+    /**
+     * Append a problem to the corpus
+     * @param name name of the problem
+     * @param specs domains, previous assignment, cutoff and interference folder of the problem
+     */
+    public void add(String name, Converter.StationPackingProblemSpecs specs) throws IOException {
+        Preconditions.checkNotNull(specs.getDataFoldername(), "Problem %s does not specify an interference folder", name);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, name);
+        writeString(out, specs.getDataFoldername());
+        out.writeDouble(specs.getCutoff() != null ? specs.getCutoff() : Double.NaN);
+        final SortedMap<Integer, Set<Integer>> domains = new TreeMap<>(specs.getDomains());
+        final Map<Integer, Integer> previousAssignment = specs.getPreviousAssignment();
+        writeVarInt(out, domains.size());
+        int previousStation = 0;
+        for (Map.Entry<Integer, Set<Integer>> entry : domains.entrySet()) {
+            final int station = entry.getKey();
+            writeVarInt(out, station - previousStation);
+            previousStation = station;
+            final Integer previousChannel = previousAssignment != null ? previousAssignment.get(station) : null;
+            writeVarInt(out, previousChannel != null && previousChannel > 0 ? previousChannel : 0);
+            final int[] channels = Ints.toArray(entry.getValue());
+            Arrays.sort(channels);
+            writeVarInt(out, channels.length);
+            int previous = 0;
+            for (int c : channels) {
+                writeVarInt(out, c - previous);
+                previous = c;
+            }
+        }
+        out.flush();
+        offsets.add(position);
+        position += writeFully(ByteBuffer.wrap(bytes.toByteArray()), -1);
+    }
+
+    /**
+     * @return number of problems written so far
+     */
+    public int size() {
+        return offsets.size();
+    }
+
+    /**
+     * Write the index and the header. The corpus is not readable until this is called.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            final ByteBuffer index = ByteBuffer.allocate(8 * offsets.size());
+            offsets.forEach(index::putLong);
+            index.flip();
+            final long indexOffset = position;
+            writeFully(index, -1);
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(offsets.size()).putLong(indexOffset);
+            header.flip();
+            writeFully(header, 0);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private int writeFully(ByteBuffer buffer, long at) throws IOException {
+        final int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            if (at < 0) {
+                channel.write(buffer);
+            } else {
+                at += channel.write(buffer, at);
+            }
+        }
+        return length;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        final byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        Preconditions.checkArgument(utf8.length <= 0xFFFF, "String too long for corpus: %s", s);
+        out.writeShort(utf8.length);
+        out.write(utf8);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        Preconditions.checkArgument(value >= 0, "Corpus can only encode non-negative values (got %s)", value);
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+}
@@ -47,11 +47,14 @@ public class ProblemGeneratorFactory {
                     null
             ));
         } else if (parameters.simulatorWorker) {
-            reader = new SimulatorProblemReader(parameters.fRedisParameters.getJedis(), parameters.fRedisParameters.fRedisQueue);
+            reader = new SimulatorProblemReader(parameters.fRedisParameters.getRedisStore(), parameters.fRedisParameters.fRedisQueue);
         } else if (parameters.fsrpkFile != null) {
             reader = new SingleSrpkProblemReader(parameters.fsrpkFile, nameToProblem);
         } else if (parameters.fRedisParameters.areValid() && parameters.fInterferencesFolder != null) {
-            reader = new RedisProblemReader(parameters.fRedisParameters.getJedis(), parameters.fRedisParameters.fRedisQueue, nameToProblem);
+            // claim as many problems at a time as there are workers
+            reader = new RedisProblemReader(parameters.fRedisParameters.getRedisStore(), parameters.fRedisParameters.fRedisQueue, nameToProblem, parameters.numWorkers);
+        } else if (parameters.fCorpusFile != null && parameters.fInterferencesFolder != null) {
+            reader = new CorpusProblemReader(parameters.fCorpusFile, parameters.fInterferencesFolder);
         } else if (parameters.fFileOfInstanceFiles != null && parameters.fInterferencesFolder != null) {
             reader = new FileProblemReader(parameters.fFileOfInstanceFiles, nameToProblem);
         } else {
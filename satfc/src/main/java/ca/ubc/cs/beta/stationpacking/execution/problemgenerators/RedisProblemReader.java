@@ -22,30 +22,57 @@
 package ca.ubc.cs.beta.stationpacking.execution.problemgenerators;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Supplier;
+
+import com.google.common.base.Preconditions;
 
 import ca.ubc.cs.beta.stationpacking.execution.AProblemReader;
 import ca.ubc.cs.beta.stationpacking.execution.problemgenerators.problemparsers.IProblemParser;
 import ca.ubc.cs.beta.stationpacking.facade.SATFCResult;
+import ca.ubc.cs.beta.stationpacking.utils.IRedisStore;
+import ca.ubc.cs.beta.stationpacking.utils.IRedisStore.IRedisBatch;
 import ca.ubc.cs.beta.stationpacking.utils.RedisUtils;
 import lombok.extern.slf4j.Slf4j;
-import redis.clients.jedis.Jedis;
 
 /**
  * Created by newmanne on 12/05/15.
  * Reads in problems from a redis queue, where each entry in the queue is a (full path) to an srpk file
+ * Problems can be claimed (moved to the processing queue) several at a time, in which case the claims are pipelined in a single round trip
  */
 @Slf4j
 public class RedisProblemReader extends AProblemReader {
 
-    private final Jedis jedis;
+    private final IRedisStore redis;
     private final String queueName;
     private final IProblemParser nameToProblem;
-    private String activeProblemDescription;
+    private final int claimBatchSize;
+    // problems that were claimed, but not yet handed out
+    private final Queue<String> claimedProblemDescriptions;
+    // problem -> its description in the queue, for problems that were handed out but are not done yet. Several problems can be in progress when solving with multiple workers
+    private final Map<SATFCFacadeProblem, String> activeProblemDescriptions;
+
+    public RedisProblemReader(IRedisStore redis, String queueName, IProblemParser nameToProblem) {
+        this(redis, queueName, nameToProblem, 1);
+    }
 
-    public RedisProblemReader(Jedis jedis, String queueName, IProblemParser nameToProblem) {
-        this.jedis = jedis;
+    /**
+     * @param claimBatchSize how many problems to claim from the queue at a time
+     */
+    public RedisProblemReader(IRedisStore redis, String queueName, IProblemParser nameToProblem, int claimBatchSize) {
+        Preconditions.checkArgument(claimBatchSize > 0, "Must claim at least one problem at a time");
+        this.redis = redis;
         this.queueName = queueName;
         this.nameToProblem = nameToProblem;
+        this.claimBatchSize = claimBatchSize;
+        this.claimedProblemDescriptions = new ArrayDeque<>();
+        this.activeProblemDescriptions = Collections.synchronizedMap(new IdentityHashMap<>());
         log.info("Reading instances from queue {}", RedisUtils.makeKey(queueName));
     }
 
@@ -55,7 +82,7 @@ public class RedisProblemReader extends AProblemReader {
         SATFCFacadeProblem problem = null;
         String problemDescription;
         while (true) {
-            problemDescription = jedis.rpoplpush(RedisUtils.makeKey(queueName), RedisUtils.makeKey(queueName, RedisUtils.PROCESSING_QUEUE));
+            problemDescription = nextClaimedProblemDescription();
             if (problemDescription == null) { // all problems exhausted
                 return null;
             }
@@ -68,21 +95,44 @@ public class RedisProblemReader extends AProblemReader {
             }
         }
 
-        final long remainingJobs = jedis.llen(RedisUtils.makeKey(queueName));
+        final long remainingJobs = redis.llen(RedisUtils.makeKey(queueName));
         log.info("There are {} problems remaining in the queue", remainingJobs);
-        activeProblemDescription = problemDescription;
+        activeProblemDescriptions.put(problem, problemDescription);
         return problem;
     }
 
+    private String nextClaimedProblemDescription() {
+        if (claimedProblemDescriptions.isEmpty()) {
+            if (claimBatchSize == 1) {
+                final String problemDescription = redis.rpoplpush(RedisUtils.makeKey(queueName), RedisUtils.makeKey(queueName, RedisUtils.PROCESSING_QUEUE));
+                if (problemDescription != null) {
+                    claimedProblemDescriptions.add(problemDescription);
+                }
+            } else {
+                final IRedisBatch pipeline = redis.pipelined();
+                final List<Supplier<String>> responses = new ArrayList<>();
+                for (int i = 0; i < claimBatchSize; i++) {
+                    responses.add(pipeline.rpoplpush(RedisUtils.makeKey(queueName), RedisUtils.makeKey(queueName, RedisUtils.PROCESSING_QUEUE)));
+                }
+                pipeline.execute();
+                responses.stream().map(Supplier::get).filter(description -> description != null).forEach(claimedProblemDescriptions::add);
+                log.debug("Claimed {} problems", claimedProblemDescriptions.size());
+            }
+        }
+        return claimedProblemDescriptions.poll();
+    }
+
     @Override
     public void onPostProblem(SATFCFacadeProblem problem, SATFCResult result) {
         super.onPostProblem(problem, result);
+        final String activeProblemDescription = activeProblemDescriptions.remove(problem);
+        Preconditions.checkState(activeProblemDescription != null, "Problem %s was not handed out by this reader", problem.getInstanceName());
         // update redis queue - if the job timed out, move it to the timeout channel. Either way, delete it from the processing queue
         if (!result.getResult().isConclusive()) {
             log.info("Adding problem " + problem.getInstanceName() + " to the timeout queue");
-            jedis.rpush(RedisUtils.makeKey(queueName, RedisUtils.TIMEOUTS_QUEUE), activeProblemDescription);
+            redis.rpush(RedisUtils.makeKey(queueName, RedisUtils.TIMEOUTS_QUEUE), activeProblemDescription);
         }
-        final long numDeleted = jedis.lrem(RedisUtils.makeKey(queueName, RedisUtils.PROCESSING_QUEUE), 1, activeProblemDescription);
+        final long numDeleted = redis.lrem(RedisUtils.makeKey(queueName, RedisUtils.PROCESSING_QUEUE), 1, activeProblemDescription);
         if (numDeleted != 1) {
             log.error("Couldn't delete problem " + activeProblemDescription + " from the processing queue!");
         }
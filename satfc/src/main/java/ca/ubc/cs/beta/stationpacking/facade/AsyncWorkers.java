@@ -0,0 +1,156 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.facade;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import com.google.common.base.Preconditions;
+
+import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A pool of threads that run queued tasks, where each thread has a resource of its own (e.g. a {@link ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.SolverManager}, since a solver bundle can only solve one problem at a time).
+ * Threads and resources are only created when there are tasks for them.
+ * A worker that is stuck in a task (e.g. a hung native solve) can be abandoned: a new thread with a new resource takes its place, so the tasks queued after the stuck one still run.
+ * The abandoned thread keeps its resource, which is never reused nor closed, as it might still be in use.
+ */
+@Slf4j
+class AsyncWorkers<R extends AutoCloseable> implements AutoCloseable {
+
+    interface Task<R> {
+        /**
+         * @param resource      the resource of the worker running the task
+         * @param abandonWorker call this to give up on the worker running the task (from another thread, as the worker is presumably stuck)
+         */
+        void run(R resource, Runnable abandonWorker);
+    }
+
+    private final Supplier<R> resourceFactory;
+    private final ExecutorService threads;
+    private final Queue<Task<R>> tasks;
+    // the worker currently running in each slot, null if the slot is idle
+    private final List<Worker> workers;
+    // the resource of each slot, created the first time the slot is used
+    private final List<R> resources;
+    private boolean closed;
+
+    AsyncWorkers(String threadName, int numWorkers, Supplier<R> resourceFactory) {
+        Preconditions.checkArgument(numWorkers > 0, "Need at least one worker");
+        this.resourceFactory = resourceFactory;
+        this.threads = Executors.newCachedThreadPool(new SequentiallyNamedThreadFactory(threadName));
+        this.tasks = new ArrayDeque<>();
+        this.workers = new ArrayList<>(Collections.nCopies(numWorkers, null));
+        this.resources = new ArrayList<>(Collections.nCopies(numWorkers, null));
+    }
+
+    /**
+     * Queue a task. Tasks start in submission order, as soon as a worker is available
+     */
+    synchronized void submit(Task<R> task) {
+        Preconditions.checkState(!closed, "Cannot submit tasks after closing");
+        tasks.add(task);
+        final int idleSlot = workers.indexOf(null);
+        if (idleSlot >= 0) {
+            start(idleSlot);
+        }
+    }
+
+    private void start(int slot) {
+        if (resources.get(slot) == null) {
+            resources.set(slot, resourceFactory.get());
+        }
+        final Worker worker = new Worker(slot);
+        workers.set(slot, worker);
+        threads.execute(worker);
+    }
+
+    private synchronized void abandon(Worker worker) {
+        if (workers.get(worker.slot) != worker) {
+            return;
+        }
+        log.warn("Abandoning a hung worker, the tasks queued after it will run on a new thread");
+        workers.set(worker.slot, null);
+        resources.set(worker.slot, null);
+        if (!closed && !tasks.isEmpty()) {
+            start(worker.slot);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        final List<R> toClose;
+        synchronized (this) {
+            closed = true;
+            tasks.clear();
+            toClose = resources.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        }
+        threads.shutdownNow();
+        for (R resource : toClose) {
+            resource.close();
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        private final int slot;
+
+        Worker(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final Task<R> task;
+                final R resource;
+                synchronized (AsyncWorkers.this) {
+                    if (workers.get(slot) != this) {
+                        // abandoned while running the previous task, someone else took over the slot
+                        return;
+                    }
+                    task = tasks.poll();
+                    if (task == null) {
+                        workers.set(slot, null);
+                        return;
+                    }
+                    resource = resources.get(slot);
+                }
+                try {
+                    task.run(resource, () -> abandon(this));
+                } catch (Throwable t) {
+                    log.error("Uncaught exception in task", t);
+                }
+            }
+        }
+    }
+
+}
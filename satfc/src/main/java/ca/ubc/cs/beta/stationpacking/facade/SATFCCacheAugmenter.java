@@ -24,15 +24,19 @@ package ca.ubc.cs.beta.stationpacking.facade;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.OptionalInt;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.commons.lang3.RandomUtils;
 import org.apache.http.HttpResponse;
@@ -48,12 +52,14 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Maps;
 
 import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinateRouter;
 import ca.ubc.cs.beta.stationpacking.datamanagers.stations.DomainStationManager;
 import ca.ubc.cs.beta.stationpacking.datamanagers.stations.IStationManager;
 import ca.ubc.cs.beta.stationpacking.execution.extendedcache.CSVStationDB;
 import ca.ubc.cs.beta.stationpacking.execution.extendedcache.IStationDB;
 import ca.ubc.cs.beta.stationpacking.execution.extendedcache.IStationSampler;
 import ca.ubc.cs.beta.stationpacking.execution.extendedcache.PopulationVolumeSampler;
+import ca.ubc.cs.beta.stationpacking.execution.problemgenerators.SATFCFacadeProblem;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
 import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
 import ca.ubc.cs.beta.stationpacking.utils.StationPackingUtils;
@@ -67,6 +73,9 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class SATFCCacheAugmenter {
 
+    // number of stations considered at each step of a trajectory. They are all looked up in the cache with one request, and at most one of them is solved
+    private static final int NUM_CANDIDATES = 8;
+
     private final SATFCFacade facade;
     private volatile InterruptibleSATFCResult currentResult;
     private final AtomicBoolean isAugmenting;
@@ -116,7 +125,9 @@ public class SATFCCacheAugmenter {
     }
 
     private Map<Integer, Integer> getPreviousAssignmentFromCache(String serverURL, CloseableHttpAsyncClient httpClient) {
-        final UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serverURL + "/v1/cache/previousAssignment");
+        // Any server will do when the cache is split over several of them: all we want is some recent SAT assignment
+        final String baseServerURL = CacheCoordinateRouter.fromServerURLs(serverURL).getNodes().get(0);
+        final UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(baseServerURL + "/v1/cache/previousAssignment");
         final String uriString = builder.build().toUriString();
         final HttpGet httpPost = new HttpGet(uriString);
         final CountDownLatch latch = new CountDownLatch(1);
@@ -208,8 +219,35 @@ public class SATFCCacheAugmenter {
                     log.info("Adding {} to the starting point", addedStations);
                 }
 
-                // Sample a new station
-                final Integer sampledStationId = sampler.sample(packingStations);
+                // Sample a few candidate stations, and ask the cache about all of them with a single request
+                final List<Integer> candidates = new ArrayList<>();
+                final List<SATFCFacadeProblem> candidateProblems = new ArrayList<>();
+                for (int i = 0; i < NUM_CANDIDATES; i++) {
+                    final Integer candidate = sampler.sample(packingStations);
+                    if (!candidates.contains(candidate)) {
+                        candidates.add(candidate);
+                        final Set<Integer> candidateStations = new HashSet<>(packingStations);
+                        candidateStations.add(candidate);
+                        candidateProblems.add(new SATFCFacadeProblem(candidateStations, null, Maps.filterKeys(domains, candidateStations::contains), currentAssignment, stationConfigFolder, null, cutoff));
+                    }
+                }
+                final List<SATFCResult> cacheResults = facade.queryCache(candidateProblems);
+                final OptionalInt cachedSAT = IntStream.range(0, candidates.size()).filter(i -> cacheResults.get(i).getResult().equals(SATResult.SAT)).findFirst();
+                if (cachedSAT.isPresent()) {
+                    // Nothing to learn from this problem, but the trajectory can go on for free
+                    final Integer cachedStationId = candidates.get(cachedSAT.getAsInt());
+                    packingStations.add(cachedStationId);
+                    currentAssignment = cacheResults.get(cachedSAT.getAsInt()).getWitnessAssignment();
+                    log.info("Adding station {} to the trajectory is already known to be SAT. Trajectory size is now {}", cachedStationId, packingStations.size());
+                    continue;
+                }
+                // Candidates that the cache knows are UNSAT would only end the trajectory
+                final OptionalInt unknown = IntStream.range(0, candidates.size()).filter(i -> !cacheResults.get(i).getResult().equals(SATResult.UNSAT)).findFirst();
+                if (!unknown.isPresent()) {
+                    log.info("All candidate stations {} are known to be UNSAT. Restarting from initial state", candidates);
+                    break;
+                }
+                final Integer sampledStationId = candidates.get(unknown.getAsInt());
                 log.info("Trying to augment station {}", sampledStationId);
                 packingStations.add(sampledStationId);
                 final Map<Integer, Set<Integer>> reducedDomains = Maps.filterEntries(domains, new Predicate<Map.Entry<Integer, Set<Integer>>>() {
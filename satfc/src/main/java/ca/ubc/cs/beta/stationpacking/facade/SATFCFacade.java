@@ -25,16 +25,25 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 import ca.ubc.cs.beta.aeatk.misc.cputime.CPUTime;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.factories.Clasp3LibraryGenerator;
@@ -44,27 +53,45 @@ import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.common.io.Resources;
 
 import ca.ubc.cs.beta.stationpacking.base.Station;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.EmbeddedCacheLocator;
+import ca.ubc.cs.beta.stationpacking.cache.StationPackingInstanceHasher;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheBatchResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
 import ca.ubc.cs.beta.stationpacking.datamanagers.stations.IStationManager;
 import ca.ubc.cs.beta.stationpacking.execution.extendedcache.IStationDB;
 import ca.ubc.cs.beta.stationpacking.execution.parameters.solver.sat.ClaspLibSATSolverParameters;
+import ca.ubc.cs.beta.stationpacking.execution.problemgenerators.SATFCFacadeProblem;
 import ca.ubc.cs.beta.stationpacking.execution.parameters.solver.sat.UBCSATLibSATSolverParameters;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.DataManager;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.SolverManager;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.bundles.ISolverBundle;
+import ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.bundles.ISolverBundleFactory;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.bundles.YAMLBundle;
 import ca.ubc.cs.beta.stationpacking.metrics.SATFCMetrics;
 import ca.ubc.cs.beta.stationpacking.polling.IPollingService;
 import ca.ubc.cs.beta.stationpacking.polling.PollingService;
 import ca.ubc.cs.beta.stationpacking.solvers.ISolver;
+import ca.ubc.cs.beta.stationpacking.solvers.SolverHelper;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.componentgrouper.ConstraintGrouper;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchQuery;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.EmbeddedContainmentCache;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.IContainmentCacheClient;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.solvers.nonincremental.Clasp3SATSolver;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.solvers.nonincremental.ubcsat.UBCSATSolver;
 import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
@@ -74,6 +101,7 @@ import ca.ubc.cs.beta.stationpacking.solvers.termination.walltime.WalltimeTermin
 import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
 import ca.ubc.cs.beta.stationpacking.utils.TimeLimitedCodeBlock;
 import ca.ubc.cs.beta.stationpacking.utils.Watch;
+import containmentcache.util.PermutationUtils;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NonNull;
@@ -84,6 +112,7 @@ import lombok.extern.slf4j.Slf4j;
  * Each instance of the facade corresponds to an independent copy
  * of SATFC (with different state).
  * A SATFCFacade should only be involved in one solve operation at a time: do not have multiple threads calling solve concurrently
+ * (problems submitted through {@link #solveAsync} without an explicit executor are solved by the facade's async workers, which each have their own solvers)
  *
  * @author afrechet
  */
@@ -91,6 +120,8 @@ import lombok.extern.slf4j.Slf4j;
 public class SATFCFacade implements AutoCloseable {
 
     private final SolverManager fSolverManager;
+    private final ISolverBundleFactory fSolverBundleFactory;
+    private final DataManager fDataManager;
     private SATFCCacheAugmenter augmenter;
     private final SATFCFacadeParameter parameter;
     // measures idle time since the last time this facade solved a problem
@@ -98,9 +129,16 @@ public class SATFCFacade implements AutoCloseable {
     private volatile ScheduledFuture<?> future;
     private final IPollingService pollingService;
     private final CloseableHttpAsyncClient httpClient;
+    // the containment caches of this JVM, when not using a SATFCServer
+    private final EmbeddedCacheLocator embeddedCache;
+    // solve problems submitted through solveAsync, each with its own solver manager
+    private final AsyncWorkers<SolverManager> asyncWorkers;
     @Getter
     private String versionInfo;
 
+    // Make sure that SATFC doesn't get hung. We give a VERY generous timeout window before throwing an exception
+    private static final int SUICIDE_GRACE_IN_SECONDS = 5 * 60;
+
     // stupid hack to measure CPU time in native processes...
     private final Clasp3Library testLib;
 
@@ -119,6 +157,12 @@ public class SATFCFacade implements AutoCloseable {
         } else {
             httpClient = null;
         }
+        if (parameter.isEmbeddedCache()) {
+            log.info("Using an embedded containment cache");
+            embeddedCache = new EmbeddedCacheLocator(parameter.getEmbeddedCacheSnapshotFile());
+        } else {
+            embeddedCache = null;
+        }
         //Check provided library.
         validateLibraries(aSATFCParameters.getClaspLibrary(), aSATFCParameters.getSatensteinLibrary(), pollingService);
 
@@ -126,17 +170,16 @@ public class SATFCFacade implements AutoCloseable {
         log.info("Using SATenstein library {}", aSATFCParameters.getSatensteinLibrary());
         log.info("Using bundle {}", aSATFCParameters.getSolverChoice());
 
-        fSolverManager = new SolverManager(
-                dataBundle -> {
-                    switch (aSATFCParameters.getSolverChoice()) {
-                        case YAML:
-                            return new YAMLBundle(dataBundle, aSATFCParameters, pollingService, httpClient);
-                        default:
-                            throw new IllegalArgumentException("Unrecognized solver choice " + aSATFCParameters.getSolverChoice());
-                    }
-                },
-                aSATFCParameters.getDataManager() == null ? new DataManager() : aSATFCParameters.getDataManager()
-        );
+        fSolverBundleFactory = dataBundle -> {
+            switch (aSATFCParameters.getSolverChoice()) {
+                case YAML:
+                    return new YAMLBundle(dataBundle, aSATFCParameters, pollingService, httpClient, embeddedCache);
+                default:
+                    throw new IllegalArgumentException("Unrecognized solver choice " + aSATFCParameters.getSolverChoice());
+            }
+        };
+        fDataManager = aSATFCParameters.getDataManager() == null ? new DataManager() : aSATFCParameters.getDataManager();
+        fSolverManager = new SolverManager(fSolverBundleFactory, fDataManager);
 
         if (aSATFCParameters.getServerURL() != null && aSATFCParameters.getAutoAugmentOptions().isAugment()) {
             log.info("Augment parameters {}", aSATFCParameters.getAutoAugmentOptions());
@@ -146,6 +189,7 @@ public class SATFCFacade implements AutoCloseable {
         }
 
         idleTime = Watch.constructAutoStartWatch();
+        asyncWorkers = new AsyncWorkers<>("SATFC Async Worker Thread", aSATFCParameters.getNumAsyncWorkers(), () -> new SolverManager(fSolverBundleFactory, fDataManager));
 
         try {
             final String versionProperties = Resources.toString(Resources.getResource("version.properties"), Charsets.UTF_8);
@@ -254,6 +298,326 @@ public class SATFCFacade implements AutoCloseable {
         return createInterruptibleSATFCResult(aDomains, aPreviousAssignment, aCutoff, aSeed, aStationConfigFolder, instanceName, false);
     }
 
+    /**
+     * Solve a station packing problem asynchronously. The problem is queued and solved by one of the facade's async workers (see {@link SATFCFacadeBuilder#setNumAsyncWorkers}), so the calling thread returns immediately.
+     * Problems start in submission order. Each worker has its own solvers, so problems submitted this way can be solved concurrently, and while another thread is in {@link #solve}.
+     * Cancelling the returned future interrupts the problem (or prevents it from starting, if it has not started yet).
+     * If a solve hangs, the future fails and the worker is replaced by a new one, so the problems queued after it still get solved.
+     *
+     * @return a future that completes with the result of the problem
+     */
+    public CompletableFuture<SATFCResult> solveAsync(Map<Integer, Set<Integer>> aDomains, Map<Integer, Integer> aPreviousAssignment, double aCutoff, long aSeed, String aStationConfigFolder) {
+        return solveAsync(aDomains, aPreviousAssignment, aCutoff, aSeed, aStationConfigFolder, null);
+    }
+
+    public CompletableFuture<SATFCResult> solveAsync(
+            @NonNull Map<Integer, Set<Integer>> aDomains,
+            @NonNull Map<Integer, Integer> aPreviousAssignment,
+            double aCutoff,
+            long aSeed,
+            @NonNull String aStationConfigFolder,
+            String instanceName) {
+        final InterruptibleTerminationCriterion termination = new InterruptibleTerminationCriterion();
+        final CompletableFuture<SATFCResult> future = createInterruptingFuture(termination);
+        asyncWorkers.submit((solverManager, abandonWorker) -> completeAsync(future, new SATFCProblemSolveCallable(aDomains, aPreviousAssignment, aCutoff, aSeed, aStationConfigFolder, termination, instanceName, false, true, solverManager), termination, aCutoff, abandonWorker));
+        return future;
+    }
+
+    /**
+     * Same as {@link #solveAsync(Map, Map, double, long, String, String)}, but the problem is solved on the given executor, with the same solvers as {@link #solve}.
+     * The facade still only supports one such solve operation at a time: the caller is responsible for not running several problems from the same facade concurrently (e.g. by using a single threaded executor per facade).
+     * If a solve hangs, the future fails, but the executor's thread stays stuck in the solve.
+     */
+    public CompletableFuture<SATFCResult> solveAsync(
+            @NonNull Map<Integer, Set<Integer>> aDomains,
+            @NonNull Map<Integer, Integer> aPreviousAssignment,
+            double aCutoff,
+            long aSeed,
+            @NonNull String aStationConfigFolder,
+            String instanceName,
+            @NonNull Executor executor) {
+        final InterruptibleTerminationCriterion termination = new InterruptibleTerminationCriterion();
+        final CompletableFuture<SATFCResult> future = createInterruptingFuture(termination);
+        executor.execute(() -> completeAsync(future, new SATFCProblemSolveCallable(aDomains, aPreviousAssignment, aCutoff, aSeed, aStationConfigFolder, termination, instanceName, false, true, fSolverManager), termination, aCutoff, () -> {}));
+        return future;
+    }
+
+    private static CompletableFuture<SATFCResult> createInterruptingFuture(InterruptibleTerminationCriterion termination) {
+        final CompletableFuture<SATFCResult> future = new CompletableFuture<>();
+        // Propagate cancellation into the solvers
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                log.debug("Future was cancelled, interrupting problem");
+                termination.interrupt();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Solve a problem on the current thread and complete the future with its result, unless the future is already done (i.e. cancelled)
+     * @param onHang called if the solve is still going long after its cutoff
+     */
+    private void completeAsync(CompletableFuture<SATFCResult> future, SATFCProblemSolveCallable callable, InterruptibleTerminationCriterion termination, double aCutoff, Runnable onHang) {
+        if (future.isDone()) {
+            log.debug("Problem was cancelled before it started");
+            return;
+        }
+        final long totalSuicideGraceTimeInMillis = (long) (aCutoff + SUICIDE_GRACE_IN_SECONDS) * 1000;
+        final ScheduledFuture<?> hangDetector = pollingService.getService().schedule(() -> {
+            if (future.completeExceptionally(new RuntimeException("SATFC waited " + totalSuicideGraceTimeInMillis + " ms for a result, but no result came back! The given timeout was " + aCutoff + " s, so SATFC appears to be hung. This is probably NOT a recoverable error"))) {
+                termination.interrupt();
+                onHang.run();
+            }
+        }, totalSuicideGraceTimeInMillis, TimeUnit.MILLISECONDS);
+        try {
+            future.complete(callable.call());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        } finally {
+            hangDetector.cancel(false);
+        }
+    }
+
+    /**
+     * Solve a batch of problems, typically many problems that share a station config folder and only differ by a few stations (e.g. the feasibility checks of a repacking run).
+     * Identical problems (by {@link StationPackingInstanceHasher} hash) are only split once, each distinct problem is split into connected components,
+     * and a component that appears in several problems is only solved once. Components are queued on the async workers (see {@link #solveAsync}), so several of them are solved at the same time.
+     * A problem is SAT if all its components are SAT, and UNSAT as soon as one of its components is UNSAT.
+     * A problem that cannot be solved (e.g. its previous assignment is not in its domains, or one of its components failed) gets a CRASHED result, without affecting the other problems.
+     * If a server is configured, all the problems are first looked up in its cache with a single batch request (see {@link #queryCache}), and the problems settled by the cache are not solved.
+     *
+     * @param problems problems to solve. Each problem is solved with its own cutoff (a component shared between problems is solved with the cutoff of the first problem it appears in)
+     * @param aSeed    a long seed for randomization in SATFC.
+     * @return a result for each problem, in the same order as the problems. The runtime of a result is the sum of the runtimes of its components, and its extra info describes how much work was shared with other problems of the batch
+     */
+    public List<SATFCResult> solveBatch(@NonNull List<SATFCFacadeProblem> problems, long aSeed) {
+        final Watch watch = Watch.constructAutoStartWatch();
+        // distinct problem -> hashes of its components
+        final Map<HashCode, List<HashCode>> problemToComponents = new HashMap<>();
+        // distinct component -> its result
+        final Map<HashCode, CompletableFuture<SATFCResult>> componentResults = new LinkedHashMap<>();
+        // number of input problems in which each component appears
+        final Multiset<HashCode> componentOccurrences = HashMultiset.create();
+        // input problem -> its distinct problem, or an immediate result if the problem did not need to be solved
+        final List<HashCode> problemKeys = new ArrayList<>();
+        final Map<Integer, SATFCResult> immediateResults = new HashMap<>();
+        // whole problems that the cache already knows about are never split
+        final List<SATFCResult> cacheResults = queryCache(problems);
+
+        for (int i = 0; i < problems.size(); i++) {
+            final SATFCFacadeProblem problem = problems.get(i);
+            try {
+                Preconditions.checkArgument(problem.getCutoff() > 0, "Cutoff must be strictly positive for problem %s", problem.getInstanceName());
+                if (problem.getDomains().isEmpty()) {
+                    log.warn("Problem {} has an empty domains map.", problem.getInstanceName());
+                    immediateResults.put(i, new SATFCResult(SATResult.SAT, 0.0, 0.0, ImmutableMap.of()));
+                    problemKeys.add(null);
+                    continue;
+                }
+                final ISolverBundle bundle = getSolverBundle(problem.getStationConfigFolder());
+                final StationPackingInstance instance = toBatchInstance(problem, bundle.getStationManager());
+                if (instance == null) {
+                    log.warn("Problem {} has a station with an empty domain, cannot pack.", problem.getInstanceName());
+                    immediateResults.put(i, new SATFCResult(SATResult.UNSAT, 0.0, 0.0, ImmutableMap.of()));
+                    problemKeys.add(null);
+                    continue;
+                }
+                if (cacheResults.get(i).getResult().isConclusive()) {
+                    immediateResults.put(i, cacheResults.get(i));
+                    problemKeys.add(null);
+                    continue;
+                }
+                final HashCode problemKey = batchKey(instance, problem.getStationConfigFolder());
+                if (!problemToComponents.containsKey(problemKey)) {
+                    // Constraint graph construction and component splitting happen once per distinct problem
+                    final List<HashCode> componentKeys = new ArrayList<>();
+                    final List<Set<Station>> components = new ArrayList<>(new ConstraintGrouper().group(instance, bundle.getConstraintManager()));
+                    for (Set<Station> component : components) {
+                        final Map<Integer, Set<Integer>> componentDomains = instance.getDomains().entrySet().stream()
+                                .filter(entry -> component.contains(entry.getKey()))
+                                .collect(Collectors.toMap(entry -> entry.getKey().getID(), Map.Entry::getValue));
+                        final Map<Integer, Integer> componentPreviousAssignment = instance.getPreviousAssignment().entrySet().stream()
+                                .filter(entry -> component.contains(entry.getKey()))
+                                .collect(Collectors.toMap(entry -> entry.getKey().getID(), Map.Entry::getValue));
+                        final HashCode componentKey = batchKey(new StationPackingInstance(Maps.filterKeys(instance.getDomains(), component::contains)), problem.getStationConfigFolder());
+                        final String componentName = (problem.getInstanceName() != null ? problem.getInstanceName() : "batch" + i) + "_component" + componentKeys.size();
+                        componentKeys.add(componentKey);
+                        componentResults.computeIfAbsent(componentKey, k -> solveAsync(componentDomains, componentPreviousAssignment, problem.getCutoff(), aSeed, problem.getStationConfigFolder(), componentName));
+                    }
+                    problemToComponents.put(problemKey, componentKeys);
+                }
+                problemToComponents.get(problemKey).forEach(componentOccurrences::add);
+                problemKeys.add(problemKey);
+            } catch (RuntimeException e) {
+                log.error("Could not solve problem {} (batch item {})", problem.getInstanceName(), i, e);
+                immediateResults.put(i, new SATFCResult(SATResult.CRASHED, 0.0, ImmutableMap.of(), 0.0, "Batch item " + i + " failed: " + e.getMessage()));
+                problemKeys.add(null);
+            }
+        }
+        log.info("Batch of {} problems has {} distinct problems and {} distinct components", problems.size(), problemToComponents.size(), componentResults.size());
+
+        final List<SATFCResult> results = new ArrayList<>();
+        for (int i = 0; i < problems.size(); i++) {
+            final HashCode problemKey = problemKeys.get(i);
+            if (problemKey == null) {
+                results.add(immediateResults.get(i));
+                continue;
+            }
+            final List<HashCode> componentKeys = problemToComponents.get(problemKey);
+            final List<SolverResult> solverResults = new ArrayList<>();
+            final List<String> failures = new ArrayList<>();
+            double cputime = 0.0;
+            for (HashCode componentKey : componentKeys) {
+                final SATFCResult componentResult;
+                try {
+                    componentResult = componentResults.get(componentKey).join();
+                } catch (CompletionException | CancellationException e) {
+                    // Only the problems containing this component are affected
+                    log.error("Could not solve a component of batch item {}", i, e);
+                    failures.add(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                    solverResults.add(SolverResult.createNonSATResult(SATResult.CRASHED, 0.0, SolverResult.SolvedBy.CONNECTED_COMPONENTS));
+                    continue;
+                }
+                final Map<Integer, Set<Station>> assignment = new HashMap<>();
+                componentResult.getWitnessAssignment().forEach((station, channel) -> assignment.computeIfAbsent(channel, c -> new HashSet<>()).add(new Station(station)));
+                solverResults.add(new SolverResult(componentResult.getResult(), componentResult.getRuntime(), assignment, SolverResult.SolvedBy.CONNECTED_COMPONENTS));
+                cputime += componentResult.getCputime();
+            }
+            final SolverResult merged = SolverHelper.mergeComponentResults(solverResults);
+            final Map<Integer, Integer> witness = new HashMap<>();
+            merged.getAssignment().forEach((channel, stations) -> stations.forEach(station -> witness.put(station.getID(), channel)));
+            final long sharedComponents = componentKeys.stream().filter(componentKey -> componentOccurrences.count(componentKey) > 1).count();
+            final String extraInfo = "Batch item " + i + ": " + componentKeys.size() + " components, " + sharedComponents + " shared with other problems of the batch"
+                    + (failures.isEmpty() ? "" : ", " + failures.size() + " failed: " + failures);
+            results.add(new SATFCResult(merged.getResult(), merged.getRuntime(), witness, cputime, extraInfo));
+        }
+        log.info("Solved batch of {} problems in {} s", problems.size(), watch.getElapsedTime());
+        return results;
+    }
+
+    /**
+     * Look up a batch of problems in the containment cache (the SATFCServer, or the embedded cache), without solving anything.
+     * All the problems of a station config folder are sent to the server in a single request, so this is much cheaper than looking up the problems one at a time.
+     *
+     * @param problems problems to look up. The lookup of a station config folder gives up after the smallest cutoff of its problems
+     * @return a result for each problem, in the same order as the problems: SAT (with a witness assignment) or UNSAT if the cache settles the problem, and TIMEOUT otherwise (in particular, every result is TIMEOUT if no cache is configured)
+     */
+    public List<SATFCResult> queryCache(@NonNull List<SATFCFacadeProblem> problems) {
+        final SATFCResult timeout = new SATFCResult(SATResult.TIMEOUT, 0.0, 0.0, ImmutableMap.of());
+        final List<SATFCResult> results = new ArrayList<>(Collections.nCopies(problems.size(), timeout));
+        if (parameter.getServerURL() == null && embeddedCache == null) {
+            return results;
+        }
+        final Map<String, List<Integer>> folderToProblems = new LinkedHashMap<>();
+        for (int i = 0; i < problems.size(); i++) {
+            if (!problems.get(i).getDomains().isEmpty()) {
+                folderToProblems.computeIfAbsent(problems.get(i).getStationConfigFolder(), k -> new ArrayList<>()).add(i);
+            }
+        }
+        for (Entry<String, List<Integer>> entry : folderToProblems.entrySet()) {
+            try {
+                queryCache(entry.getKey(), entry.getValue(), problems, results);
+            } catch (RuntimeException e) {
+                // The problems of this folder are left to be solved, whatever the cache said about some of them
+                log.warn("Could not look up the problems of {} in the cache", entry.getKey(), e);
+                entry.getValue().forEach(i -> results.set(i, timeout));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Look up the problems of a station config folder in a single cache request, setting the results of the problems that the cache settles
+     */
+    private void queryCache(String stationConfigFolder, List<Integer> problemIndices, List<SATFCFacadeProblem> problems, List<SATFCResult> results) {
+        final Watch watch = Watch.constructAutoStartWatch();
+        final ISolverBundle bundle = getSolverBundle(stationConfigFolder);
+        final CacheCoordinate coordinate = new CacheCoordinate(bundle.getStationManager().getDomainHash(), bundle.getConstraintManager().getConstraintHash());
+        // identical problems are only sent once
+        final Map<HashCode, Integer> queryIndices = new HashMap<>();
+        final List<ContainmentCacheBatchQuery> queries = new ArrayList<>();
+        final Map<Integer, Integer> problemToQuery = new HashMap<>();
+        double cutoff = Double.MAX_VALUE;
+        for (int i : problemIndices) {
+            final StationPackingInstance instance;
+            try {
+                instance = toBatchInstance(problems.get(i), bundle.getStationManager());
+            } catch (RuntimeException e) {
+                // e.g. an unknown station or a bad previous assignment, which solveBatch reports for this problem only
+                log.warn("Not looking up problem {} in the cache", problems.get(i).getInstanceName(), e);
+                continue;
+            }
+            if (instance == null) {
+                continue;
+            }
+            problemToQuery.put(i, queryIndices.computeIfAbsent(StationPackingInstanceHasher.hash(instance), k -> {
+                queries.add(new ContainmentCacheBatchQuery(instance, ContainmentCacheProxy.QueryType.BOTH));
+                return queries.size() - 1;
+            }));
+            if (problems.get(i).getCutoff() > 0) {
+                cutoff = Math.min(cutoff, problems.get(i).getCutoff());
+            }
+        }
+        if (queries.isEmpty()) {
+            return;
+        }
+        final IContainmentCacheClient proxy;
+        if (embeddedCache != null) {
+            proxy = new EmbeddedContainmentCache(embeddedCache, coordinate, embeddedCache.getOrCreate(coordinate, PermutationUtils.makePermutation(bundle.getStationManager().getStations())));
+        } else {
+            proxy = new ContainmentCacheProxy(parameter.getServerURL(), coordinate, parameter.getNumServerAttempts(), true, parameter.isBinaryServerProtocol(), pollingService, httpClient);
+        }
+        final ContainmentCacheBatchResult batchResult = proxy.queryBatch(queries, new WalltimeTerminationCriterion(cutoff));
+        final double runtime = watch.getElapsedTime();
+        // Only set once every result was read, so that a bad answer from the cache does not leave part of the folder settled
+        final Map<Integer, SATFCResult> settled = new HashMap<>();
+        problemToQuery.forEach((i, query) -> {
+            final ContainmentCacheSATResult containmentCacheSATResult = batchResult.getSATResults().get(query);
+            if (containmentCacheSATResult.isValid()) {
+                // the superset assigns more stations than we asked about
+                final Set<Integer> stations = problems.get(i).getDomains().keySet();
+                final Map<Integer, Integer> witness = new HashMap<>();
+                containmentCacheSATResult.getResult().forEach((channel, channelStations) -> channelStations.stream().filter(station -> stations.contains(station.getID())).forEach(station -> witness.put(station.getID(), channel)));
+                settled.put(i, new SATFCResult(SATResult.SAT, runtime, witness, 0.0, "Found a superset in the SAT cache: " + containmentCacheSATResult.getKey()));
+            } else if (batchResult.getUNSATResults().get(query).isValid()) {
+                settled.put(i, new SATFCResult(SATResult.UNSAT, runtime, ImmutableMap.of(), 0.0, "Found a subset in the UNSAT cache: " + batchResult.getUNSATResults().get(query).getKey()));
+            }
+        });
+        settled.forEach(results::set);
+        log.info("Looked up {} distinct problems of {} in the cache in {} s", queries.size(), stationConfigFolder, runtime);
+    }
+
+    /**
+     * @return the instance corresponding to a problem of a batch, or null if one of its stations has an empty domain
+     * @throws IllegalStateException if the previous assignment assigns a station to a channel outside of its domain (like {@link #solve})
+     */
+    private static StationPackingInstance toBatchInstance(SATFCFacadeProblem problem, IStationManager stationManager) {
+        final Map<Station, Set<Integer>> domains = new HashMap<>();
+        for (Entry<Integer, Set<Integer>> entry : problem.getDomains().entrySet()) {
+            final Station station = stationManager.getStationfromID(entry.getKey());
+            final Set<Integer> trueDomain = Sets.intersection(entry.getValue(), stationManager.getDomain(station));
+            if (trueDomain.isEmpty()) {
+                return null;
+            }
+            domains.put(station, trueDomain);
+        }
+        final Map<Station, Integer> previousAssignment = new HashMap<>();
+        for (Station station : domains.keySet()) {
+            final Integer previousChannel = problem.getPreviousAssignment().get(station.getID());
+            if (previousChannel != null && previousChannel > 0) {
+                Preconditions.checkState(domains.get(station).contains(previousChannel), "Provided previous assignment assigned channel " + previousChannel + " to station " + station + " which is not in its problem domain " + domains.get(station) + ".");
+                previousAssignment.put(station, previousChannel);
+            }
+        }
+        return new StationPackingInstance(domains, previousAssignment);
+    }
+
+    // Problems with the same domains against different station config folders are different problems
+    private static HashCode batchKey(StationPackingInstance instance, String aStationConfigFolder) {
+        return Hashing.combineOrdered(ImmutableList.of(StationPackingInstanceHasher.hash(instance), Hashing.murmur3_128().hashString(aStationConfigFolder, Charsets.UTF_8)));
+    }
+
     InterruptibleSATFCResult createInterruptibleSATFCResult(
             @NonNull Map<Integer, Set<Integer>> aDomains,
             @NonNull Map<Integer, Integer> aPreviousAssignment,
@@ -265,7 +629,7 @@ public class SATFCFacade implements AutoCloseable {
         log.debug("Setting termination criterion...");
         //Set termination criterion.
         final InterruptibleTerminationCriterion termination = new InterruptibleTerminationCriterion();
-        final SATFCProblemSolveCallable satfcProblemSolveCallable = new SATFCProblemSolveCallable(aDomains, aPreviousAssignment, aCutoff, aSeed, aStationConfigFolder, termination, instanceName, internal);
+        final SATFCProblemSolveCallable satfcProblemSolveCallable = new SATFCProblemSolveCallable(aDomains, aPreviousAssignment, aCutoff, aSeed, aStationConfigFolder, termination, instanceName, internal, false, fSolverManager);
         return new InterruptibleSATFCResult(termination, satfcProblemSolveCallable);
     }
 
@@ -295,6 +659,10 @@ public class SATFCFacade implements AutoCloseable {
         private final String instanceName;
         // true if the call was generated from a cache augmenter
         private final boolean internal;
+        // true if the call is already running on a worker thread that is guarded against hangs (see solveAsync), so there is no need for another thread to watch the solve
+        private final boolean async;
+        // where the solvers come from. A solver manager's solvers can only solve one problem at a time
+        private final SolverManager solverManager;
 
         @Override
         public SATFCResult call() throws Exception {
@@ -312,7 +680,7 @@ public class SATFCFacade implements AutoCloseable {
             }
             Preconditions.checkArgument(aCutoff > 0, "Cutoff must be strictly positive");
 
-            final ISolverBundle bundle = getSolverBundle(aStationConfigFolder);
+            final ISolverBundle bundle = getSolverBundle(solverManager, aStationConfigFolder);
 
             final IStationManager stationManager = bundle.getStationManager();
 
@@ -369,8 +737,6 @@ public class SATFCFacade implements AutoCloseable {
             log.trace("all channels: {}.", instance.getAllChannels());
             log.trace("Previous assignment: {}", instance.getPreviousAssignment());
 
-            // Make sure that SATFC doesn't get hung. We give a VERY generous timeout window before throwing an exception
-            final int SUICIDE_GRACE_IN_SECONDS = 5 * 60;
             final long totalSuicideGraceTimeInMillis = (long) (aCutoff + SUICIDE_GRACE_IN_SECONDS) * 1000;
 
             final DisjunctiveCompositeTerminationCriterion disjunctiveCompositeTerminationCriterion = new DisjunctiveCompositeTerminationCriterion(new WalltimeTerminationCriterion(aCutoff), criterion);
@@ -379,7 +745,11 @@ public class SATFCFacade implements AutoCloseable {
             double cpuStart = testLib.getCpuTime();
             final SolverResult result;
             try {
-                result = TimeLimitedCodeBlock.runWithTimeout(() -> solver.solve(instance, disjunctiveCompositeTerminationCriterion, aSeed), totalSuicideGraceTimeInMillis, TimeUnit.MILLISECONDS);
+                if (async) {
+                    result = solver.solve(instance, disjunctiveCompositeTerminationCriterion, aSeed);
+                } else {
+                    result = TimeLimitedCodeBlock.runWithTimeout(() -> solver.solve(instance, disjunctiveCompositeTerminationCriterion, aSeed), totalSuicideGraceTimeInMillis, TimeUnit.MILLISECONDS);
+                }
             } catch (TimeoutException e) {
                 throw new RuntimeException("SATFC waited " + totalSuicideGraceTimeInMillis + " ms for a result, but no result came back! The given timeout was " + aCutoff + " s, so SATFC appears to be hung. This is probably NOT a recoverable error");
             } catch (Exception e) {
@@ -435,11 +805,18 @@ public class SATFCFacade implements AutoCloseable {
     }
 
     private ISolverBundle getSolverBundle(String aStationConfigFolder) {
+        return getSolverBundle(fSolverManager, aStationConfigFolder);
+    }
+
+    private ISolverBundle getSolverBundle(SolverManager solverManager, String aStationConfigFolder) {
         log.debug("Getting data managers...");
         //Get the data managers and solvers corresponding to the provided station config data.
         final ISolverBundle bundle;
         try {
-            bundle = fSolverManager.getData(aStationConfigFolder);
+            // the data manager is shared by the solver managers of the async workers
+            synchronized (fDataManager) {
+                bundle = solverManager.getData(aStationConfigFolder);
+            }
         } catch (FileNotFoundException e) {
             log.error("Did not find the necessary data files in provided station config data folder {}.", aStationConfigFolder);
             throw new IllegalArgumentException("Station config files not found.", e);
@@ -512,6 +889,10 @@ public class SATFCFacade implements AutoCloseable {
             augmenter.stop();
         }
         fSolverManager.close();
+        if (embeddedCache != null) {
+            log.trace("Closing embedded cache");
+            embeddedCache.close();
+        }
         if (httpClient != null) {
             log.trace("Closing http client");
             httpClient.close();
@@ -519,6 +900,8 @@ public class SATFCFacade implements AutoCloseable {
         if (future != null) {
             future.cancel(false);
         }
+        log.trace("Closing async workers");
+        asyncWorkers.close();
         log.trace("Closing polling service");
         pollingService.notifyShutdown();
         log.info("Goodbye!");
@@ -61,6 +61,10 @@ public class SATFCFacadeBuilder {
     private String logFileName;
     private int numServerAttempts;
     private boolean noErrorOnServerUnavailable;
+    private boolean binaryServerProtocol;
+    private boolean embeddedCache;
+    private String embeddedCacheSnapshotFile;
+    private int numAsyncWorkers;
     private ConfigFile configFile;
     private DeveloperOptions developerOptions;
     private AutoAugmentOptions autoAugmentOptions;
@@ -131,6 +135,10 @@ public class SATFCFacadeBuilder {
         configFile = autoDetectBundle();
         numServerAttempts = 3;
         noErrorOnServerUnavailable = false;
+        binaryServerProtocol = false;
+        embeddedCache = false;
+        embeddedCacheSnapshotFile = null;
+        numAsyncWorkers = Runtime.getRuntime().availableProcessors();
         autoAugmentOptions = AutoAugmentOptions.builder().build();
         developerOptions = DeveloperOptions.builder().solverChoice(SolverChoice.YAML).build();
     }
@@ -203,6 +211,7 @@ public class SATFCFacadeBuilder {
         if (developerOptions.getSolverChoice().equals(SolverChoice.YAML)) {
             Preconditions.checkNotNull(configFile, "No YAML config file was given to initialize the solver bundle with!");
         }
+        Preconditions.checkArgument(!embeddedCache || serverURL == null, "Cannot use both an embedded cache and a SATFCServer");
         if (initializeLogging) {
             initializeLogging(logLevel, logFileName);
         }
@@ -215,6 +224,10 @@ public class SATFCFacadeBuilder {
                         .configFile(configFile)
                         .numServerAttempts(numServerAttempts)
                         .noErrorOnServerUnavailable(noErrorOnServerUnavailable)
+                        .binaryServerProtocol(binaryServerProtocol)
+                        .embeddedCache(embeddedCache)
+                        .embeddedCacheSnapshotFile(embeddedCacheSnapshotFile)
+                        .numAsyncWorkers(numAsyncWorkers)
                         .autoAugmentOptions(autoAugmentOptions)
                         // developer
                         .dataManager(developerOptions.getDataManager())
@@ -265,6 +278,7 @@ public class SATFCFacadeBuilder {
 
     /**
      * Set the URL of the SATFCServer. This is only required if you are using the SATFCServer module.
+     * When the cache is split over several servers, give a comma separated list of their URLs.
      *
      * @param serverURL
      * @return this {@code Builder} object
@@ -287,6 +301,39 @@ public class SATFCFacadeBuilder {
         return this;
     }
 
+    /**
+     * Talk to the SATFCServer in the binary Smile protocol rather than json. The server must be recent enough to support it.
+     * @param binaryServerProtocol if true, use the binary protocol
+     * @return this {@code Builder} object
+     */
+    public SATFCFacadeBuilder setBinaryServerProtocol(boolean binaryServerProtocol) {
+        this.binaryServerProtocol = binaryServerProtocol;
+        return this;
+    }
+
+    /**
+     * Keep the containment cache inside this JVM instead of using a SATFCServer. This is the fastest option when SATFC only runs on one host. Cannot be combined with a server URL.
+     * @param snapshotFile file the cache is read from when it is first used and written back to when the facade is closed, or null to start with an empty cache and not save it
+     * @return this {@code Builder} object
+     */
+    public SATFCFacadeBuilder setEmbeddedCache(String snapshotFile) {
+        this.embeddedCache = true;
+        this.embeddedCacheSnapshotFile = snapshotFile;
+        return this;
+    }
+
+    /**
+     * Set how many problems given to {@link SATFCFacade#solveAsync} and {@link SATFCFacade#solveBatch} can be solved at the same time. Defaults to the number of processors.
+     * Each worker has its own solvers, which are only created once the worker is first needed.
+     * @param numAsyncWorkers the number of workers
+     * @return this {@code Builder} object
+     */
+    public SATFCFacadeBuilder setNumAsyncWorkers(int numAsyncWorkers) {
+        Preconditions.checkArgument(numAsyncWorkers > 0, "Need at least one async worker");
+        this.numAsyncWorkers = numAsyncWorkers;
+        return this;
+    }
+
     /**
      * Call this method to have SATFC configure logging (this would only have any effect if the calling application hasn't initialized logging)
      *
@@ -337,6 +384,10 @@ public class SATFCFacadeBuilder {
         builder.initializeLogging(parameters.logFileName, parameters.getLogLevel());
         if (parameters.cachingParams.serverURL != null) {
             builder.setServerURL(parameters.cachingParams.serverURL);
+            builder.setBinaryServerProtocol(parameters.cachingParams.binaryProtocol);
+        }
+        if (parameters.cachingParams.embeddedCache) {
+            builder.setEmbeddedCache(parameters.cachingParams.embeddedCacheSnapshot);
         }
 
         CNFSaverSolverDecorator.ICNFSaver CNFSaver = null;
@@ -345,7 +396,7 @@ public class SATFCFacadeBuilder {
             CNFSaver = new CNFSaverSolverDecorator.FileCNFSaver(parameters.fCNFDir);
 //            if (parameters.fRedisParameters.areValid()) {
 //                System.out.println("Saving CNF index to redis");
-//                CNFSaver = new CNFSaverSolverDecorator.RedisIndexCNFSaver(CNFSaver, parameters.fRedisParameters.getJedis(), parameters.fRedisParameters.fRedisQueue);
+//                CNFSaver = new CNFSaverSolverDecorator.RedisIndexCNFSaver(CNFSaver, parameters.fRedisParameters.getRedisStore(), parameters.fRedisParameters.fRedisQueue);
 //            }
         }
         
@@ -43,6 +43,12 @@ public class SATFCFacadeParameter {
 
     private int numServerAttempts;
     private boolean noErrorOnServerUnavailable;
+    private boolean binaryServerProtocol;
+    // keep the containment cache in this JVM rather than using a SATFCServer
+    private boolean embeddedCache;
+    private String embeddedCacheSnapshotFile;
+    // number of threads solving the problems given to solveAsync and solveBatch
+    private int numAsyncWorkers;
 
     private AutoAugmentOptions autoAugmentOptions;
 
@@ -23,6 +23,7 @@ package ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.bundles;
 
 import ca.ubc.cs.beta.stationpacking.base.Station;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.EmbeddedCacheLocator;
 import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.IConstraintManager;
 import ca.ubc.cs.beta.stationpacking.facade.SATFCFacadeParameter;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.ManagerBundle;
@@ -30,6 +31,7 @@ import ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.bundles.yaml.*;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.factories.Clasp3LibraryGenerator;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.factories.PythonInterpreterContainer;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.factories.UBCSATLibraryGenerator;
+import ca.ubc.cs.beta.stationpacking.metrics.SATFCMetrics;
 import ca.ubc.cs.beta.stationpacking.polling.IPollingService;
 import ca.ubc.cs.beta.stationpacking.solvers.ISolver;
 import ca.ubc.cs.beta.stationpacking.solvers.UNSATLabeller;
@@ -40,11 +42,14 @@ import ca.ubc.cs.beta.stationpacking.solvers.certifiers.cgneighborhood.Constrain
 import ca.ubc.cs.beta.stationpacking.solvers.certifiers.cgneighborhood.StationSubsetSATCertifier;
 import ca.ubc.cs.beta.stationpacking.solvers.certifiers.cgneighborhood.strategies.*;
 import ca.ubc.cs.beta.stationpacking.solvers.componentgrouper.ConstraintGrouper;
+import ca.ubc.cs.beta.stationpacking.solvers.composites.AdaptivePortfolioComposite;
 import ca.ubc.cs.beta.stationpacking.solvers.composites.ISolverFactory;
 import ca.ubc.cs.beta.stationpacking.solvers.composites.ParallelNoWaitSolverComposite;
 import ca.ubc.cs.beta.stationpacking.solvers.composites.ParallelSolverComposite;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.*;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.CacheResultDecorator;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.LocalContainmentCache;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.LocalContainmentCacheDecorator;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.SubsetCacheUNSATDecorator;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.SupersetCacheSATDecorator;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.consistency.ArcConsistencyEnforcerDecorator;
@@ -64,6 +69,7 @@ import ca.ubc.cs.beta.stationpacking.solvers.sat.solvers.nonincremental.ubcsat.U
 import ca.ubc.cs.beta.stationpacking.solvers.underconstrained.HeuristicUnderconstrainedStationFinder;
 import ca.ubc.cs.beta.stationpacking.utils.GuavaCollectors;
 import ca.ubc.cs.beta.stationpacking.utils.YAMLUtils;
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonParser;
@@ -77,9 +83,12 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.collect.BiMap;
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
+import com.google.common.io.Files;
 import ilog.concert.IloException;
 import ilog.cplex.IloCplex;
 import lombok.Data;
@@ -95,6 +104,8 @@ import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Created by newmanne on 01/10/15.
@@ -116,6 +127,19 @@ public class YAMLBundle extends AVHFUHFSolverBundle {
             @NonNull SATFCFacadeParameter parameter,
             @NonNull IPollingService pollingService,
             CloseableHttpAsyncClient httpClient
+    ) {
+        this(managerBundle, parameter, pollingService, httpClient, null);
+    }
+
+    /**
+     * @param embeddedCache the containment caches of this JVM, if the cache decorators should use them rather than a SATFCServer
+     */
+    public YAMLBundle(
+            @NonNull ManagerBundle managerBundle,
+            @NonNull SATFCFacadeParameter parameter,
+            @NonNull IPollingService pollingService,
+            CloseableHttpAsyncClient httpClient,
+            EmbeddedCacheLocator embeddedCache
     ) {
         super(managerBundle);
 
@@ -129,6 +153,8 @@ public class YAMLBundle extends AVHFUHFSolverBundle {
                 .parameter(parameter)
                 .pollingService(pollingService)
                 .httpClient(httpClient)
+                .embeddedCache(embeddedCache)
+                .bundleName(Files.getNameWithoutExtension(parameter.getConfigFile().getFileName()))
                 .build();
 
         log.info("Reading configuration file {}", parameter.getConfigFile());
@@ -161,7 +187,10 @@ public class YAMLBundle extends AVHFUHFSolverBundle {
         Preconditions.checkState(uhf != null && !uhf.isEmpty(), "No solver provided for UHF in config file %s", parameter.getConfigFile());
         Preconditions.checkState(vhf != null && !vhf.isEmpty(), "No solver provided for VHF in config file %s", parameter.getConfigFile());
 
+        context.setTiming(config.isTiming());
+        context.setChainName("UHF");
         UHFSolver = concat(uhf, context);
+        context.setChainName("VHF");
         VHFSolver = concat(vhf, context);
 
         checkers = Joiner.on(',').join(context.getSolverTypes());
@@ -180,7 +209,11 @@ public class YAMLBundle extends AVHFUHFSolverBundle {
             if (!config.shouldSkip(context)) {
                 log.debug("Decorating with {} using config of type {}", solver.getClass().getSimpleName(), config.getClass().getSimpleName());
                 solver = config.createSolver(context, solver);
-                context.getSolverTypes().add(SolverConfigDeserializer.typeToConfigClass.inverse().get(config.getClass()));
+                final SolverType solverType = SolverConfigDeserializer.typeToConfigClass.inverse().get(config.getClass());
+                context.getSolverTypes().add(solverType);
+                if (context.isTiming()) {
+                    solver = new TimingSolverDecorator(solver, SATFCMetrics.getRegistry().timer(context.getTimerName(config, solverType)));
+                }
             } else {
                 log.debug("Skipping decorator {}", config.getClass().getSimpleName());
             }
@@ -197,9 +230,37 @@ public class YAMLBundle extends AVHFUHFSolverBundle {
         private final SATFCFacadeParameter parameter;
         private final IPollingService pollingService;
         private final CloseableHttpAsyncClient httpClient;
+        private final EmbeddedCacheLocator embeddedCache;
         private PythonInterpreterContainer python;
+        private final String bundleName;
+        // whether to record the time spent in each solver of the chains
+        private boolean timing;
+        // the chain currently being built (UHF or VHF)
+        private String chainName;
 
         private final Set<SolverType> solverTypes = new HashSet<>();
+        private final Map<ISolverConfig, String> timerNames = new IdentityHashMap<>();
+        private final Multiset<String> timerNicknames = HashMultiset.create();
+        // shared by every local cache decorator of the bundle, since they all answer for the same cache coordinate
+        private LocalContainmentCache localCache;
+
+        public synchronized LocalContainmentCache getOrCreateLocalCache(int capacity) {
+            if (localCache == null) {
+                localCache = new LocalContainmentCache(managerBundle.getPermutation(), capacity);
+            }
+            return localCache;
+        }
+
+        /**
+         * @return the name of the timer of the solver built from the given config. Solvers built from the same config (e.g. the copies of a parallel branch) share a timer
+         */
+        public synchronized String getTimerName(ISolverConfig config, SolverType solverType) {
+            return timerNames.computeIfAbsent(config, c -> {
+                final String nickname = chainName + "." + solverType.name().toLowerCase();
+                final int occurrences = timerNicknames.add(nickname, 1);
+                return MetricRegistry.name("solvers", bundleName, occurrences == 0 ? nickname : nickname + "_" + occurrences);
+            });
+        }
     }
 
     /**
@@ -212,6 +273,8 @@ public class YAMLBundle extends AVHFUHFSolverBundle {
         private List<ISolverConfig> UHF;
         @JsonProperty("VHF")
         private List<ISolverConfig> VHF;
+        // record the time spent in each solver (see SATFCMetrics)
+        private boolean timing = true;
 
     }
 
@@ -406,7 +469,7 @@ public class YAMLBundle extends AVHFUHFSolverBundle {
 
         @Override
         public ISolver createSolver(SATFCContext context, ISolver solverToDecorate) {
-            return new CacheResultDecorator(solverToDecorate, createContainmentCacheProxy(context), new CacheResultDecorator.CachingStrategy() {
+            return new CacheResultDecorator(solverToDecorate, createContainmentCacheClient(context), new CacheResultDecorator.CachingStrategy() {
 
                 private final CacheResultDecorator.CacheConclusiveNewInfoStrategy strategy = new CacheResultDecorator.CacheConclusiveNewInfoStrategy();
 
@@ -437,7 +500,7 @@ public class YAMLBundle extends AVHFUHFSolverBundle {
 
         @Override
         public ISolver createSolver(SATFCContext context, ISolver solverToDecorate) {
-            return new SupersetCacheSATDecorator(solverToDecorate, createContainmentCacheProxy(context));
+            return new SupersetCacheSATDecorator(solverToDecorate, createContainmentCacheClient(context));
         }
 
     }
@@ -448,9 +511,29 @@ public class YAMLBundle extends AVHFUHFSolverBundle {
 
         @Override
         public ISolver createSolver(SATFCContext context, ISolver solverToDecorate) {
-            return new SubsetCacheUNSATDecorator(solverToDecorate, createContainmentCacheProxy(context));
+            return new SubsetCacheUNSATDecorator(solverToDecorate, createContainmentCacheClient(context));
+        }
+
+    }
+
+    @EqualsAndHashCode(callSuper = true)
+    @Data
+    public static class LocalCacheConfig extends CacheSolverConfig {
+
+        @Override
+        public ISolver createSolver(SATFCContext context, ISolver solverToDecorate) {
+            return new LocalContainmentCacheDecorator(solverToDecorate, context.getOrCreateLocalCache(capacity));
         }
 
+        @Override
+        public boolean shouldSkip(SATFCContext context) {
+            // Only worth it in front of a SATFCServer: an embedded cache is just as fast
+            return context.getParameter().getServerURL() == null;
+        }
+
+        // maximum number of SAT (and of UNSAT) entries kept in memory
+        private int capacity = 1000;
+
     }
 
     @Data
@@ -540,6 +623,30 @@ public class YAMLBundle extends AVHFUHFSolverBundle {
 
     }
 
+    @Data
+    public static class AdaptiveParallelConfig implements ISolverConfig {
+
+        @Override
+        public ISolver createSolver(SATFCContext context, ISolver solverToDecorate) {
+            log.debug("Adding an adaptive parallel split");
+            final List<ISolverFactory> solverFactories = new ArrayList<>();
+            for (final List<ISolverConfig> configPath : configs) {
+                solverFactories.add(aSolver -> concat(configPath, context));
+            }
+            final List<String> branchNames = names != null ? names : IntStream.range(0, configs.size()).mapToObj(i -> "branch_" + i).collect(Collectors.toList());
+            final int threads = numThreads > 0 ? numThreads : solverFactories.size();
+            final int branches = maxBranches > 0 ? maxBranches : solverFactories.size();
+            return new AdaptivePortfolioComposite(threads, solverFactories, branchNames, branches, seed, context.getManagerBundle().getConstraintManager());
+        }
+
+        private List<List<ISolverConfig>> configs;
+        private List<String> names;
+        private int numThreads = 0;
+        private int maxBranches = 0;
+        private long seed = 1;
+
+    }
+
     @Data
     public static class NeighbourLayerConfig implements IStationAddingStrategyConfig {
 
@@ -736,7 +843,9 @@ public class YAMLBundle extends AVHFUHFSolverBundle {
                         .put(SolverType.CACHE, CacheConfig.class)
                         .put(SolverType.SAT_CACHE, SATCacheConfig.class)
                         .put(SolverType.UNSAT_CACHE, UNSATCacheConfig.class)
+                        .put(SolverType.LOCAL_CACHE, LocalCacheConfig.class)
                         .put(SolverType.PARALLEL, ParallelConfig.class)
+                        .put(SolverType.ADAPTIVE_PARALLEL, AdaptiveParallelConfig.class)
                         .put(SolverType.RESULT_SAVER, ResultSaverConfig.class)
                         .put(SolverType.CNF, CNFSaverConfig.class)
                         .put(SolverType.PYTHON_VERIFIER, PythonVerifierConfig.class)
@@ -21,9 +21,13 @@
  */
 package ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.bundles.yaml;
 
+import ca.ubc.cs.beta.stationpacking.cache.EmbeddedCacheLocator;
 import ca.ubc.cs.beta.stationpacking.facade.SATFCFacadeParameter;
+import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.ManagerBundle;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.bundles.YAMLBundle;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.EmbeddedContainmentCache;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.IContainmentCacheClient;
 
 /**
 * Created by newmanne on 27/10/15.
@@ -32,12 +36,20 @@ public abstract class CacheSolverConfig implements ISolverConfig {
 
     @Override
     public boolean shouldSkip(YAMLBundle.SATFCContext context) {
-        return context.getParameter().getServerURL() == null;
+        return context.getParameter().getServerURL() == null && context.getEmbeddedCache() == null;
     }
 
-    protected ContainmentCacheProxy createContainmentCacheProxy(YAMLBundle.SATFCContext context) {
+    /**
+     * @return the embedded cache of the bundle's coordinate if there is one, and a proxy to the SATFCServer otherwise
+     */
+    protected IContainmentCacheClient createContainmentCacheClient(YAMLBundle.SATFCContext context) {
+        final EmbeddedCacheLocator embeddedCache = context.getEmbeddedCache();
+        if (embeddedCache != null) {
+            final ManagerBundle managerBundle = context.getManagerBundle();
+            return new EmbeddedContainmentCache(embeddedCache, managerBundle.getCacheCoordinate(), embeddedCache.getOrCreate(managerBundle.getCacheCoordinate(), managerBundle.getPermutation()));
+        }
         final SATFCFacadeParameter parameter = context.getParameter();
-        return new ContainmentCacheProxy(parameter.getServerURL(), context.getManagerBundle().getCacheCoordinate(), parameter.getNumServerAttempts(), parameter.isNoErrorOnServerUnavailable(), context.getPollingService(), context.getHttpClient());
+        return new ContainmentCacheProxy(parameter.getServerURL(), context.getManagerBundle().getCacheCoordinate(), parameter.getNumServerAttempts(), parameter.isNoErrorOnServerUnavailable(), parameter.isBinaryServerProtocol(), context.getPollingService(), context.getHttpClient());
     }
 
 }
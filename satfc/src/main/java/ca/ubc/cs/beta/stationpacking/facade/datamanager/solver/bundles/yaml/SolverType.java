@@ -37,7 +37,9 @@ public enum SolverType {
     CACHE,
     SAT_CACHE,
     UNSAT_CACHE,
+    LOCAL_CACHE,
     PARALLEL,
+    ADAPTIVE_PARALLEL,
     RESULT_SAVER,
     CNF,
     CHANNEL_KILLER,
@@ -23,6 +23,7 @@ package ca.ubc.cs.beta.stationpacking.metrics;
 
 import java.lang.management.ManagementFactory;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -43,6 +44,7 @@ import com.codahale.metrics.jvm.BufferPoolMetricSet;
 import com.codahale.metrics.jvm.GarbageCollectorMetricSet;
 import com.codahale.metrics.jvm.MemoryUsageGaugeSet;
 import com.codahale.metrics.jvm.ThreadStatesGaugeSet;
+import com.google.common.base.Preconditions;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 
@@ -61,6 +63,7 @@ import lombok.extern.slf4j.Slf4j;
  * Created by newmanne on 15/01/15.
  * Collects metrics on solving SATFC problems
  * If your problems don't have  unique names, behaviour is undefined (because we use names to reference problems)
+ * Several problems can be in progress at the same time (e.g. when several facades solve problems concurrently), in which case metrics must be accessed and cleared by name
  */
 @Slf4j
 public class SATFCMetrics {
@@ -90,12 +93,22 @@ public class SATFCMetrics {
         metricsHandler.doWithMetrics(callback);
     }
 
+    public static void doWithMetrics(String name, MetricHandler.IMetricCallback callback) {
+        metricsHandler.doWithMetrics(name, callback);
+    }
+
     public static void clear() {
         if (eventBus != null) {
             metricsHandler.clear();
         }
     }
 
+    public static void clear(String name) {
+        if (eventBus != null) {
+            metricsHandler.clear(name);
+        }
+    }
+
     @Data
     public static class NewStationPackingInstanceEvent {
         private final StationPackingInstance instance;
@@ -143,7 +156,8 @@ public class SATFCMetrics {
 
     public static class MetricHandler {
 
-        private InstanceInfo activeProblemMetrics;
+        // problems in progress, by name
+        private final Map<String, InstanceInfo> activeProblemMetrics = new HashMap<>();
         private Lock metricsLock = new ReentrantLock();
 
         public interface IMetricCallback {
@@ -153,9 +167,10 @@ public class SATFCMetrics {
         private void safeMetricEdit(String name, IMetricCallback callback) {
             try {
                 metricsLock.lock();
-                // ensure that you only edit the "current problem" metrics.
-                if (activeProblemMetrics != null && name.startsWith(activeProblemMetrics.getName())) {
-                    final InstanceInfo info = getInfo(name);
+                // ensure that you only edit the metrics of a problem in progress.
+                final InstanceInfo activeProblem = getActiveProblem(name);
+                if (activeProblem != null) {
+                    final InstanceInfo info = getInfo(activeProblem, name);
                     if (info != null) {
                         callback.doWithLock(info);
                     }
@@ -165,47 +180,88 @@ public class SATFCMetrics {
             }
         }
 
+        /**
+         * Only valid when at most one problem is in progress
+         */
         public void doWithMetrics(IMetricCallback callback) {
             try {
                 metricsLock.lock();
-                callback.doWithLock(activeProblemMetrics);
+                Preconditions.checkState(activeProblemMetrics.size() <= 1, "Several problems are in progress, metrics must be accessed by name");
+                callback.doWithLock(activeProblemMetrics.isEmpty() ? null : activeProblemMetrics.values().iterator().next());
+            } finally {
+                metricsLock.unlock();
+            }
+        }
+
+        public void doWithMetrics(String name, IMetricCallback callback) {
+            try {
+                metricsLock.lock();
+                callback.doWithLock(activeProblemMetrics.get(name));
             } finally {
                 metricsLock.unlock();
             }
         }
 
         private void clear() {
-            activeProblemMetrics = null;
+            try {
+                metricsLock.lock();
+                activeProblemMetrics.clear();
+            } finally {
+                metricsLock.unlock();
+            }
+        }
+
+        private void clear(String name) {
+            try {
+                metricsLock.lock();
+                activeProblemMetrics.remove(name);
+            } finally {
+                metricsLock.unlock();
+            }
+        }
+
+        // the problem in progress that an event belongs to: the one with the longest name that prefixes the event name
+        private InstanceInfo getActiveProblem(String name) {
+            InstanceInfo activeProblem = null;
+            for (InstanceInfo info : activeProblemMetrics.values()) {
+                if (name.startsWith(info.getName()) && (activeProblem == null || info.getName().length() > activeProblem.getName().length())) {
+                    activeProblem = info;
+                }
+            }
+            return activeProblem;
         }
 
-        private InstanceInfo getInfo(String name) {
-            if (activeProblemMetrics == null) {
-                throw new IllegalStateException("Trying to add metrics with no valid problem");
-            } else if (name.equals(activeProblemMetrics.getName())) {
-                return activeProblemMetrics;
+        private InstanceInfo getInfo(InstanceInfo activeProblem, String name) {
+            if (name.equals(activeProblem.getName())) {
+                return activeProblem;
             } else if (name.contains("_component")) {
-                return activeProblemMetrics.getComponents().get(name);
+                return activeProblem.getComponents().get(name);
             }
             return null; // This will catch presolver instances
         }
 
         @Subscribe
         public void onNewStationPackingInstanceEvent(NewStationPackingInstanceEvent event) {
-            // don't thread this one
-            if (activeProblemMetrics != null) {
-                throw new IllegalStateException("Metrics already in progress!");
-            }
-            activeProblemMetrics = new InstanceInfo();
+            final InstanceInfo newProblemMetrics = new InstanceInfo();
             final StationPackingInstance instance = event.getInstance();
-            activeProblemMetrics.setName(instance.getName());
-            activeProblemMetrics.setStations(instance.getStations());
-            activeProblemMetrics.setNumStations(instance.getStations().size());
-            activeProblemMetrics.setHash(StationPackingInstanceHasher.hash(instance).toString());
+            newProblemMetrics.setName(instance.getName());
+            newProblemMetrics.setStations(instance.getStations());
+            newProblemMetrics.setNumStations(instance.getStations().size());
+            newProblemMetrics.setHash(StationPackingInstanceHasher.hash(instance).toString());
 
             // Calculate degrees. May be a bit expensive...
             final SimpleGraph<Station, DefaultEdge> constraintGraph = ConstraintGrouper.getConstraintGraph(instance.getDomains(), event.getConstraintManager());
             final NeighborIndex<Station, DefaultEdge> neighborIndex = new NeighborIndex<>(constraintGraph);
-            activeProblemMetrics.setStationToDegree(instance.getStations().stream().collect(Collectors.toMap(Function.identity(), s -> neighborIndex.neighborsOf(s).size())));
+            newProblemMetrics.setStationToDegree(instance.getStations().stream().collect(Collectors.toMap(Function.identity(), s -> neighborIndex.neighborsOf(s).size())));
+            try {
+                metricsLock.lock();
+                if (activeProblemMetrics.containsKey(instance.getName())) {
+                    throw new IllegalStateException("Metrics already in progress for problem " + instance.getName() + "!");
+                }
+                activeProblemMetrics.put(instance.getName(), newProblemMetrics);
+            } finally {
+                metricsLock.unlock();
+            }
         }
 
         @Subscribe
@@ -257,12 +313,19 @@ public class SATFCMetrics {
         }
     }
 
-    // codahale metrics for jvm stuff:
+    // codahale metrics for jvm stuff and for the time spent in each solver of a bundle:
     private final static MetricRegistry registry = new MetricRegistry();
 
-    // log jvm metrics
+    /**
+     * @return the registry holding the jvm metrics and the solver timers
+     */
+    public static MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    // log jvm metrics and solver timers
     public static void report() {
-        log.info("Reporting jvm metrics");
+        log.info("Reporting jvm metrics and solver timers");
         final Slf4jReporter reporter = Slf4jReporter.forRegistry(registry)
                 .outputTo(log)
                 .convertRatesTo(TimeUnit.SECONDS)
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.metrics.events;
+
+/**
+ * Receives solver lifecycle events (see {@link SolverEvents}).
+ * Events are delivered on the thread where they happen, in the middle of solving, so implementations must be thread safe and cheap.
+ */
+public interface ISolverEventSink {
+
+    /**
+     * @param type         what happened
+     * @param source       the component that emitted the event (e.g. a solver nickname)
+     * @param instanceName the name of the instance being solved, or null if unknown at that level
+     */
+    void onEvent(SolverEvents.Type type, String source, String instanceName);
+
+}
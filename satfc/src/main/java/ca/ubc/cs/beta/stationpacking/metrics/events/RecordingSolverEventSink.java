@@ -0,0 +1,86 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.metrics.events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Preconditions;
+
+import lombok.Data;
+
+/**
+ * Keeps the most recent solver events in a fixed size ring buffer, so that the timeline leading up to a slow solve can be dumped after the fact.
+ * Recording an event never blocks: concurrent writers each claim their own slot.
+ */
+public class RecordingSolverEventSink implements ISolverEventSink {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final AtomicReferenceArray<RecordedEvent> events;
+    private final AtomicLong numEvents;
+
+    public RecordingSolverEventSink() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RecordingSolverEventSink(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+        events = new AtomicReferenceArray<>(capacity);
+        numEvents = new AtomicLong();
+    }
+
+    @Override
+    public void onEvent(SolverEvents.Type type, String source, String instanceName) {
+        final long index = numEvents.getAndIncrement();
+        events.set((int) (index % events.length()), new RecordedEvent(System.nanoTime(), Thread.currentThread().getName(), type, source, instanceName));
+    }
+
+    /**
+     * @return the recorded events still in the buffer, oldest first
+     */
+    public List<RecordedEvent> getEvents() {
+        final long end = numEvents.get();
+        final long start = Math.max(0, end - events.length());
+        final List<RecordedEvent> recorded = new ArrayList<>();
+        for (long i = start; i < end; i++) {
+            final RecordedEvent event = events.get((int) (i % events.length()));
+            // a slot can be claimed but not written yet
+            if (event != null) {
+                recorded.add(event);
+            }
+        }
+        return recorded;
+    }
+
+    @Data
+    public static class RecordedEvent {
+        private final long nanoTime;
+        private final String thread;
+        private final SolverEvents.Type type;
+        private final String source;
+        private final String instanceName;
+    }
+
+}
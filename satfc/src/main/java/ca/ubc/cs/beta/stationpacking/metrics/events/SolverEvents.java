@@ -0,0 +1,84 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.metrics.events;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Emits low overhead solver lifecycle events (encoding, native solves, interrupts and cache traffic) to a pluggable sink.
+ * Unlike debug logging, this is cheap enough to leave on in production: when no sink is installed, emitting an event is a single volatile read.
+ * A sink can be installed with {@link #setSink} or by naming its class (which needs a no-arg constructor) in the {@value #SINK_PROPERTY} system property.
+ * A Java Flight Recorder binding only needs to implement {@link ISolverEventSink} and commit a JFR event for each call.
+ */
+@Slf4j
+public class SolverEvents {
+
+    public static final String SINK_PROPERTY = "satfc.eventSink";
+
+    public enum Type {
+        ENCODE_START,
+        ENCODE_END,
+        NATIVE_SOLVE_START,
+        NATIVE_SOLVE_END,
+        INTERRUPT_REQUESTED,
+        // the native solve that was asked to stop has returned
+        INTERRUPT_ACKNOWLEDGED,
+        CACHE_QUERY_START,
+        CACHE_QUERY_END,
+        CACHE_ADD
+    }
+
+    private static volatile ISolverEventSink sink = createSinkFromProperty();
+
+    private static ISolverEventSink createSinkFromProperty() {
+        final String sinkClassName = System.getProperty(SINK_PROPERTY);
+        if (sinkClassName == null) {
+            return null;
+        }
+        try {
+            log.info("Sending solver events to {}", sinkClassName);
+            return (ISolverEventSink) Class.forName(sinkClassName).newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            log.error("Could not create solver event sink " + sinkClassName + ", solver events are disabled", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param newSink the sink to send events to, or null to stop emitting events
+     */
+    public static void setSink(ISolverEventSink newSink) {
+        sink = newSink;
+    }
+
+    public static boolean isEnabled() {
+        return sink != null;
+    }
+
+    public static void emit(Type type, String source, String instanceName) {
+        final ISolverEventSink currentSink = sink;
+        if (currentSink != null) {
+            currentSink.onEvent(type, source, instanceName);
+        }
+    }
+
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.composites;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.math3.distribution.BetaDistribution;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.IConstraintManager;
+import ca.ubc.cs.beta.stationpacking.solvers.componentgrouper.ConstraintGrouper;
+import ca.ubc.cs.beta.stationpacking.utils.StationPackingUtils;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A portfolio that learns which of its branches tend to produce the conclusive answer, and how fast.
+ * For every feature bucket (band, number of stations and size of the largest connected component), we keep track of how often each branch won when it was run, and how long its wins took.
+ * Before each solve, a win probability is drawn for each branch from its Beta posterior (Thompson sampling), and scaled by how much faster than the average winner of the bucket the branch tends to win.
+ * Branches are submitted to the thread pool in decreasing order of that score.
+ * When there are fewer threads than branches, this means that the threads go to the branches that are likely to win quickly. Branches ranked below maxBranches are not started at all.
+ */
+@Slf4j
+public class AdaptivePortfolioComposite extends ParallelNoWaitSolverComposite {
+
+    // Win runtimes are floored at this many seconds, so that a few near instant wins do not give a branch an unbounded advantage
+    private static final double MIN_WIN_RUNTIME = 0.01;
+
+    private final List<String> branchNames;
+    private final int maxBranches;
+    private final Map<FeatureBucket, BranchStatistics[]> statistics;
+    private final RandomGenerator random;
+    private final IConstraintManager constraintManager;
+    // The bucket of an instance is needed before and after it is solved, and finding its components is not free
+    private final LoadingCache<StationPackingInstance, FeatureBucket> buckets;
+
+    /**
+     * @param threadPoolSize    The number of threads to use in the thread pool
+     * @param solvers           A list of ISolverFactory. The order is used to break ties when nothing is known about a bucket yet
+     * @param branchNames       A name for each branch, used when reporting the statistics
+     * @param maxBranches       The maximum number of branches to start on any one instance
+     * @param seed              Seed for the sampling of win probabilities
+     * @param constraintManager Used to find the connected components of instances. If null, every instance is taken to be a single component
+     */
+    public AdaptivePortfolioComposite(int threadPoolSize, List<ISolverFactory> solvers, List<String> branchNames, int maxBranches, long seed, IConstraintManager constraintManager) {
+        super(threadPoolSize, solvers);
+        Preconditions.checkArgument(branchNames.size() == solvers.size(), "Need exactly one name per branch (got %s names for %s branches)", branchNames.size(), solvers.size());
+        Preconditions.checkArgument(maxBranches > 0, "Must run at least one branch");
+        this.branchNames = branchNames;
+        this.maxBranches = maxBranches;
+        this.statistics = new ConcurrentHashMap<>();
+        this.random = new MersenneTwister(seed);
+        this.constraintManager = constraintManager;
+        // Weak keys are compared by identity, and go away with the instance
+        this.buckets = CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(this::bucketOf));
+    }
+
+    public AdaptivePortfolioComposite(int threadPoolSize, List<ISolverFactory> solvers, List<String> branchNames, int maxBranches, long seed) {
+        this(threadPoolSize, solvers, branchNames, maxBranches, seed, null);
+    }
+
+    @Override
+    protected List<Integer> getBranchesToRun(StationPackingInstance aInstance) {
+        final BranchStatistics[] bucketStatistics = getStatistics(buckets.getUnchecked(aInstance));
+        final double bucketMeanWinRuntime = meanWinRuntime(bucketStatistics);
+        final double[] scores = new double[getNumBranches()];
+        synchronized (random) {
+            for (int branch = 0; branch < scores.length; branch++) {
+                scores[branch] = bucketStatistics[branch].sampleWinProbability(random);
+            }
+        }
+        for (int branch = 0; branch < scores.length; branch++) {
+            final double branchMeanWinRuntime = bucketStatistics[branch].meanWinRuntime();
+            // Nothing is known about the speed of a branch that never won (or of any branch, if nothing won yet)
+            if (!Double.isNaN(branchMeanWinRuntime)) {
+                scores[branch] *= Math.max(bucketMeanWinRuntime, MIN_WIN_RUNTIME) / Math.max(branchMeanWinRuntime, MIN_WIN_RUNTIME);
+            }
+        }
+        final List<Integer> branches = IntStream.range(0, scores.length)
+                .boxed()
+                .sorted(Comparator.comparingDouble((Integer branch) -> scores[branch]).reversed())
+                .limit(maxBranches)
+                .collect(Collectors.toList());
+        log.debug("Branch order for instance {} is {}", aInstance.getName(), branches.stream().map(branchNames::get).collect(Collectors.toList()));
+        return branches;
+    }
+
+    @Override
+    protected void onBranchWon(StationPackingInstance aInstance, int branch, double runtime, List<Integer> branchesRun) {
+        final BranchStatistics[] bucketStatistics = getStatistics(buckets.getUnchecked(aInstance));
+        for (int branchRun : branchesRun) {
+            if (branchRun == branch) {
+                bucketStatistics[branchRun].recordWin(runtime);
+            } else {
+                bucketStatistics[branchRun].recordLoss();
+            }
+        }
+    }
+
+    @Override
+    protected void onNoBranchWon(StationPackingInstance aInstance, List<Integer> branchesRun) {
+        final BranchStatistics[] bucketStatistics = getStatistics(buckets.getUnchecked(aInstance));
+        for (int branchRun : branchesRun) {
+            bucketStatistics[branchRun].recordLoss();
+        }
+    }
+
+    private FeatureBucket bucketOf(StationPackingInstance aInstance) {
+        final int largestComponent;
+        if (constraintManager != null) {
+            largestComponent = new ConstraintGrouper().group(aInstance, constraintManager).stream().mapToInt(Set::size).max().orElse(0);
+        } else {
+            largestComponent = aInstance.getStations().size();
+        }
+        return FeatureBucket.of(aInstance, largestComponent);
+    }
+
+    private BranchStatistics[] getStatistics(FeatureBucket bucket) {
+        return statistics.computeIfAbsent(bucket, b -> {
+            final BranchStatistics[] branchStatistics = new BranchStatistics[getNumBranches()];
+            for (int i = 0; i < branchStatistics.length; i++) {
+                branchStatistics[i] = new BranchStatistics();
+            }
+            return branchStatistics;
+        });
+    }
+
+    /**
+     * @return The mean runtime of the wins of every branch of a bucket, or NaN if there were none
+     */
+    private static double meanWinRuntime(BranchStatistics[] bucketStatistics) {
+        int wins = 0;
+        double winRuntime = 0;
+        for (BranchStatistics branchStatistics : bucketStatistics) {
+            synchronized (branchStatistics) {
+                wins += branchStatistics.wins;
+                winRuntime += branchStatistics.winRuntime;
+            }
+        }
+        return wins > 0 ? winRuntime / wins : Double.NaN;
+    }
+
+    /**
+     * @return A copy of the win statistics, keyed by bucket and then by branch name
+     */
+    public Map<FeatureBucket, Map<String, String>> getStatistics() {
+        return statistics.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> IntStream.range(0, getNumBranches())
+                .boxed()
+                .collect(Collectors.toMap(branchNames::get, branch -> entry.getValue()[branch].toString()))));
+    }
+
+    @Override
+    public void notifyShutdown() {
+        log.info("Portfolio win statistics: {}", getStatistics());
+        super.notifyShutdown();
+    }
+
+    /**
+     * Instances are grouped by band, by (log2 of the) number of stations and by (log2 of the) number of stations in their largest connected component. Branches tend to win or lose consistently within a bucket.
+     * The component size matters when the portfolio is above the connected components decorator, since most of the work of each branch then goes into the largest component.
+     */
+    @Data
+    public static class FeatureBucket {
+        private final String band;
+        private final int sizeBucket;
+        private final int componentSizeBucket;
+
+        public static FeatureBucket of(StationPackingInstance aInstance, int largestComponent) {
+            final int maxChannel = aInstance.getAllChannels().stream().mapToInt(Integer::intValue).max().orElse(StationPackingUtils.UHFmax);
+            final String band;
+            if (maxChannel <= StationPackingUtils.LVHFmax) {
+                band = "LVHF";
+            } else if (maxChannel <= StationPackingUtils.UVHFmax) {
+                band = "HVHF";
+            } else {
+                band = "UHF";
+            }
+            final int numStations = aInstance.getStations().size();
+            return new FeatureBucket(band, log2Bucket(numStations), log2Bucket(largestComponent));
+        }
+
+        private static int log2Bucket(int size) {
+            return 32 - Integer.numberOfLeadingZeros(size);
+        }
+    }
+
+    /**
+     * Wins and losses of a single branch within a bucket, and the total runtime of its wins. A branch loses when it was run, but another branch produced the answer, or no branch did.
+     */
+    private static class BranchStatistics {
+
+        private int wins = 0;
+        private int losses = 0;
+        private double winRuntime = 0;
+
+        synchronized double sampleWinProbability(RandomGenerator random) {
+            return new BetaDistribution(random, wins + 1, losses + 1).sample();
+        }
+
+        synchronized void recordWin(double runtime) {
+            wins++;
+            winRuntime += runtime;
+        }
+
+        synchronized void recordLoss() {
+            losses++;
+        }
+
+        /**
+         * @return The mean runtime of the wins of the branch, or NaN if it never won
+         */
+        synchronized double meanWinRuntime() {
+            return wins > 0 ? winRuntime / wins : Double.NaN;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "wins=" + wins + ", losses=" + losses + ", meanWinRuntime=" + meanWinRuntime();
+        }
+    }
+
+}
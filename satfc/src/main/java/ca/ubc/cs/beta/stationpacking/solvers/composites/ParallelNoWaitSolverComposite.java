@@ -31,6 +31,8 @@ import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import com.google.common.collect.Queues;
 import com.google.common.util.concurrent.FutureCallback;
@@ -41,6 +43,7 @@ import com.google.common.util.concurrent.MoreExecutors;
 
 import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFactory;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.metrics.events.SolverEvents;
 import ca.ubc.cs.beta.stationpacking.solvers.ISolver;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
 import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
@@ -92,15 +95,19 @@ public class ParallelNoWaitSolverComposite implements ISolver {
         final ITerminationCriterion.IInterruptibleTerminationCriterion interruptibleCriterion = new InterruptibleTerminationCriterion(aTerminationCriterion);
         //Semaphore holding how many components are done working on the current instance.
         final Semaphore workDone = new Semaphore(0);
+        final List<Integer> branchesToRun = getBranchesToRun(aInstance);
         //Number of completed solver processes we need before terminating with a timeout.
-        final int numWorkToDo = listOfSolverQueues.size();
+        final int numWorkToDo = branchesToRun.size();
         final AtomicReference<SolverResult> resultReference = new AtomicReference<>();
         // We maintain a list of all the solvers current solving the problem so we know who to interrupt via the interrupt method
         final List<ISolver> solversSolvingCurrentProblem = Collections.synchronizedList(new ArrayList<>());
+        // Branches that actually got to solve the instance (some of branchesToRun might be skipped because the problem was already solved)
+        final List<Integer> branchesStarted = Collections.synchronizedList(new ArrayList<>());
         final List<Future<Void>> futures = new ArrayList<>();
         try {
             // Submit one job per each solver in the portfolio
-            listOfSolverQueues.forEach(solverQueue -> {
+            branchesToRun.forEach(branch -> {
+                final BlockingQueue<ISolver> solverQueue = listOfSolverQueues.get(branch);
                 final ListenableFuture<Void> future = executorService.submit(() -> {
                     log.debug("Job starting...");
                     if (!interruptibleCriterion.hasToStop()) {
@@ -110,6 +117,7 @@ public class ParallelNoWaitSolverComposite implements ISolver {
                         }
                         // During this block (while you are added to this list) it is safe for you to be interrupted via the interrupt method
                         solversSolvingCurrentProblem.add(solver);
+                        branchesStarted.add(branch);
                         log.debug("Begin solve {}", solver.getClass().getSimpleName());
                         final SolverResult solverResult = solver.solve(aInstance, interruptibleCriterion, aSeed);
                         log.debug("End solve {}", solver.getClass().getSimpleName());
@@ -117,9 +125,17 @@ public class ParallelNoWaitSolverComposite implements ISolver {
                         // Interrupt if the result is conclusive OR if the timeout has expired. Only the first one will go through this block
                         if ((solverResult.isConclusive() || interruptibleCriterion.hasToStop()) && interruptibleCriterion.interrupt()) {
                             log.debug("Found a conclusive result, interrupting other concurrent solvers");
+                            SolverEvents.emit(SolverEvents.Type.INTERRUPT_REQUESTED, "portfolio branch " + branch, aInstance.getName());
                             synchronized (solversSolvingCurrentProblem) {
                                 solversSolvingCurrentProblem.forEach(ISolver::interrupt);
                             }
+                            if (solverResult.isConclusive()) {
+                                final List<Integer> branchesRun;
+                                synchronized (branchesStarted) {
+                                    branchesRun = new ArrayList<>(branchesStarted);
+                                }
+                                onBranchWon(aInstance, branch, solverResult.getRuntime(), branchesRun);
+                            }
                             // Signal the initial thread that it can move forwards
                             log.debug("Signalling the blocked thread to wake up!");
                             resultReference.set(solverResult);
@@ -131,6 +147,9 @@ public class ParallelNoWaitSolverComposite implements ISolver {
                         if (!solverQueue.offer(solver)) {
                             throw new IllegalStateException("Wasn't able to return solver to the queue!");
                         }
+                    } else {
+                        // The problem was solved (or timed out) before this branch even got a thread
+                        workDone.release(1);
                     }
                     log.debug("Job ending...");
                     return null;
@@ -162,13 +181,51 @@ public class ParallelNoWaitSolverComposite implements ISolver {
             checkForErrors();
             // Might as well cancel any jobs that haven't run yet. We don't interrupt them (via Thread interrupt) if they have already started, because we have our own interrupt system
             futures.forEach(future -> future.cancel(false));
+            final SolverResult result = resultReference.get();
+            if (result == null || !result.isConclusive()) {
+                final List<Integer> branchesRun;
+                synchronized (branchesStarted) {
+                    branchesRun = new ArrayList<>(branchesStarted);
+                }
+                onNoBranchWon(aInstance, branchesRun);
+            }
             log.debug("Returning now");
-            return resultReference.get() == null ? SolverResult.createTimeoutResult(watch.getElapsedTime()) : SolverResult.relabelTime(resultReference.get(), watch.getElapsedTime());
+            return result == null ? SolverResult.createTimeoutResult(watch.getElapsedTime()) : SolverResult.relabelTime(result, watch.getElapsedTime());
         } catch (InterruptedException e) {
             throw new RuntimeException("Interrupted while running parallel job", e);
         }
     }
 
+    /**
+     * @return The indices of the branches (in the order given to the constructor) that should be run on this instance, in the order they should be submitted to the thread pool.
+     * By default, every branch is run, in priority order.
+     */
+    protected List<Integer> getBranchesToRun(StationPackingInstance aInstance) {
+        return IntStream.range(0, listOfSolverQueues.size()).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * Called (exactly once per instance) when a branch produces the conclusive answer that will be returned
+     * @param aInstance The instance that was solved
+     * @param branch The index of the winning branch
+     * @param runtime The time the winning branch took to produce its answer
+     * @param branchesRun The branches that started solving this instance (including the winner). Branches that were skipped because the instance was already solved are not included
+     */
+    protected void onBranchWon(StationPackingInstance aInstance, int branch, double runtime, List<Integer> branchesRun) {
+    }
+
+    /**
+     * Called (exactly once per instance) when no branch produced a conclusive answer, e.g. because they all timed out
+     * @param aInstance The instance that was not solved
+     * @param branchesRun The branches that started solving this instance
+     */
+    protected void onNoBranchWon(StationPackingInstance aInstance, List<Integer> branchesRun) {
+    }
+
+    protected int getNumBranches() {
+        return listOfSolverQueues.size();
+    }
+
     /**
      * We want a fail-fast policy, but java executors aren't going to throw the exception on the main thread.
      * We can't call Future.get() and check for errors, because that might block.
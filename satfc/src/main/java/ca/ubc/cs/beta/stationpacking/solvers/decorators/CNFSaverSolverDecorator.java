@@ -37,10 +37,10 @@ import ca.ubc.cs.beta.stationpacking.solvers.sat.base.CNF;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.SATCompressor;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.SATEncoder;
 import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+import ca.ubc.cs.beta.stationpacking.utils.IRedisStore;
 import ca.ubc.cs.beta.stationpacking.utils.RedisUtils;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
-import redis.clients.jedis.Jedis;
 
 /**
  * Solver decorator that saves CNFs on solve query.
@@ -128,14 +128,14 @@ public class CNFSaverSolverDecorator extends ASolverDecorator {
         private final ICNFSaver saver;
 
         @NonNull
-        private final Jedis jedis;
+        private final IRedisStore redis;
         @NonNull
         private final String queueName;
 
         @Override
         public void saveCNF(String instanceName, String CNFName, String CNFContents) {
             final String indexKey = RedisUtils.makeKey(queueName, RedisUtils.CNF_INDEX_QUEUE);
-            jedis.rpush(indexKey, Joiner.on(',').join(CNFName, instanceName));
+            redis.rpush(indexKey, Joiner.on(',').join(CNFName, instanceName));
             saver.saveCNF(instanceName, CNFName, CNFContents);
         }
 
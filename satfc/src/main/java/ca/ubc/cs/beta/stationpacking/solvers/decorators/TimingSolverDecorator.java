@@ -0,0 +1,74 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.decorators;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Timer;
+
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.solvers.ISolver;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+
+/**
+ * Records the time spent in the decorated solver, excluding the time spent in nested timing decorators (i.e. further down the chain) on the same thread.
+ * When every link of a chain is wrapped in a timing decorator, each timer therefore measures the time of a single link.
+ * Time spent waiting on other threads (e.g. in parallel composites) counts as time of the link that waits.
+ */
+public class TimingSolverDecorator extends ASolverDecorator {
+
+    // one entry per timing decorator currently solving on this thread (innermost first), holding the time in nanoseconds spent in its nested timing decorators so far
+    private static final ThreadLocal<Deque<long[]>> nestedTimes = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final Timer timer;
+
+    /**
+     * @param aSolver - decorated ISolver.
+     * @param timer   - timer in which to record the time of the decorated solver
+     */
+    public TimingSolverDecorator(ISolver aSolver, Timer timer) {
+        super(aSolver);
+        this.timer = timer;
+    }
+
+    @Override
+    public SolverResult solve(StationPackingInstance aInstance, ITerminationCriterion aTerminationCriterion, long aSeed) {
+        final Deque<long[]> stack = nestedTimes.get();
+        final long[] nestedTime = new long[1];
+        stack.push(nestedTime);
+        final long start = System.nanoTime();
+        try {
+            return fDecoratedSolver.solve(aInstance, aTerminationCriterion, aSeed);
+        } finally {
+            final long elapsed = System.nanoTime() - start;
+            stack.pop();
+            timer.update(Math.max(0, elapsed - nestedTime[0]), TimeUnit.NANOSECONDS);
+            if (!stack.isEmpty()) {
+                stack.peek()[0] += elapsed;
+            }
+        }
+    }
+
+}
@@ -26,9 +26,16 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.concurrent.CountDownLatch;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.GZIPOutputStream;
 
@@ -46,17 +53,22 @@ import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.util.EntityUtils;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.base.Preconditions;
 
+import ca.ubc.cs.beta.stationpacking.base.Station;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
 import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinate;
-import ca.ubc.cs.beta.stationpacking.cache.ICacher;
+import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinateRouter;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheBatchResult;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.metrics.events.SolverEvents;
 import ca.ubc.cs.beta.stationpacking.polling.IPollingService;
 import ca.ubc.cs.beta.stationpacking.polling.ProblemIncrementor;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
-import ca.ubc.cs.beta.stationpacking.solvers.decorators.ISATFCInterruptible;
 import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
 import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
 import lombok.AllArgsConstructor;
@@ -71,31 +83,42 @@ import lombok.extern.slf4j.Slf4j;
  * Not threadsafe!
  */
 @Slf4j
-public class ContainmentCacheProxy implements ICacher, ISATFCInterruptible {
+public class ContainmentCacheProxy implements IContainmentCacheClient {
 
     // if the text is smaller than this length in bytes, then compression probably isn't worth the trouble
     public static final int MIN_GZIP_LENGTH = 860;
+    // content type of the binary protocol
+    public static final String SMILE_CONTENT = "application/x-jackson-smile";
     public static Date lastSuccessfulCommunication;
 
     private final CacheCoordinate coordinate;
     private final CloseableHttpAsyncClient httpClient;
     private final String SAT_URL;
     private final String UNSAT_URL;
+    private final String BATCH_URL;
     private final String CACHE_URL;
     private final AtomicReference<Future<HttpResponse>> activeFuture;
     private final int numAttempts;
     private final boolean noErrorOnServerUnavailable;
+    private final boolean binaryProtocol;
     private final ProblemIncrementor problemIncrementor;
 
-    public ContainmentCacheProxy(@NonNull String baseServerURL, @NonNull CacheCoordinate coordinate, int numAttempts, boolean noErrorOnServerUnavailable, IPollingService pollingService, @NonNull CloseableHttpAsyncClient httpClient) {
+    /**
+     * @param serverURLs base URL of the server, or a comma separated list of base URLs when the cache is split over several servers (in which case the server that owns the coordinate is used)
+     * @param binaryProtocol if true, talk to the server in Smile with bitset encoded domains (see {@link BinaryContainmentCacheRequest}) instead of (gzipped) json
+     */
+    public ContainmentCacheProxy(@NonNull String serverURLs, @NonNull CacheCoordinate coordinate, int numAttempts, boolean noErrorOnServerUnavailable, boolean binaryProtocol, IPollingService pollingService, @NonNull CloseableHttpAsyncClient httpClient) {
         this.httpClient = httpClient;
+        final String baseServerURL = CacheCoordinateRouter.fromServerURLs(serverURLs).route(coordinate);
         SAT_URL = baseServerURL + "/v1/cache/query/SAT";
         UNSAT_URL = baseServerURL + "/v1/cache/query/UNSAT";
+        BATCH_URL = baseServerURL + "/v1/cache/query/batch";
         CACHE_URL = baseServerURL + "/v1/cache";
         this.coordinate = coordinate;
         activeFuture = new AtomicReference<>();
         this.numAttempts = numAttempts;
         this.noErrorOnServerUnavailable = noErrorOnServerUnavailable;
+        this.binaryProtocol = binaryProtocol;
         problemIncrementor = new ProblemIncrementor(pollingService, this);
     }
 
@@ -118,38 +141,159 @@ public class ContainmentCacheProxy implements ICacher, ISATFCInterruptible {
         private SolverResult result;
     }
 
+    /**
+     * Compact form of a {@link ContainmentCacheRequest}, sent in Smile when using the binary protocol.
+     * Instead of a map from station to a list of channels, each station's domain is a bitset of its channels in a single long.
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class BinaryContainmentCacheRequest {
+
+        private int[] stations;
+        // bit c of domains[i] is set if channel c is in the domain of stations[i]
+        private long[] domains;
+        // previous channel of stations[i], or 0 if it has none
+        private int[] previousChannels;
+        private Map<String, Object> metadata;
+        private CacheCoordinate coordinate;
+        private SolverResult result;
+
+        public static BinaryContainmentCacheRequest of(ContainmentCacheRequest request) {
+            final StationPackingInstance instance = request.getInstance();
+            final int[] stations = new int[instance.getStations().size()];
+            final long[] domains = new long[stations.length];
+            final int[] previousChannels = new int[stations.length];
+            int i = 0;
+            for (Map.Entry<Station, Set<Integer>> entry : instance.getDomains().entrySet()) {
+                stations[i] = entry.getKey().getID();
+                for (int channel : entry.getValue()) {
+                    Preconditions.checkState(channel >= 0 && channel < Long.SIZE, "Channel %s of station %s can't be encoded in a bitset domain", channel, entry.getKey());
+                    domains[i] |= 1L << channel;
+                }
+                previousChannels[i] = instance.getPreviousAssignment().getOrDefault(entry.getKey(), 0);
+                i++;
+            }
+            return new BinaryContainmentCacheRequest(stations, domains, previousChannels, instance.getMetadata(), request.getCoordinate(), request.getResult());
+        }
+
+        public ContainmentCacheRequest toRequest() {
+            final Map<Station, Set<Integer>> instanceDomains = new HashMap<>();
+            final Map<Station, Integer> previousAssignment = new HashMap<>();
+            for (int i = 0; i < stations.length; i++) {
+                final Station station = new Station(stations[i]);
+                final Set<Integer> domain = new HashSet<>();
+                for (long bits = domains[i]; bits != 0; bits &= bits - 1) {
+                    domain.add(Long.numberOfTrailingZeros(bits));
+                }
+                instanceDomains.put(station, domain);
+                if (previousChannels[i] != 0) {
+                    previousAssignment.put(station, previousChannels[i]);
+                }
+            }
+            final StationPackingInstance instance = metadata != null ? new StationPackingInstance(instanceDomains, previousAssignment, metadata) : new StationPackingInstance(instanceDomains, previousAssignment);
+            return new ContainmentCacheRequest(instance, coordinate, result);
+        }
+    }
+
+    /**
+     * Object used to represent a batch of cache lookup requests, all against the same coordinate
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class ContainmentCacheBatchRequest {
+        private List<ContainmentCacheBatchQuery> queries;
+        private CacheCoordinate coordinate;
+    }
+
+    /**
+     * A single lookup of a batch. A query of type BOTH looks for a SAT superset and for an UNSAT subset of the instance
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class ContainmentCacheBatchQuery {
+        private StationPackingInstance instance;
+        private QueryType type;
+
+        @JsonIgnore
+        public boolean isSATQuery() {
+            return !QueryType.UNSAT.equals(type);
+        }
+
+        @JsonIgnore
+        public boolean isUNSATQuery() {
+            return !QueryType.SAT.equals(type);
+        }
+    }
+
+    public enum QueryType {
+        SAT, UNSAT, BOTH
+    }
+
+    @Override
     public ContainmentCacheSATResult proveSATBySuperset(StationPackingInstance instance, ITerminationCriterion terminationCriterion) {
         try {
             problemIncrementor.scheduleTermination(terminationCriterion);
-            return makePost(SAT_URL, new ContainmentCacheRequest(instance, coordinate), ContainmentCacheSATResult.class, ContainmentCacheSATResult.failure(), terminationCriterion, numAttempts);
+            SolverEvents.emit(SolverEvents.Type.CACHE_QUERY_START, "SAT cache", instance.getName());
+            return makePost(SAT_URL, new ContainmentCacheRequest(instance, coordinate), instance.getName(), ContainmentCacheSATResult.class, ContainmentCacheSATResult.failure(), terminationCriterion, numAttempts);
         } finally {
+            SolverEvents.emit(SolverEvents.Type.CACHE_QUERY_END, "SAT cache", instance.getName());
             problemIncrementor.jobDone();
         }
     }
 
+    @Override
     public ContainmentCacheUNSATResult proveUNSATBySubset(StationPackingInstance instance, ITerminationCriterion terminationCriterion) {
         try {
             problemIncrementor.scheduleTermination(terminationCriterion);
-            return makePost(UNSAT_URL, new ContainmentCacheRequest(instance, coordinate), ContainmentCacheUNSATResult.class, ContainmentCacheUNSATResult.failure(), terminationCriterion, numAttempts);
+            SolverEvents.emit(SolverEvents.Type.CACHE_QUERY_START, "UNSAT cache", instance.getName());
+            return makePost(UNSAT_URL, new ContainmentCacheRequest(instance, coordinate), instance.getName(), ContainmentCacheUNSATResult.class, ContainmentCacheUNSATResult.failure(), terminationCriterion, numAttempts);
+        } finally {
+            SolverEvents.emit(SolverEvents.Type.CACHE_QUERY_END, "UNSAT cache", instance.getName());
+            problemIncrementor.jobDone();
+        }
+    }
+
+    /**
+     * Answer many lookups with a single web request. The server runs the lookups in parallel.
+     * @return the results of the queries, in the same order as the queries
+     */
+    @Override
+    public ContainmentCacheBatchResult queryBatch(List<ContainmentCacheBatchQuery> queries, ITerminationCriterion terminationCriterion) {
+        if (queries.isEmpty()) {
+            return ContainmentCacheBatchResult.failure(0);
+        }
+        final String description = "batch of " + queries.size() + " queries";
+        try {
+            problemIncrementor.scheduleTermination(terminationCriterion);
+            SolverEvents.emit(SolverEvents.Type.CACHE_QUERY_START, "batch cache", description);
+            final ContainmentCacheBatchResult result = makePost(BATCH_URL, new ContainmentCacheBatchRequest(queries, coordinate), description, ContainmentCacheBatchResult.class, ContainmentCacheBatchResult.failure(queries.size()), terminationCriterion, numAttempts);
+            Preconditions.checkState(result.getSATResults().size() == queries.size() && result.getUNSATResults().size() == queries.size(), "Server answered %s queries with %s results", queries.size(), result.getSATResults().size());
+            return result;
         } finally {
+            SolverEvents.emit(SolverEvents.Type.CACHE_QUERY_END, "batch cache", description);
             problemIncrementor.jobDone();
         }
     }
 
     @Override
     public void cacheResult(StationPackingInstance instance, SolverResult result, ITerminationCriterion terminationCriterion) {
-        makePost(CACHE_URL, new ContainmentCacheRequest(instance, coordinate, result), null, null, terminationCriterion, numAttempts);
+        SolverEvents.emit(SolverEvents.Type.CACHE_ADD, "cache", instance.getName());
+        makePost(CACHE_URL, new ContainmentCacheRequest(instance, coordinate, result), instance.getName(), null, null, terminationCriterion, numAttempts);
     }
 
-    private <T> T makePost(String URL, ContainmentCacheRequest request, Class<T> responseClass, T failure, ITerminationCriterion terminationCriterion, int remainingAttempts) {
+    private <T> T makePost(String URL, Object request, String description, Class<T> responseClass, T failure, ITerminationCriterion terminationCriterion, int remainingAttempts) {
         try {
-            return makePost(URL, request, responseClass, failure, terminationCriterion);
+            return makePost(URL, request, description, responseClass, failure, terminationCriterion);
         } catch (Exception e) {
             log.error("Error making a web request", e);
             int newRemainingAttempts = remainingAttempts - 1;
             if (newRemainingAttempts > 0) {
                 log.error("Retrying web request. Request will be retried {} more time(s)", newRemainingAttempts);
-                return makePost(URL, request, responseClass, failure, terminationCriterion, newRemainingAttempts);
+                return makePost(URL, request, description, responseClass, failure, terminationCriterion, newRemainingAttempts);
             } else {
                 log.error("The retry quota for this web request has been exceeded");
                 if (noErrorOnServerUnavailable) {
@@ -162,82 +306,93 @@ public class ContainmentCacheProxy implements ICacher, ISATFCInterruptible {
         }
     }
 
-    private <T> T makePost(String URL, ContainmentCacheRequest request, Class<T> responseClass, T failure, ITerminationCriterion terminationCriterion) {
+    private <T> T makePost(String URL, Object request, String description, Class<T> responseClass, T failure, ITerminationCriterion terminationCriterion) {
         final UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(URL);
         final String uriString = builder.build().toUriString();
         final HttpPost httpPost = new HttpPost(uriString);
-        log.debug("Making a request to the cache server for instance " + request.getInstance().getName() + " " + uriString);
-        final String jsonRequest = JSONUtils.toString(request);
-        // possibly do gzip compression
-        if (jsonRequest.length() > MIN_GZIP_LENGTH) {
-            final ByteArrayOutputStream arr = new ByteArrayOutputStream();
+        log.debug("Making a request to the cache server for " + description + " " + uriString);
+        if (binaryProtocol) {
+            // single instance requests get the compact domain encoding, anything else is sent as is
+            final Object binaryRequest = request instanceof ContainmentCacheRequest ? BinaryContainmentCacheRequest.of((ContainmentCacheRequest) request) : request;
+            final ByteArrayEntity postEntity;
             try {
-                final OutputStream zipper = new GZIPOutputStream(arr);
-                zipper.write(jsonRequest.getBytes());
-                zipper.close();
-            } catch (IOException e) {
-                throw new RuntimeException("Error compressing json http post request to gzip", e);
+                postEntity = new ByteArrayEntity(JSONUtils.getSmileMapper().writeValueAsBytes(binaryRequest));
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException("Error encoding http post request to smile", e);
             }
-            final ByteArrayEntity postEntity = new ByteArrayEntity(arr.toByteArray());
-            postEntity.setContentEncoding("gzip");
-            postEntity.setContentType("application/json");
+            postEntity.setContentType(SMILE_CONTENT);
             httpPost.setEntity(postEntity);
+            httpPost.addHeader("Accept", SMILE_CONTENT);
         } else {
-            httpPost.setEntity(new StringEntity(jsonRequest, ContentType.APPLICATION_JSON));
+            final String jsonRequest = JSONUtils.toString(request);
+            // possibly do gzip compression
+            if (jsonRequest.length() > MIN_GZIP_LENGTH) {
+                final ByteArrayOutputStream arr = new ByteArrayOutputStream();
+                try {
+                    final OutputStream zipper = new GZIPOutputStream(arr);
+                    zipper.write(jsonRequest.getBytes());
+                    zipper.close();
+                } catch (IOException e) {
+                    throw new RuntimeException("Error compressing json http post request to gzip", e);
+                }
+                final ByteArrayEntity postEntity = new ByteArrayEntity(arr.toByteArray());
+                postEntity.setContentEncoding("gzip");
+                postEntity.setContentType("application/json");
+                httpPost.setEntity(postEntity);
+            } else {
+                httpPost.setEntity(new StringEntity(jsonRequest, ContentType.APPLICATION_JSON));
+            }
+            httpPost.addHeader("Accept-Encoding", "gzip");
         }
-        httpPost.addHeader("Accept-Encoding", "gzip");
         if (terminationCriterion.hasToStop()) {
             return failure;
         }
         try {
-            final CountDownLatch latch = new CountDownLatch(1);
-            final AtomicReference<HttpResponse> httpResponse = new AtomicReference<>();
-            final AtomicReference<Exception> exception = new AtomicReference<>();
-            activeFuture.set(httpClient.execute(httpPost, new FutureCallback<HttpResponse>() {
+            final Future<HttpResponse> future = httpClient.execute(httpPost, new FutureCallback<HttpResponse>() {
                 @Override
                 public void completed(HttpResponse result) {
                     log.trace("Back from making web request");
-                    httpResponse.set(result);
                     lastSuccessfulCommunication = new Date();
-                    latch.countDown();
                 }
 
                 @Override
                 public void failed(Exception ex) {
-                    exception.set(ex);
-                    latch.countDown();
+                    // Reported by the future
                 }
 
                 @Override
                 public void cancelled() {
                     log.debug("Web request aborted");
-                    latch.countDown();
                 }
-            }));
+            });
+            activeFuture.set(future);
             if (terminationCriterion.hasToStop()) {
                 return failure;
             }
-            boolean timedOut;
+            final HttpResponse httpResponse;
             try {
                 double waitTime = FastMath.max(0, terminationCriterion.getRemainingTime());
                 long waitTimeInMs = (long) (1000 * waitTime);
-                timedOut = !latch.await(waitTimeInMs, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-                throw new RuntimeException("Interrupted while waiting for countdown latch", e);
-            }
-            if (timedOut) {
+                httpResponse = future.get(waitTimeInMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
                 log.debug("Timed out while waiting for server to respond");
                 interrupt();
-            }
-            final Exception ex = exception.get();
-            if (ex != null) {
-                throw new RuntimeException("Error making web request", ex);
+                return failure;
+            } catch (CancellationException e) {
+                return failure;
+            } catch (InterruptedException e) {
+                throw new RuntimeException("Interrupted while waiting for server to respond", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error making web request", e.getCause());
             }
             if (terminationCriterion.hasToStop()) {
                 return failure;
             }
             if (responseClass != null) {
-                HttpEntity responseEntity = httpResponse.get().getEntity();
+                HttpEntity responseEntity = httpResponse.getEntity();
+                if (binaryProtocol) {
+                    return JSONUtils.getSmileMapper().readValue(EntityUtils.toByteArray(responseEntity), responseClass);
+                }
                 // Check to see if the response is compressed using gzip
                 final Header ceheader = responseEntity.getContentEncoding();
                 if (ceheader != null && Arrays.stream(ceheader.getElements()).anyMatch(codec -> codec.getName().equalsIgnoreCase("gzip"))) {
@@ -254,6 +409,7 @@ public class ContainmentCacheProxy implements ICacher, ISATFCInterruptible {
         }
     }
 
+    @Override
     public void interrupt() {
         final Future<HttpResponse> future = activeFuture.getAndSet(null);
         if (future != null) {
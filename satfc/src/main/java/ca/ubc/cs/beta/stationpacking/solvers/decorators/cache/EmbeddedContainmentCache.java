@@ -0,0 +1,110 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.decorators.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.EmbeddedCacheLocator;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheBatchResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.ISatisfiabilityCache;
+import ca.ubc.cs.beta.stationpacking.cache.containment.transformer.InstanceAndResult;
+import ca.ubc.cs.beta.stationpacking.metrics.events.SolverEvents;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchQuery;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A containment cache living in this JVM, answering for a single cache coordinate like a {@link ContainmentCacheProxy} would, but without a SATFCServer.
+ * Queries are answered directly from the cache (so they can't be interrupted, but they don't need to be), and results are screened and added right away.
+ */
+@Slf4j
+@ThreadSafe
+public class EmbeddedContainmentCache implements IContainmentCacheClient {
+
+    private final EmbeddedCacheLocator locator;
+    private final CacheCoordinate coordinate;
+    private final ISatisfiabilityCache cache;
+
+    public EmbeddedContainmentCache(EmbeddedCacheLocator locator, CacheCoordinate coordinate, ISatisfiabilityCache cache) {
+        this.locator = locator;
+        this.coordinate = coordinate;
+        this.cache = cache;
+    }
+
+    @Override
+    public ContainmentCacheSATResult proveSATBySuperset(StationPackingInstance instance, ITerminationCriterion terminationCriterion) {
+        return cache.proveSATBySuperset(instance);
+    }
+
+    @Override
+    public ContainmentCacheUNSATResult proveUNSATBySubset(StationPackingInstance instance, ITerminationCriterion terminationCriterion) {
+        return cache.proveUNSATBySubset(instance);
+    }
+
+    @Override
+    public ContainmentCacheBatchResult queryBatch(List<ContainmentCacheBatchQuery> queries, ITerminationCriterion terminationCriterion) {
+        final List<ContainmentCacheSATResult> SATResults = new ArrayList<>(queries.size());
+        final List<ContainmentCacheUNSATResult> UNSATResults = new ArrayList<>(queries.size());
+        for (ContainmentCacheBatchQuery query : queries) {
+            SATResults.add(query.isSATQuery() ? cache.proveSATBySuperset(query.getInstance()) : ContainmentCacheSATResult.failure());
+            UNSATResults.add(query.isUNSATQuery() ? cache.proveUNSATBySubset(query.getInstance()) : ContainmentCacheUNSATResult.failure());
+        }
+        return new ContainmentCacheBatchResult(SATResults, UNSATResults);
+    }
+
+    @Override
+    public void cacheResult(StationPackingInstance instance, SolverResult result, ITerminationCriterion criterion) {
+        SolverEvents.emit(SolverEvents.Type.CACHE_ADD, "cache", instance.getName());
+        final InstanceAndResult transformed = locator.getTransformer().transform(instance, result);
+        if (transformed == null || !locator.getScreener().shouldCache(coordinate, transformed.getInstance(), transformed.getResult())) {
+            return;
+        }
+        if (transformed.getResult().getResult().equals(SATResult.SAT)) {
+            final ContainmentCacheSATEntry entry = new ContainmentCacheSATEntry(transformed.getResult().getAssignment(), cache.getPermutation());
+            entry.setKey(locator.nextKey(coordinate, SATResult.SAT));
+            cache.add(entry);
+        } else if (transformed.getResult().getResult().equals(SATResult.UNSAT)) {
+            final ContainmentCacheUNSATEntry entry = new ContainmentCacheUNSATEntry(transformed.getInstance().getDomains(), cache.getPermutation());
+            entry.setKey(locator.nextKey(coordinate, SATResult.UNSAT));
+            cache.add(entry);
+        } else {
+            throw new IllegalStateException("Tried adding a result that was neither SAT or UNSAT");
+        }
+        log.debug("Added an entry to the embedded cache with coordinate {}", coordinate);
+    }
+
+    @Override
+    public void interrupt() {
+        // Nothing to do, queries don't wait on anything
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.decorators.cache;
+
+import java.util.List;
+
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.ICacher;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheBatchResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.ISATFCInterruptible;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchQuery;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+
+/**
+ * The containment cache of a single cache coordinate, as seen by the solvers: either a SATFCServer (see {@link ContainmentCacheProxy}) or a cache living in this JVM (see {@link EmbeddedContainmentCache})
+ */
+public interface IContainmentCacheClient extends ICacher, ISATFCInterruptible {
+
+    ContainmentCacheSATResult proveSATBySuperset(StationPackingInstance instance, ITerminationCriterion terminationCriterion);
+
+    ContainmentCacheUNSATResult proveUNSATBySubset(StationPackingInstance instance, ITerminationCriterion terminationCriterion);
+
+    /**
+     * @return the results of the queries, in the same order as the queries
+     */
+    ContainmentCacheBatchResult queryBatch(List<ContainmentCacheBatchQuery> queries, ITerminationCriterion terminationCriterion);
+
+}
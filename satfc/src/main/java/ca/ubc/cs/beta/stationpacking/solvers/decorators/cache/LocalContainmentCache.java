@@ -0,0 +1,97 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.decorators.cache;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableBiMap;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.SatisfiabilityCacheFactory;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.ISatisfiabilityCache;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.utils.StationPackingUtils;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A small in-process containment cache of recent results for one cache coordinate.
+ * It holds at most capacity SAT entries and capacity UNSAT entries; when full, the oldest entry is dropped.
+ */
+@ThreadSafe
+public class LocalContainmentCache {
+
+    private final ISatisfiabilityCache cache;
+    private final int capacity;
+    private final Queue<ContainmentCacheSATEntry> SATEntries;
+    private final Queue<ContainmentCacheUNSATEntry> UNSATEntries;
+
+    public LocalContainmentCache(ImmutableBiMap<Station, Integer> permutation, int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Local cache capacity must be positive");
+        this.cache = new SatisfiabilityCacheFactory(1, 0).create(permutation);
+        this.capacity = capacity;
+        SATEntries = new ArrayDeque<>();
+        UNSATEntries = new ArrayDeque<>();
+    }
+
+    public ContainmentCacheSATResult proveSATBySuperset(StationPackingInstance instance) {
+        return cache.proveSATBySuperset(instance);
+    }
+
+    public ContainmentCacheUNSATResult proveUNSATBySubset(StationPackingInstance instance) {
+        return cache.proveUNSATBySubset(instance);
+    }
+
+    /**
+     * Add a conclusive result. Other results are ignored
+     */
+    public synchronized void add(StationPackingInstance instance, SolverResult result) {
+        if (result.getResult().equals(SATResult.SAT)) {
+            final ContainmentCacheSATEntry entry = new ContainmentCacheSATEntry(result.getAssignment(), cache.getPermutation());
+            cache.add(entry);
+            SATEntries.add(entry);
+            if (SATEntries.size() > capacity) {
+                cache.remove(SATEntries.poll());
+            }
+        } else if (result.getResult().equals(SATResult.UNSAT) && isUHF(instance)) {
+            // UNSAT entries only encode UHF domains
+            final ContainmentCacheUNSATEntry entry = new ContainmentCacheUNSATEntry(instance.getDomains(), cache.getPermutation());
+            cache.add(entry);
+            UNSATEntries.add(entry);
+            if (UNSATEntries.size() > capacity) {
+                cache.remove(UNSATEntries.poll());
+            }
+        }
+    }
+
+    private static boolean isUHF(StationPackingInstance instance) {
+        return instance.getAllChannels().stream().allMatch(channel -> channel >= StationPackingUtils.UHFmin && channel <= StationPackingUtils.UHFmax);
+    }
+
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.decorators.cache;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.ISolver;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.ASolverDecorator;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+import ca.ubc.cs.beta.stationpacking.utils.Watch;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Check a local cache of recent results for a SAT superset or an UNSAT subset of the problem before going further (and in particular, before querying the SATFCServer).
+ * Conclusive results of the decorated solver, including the ones found in the SATFCServer, are added to the local cache right away.
+ */
+@Slf4j
+public class LocalContainmentCacheDecorator extends ASolverDecorator {
+
+    private final LocalContainmentCache localCache;
+
+    public LocalContainmentCacheDecorator(ISolver aSolver, LocalContainmentCache localCache) {
+        super(aSolver);
+        this.localCache = localCache;
+    }
+
+    @Override
+    public SolverResult solve(StationPackingInstance aInstance, ITerminationCriterion aTerminationCriterion, long aSeed) {
+        final Watch watch = Watch.constructAutoStartWatch();
+        final ContainmentCacheSATResult containmentCacheSATResult = localCache.proveSATBySuperset(aInstance);
+        if (containmentCacheSATResult.isValid()) {
+            log.debug("Found a superset in the local SAT cache - declaring result SAT");
+            final Map<Integer, Set<Station>> reducedAssignment = containmentCacheSATResult.getResult().entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().stream().filter(aInstance.getStations()::contains).collect(Collectors.toSet())));
+            reducedAssignment.values().removeIf(Set::isEmpty);
+            return new SolverResult(SATResult.SAT, watch.getElapsedTime(), reducedAssignment, SolverResult.SolvedBy.SAT_CACHE);
+        }
+        if (localCache.proveUNSATBySubset(aInstance).isValid()) {
+            log.debug("Found a subset in the local UNSAT cache - declaring problem UNSAT");
+            return SolverResult.createNonSATResult(SATResult.UNSAT, watch.getElapsedTime(), SolverResult.SolvedBy.UNSAT_CACHE);
+        }
+        final SolverResult result = SolverResult.relabelTime(fDecoratedSolver.solve(aInstance, aTerminationCriterion, aSeed), watch.getElapsedTime());
+        localCache.add(aInstance, result);
+        return result;
+    }
+
+}
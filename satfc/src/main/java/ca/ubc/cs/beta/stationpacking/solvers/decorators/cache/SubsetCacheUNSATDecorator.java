@@ -38,9 +38,9 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public class SubsetCacheUNSATDecorator extends ASolverDecorator {
-    private final ContainmentCacheProxy containmentCache;
+    private final IContainmentCacheClient containmentCache;
 
-    public SubsetCacheUNSATDecorator(ISolver aSolver, ContainmentCacheProxy containmentCacheProxy) {
+    public SubsetCacheUNSATDecorator(ISolver aSolver, IContainmentCacheClient containmentCacheProxy) {
         super(aSolver);
         this.containmentCache = containmentCacheProxy;
     }
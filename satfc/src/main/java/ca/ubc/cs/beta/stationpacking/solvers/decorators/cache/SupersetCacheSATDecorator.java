@@ -41,14 +41,14 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * Created by newmanne on 28/01/15.
- * Query the SATFCServer to see if it contains a SAT superset entry for the problem
+ * Query the containment cache (usually the SATFCServer) to see if it contains a SAT superset entry for the problem
  */
 @Slf4j
 public class SupersetCacheSATDecorator extends ASolverDecorator {
 
-    private final ContainmentCacheProxy proxy;
+    private final IContainmentCacheClient proxy;
 
-    public SupersetCacheSATDecorator(ISolver aSolver, ContainmentCacheProxy proxy) {
+    public SupersetCacheSATDecorator(ISolver aSolver, IContainmentCacheClient proxy) {
         super(aSolver);
         this.proxy = proxy;
     }
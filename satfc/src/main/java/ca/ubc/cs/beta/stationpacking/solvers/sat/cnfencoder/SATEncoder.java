@@ -33,6 +33,7 @@ import ca.ubc.cs.beta.stationpacking.base.Station;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
 import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.IConstraintManager;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.bundles.yaml.EncodingType;
+import ca.ubc.cs.beta.stationpacking.metrics.events.SolverEvents;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.base.CNF;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.base.Clause;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.base.Literal;
@@ -95,6 +96,7 @@ public class SATEncoder implements ISATEncoder {
 
     @Override
     public Pair<CNF, ISATDecoder> encode(StationPackingInstance aInstance) {
+        SolverEvents.emit(SolverEvents.Type.ENCODE_START, "SATEncoder", aInstance.getName());
 
         CNF aCNF = new CNF();
 
@@ -129,6 +131,7 @@ public class SATEncoder implements ISATEncoder {
             }
         };
 
+        SolverEvents.emit(SolverEvents.Type.ENCODE_END, "SATEncoder", aInstance.getName());
         return new Pair<CNF, ISATDecoder>(aCNF, aDecoder);
     }
 
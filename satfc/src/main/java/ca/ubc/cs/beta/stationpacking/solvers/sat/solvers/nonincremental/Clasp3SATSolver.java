@@ -32,6 +32,7 @@ import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.IntByReference;
 
+import ca.ubc.cs.beta.stationpacking.metrics.events.SolverEvents;
 import ca.ubc.cs.beta.stationpacking.polling.IPollingService;
 import ca.ubc.cs.beta.stationpacking.polling.ProblemIncrementor;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
@@ -55,6 +56,8 @@ public class Clasp3SATSolver extends AbstractCompressedSATSolver {
     private Pointer currentProblemPointer;
     // boolean represents whether or not a solve is in progress, so that it is safe to do an interrupt
     private final AtomicBoolean isCurrentlySolving = new AtomicBoolean(false);
+    // whether the native solve in progress was asked to stop, so that we can report when it actually does
+    private final AtomicBoolean interruptRequested = new AtomicBoolean(false);
     private final int fSeedOffset;
     private final ProblemIncrementor problemIncrementor;
     private String nickname;
@@ -118,6 +121,7 @@ public class Clasp3SATSolver extends AbstractCompressedSATSolver {
 
             // We lock this variable so that the interrupt code will only execute if there is a valid problem to interrupt
             lock.lock();
+            interruptRequested.set(false);
             isCurrentlySolving.set(true);
             lock.unlock();
 
@@ -129,7 +133,15 @@ public class Clasp3SATSolver extends AbstractCompressedSATSolver {
             // Start solving
             log.debug("Send problem to clasp cutting off after {}s", cutoff);
             final Watch runtime = Watch.constructAutoStartWatch();
-            fClaspLibrary.solveProblem(currentProblemPointer, cutoff);
+            SolverEvents.emit(SolverEvents.Type.NATIVE_SOLVE_START, getEventSource(), null);
+            try {
+                fClaspLibrary.solveProblem(currentProblemPointer, cutoff);
+            } finally {
+                SolverEvents.emit(SolverEvents.Type.NATIVE_SOLVE_END, getEventSource(), null);
+                if (interruptRequested.getAndSet(false)) {
+                    SolverEvents.emit(SolverEvents.Type.INTERRUPT_ACKNOWLEDGED, getEventSource(), null);
+                }
+            }
             double runtimeDouble = runtime.getElapsedTime();
             log.debug("Came back from clasp after {}s. (initial cutoff was {}s)", runtimeDouble, cutoff);
             if (!(runtimeDouble < cutoff + 5)) {
@@ -181,12 +193,18 @@ public class Clasp3SATSolver extends AbstractCompressedSATSolver {
     	lock.lock();
         if (isCurrentlySolving.get()) {
             log.debug("Interrupting clasp");
+            interruptRequested.set(true);
+            SolverEvents.emit(SolverEvents.Type.INTERRUPT_REQUESTED, getEventSource(), null);
             fClaspLibrary.interrupt(currentProblemPointer);
             log.debug("Back from interrupting clasp");
         }
         lock.unlock();
     }
 
+    private String getEventSource() {
+        return nickname != null ? nickname : "clasp";
+    }
+
     private HashSet<Literal> parseAssignment(int[] assignment) {
         HashSet<Literal> set = new HashSet<>();
         for (int i = 1; i < assignment[0]; i++) {
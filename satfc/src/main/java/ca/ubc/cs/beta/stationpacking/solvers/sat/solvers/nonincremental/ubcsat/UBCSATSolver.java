@@ -33,6 +33,7 @@ import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.IntByReference;
 
+import ca.ubc.cs.beta.stationpacking.metrics.events.SolverEvents;
 import ca.ubc.cs.beta.stationpacking.polling.IPollingService;
 import ca.ubc.cs.beta.stationpacking.polling.ProblemIncrementor;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
@@ -62,6 +63,8 @@ public class UBCSATSolver extends AbstractCompressedSATSolver {
     private final Lock lock = new ReentrantLock();
     // boolean represents whether or not a solve is in progress, so that it is safe to do an interrupt
     private final AtomicBoolean isCurrentlySolving = new AtomicBoolean(false);
+    // whether the native solve in progress was asked to stop, so that we can report when it actually does
+    private final AtomicBoolean interruptRequested = new AtomicBoolean(false);
     private final ProblemIncrementor problemIncrementor;
     private final String nickname;
 
@@ -139,6 +142,7 @@ public class UBCSATSolver extends AbstractCompressedSATSolver {
 
             // We lock this variable so that the interrupt code will only execute if there is a valid problem to interrupt
             lock.lock();
+            interruptRequested.set(false);
             isCurrentlySolving.set(true);
             lock.unlock();
 
@@ -159,7 +163,15 @@ public class UBCSATSolver extends AbstractCompressedSATSolver {
             // Start solving
             log.debug("Sending problem to UBCSAT with cutoff time of {} s", cutoff);
 
-            status = fLibrary.solveProblem(fState, cutoff);
+            SolverEvents.emit(SolverEvents.Type.NATIVE_SOLVE_START, getEventSource(), null);
+            try {
+                status = fLibrary.solveProblem(fState, cutoff);
+            } finally {
+                SolverEvents.emit(SolverEvents.Type.NATIVE_SOLVE_END, getEventSource(), null);
+                if (interruptRequested.getAndSet(false)) {
+                    SolverEvents.emit(SolverEvents.Type.INTERRUPT_ACKNOWLEDGED, getEventSource(), null);
+                }
+            }
             log.trace("Back from solving problem. Acquiring lock");
             lock.lock();
             isCurrentlySolving.set(false);
@@ -260,9 +272,15 @@ public class UBCSATSolver extends AbstractCompressedSATSolver {
         log.trace("Lock acquired");
         if (isCurrentlySolving.get()) {
             log.debug("Interrupting UBCSAT");
+            interruptRequested.set(true);
+            SolverEvents.emit(SolverEvents.Type.INTERRUPT_REQUESTED, getEventSource(), null);
             fLibrary.interrupt(fState);
             log.debug("Interrupt sent to UBCSAT");
         }
         lock.unlock();
     }
+
+    private String getEventSource() {
+        return nickname != null ? nickname : "ubcsat";
+    }
 }
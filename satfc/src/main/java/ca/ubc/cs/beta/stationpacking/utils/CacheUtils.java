@@ -26,8 +26,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
@@ -42,14 +44,31 @@ import lombok.Data;
  */
 public class CacheUtils {
 
+    // Every solver thread may have a request in flight to the same server, so the default of 2 connections per route makes them queue
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 64;
+    private static final int MAX_CONNECTIONS = 256;
+    // Drop idle connections before the server does (tomcat closes them after 20s), so that we don't send requests on a dead connection
+    private static final long KEEP_ALIVE_MS = 15000;
+
     public static BitSet toBitSet(Map<Integer, Set<Station>> answer, Map<Station, Integer> permutation) {
         final BitSet bitSet = new BitSet();
         answer.values().stream().forEach(stations -> stations.forEach(station -> bitSet.set(permutation.get(station))));
         return bitSet;
     }
     
+    /**
+     * @return a started http client that keeps connections alive between requests and pools them per server
+     */
     public static CloseableHttpAsyncClient createHttpClient() {
-        final CloseableHttpAsyncClient client = HttpAsyncClients.createDefault();
+        final CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setMaxConnPerRoute(MAX_CONNECTIONS_PER_ROUTE)
+                .setMaxConnTotal(MAX_CONNECTIONS)
+                .setKeepAliveStrategy((response, context) -> {
+                    final long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0 ? Math.min(keepAlive, KEEP_ALIVE_MS) : KEEP_ALIVE_MS;
+                })
+                .setDefaultIOReactorConfig(IOReactorConfig.custom().setTcpNoDelay(true).setSoKeepAlive(true).build())
+                .build();
         client.start();
         return client;
     }
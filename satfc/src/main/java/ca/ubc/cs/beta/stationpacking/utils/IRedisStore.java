@@ -0,0 +1,145 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.utils;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The redis commands used by SATFC: the cache, the problem queues and the distributed simulator.
+ * Keys, list elements and hash fields are strings. Hash values are raw bytes, since the cache stores bitsets and channel arrays in them.
+ * Missing keys behave as in redis: reads return null (or an empty hash, or 0) and writes create the key.
+ */
+public interface IRedisStore extends AutoCloseable {
+
+    String get(String key);
+
+    void set(String key, String value);
+
+    /**
+     * Atomically increment the integer stored at key, treating a missing key as 0
+     * @return the value after the increment
+     */
+    long incr(String key);
+
+    /**
+     * @return the number of keys that were removed
+     */
+    long del(String... keys);
+
+    byte[] hget(String key, String field);
+
+    /**
+     * @return all the fields of the hash at key, or an empty map if there is no such key
+     */
+    Map<String, byte[]> hgetAll(String key);
+
+    /**
+     * @return the values of the given fields of the hash at key, in the same order, with null for the missing ones
+     */
+    List<byte[]> hmget(String key, String... fields);
+
+    void hset(String key, String field, byte[] value);
+
+    /**
+     * @return the number of fields that were removed. The hash is removed with its last field
+     */
+    long hdel(String key, String... fields);
+
+    /**
+     * @return the length of the list after the push
+     */
+    long lpush(String key, String value);
+
+    /**
+     * @return the length of the list after the push
+     */
+    long rpush(String key, String value);
+
+    String lpop(String key);
+
+    /**
+     * Atomically move the last element of source to the front of destination
+     * @return the element that was moved, or null if source was empty
+     */
+    String rpoplpush(String source, String destination);
+
+    String lindex(String key, long index);
+
+    long llen(String key);
+
+    /**
+     * Remove the first count occurrences of value from the list (count = 0 removes them all, negative counts start from the tail)
+     * @return the number of elements removed
+     */
+    long lrem(String key, long count, String value);
+
+    /**
+     * Iterate over every key. As with redis SCAN, the iteration is incremental: keys that exist for the whole iteration are returned exactly once, keys added or removed in the meantime may or may not be.
+     */
+    Iterator<String> scan();
+
+    /**
+     * Queue up commands to be sent in a single round trip. The commands are not atomic
+     */
+    IRedisBatch pipelined();
+
+    /**
+     * Queue up commands to be executed atomically (MULTI/EXEC)
+     */
+    IRedisBatch multi();
+
+    /**
+     * Watch keys for the next transaction started on this connection with {@link #multi()} (WATCH): the transaction is dropped if any of the keys is changed by someone else before it is executed
+     */
+    void watch(String... keys);
+
+    @Override
+    void close();
+
+    /**
+     * A group of commands that is sent all at once by {@link #execute()}. Replies can only be read after that.
+     */
+    interface IRedisBatch {
+
+        Supplier<Map<String, byte[]>> hgetAll(String key);
+
+        Supplier<List<byte[]>> hmget(String key, String... fields);
+
+        void hset(String key, String field, byte[] value);
+
+        void hdel(String key, String... fields);
+
+        void del(String key);
+
+        Supplier<String> rpoplpush(String source, String destination);
+
+        /**
+         * @return false if this is a transaction that was dropped because a watched key changed, true otherwise
+         */
+        boolean execute();
+
+    }
+
+}
@@ -0,0 +1,369 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * An {@link IRedisStore} that keeps everything in memory, for tests and benchmarks that should not need a redis server.
+ * It is thread safe: every command, and every batch as a whole, runs under a single lock, so it can be shared by the threads that would each have their own connection to redis.
+ * Empty lists and hashes are removed, and using a key as the wrong type fails, as in redis.
+ * Each thread stands for a connection when it comes to watched keys.
+ */
+public class InMemoryRedisStore implements IRedisStore {
+
+    // Values are a String, a Map<String, byte[]> (hash) or a LinkedList<String> (list)
+    private final Map<String, Object> data = new HashMap<>();
+    // Copies of the values of the keys watched by each thread, to check against when its next transaction is executed
+    private final ThreadLocal<Map<String, Object>> watched = new ThreadLocal<>();
+
+    @Override
+    public synchronized String get(String key) {
+        return typed(key, String.class);
+    }
+
+    @Override
+    public synchronized void set(String key, String value) {
+        data.put(key, value);
+    }
+
+    @Override
+    public synchronized long incr(String key) {
+        final String value = typed(key, String.class);
+        final long incremented;
+        try {
+            incremented = (value == null ? 0 : Long.parseLong(value)) + 1;
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("ERR value at " + key + " is not an integer", e);
+        }
+        data.put(key, Long.toString(incremented));
+        return incremented;
+    }
+
+    @Override
+    public synchronized long del(String... keys) {
+        return Arrays.stream(keys).filter(key -> data.remove(key) != null).count();
+    }
+
+    @Override
+    public synchronized byte[] hget(String key, String field) {
+        final Map<String, byte[]> hash = typed(key, Map.class);
+        return hash == null ? null : copy(hash.get(field));
+    }
+
+    @Override
+    public synchronized Map<String, byte[]> hgetAll(String key) {
+        final Map<String, byte[]> hash = typed(key, Map.class);
+        if (hash == null) {
+            return new HashMap<>();
+        }
+        return hash.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> copy(entry.getValue())));
+    }
+
+    @Override
+    public synchronized List<byte[]> hmget(String key, String... fields) {
+        final Map<String, byte[]> hash = typed(key, Map.class);
+        return Arrays.stream(fields).map(field -> hash == null ? null : copy(hash.get(field))).collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized void hset(String key, String field, byte[] value) {
+        Map<String, byte[]> hash = typed(key, Map.class);
+        if (hash == null) {
+            hash = new HashMap<>();
+            data.put(key, hash);
+        }
+        hash.put(field, copy(value));
+    }
+
+    @Override
+    public synchronized long hdel(String key, String... fields) {
+        final Map<String, byte[]> hash = typed(key, Map.class);
+        if (hash == null) {
+            return 0;
+        }
+        final long removed = Arrays.stream(fields).filter(field -> hash.remove(field) != null).count();
+        if (hash.isEmpty()) {
+            data.remove(key);
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized long lpush(String key, String value) {
+        final LinkedList<String> list = listForWrite(key);
+        list.addFirst(value);
+        return list.size();
+    }
+
+    @Override
+    public synchronized long rpush(String key, String value) {
+        final LinkedList<String> list = listForWrite(key);
+        list.addLast(value);
+        return list.size();
+    }
+
+    @Override
+    public synchronized String lpop(String key) {
+        final LinkedList<String> list = typed(key, LinkedList.class);
+        if (list == null) {
+            return null;
+        }
+        final String value = list.removeFirst();
+        removeIfEmpty(key, list);
+        return value;
+    }
+
+    @Override
+    public synchronized String rpoplpush(String source, String destination) {
+        final LinkedList<String> sourceList = typed(source, LinkedList.class);
+        if (sourceList == null) {
+            return null;
+        }
+        // Check the type of the destination before modifying anything
+        final LinkedList<String> destinationList = listForWrite(destination);
+        final String value = sourceList.removeLast();
+        destinationList.addFirst(value);
+        removeIfEmpty(source, sourceList);
+        return value;
+    }
+
+    @Override
+    public synchronized String lindex(String key, long index) {
+        final LinkedList<String> list = typed(key, LinkedList.class);
+        if (list == null) {
+            return null;
+        }
+        final long position = index < 0 ? list.size() + index : index;
+        return position >= 0 && position < list.size() ? list.get((int) position) : null;
+    }
+
+    @Override
+    public synchronized long llen(String key) {
+        final LinkedList<String> list = typed(key, LinkedList.class);
+        return list == null ? 0 : list.size();
+    }
+
+    @Override
+    public synchronized long lrem(String key, long count, String value) {
+        final LinkedList<String> list = typed(key, LinkedList.class);
+        if (list == null) {
+            return 0;
+        }
+        final long limit = count == 0 ? Long.MAX_VALUE : Math.abs(count);
+        long removed = 0;
+        if (count >= 0) {
+            final Iterator<String> iterator = list.iterator();
+            while (removed < limit && iterator.hasNext()) {
+                if (iterator.next().equals(value)) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        } else {
+            final ListIterator<String> iterator = list.listIterator(list.size());
+            while (removed < limit && iterator.hasPrevious()) {
+                if (iterator.previous().equals(value)) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        removeIfEmpty(key, list);
+        return removed;
+    }
+
+    @Override
+    public synchronized Iterator<String> scan() {
+        // A snapshot of the keys satisfies the guarantees of SCAN
+        return new ArrayList<>(data.keySet()).iterator();
+    }
+
+    @Override
+    public IRedisBatch pipelined() {
+        return new InMemoryBatch(null);
+    }
+
+    @Override
+    public IRedisBatch multi() {
+        final Map<String, Object> watchedValues = watched.get();
+        watched.remove();
+        return new InMemoryBatch(watchedValues);
+    }
+
+    @Override
+    public synchronized void watch(String... keys) {
+        Map<String, Object> watchedValues = watched.get();
+        if (watchedValues == null) {
+            watchedValues = new HashMap<>();
+            watched.set(watchedValues);
+        }
+        for (String key : keys) {
+            watchedValues.put(key, copyValue(data.get(key)));
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return the value at key, or null if there is none
+     * @throws IllegalStateException if the value at key is of another type
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T typed(String key, Class<?> type) {
+        final Object value = data.get(key);
+        if (value != null && !type.isInstance(value)) {
+            throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value (" + key + ")");
+        }
+        return (T) value;
+    }
+
+    private LinkedList<String> listForWrite(String key) {
+        LinkedList<String> list = typed(key, LinkedList.class);
+        if (list == null) {
+            list = new LinkedList<>();
+            data.put(key, list);
+        }
+        return list;
+    }
+
+    private void removeIfEmpty(String key, List<String> list) {
+        if (list.isEmpty()) {
+            data.remove(key);
+        }
+    }
+
+    private static byte[] copy(byte[] bytes) {
+        return bytes == null ? null : bytes.clone();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyValue(Object value) {
+        if (value instanceof Map) {
+            final Map<String, byte[]> hashCopy = new HashMap<>();
+            ((Map<String, byte[]>) value).forEach((field, bytes) -> hashCopy.put(field, copy(bytes)));
+            return hashCopy;
+        } else if (value instanceof LinkedList) {
+            return new LinkedList<>((LinkedList<String>) value);
+        }
+        // Strings are immutable
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean sameValue(Object a, Object b) {
+        if (a instanceof Map && b instanceof Map) {
+            final Map<String, byte[]> hashA = (Map<String, byte[]>) a;
+            final Map<String, byte[]> hashB = (Map<String, byte[]>) b;
+            return hashA.keySet().equals(hashB.keySet()) && hashA.keySet().stream().allMatch(field -> Arrays.equals(hashA.get(field), hashB.get(field)));
+        }
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Commands are queued and run together, under the lock of the store, when the batch is executed. This gives both pipelines and transactions the semantics of a transaction
+     */
+    private class InMemoryBatch implements IRedisBatch {
+
+        private final List<Runnable> commands = new ArrayList<>();
+        // values of the watched keys when they were watched, null if this is a pipeline or no key was watched
+        private final Map<String, Object> watchedValues;
+        private boolean executed = false;
+        private boolean dropped = false;
+
+        InMemoryBatch(Map<String, Object> watchedValues) {
+            this.watchedValues = watchedValues;
+        }
+
+        @Override
+        public Supplier<Map<String, byte[]>> hgetAll(String key) {
+            return queue(() -> InMemoryRedisStore.this.hgetAll(key));
+        }
+
+        @Override
+        public Supplier<List<byte[]>> hmget(String key, String... fields) {
+            return queue(() -> InMemoryRedisStore.this.hmget(key, fields));
+        }
+
+        @Override
+        public void hset(String key, String field, byte[] value) {
+            final byte[] valueCopy = copy(value);
+            queue(() -> {
+                InMemoryRedisStore.this.hset(key, field, valueCopy);
+                return null;
+            });
+        }
+
+        @Override
+        public void hdel(String key, String... fields) {
+            queue(() -> InMemoryRedisStore.this.hdel(key, fields));
+        }
+
+        @Override
+        public void del(String key) {
+            queue(() -> InMemoryRedisStore.this.del(key));
+        }
+
+        @Override
+        public Supplier<String> rpoplpush(String source, String destination) {
+            return queue(() -> InMemoryRedisStore.this.rpoplpush(source, destination));
+        }
+
+        private <T> Supplier<T> queue(Supplier<T> command) {
+            final List<T> reply = new ArrayList<>(1);
+            commands.add(() -> reply.add(command.get()));
+            return () -> {
+                if (!executed) {
+                    throw new IllegalStateException("Please execute the batch before reading its replies");
+                } else if (dropped) {
+                    throw new IllegalStateException("The transaction was dropped because a watched key changed, it has no replies");
+                }
+                return reply.get(0);
+            };
+        }
+
+        @Override
+        public boolean execute() {
+            synchronized (InMemoryRedisStore.this) {
+                dropped = watchedValues != null && !watchedValues.entrySet().stream().allMatch(entry -> sameValue(entry.getValue(), data.get(entry.getKey())));
+                if (!dropped) {
+                    commands.forEach(Runnable::run);
+                }
+            }
+            commands.clear();
+            executed = true;
+            return !dropped;
+        }
+    }
+
+}
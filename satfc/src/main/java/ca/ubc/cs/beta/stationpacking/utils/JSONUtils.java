@@ -25,6 +25,7 @@ import java.io.IOException;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
 
 import lombok.Getter;
@@ -36,11 +37,17 @@ public class JSONUtils {
 
     @Getter
     private static final ObjectMapper mapper;
+    // same as mapper, but reads and writes the binary Smile format
+    @Getter
+    private static final ObjectMapper smileMapper;
 
     static {
         mapper = new ObjectMapper();
         mapper.registerModule(new GuavaModule());
         mapper.registerModule(new SATFCJacksonModule());
+        smileMapper = new ObjectMapper(new SmileFactory());
+        smileMapper.registerModule(new GuavaModule());
+        smileMapper.registerModule(new SATFCJacksonModule());
     }
 
     public static <T> T toObject(String jsonString, Class<T> klazz) {
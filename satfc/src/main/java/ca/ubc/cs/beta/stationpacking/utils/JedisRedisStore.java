@@ -0,0 +1,254 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.AbstractIterator;
+
+import redis.clients.jedis.BinaryRedisPipeline;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.MultiKeyCommandsPipeline;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Transaction;
+
+/**
+ * An {@link IRedisStore} backed by a real redis server. Like the underlying connection, this is not thread safe: use one store per thread
+ */
+public class JedisRedisStore implements IRedisStore {
+
+    private static final int SCAN_COUNT = 1000;
+
+    private final Jedis jedis;
+
+    public JedisRedisStore(Jedis jedis) {
+        this.jedis = jedis;
+    }
+
+    @Override
+    public String get(String key) {
+        return jedis.get(key);
+    }
+
+    @Override
+    public void set(String key, String value) {
+        jedis.set(key, value);
+    }
+
+    @Override
+    public long incr(String key) {
+        return jedis.incr(key);
+    }
+
+    @Override
+    public long del(String... keys) {
+        return jedis.del(keys);
+    }
+
+    @Override
+    public byte[] hget(String key, String field) {
+        return jedis.hget(encode(key), encode(field));
+    }
+
+    @Override
+    public Map<String, byte[]> hgetAll(String key) {
+        return decodeFields(jedis.hgetAll(encode(key)));
+    }
+
+    @Override
+    public List<byte[]> hmget(String key, String... fields) {
+        return jedis.hmget(encode(key), encode(fields));
+    }
+
+    @Override
+    public void hset(String key, String field, byte[] value) {
+        jedis.hset(encode(key), encode(field), value);
+    }
+
+    @Override
+    public long hdel(String key, String... fields) {
+        return jedis.hdel(encode(key), encode(fields));
+    }
+
+    @Override
+    public long lpush(String key, String value) {
+        return jedis.lpush(key, value);
+    }
+
+    @Override
+    public long rpush(String key, String value) {
+        return jedis.rpush(key, value);
+    }
+
+    @Override
+    public String lpop(String key) {
+        return jedis.lpop(key);
+    }
+
+    @Override
+    public String rpoplpush(String source, String destination) {
+        return jedis.rpoplpush(source, destination);
+    }
+
+    @Override
+    public String lindex(String key, long index) {
+        return jedis.lindex(key, index);
+    }
+
+    @Override
+    public long llen(String key) {
+        return jedis.llen(key);
+    }
+
+    @Override
+    public long lrem(String key, long count, String value) {
+        return jedis.lrem(key, count, value);
+    }
+
+    @Override
+    public Iterator<String> scan() {
+        final ScanParams params = new ScanParams().count(SCAN_COUNT);
+        return new AbstractIterator<String>() {
+
+            private String cursor = ScanParams.SCAN_POINTER_START;
+            private Iterator<String> page = Collections.emptyIterator();
+            private boolean done = false;
+
+            @Override
+            protected String computeNext() {
+                while (!page.hasNext()) {
+                    if (done) {
+                        return endOfData();
+                    }
+                    final ScanResult<String> result = jedis.scan(cursor, params);
+                    cursor = result.getStringCursor();
+                    done = cursor.equals(ScanParams.SCAN_POINTER_START);
+                    page = result.getResult().iterator();
+                }
+                return page.next();
+            }
+        };
+    }
+
+    @Override
+    public IRedisBatch pipelined() {
+        final Pipeline pipeline = jedis.pipelined();
+        return new JedisBatch<>(pipeline, () -> {
+            pipeline.sync();
+            return true;
+        });
+    }
+
+    @Override
+    public IRedisBatch multi() {
+        final Transaction transaction = jedis.multi();
+        // EXEC replies with nil when a watched key changed
+        return new JedisBatch<>(transaction, () -> transaction.exec() != null);
+    }
+
+    @Override
+    public void watch(String... keys) {
+        jedis.watch(encode(keys));
+    }
+
+    @Override
+    public void close() {
+        jedis.close();
+    }
+
+    private static byte[] encode(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] encode(String[] strings) {
+        final byte[][] encoded = new byte[strings.length][];
+        for (int i = 0; i < strings.length; i++) {
+            encoded[i] = encode(strings[i]);
+        }
+        return encoded;
+    }
+
+    private static Map<String, byte[]> decodeFields(Map<byte[], byte[]> hash) {
+        return hash.entrySet().stream().collect(Collectors.toMap(entry -> new String(entry.getKey(), StandardCharsets.UTF_8), Map.Entry::getValue));
+    }
+
+    /**
+     * Pipelines and transactions queue up commands the same way, they only differ in how they are sent
+     */
+    private static class JedisBatch<C extends BinaryRedisPipeline & MultiKeyCommandsPipeline> implements IRedisBatch {
+
+        private final C commands;
+        private final BooleanSupplier executor;
+
+        JedisBatch(C commands, BooleanSupplier executor) {
+            this.commands = commands;
+            this.executor = executor;
+        }
+
+        @Override
+        public Supplier<Map<String, byte[]>> hgetAll(String key) {
+            final Response<Map<byte[], byte[]>> response = commands.hgetAll(encode(key));
+            return () -> decodeFields(response.get());
+        }
+
+        @Override
+        public Supplier<List<byte[]>> hmget(String key, String... fields) {
+            return commands.hmget(encode(key), encode(fields))::get;
+        }
+
+        @Override
+        public void hset(String key, String field, byte[] value) {
+            commands.hset(encode(key), encode(field), value);
+        }
+
+        @Override
+        public void hdel(String key, String... fields) {
+            commands.hdel(encode(key), encode(fields));
+        }
+
+        @Override
+        public void del(String key) {
+            commands.del(encode(key));
+        }
+
+        @Override
+        public Supplier<String> rpoplpush(String source, String destination) {
+            return commands.rpoplpush(source, destination)::get;
+        }
+
+        @Override
+        public boolean execute() {
+            return executor.getAsBoolean();
+        }
+    }
+
+}
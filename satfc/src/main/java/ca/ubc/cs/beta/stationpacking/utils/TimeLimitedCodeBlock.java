@@ -37,6 +37,9 @@ import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFact
  */
 public class TimeLimitedCodeBlock {
 
+    // Shared between all calls so that we don't pay for a new thread every time a block is run. Threads are daemons so that an abandoned (hung) block does not keep the JVM alive
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new SequentiallyNamedThreadFactory("SATFC Main Worker Thread", true));
+
     public static void runWithTimeout(final Runnable runnable, long timeout, TimeUnit timeUnit) throws Exception {
         runWithTimeout(() -> {
             runnable.run();
@@ -45,9 +48,7 @@ public class TimeLimitedCodeBlock {
     }
 
     public static <T> T runWithTimeout(Callable<T> callable, long timeout, TimeUnit timeUnit) throws Exception {
-        final ExecutorService executor = Executors.newSingleThreadExecutor(new SequentiallyNamedThreadFactory("SATFC Main Worker Thread"));
         final Future<T> future = executor.submit(callable);
-        executor.shutdown(); // This does not cancel the already-scheduled task.
         try {
             return future.get(timeout, timeUnit);
         }
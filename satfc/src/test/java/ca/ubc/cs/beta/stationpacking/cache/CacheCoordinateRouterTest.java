@@ -0,0 +1,62 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class CacheCoordinateRouterTest {
+
+    @Test
+    public void routingIsStableAndOnlyMovesCoordinatesOfAddedServer() {
+        final CacheCoordinateRouter twoServers = CacheCoordinateRouter.fromServerURLs("http://a:8080/satfcserver, http://b:8080/satfcserver");
+        final CacheCoordinateRouter sameServersOtherOrder = new CacheCoordinateRouter(ImmutableList.of("http://b:8080/satfcserver", "http://a:8080/satfcserver"));
+        final CacheCoordinateRouter threeServers = CacheCoordinateRouter.fromServerURLs("http://a:8080/satfcserver,http://b:8080/satfcserver,http://c:8080/satfcserver");
+        final Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            final CacheCoordinate coordinate = new CacheCoordinate("domain" + i, "interference" + (i % 7));
+            final String owner = twoServers.route(coordinate);
+            assertEquals(owner, sameServersOtherOrder.route(coordinate));
+            final String newOwner = threeServers.route(coordinate);
+            assertTrue(newOwner.equals(owner) || newOwner.equals("http://c:8080/satfcserver"));
+            counts.merge(owner, 1, Integer::sum);
+        }
+        // Both servers get a fair share
+        counts.values().forEach(count -> assertTrue(count > 300));
+    }
+
+    @Test
+    public void shardsAreInRange() {
+        for (int i = 0; i < 100; i++) {
+            final int shard = CacheCoordinateRouter.shardOf(new CacheCoordinate("domain" + i, "interference"), 4);
+            assertTrue(shard >= 0 && shard < 4);
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableBiMap;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
+
+public class CacheEntryEncodingTest {
+
+    final ImmutableBiMap<Station, Integer> permutation = ImmutableBiMap.of(new Station(1), 0, new Station(2), 1);
+
+    @Test
+    public void sparseBitSetsAreWrittenAsGaps() {
+        final BitSet stations = new BitSet();
+        stations.set(3);
+        stations.set(2000);
+        final byte[] channels = {14, 51};
+        final byte[] encoded = CacheEntryEncoding.encodeSAT(stations, channels);
+        // version, form, cardinality, two gaps (the second one takes two bytes) and the channels
+        assertEquals(1 + 1 + 1 + 3 + 2, encoded.length);
+        assertTrue(encoded.length < stations.toByteArray().length);
+        final ContainmentCacheSATEntry entry = CacheEntryEncoding.decodeSAT(encoded, "key", permutation, "auction");
+        assertEquals(stations, entry.getBitSet());
+        assertArrayEquals(channels, entry.getChannels());
+        assertEquals("auction", entry.getAuction());
+    }
+
+    @Test
+    public void denseBitSetsAreWrittenRaw() {
+        final BitSet stations = new BitSet();
+        stations.set(0, 300);
+        final BitSet domains = new BitSet();
+        domains.set(5, 40);
+        domains.set(1000);
+        final byte[] encoded = CacheEntryEncoding.encodeUNSAT(stations, domains);
+        assertTrue(encoded.length < 1 + 2 + stations.toByteArray().length + 2 + domains.toByteArray().length);
+        final ContainmentCacheUNSATEntry entry = CacheEntryEncoding.decodeUNSAT(encoded, "key", permutation, null);
+        assertEquals(stations, entry.getBitSet());
+        assertEquals(domains, entry.getDomainsBitSet());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownVersionsAreRejected() {
+        CacheEntryEncoding.decodeSAT(new byte[]{42, 0, 0}, "key", permutation, null);
+    }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.cache.CacheSnapshot.Snapshot;
+import ca.ubc.cs.beta.stationpacking.cache.RedisCacher.ContainmentCacheInitData;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+
+public class CacheSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    final Station s1 = new Station(1);
+    final Station s2 = new Station(2);
+    final ImmutableBiMap<Station, Integer> permutation = ImmutableBiMap.of(s1, 0, s2, 1);
+    final CacheCoordinate coordinate = new CacheCoordinate("domain", "interference");
+    final CacheCoordinate otherCoordinate = new CacheCoordinate("otherDomain", "interference");
+
+    @Test
+    public void roundTrip() throws Exception {
+        final ListMultimap<CacheCoordinate, ContainmentCacheSATEntry> SATEntries = ArrayListMultimap.create();
+        final ListMultimap<CacheCoordinate, ContainmentCacheUNSATEntry> UNSATEntries = ArrayListMultimap.create();
+        final ContainmentCacheSATEntry sat = new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1), 20, ImmutableSet.of(s2)), permutation);
+        sat.setKey(coordinate.toKey(SATResult.SAT, 3));
+        sat.setAuction("42");
+        final ContainmentCacheSATEntry tooNew = new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1)), permutation);
+        tooNew.setKey(coordinate.toKey(SATResult.SAT, 11));
+        SATEntries.putAll(coordinate, ImmutableSet.of(sat, tooNew));
+        final ContainmentCacheUNSATEntry unsat = new ContainmentCacheUNSATEntry(ImmutableMap.of(s1, ImmutableSet.of(14, 15), s2, ImmutableSet.of(15)), permutation);
+        unsat.setKey(coordinate.toKey(SATResult.UNSAT, 4));
+        UNSATEntries.put(coordinate, unsat);
+        final ContainmentCacheSATEntry other = new ContainmentCacheSATEntry(ImmutableMap.of(20, ImmutableSet.of(s1)), permutation);
+        other.setKey(otherCoordinate.toKey(SATResult.SAT, 5));
+        SATEntries.put(otherCoordinate, other);
+
+        final Path file = folder.getRoot().toPath().resolve("cache.snapshot");
+        CacheSnapshot.write(file, 10, new ContainmentCacheInitData(SATEntries, UNSATEntries));
+
+        final Snapshot snapshot = CacheSnapshot.read(file, c -> permutation, c -> c.equals(coordinate), false, false);
+        assertEquals(10, snapshot.getHashNum());
+        final ContainmentCacheInitData entries = snapshot.getEntries();
+        assertEquals(ImmutableSet.of(coordinate), entries.getCaches());
+        // The entry numbered after the snapshot is left for redis
+        final ContainmentCacheSATEntry readSAT = Iterables.getOnlyElement(entries.getSATResults().get(coordinate));
+        assertEquals(sat.getKey(), readSAT.getKey());
+        assertEquals("42", readSAT.getAuction());
+        assertEquals(sat.getBitSet(), readSAT.getBitSet());
+        assertArrayEquals(sat.getChannels(), readSAT.getChannels());
+        final ContainmentCacheUNSATEntry readUNSAT = Iterables.getOnlyElement(entries.getUNSATResults().get(coordinate));
+        assertEquals(unsat.getKey(), readUNSAT.getKey());
+        assertNull(readUNSAT.getAuction());
+        assertEquals(unsat.getDomains(), readUNSAT.getDomains());
+
+        final Snapshot withoutUNSAT = CacheSnapshot.read(file, c -> permutation, c -> true, false, true);
+        assertTrue(withoutUNSAT.getEntries().getUNSATResults().isEmpty());
+        assertEquals(2, withoutUNSAT.getEntries().getSATResults().size());
+    }
+
+}
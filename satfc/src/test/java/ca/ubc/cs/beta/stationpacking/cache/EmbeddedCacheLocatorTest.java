@@ -0,0 +1,119 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.ISatisfiabilityCache;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.EmbeddedContainmentCache;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.infinite.NeverEndingTerminationCriterion;
+import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
+
+public class EmbeddedCacheLocatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    final Station s1 = new Station(1);
+    final Station s2 = new Station(2);
+    final ImmutableBiMap<Station, Integer> permutation = ImmutableBiMap.of(s1, 0, s2, 1);
+    final CacheCoordinate coordinate = new CacheCoordinate("domain", "interference");
+    final CacheCoordinate otherCoordinate = new CacheCoordinate("otherDomain", "interference");
+
+    private StationPackingInstance instance(Station... stations) {
+        final ImmutableMap.Builder<Station, Set<Integer>> domains = ImmutableMap.builder();
+        for (Station station : stations) {
+            domains.put(station, ImmutableSet.of(20, 21));
+        }
+        return new StationPackingInstance(domains.build());
+    }
+
+    private void addSAT(EmbeddedCacheLocator locator, CacheCoordinate coordinate, Station station) {
+        final EmbeddedContainmentCache client = new EmbeddedContainmentCache(locator, coordinate, locator.getOrCreate(coordinate, permutation));
+        final SolverResult result = new SolverResult(SATResult.SAT, 1.0, ImmutableMap.of(20, ImmutableSet.of(station)), SolverResult.SolvedBy.UNKNOWN);
+        client.cacheResult(instance(station), result, new NeverEndingTerminationCriterion());
+    }
+
+    @Test
+    public void snapshotKeepsCoordinatesThatWereNotUsed() throws Exception {
+        final String file = folder.getRoot().toPath().resolve("embedded.snapshot").toString();
+        try (EmbeddedCacheLocator locator = new EmbeddedCacheLocator(file)) {
+            addSAT(locator, coordinate, s1);
+            addSAT(locator, otherCoordinate, s2);
+        }
+
+        // Only one of the coordinates is used this time
+        final long lastNum;
+        try (EmbeddedCacheLocator locator = new EmbeddedCacheLocator(file)) {
+            final ISatisfiabilityCache cache = locator.getOrCreate(coordinate, permutation);
+            assertTrue(cache.proveSATBySuperset(instance(s1)).isValid());
+            addSAT(locator, coordinate, s2);
+            assertEquals(2, cache.getNumSATEntries());
+            lastNum = cache.getSATEntries().stream().mapToLong(entry -> CacheUtils.parseKey(entry.getKey()).getNum()).max().getAsLong();
+        }
+
+        try (EmbeddedCacheLocator locator = new EmbeddedCacheLocator(file)) {
+            final ISatisfiabilityCache cache = locator.getOrCreate(coordinate, permutation);
+            assertEquals(2, cache.getNumSATEntries());
+            assertTrue(cache.proveSATBySuperset(instance(s2)).isValid());
+            final ISatisfiabilityCache otherCache = locator.getOrCreate(otherCoordinate, permutation);
+            assertEquals(1, otherCache.getNumSATEntries());
+            assertTrue(otherCache.proveSATBySuperset(instance(s2)).isValid());
+            assertFalse(otherCache.proveSATBySuperset(instance(s1)).isValid());
+            // New entries are numbered after the ones of the snapshot
+            assertTrue(CacheUtils.parseKey(locator.nextKey(coordinate, SATResult.SAT)).getNum() > lastNum);
+        }
+    }
+
+    @Test
+    public void unreadableSnapshotIsSetAside() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("embedded.snapshot");
+        Files.write(file, new byte[]{1, 2, 3});
+        try (EmbeddedCacheLocator locator = new EmbeddedCacheLocator(file.toString())) {
+            assertEquals(0, locator.getOrCreate(coordinate, permutation).getNumSATEntries());
+            addSAT(locator, coordinate, s1);
+        }
+        assertTrue(Files.exists(file.resolveSibling("embedded.snapshot.unreadable")));
+        try (EmbeddedCacheLocator locator = new EmbeddedCacheLocator(file.toString())) {
+            assertEquals(1, locator.getOrCreate(coordinate, permutation).getNumSATEntries());
+        }
+    }
+
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
+import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.DataManager;
+import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.ManagerBundle;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.utils.IRedisStore.IRedisBatch;
+import ca.ubc.cs.beta.stationpacking.utils.InMemoryRedisStore;
+
+public class RedisCacherTest {
+
+    private DataManager dataManager;
+    private CacheCoordinate coordinate;
+    private ImmutableBiMap<Station, Integer> permutation;
+    private InMemoryRedisStore redis;
+    private RedisCacher cacher;
+
+    @Rule
+    public TemporaryFolder constraintFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        final Path testInterference = Paths.get(Resources.getResource("data/testInterference").toURI());
+        Files.copy(testInterference.resolve(DataManager.DOMAIN_FILE), constraintFolder.getRoot().toPath().resolve(DataManager.DOMAIN_FILE));
+        Files.copy(testInterference.resolve("channelspecific").resolve(DataManager.INTERFERENCES_FILE), constraintFolder.getRoot().toPath().resolve(DataManager.INTERFERENCES_FILE));
+        final String folder = constraintFolder.getRoot().getPath();
+        dataManager = new DataManager();
+        dataManager.addData(folder);
+        final ManagerBundle bundle = dataManager.getData(folder);
+        coordinate = bundle.getCacheCoordinate();
+        permutation = bundle.getPermutation();
+        redis = new InMemoryRedisStore();
+        cacher = new RedisCacher(dataManager, redis);
+    }
+
+    @Test
+    public void entriesAreReadBack() {
+        final List<Station> stations = new ArrayList<>(permutation.keySet());
+        final ContainmentCacheSATEntry sat = new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(stations.get(0)), 20, ImmutableSet.of(stations.get(1))), permutation);
+        final String SATKey = cacher.cacheResult(coordinate, sat, "7-instance");
+        final ContainmentCacheUNSATEntry unsat = new ContainmentCacheUNSATEntry(ImmutableMap.of(stations.get(0), ImmutableSet.of(14, 15), stations.get(2), ImmutableSet.of(15)), permutation);
+        final String UNSATKey = cacher.cacheResult(coordinate, unsat, null);
+        // Neither of these are entries
+        redis.lpush("someQueue", "someProblem");
+        redis.hset(new CacheCoordinate("unknown", "unknown").toKey(SATResult.SAT, 3), RedisCacher.BITSET_KEY, new byte[]{1});
+        assertEquals(2, cacher.getHashNum());
+
+        final Map<String, ISATFCCacheEntry> entries = Lists.newArrayList(cacher.iterateSAT()).stream().collect(Collectors.toMap(ISATFCCacheEntry::getKey, entry -> entry));
+        assertEquals(ImmutableSet.of(SATKey, UNSATKey), entries.keySet());
+        final ContainmentCacheSATEntry readSAT = (ContainmentCacheSATEntry) entries.get(SATKey);
+        assertEquals(sat.getBitSet(), readSAT.getBitSet());
+        assertArrayEquals(sat.getChannels(), readSAT.getChannels());
+        assertEquals("7", readSAT.getAuction());
+        final ContainmentCacheUNSATEntry readUNSAT = (ContainmentCacheUNSATEntry) entries.get(UNSATKey);
+        assertEquals(unsat.getDomainsBitSet(), readUNSAT.getDomainsBitSet());
+        assertEquals(unsat.getDomains(), readUNSAT.getDomains());
+    }
+
+    @Test
+    public void streamingReadsEveryBatch() {
+        final List<Station> stations = new ArrayList<>(permutation.keySet());
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(cacher.cacheResult(coordinate, new ContainmentCacheSATEntry(ImmutableMap.of(14 + i, ImmutableSet.of(stations.get(i % stations.size()))), permutation), null));
+        }
+        final List<String> batchesSeen = Collections.synchronizedList(new ArrayList<>());
+        final List<ISATFCCacheEntry> entriesSeen = Collections.synchronizedList(new ArrayList<>());
+        RedisCacher.streamEntries(Iterators.partition(keys.iterator(), 7), () -> new RedisCacher(dataManager, redis), 3, false, (batch, entries) -> {
+            batchesSeen.addAll(batch);
+            entriesSeen.addAll(entries);
+        });
+        assertEquals(ImmutableSet.copyOf(keys), ImmutableSet.copyOf(batchesSeen));
+        assertEquals(ImmutableSet.copyOf(keys), entriesSeen.stream().map(ISATFCCacheEntry::getKey).collect(Collectors.toSet()));
+    }
+
+    @Test
+    public void oldEntriesAreReadAndMigrated() {
+        final List<Station> stations = new ArrayList<>(permutation.keySet());
+        final ContainmentCacheSATEntry sat = new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(stations.get(0), stations.get(1))), permutation);
+        final ContainmentCacheUNSATEntry unsat = new ContainmentCacheUNSATEntry(ImmutableMap.of(stations.get(0), ImmutableSet.of(14, 15)), permutation);
+        // The way entries used to be written
+        final String SATKey = coordinate.toKey(SATResult.SAT, 101);
+        redis.hset(SATKey, RedisCacher.BITSET_KEY, sat.getBitSet().toByteArray());
+        redis.hset(SATKey, RedisCacher.ASSIGNMENT_KEY, sat.getChannels());
+        redis.hset(SATKey, RedisCacher.NAME_KEY, "3-instance".getBytes());
+        final String UNSATKey = coordinate.toKey(SATResult.UNSAT, 102);
+        redis.hset(UNSATKey, RedisCacher.BITSET_KEY, unsat.getBitSet().toByteArray());
+        redis.hset(UNSATKey, RedisCacher.DOMAINS_KEY, unsat.getDomainsBitSet().toByteArray());
+        final String newKey = cacher.cacheResult(coordinate, sat, null);
+
+        for (int pass = 0; pass < 2; pass++) {
+            final ContainmentCacheSATEntry readSAT = (ContainmentCacheSATEntry) cacher.cacheEntryFromKey(SATKey);
+            assertEquals(sat.getBitSet(), readSAT.getBitSet());
+            assertArrayEquals(sat.getChannels(), readSAT.getChannels());
+            assertEquals("3", readSAT.getAuction());
+            assertEquals(unsat.getDomainsBitSet(), ((ContainmentCacheUNSATEntry) cacher.cacheEntryFromKey(UNSATKey)).getDomainsBitSet());
+            // Only the two old entries need rewriting, and only once
+            assertEquals(pass == 0 ? 2 : 0, cacher.migrateEncoding(1));
+        }
+        assertEquals(ImmutableSet.of(RedisCacher.ENTRY_KEY, RedisCacher.NAME_KEY), redis.hgetAll(SATKey).keySet());
+        assertEquals(ImmutableSet.of(RedisCacher.ENTRY_KEY), redis.hgetAll(UNSATKey).keySet());
+        assertEquals(ImmutableSet.of(RedisCacher.ENTRY_KEY), redis.hgetAll(newKey).keySet());
+    }
+
+    @Test
+    public void legacyFieldsAreWrittenUntilTheMigration() {
+        final List<Station> stations = new ArrayList<>(permutation.keySet());
+        final ContainmentCacheSATEntry sat = new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(stations.get(0)), 20, ImmutableSet.of(stations.get(1))), permutation);
+        final ContainmentCacheUNSATEntry unsat = new ContainmentCacheUNSATEntry(ImmutableMap.of(stations.get(0), ImmutableSet.of(14, 15)), permutation);
+        final RedisCacher legacyCacher = new RedisCacher(dataManager, redis, true);
+        final String SATKey = legacyCacher.cacheResult(coordinate, sat, null);
+        final String UNSATKey = legacyCacher.cacheResult(coordinate, unsat, null);
+
+        // A reader of the old format finds what it needs
+        final Map<String, byte[]> SATFields = redis.hgetAll(SATKey);
+        assertEquals(ImmutableSet.of(RedisCacher.ENTRY_KEY, RedisCacher.BITSET_KEY, RedisCacher.ASSIGNMENT_KEY), SATFields.keySet());
+        assertEquals(sat.getBitSet(), BitSet.valueOf(SATFields.get(RedisCacher.BITSET_KEY)));
+        assertArrayEquals(sat.getChannels(), SATFields.get(RedisCacher.ASSIGNMENT_KEY));
+        final Map<String, byte[]> UNSATFields = redis.hgetAll(UNSATKey);
+        assertEquals(ImmutableSet.of(RedisCacher.ENTRY_KEY, RedisCacher.BITSET_KEY, RedisCacher.DOMAINS_KEY), UNSATFields.keySet());
+        assertEquals(unsat.getDomainsBitSet(), BitSet.valueOf(UNSATFields.get(RedisCacher.DOMAINS_KEY)));
+        assertArrayEquals(sat.getChannels(), ((ContainmentCacheSATEntry) cacher.cacheEntryFromKey(SATKey)).getChannels());
+
+        // Once the option is off, the migration drops the old fields
+        assertEquals(2, cacher.migrateEncoding(10));
+        assertEquals(ImmutableSet.of(RedisCacher.ENTRY_KEY), redis.hgetAll(SATKey).keySet());
+        assertEquals(ImmutableSet.of(RedisCacher.ENTRY_KEY), redis.hgetAll(UNSATKey).keySet());
+        assertArrayEquals(sat.getChannels(), ((ContainmentCacheSATEntry) cacher.cacheEntryFromKey(SATKey)).getChannels());
+        assertEquals(unsat.getDomainsBitSet(), ((ContainmentCacheUNSATEntry) cacher.cacheEntryFromKey(UNSATKey)).getDomainsBitSet());
+    }
+
+    @Test
+    public void entriesDeletedDuringTheMigrationStayDeleted() {
+        final List<Station> stations = new ArrayList<>(permutation.keySet());
+        final ContainmentCacheSATEntry sat = new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(stations.get(0))), permutation);
+        final String deletedKey = coordinate.toKey(SATResult.SAT, 101);
+        final String keptKey = coordinate.toKey(SATResult.SAT, 102);
+        // Deletes an entry from another connection, after the migration has read it but before it writes it back
+        final InMemoryRedisStore racingRedis = new InMemoryRedisStore() {
+            private boolean deleted = false;
+
+            @Override
+            public IRedisBatch multi() {
+                if (!deleted) {
+                    deleted = true;
+                    del(deletedKey);
+                }
+                return super.multi();
+            }
+        };
+        for (String key : ImmutableList.of(deletedKey, keptKey)) {
+            racingRedis.hset(key, RedisCacher.BITSET_KEY, sat.getBitSet().toByteArray());
+            racingRedis.hset(key, RedisCacher.ASSIGNMENT_KEY, sat.getChannels());
+        }
+
+        assertEquals(1, new RedisCacher(dataManager, racingRedis).migrateEncoding(2));
+        assertTrue(racingRedis.hgetAll(deletedKey).isEmpty());
+        assertEquals(ImmutableSet.of(RedisCacher.ENTRY_KEY), racingRedis.hgetAll(keptKey).keySet());
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+
+public class StationPackingInstanceHasherTest {
+
+    @Test
+    public void hashesDoNotDependOnOrder() {
+        assertEquals(StationPackingInstanceHasher.hashStations(ImmutableList.of(new Station(1), new Station(2))),
+                StationPackingInstanceHasher.hashStations(ImmutableList.of(new Station(2), new Station(1))));
+
+        final Map<Station, Set<Integer>> domains = new LinkedHashMap<>();
+        domains.put(new Station(1), Sets.newLinkedHashSet(ImmutableList.of(14, 15)));
+        domains.put(new Station(2), Sets.newLinkedHashSet(ImmutableList.of(20)));
+        final Map<Station, Set<Integer>> reversed = new LinkedHashMap<>();
+        reversed.put(new Station(2), Sets.newLinkedHashSet(ImmutableList.of(20)));
+        reversed.put(new Station(1), Sets.newLinkedHashSet(ImmutableList.of(15, 14)));
+        assertEquals(StationPackingInstanceHasher.hashDomains(domains), StationPackingInstanceHasher.hashDomains(reversed));
+    }
+
+    @Test
+    public void domainsOfDifferentStationsDoNotCollide() {
+        // Same sequence of channels, but split differently between the stations
+        assertNotEquals(StationPackingInstanceHasher.hashDomains(ImmutableMap.of(new Station(1), Sets.newHashSet(14, 15), new Station(2), Sets.newHashSet(16))),
+                StationPackingInstanceHasher.hashDomains(ImmutableMap.of(new Station(1), Sets.newHashSet(14), new Station(2), Sets.newHashSet(15, 16))));
+    }
+
+}
@@ -31,8 +31,11 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
 
 /**
  * Created by emily404 on 5/12/15.
@@ -128,4 +131,26 @@ public class ContainmentCacheSATEntryTest {
         Assert.assertFalse(e2.hasMoreSolvingPower(e1));
     }
 
+    /**
+     * The entry's channels must fall within the query's domains, and every query station must be in the entry
+     */
+    @Test
+    public void isSolutionToTest(){
+        Station s3 = new Station(3);
+        ImmutableBiMap<Station, Integer> permutation = ImmutableBiMap.of(s1, 2, s2, 0, s3, 1);
+        Map<Integer, Set<Station>> asgmnt = new HashMap<>();
+        asgmnt.put(c1, new HashSet<>(Arrays.asList(s1, s3)));
+        asgmnt.put(c2, new HashSet<>(Arrays.asList(s2)));
+        ContainmentCacheSATEntry entry = new ContainmentCacheSATEntry(asgmnt, permutation);
+
+        Assert.assertTrue(entry.isSolutionTo(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(c1, c3), s2, ImmutableSet.of(c2)))));
+        Assert.assertTrue(entry.isSolutionTo(new StationPackingInstance(ImmutableMap.of(s3, ImmutableSet.of(c1)))));
+        Assert.assertFalse(entry.isSolutionTo(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(c1), s3, ImmutableSet.of(c2)))));
+
+        Map<Integer, Set<Station>> partialAsgmnt = new HashMap<>();
+        partialAsgmnt.put(c1, new HashSet<>(Arrays.asList(s1)));
+        ContainmentCacheSATEntry partial = new ContainmentCacheSATEntry(partialAsgmnt, permutation);
+        Assert.assertFalse(partial.isSolutionTo(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(c1), s3, ImmutableSet.of(c1)))));
+    }
+
 }
@@ -25,12 +25,22 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
@@ -38,8 +48,10 @@ import com.google.common.collect.Sets;
 import ca.ubc.cs.beta.stationpacking.base.Station;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
 import ca.ubc.cs.beta.stationpacking.cache.SatisfiabilityCacheFactory;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.CacheFilterProgress;
 import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.ISatisfiabilityCache;
 import ca.ubc.cs.beta.stationpacking.datamanagers.stations.IStationManager;
+import containmentcache.SimpleCacheSet;
 import containmentcache.util.PermutationUtils;
 import lombok.extern.slf4j.Slf4j;
 
@@ -88,6 +100,29 @@ public class SatisfiabilityCacheTest {
         assertFalse(result2.isValid());
     }
 
+    private final IStationManager STATION_MANAGER = new IStationManager() {
+
+        @Override
+        public Set<Station> getStations() {
+            return UNIVERSE;
+        }
+
+        @Override
+        public Station getStationfromID(Integer aID) throws IllegalArgumentException {
+            return new Station(aID);
+        }
+
+        @Override
+        public Set<Integer> getDomain(Station aStation) {
+            return Sets.newHashSet(1, 2, 3);
+        }
+
+        @Override
+        public String getDomainHash() {
+            return "whocares";
+        }
+    };
+
     @Test
     public void testFilterSAT() throws Exception {
         final SatisfiabilityCacheFactory factory = new SatisfiabilityCacheFactory(1, 0);
@@ -127,4 +162,117 @@ public class SatisfiabilityCacheTest {
         assertEquals(containmentCacheSATEntries.size(), 0);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void exactlyOneOfSeveralDuplicatesSurvives() throws Exception {
+        final ImmutableBiMap<Station, Integer> permutation = PermutationUtils.makePermutation(UNIVERSE);
+        final ISatisfiabilityCache satisfiabilityCache = new SatisfiabilityCacheFactory(1, 0).create(permutation);
+        for (int i = 0; i < 3; i++) {
+            final ContainmentCacheSATEntry SATEntry = new ContainmentCacheSATEntry(ImmutableMap.of(2, Sets.newHashSet(s1), 3, Sets.newHashSet(s2)), permutation);
+            SATEntry.setKey("SAT" + i);
+            satisfiabilityCache.add(SATEntry);
+            final ContainmentCacheUNSATEntry UNSATEntry = new ContainmentCacheUNSATEntry(ImmutableMap.of(s1, Sets.newHashSet(15), s2, Sets.newHashSet(15)), permutation);
+            UNSATEntry.setKey("UNSAT" + i);
+            satisfiabilityCache.add(UNSATEntry);
+        }
+        assertEquals(2, satisfiabilityCache.filterSAT(STATION_MANAGER, false).size());
+        assertEquals(1, satisfiabilityCache.getSATEntries().size());
+        assertEquals(2, satisfiabilityCache.filterUNSAT().size());
+        assertEquals(1, satisfiabilityCache.getUNSATEntries().size());
+    }
+
+    @Test
+    public void strictSupersetsPruneSubsets() throws Exception {
+        final ImmutableBiMap<Station, Integer> permutation = PermutationUtils.makePermutation(UNIVERSE);
+        final ISatisfiabilityCache satisfiabilityCache = new SatisfiabilityCacheFactory(1, 0).create(permutation);
+        final ContainmentCacheSATEntry small = new ContainmentCacheSATEntry(ImmutableMap.of(2, Sets.newHashSet(s1), 3, Sets.newHashSet(s2)), permutation);
+        final ContainmentCacheSATEntry big = new ContainmentCacheSATEntry(ImmutableMap.of(2, Sets.newHashSet(s1), 3, Sets.newHashSet(s2, s3)), permutation);
+        // An UNSAT problem on fewer stations is the one that proves more
+        final ContainmentCacheUNSATEntry fewStations = new ContainmentCacheUNSATEntry(ImmutableMap.of(s1, Sets.newHashSet(15), s2, Sets.newHashSet(15)), permutation);
+        final ContainmentCacheUNSATEntry manyStations = new ContainmentCacheUNSATEntry(ImmutableMap.of(s1, Sets.newHashSet(15), s2, Sets.newHashSet(15), s3, Sets.newHashSet(15)), permutation);
+        satisfiabilityCache.add(small);
+        satisfiabilityCache.add(big);
+        satisfiabilityCache.add(fewStations);
+        satisfiabilityCache.add(manyStations);
+        assertEquals(ImmutableList.of(small), satisfiabilityCache.filterSAT(STATION_MANAGER, false));
+        assertEquals(ImmutableList.of(big), satisfiabilityCache.getSATEntries());
+        assertEquals(ImmutableList.of(manyStations), satisfiabilityCache.filterUNSAT());
+        assertEquals(ImmutableList.of(fewStations), satisfiabilityCache.getUNSATEntries());
+    }
+
+    @Test
+    public void cancellingStopsFilteringEarly() throws Exception {
+        final Set<Station> stations = IntStream.range(0, 20).mapToObj(Station::new).collect(Collectors.toSet());
+        final ImmutableBiMap<Station, Integer> permutation = PermutationUtils.makePermutation(stations);
+        final ISatisfiabilityCache satisfiabilityCache = new SatisfiabilityCacheFactory(1, 0).create(permutation);
+        // Every entry but the first of each station is made redundant by the first one, which has fewer stations and more channels
+        final int numEntries = 1000;
+        for (int i = 0; i < numEntries; i++) {
+            final Station station = new Station(i % 20);
+            final Station other = new Station((i + 1) % 20);
+            satisfiabilityCache.add(new ContainmentCacheUNSATEntry(i < 20 ? ImmutableMap.of(station, Sets.newHashSet(15, 16)) : ImmutableMap.of(station, Sets.newHashSet(15), other, Sets.newHashSet(14 + i / 20)), permutation));
+        }
+        final CacheFilterProgress progress = new CacheFilterProgress() {
+            @Override
+            public long scanned(boolean isPrunable) {
+                final long scanned = super.scanned(isPrunable);
+                if (scanned == 10) {
+                    cancel();
+                }
+                return scanned;
+            }
+        };
+        final List<ContainmentCacheUNSATEntry> removed = satisfiabilityCache.filterUNSAT(progress);
+        assertTrue(progress.isCancelled());
+        assertEquals(numEntries, progress.getTotal());
+        // Entries that were already being checked when the run was cancelled are still counted
+        assertTrue(progress.toString(), progress.getScanned() < numEntries / 2);
+        assertEquals(progress.getPrunable(), removed.size());
+        assertEquals(numEntries - removed.size(), satisfiabilityCache.getUNSATEntries().size());
+        assertTrue(progress.toString().contains("(cancelled)"));
+    }
+
+    @Test
+    public void findMaxIntersectionsMatchesBruteForceRanking() throws Exception {
+        final Random random = new Random(0);
+        final Set<Station> stations = IntStream.range(0, 30).mapToObj(Station::new).collect(Collectors.toSet());
+        final ImmutableBiMap<Station, Integer> permutation = PermutationUtils.makePermutation(stations);
+        final ISatisfiabilityCache satisfiabilityCache = new SatisfiabilityCacheFactory(1, 0).create(permutation);
+        final StationPackingInstance instance = randomInstance(stations, random);
+        assertTrue(satisfiabilityCache.findMaxIntersections(instance, 5).isEmpty());
+
+        final List<ContainmentCacheSATEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            final Map<Integer, Set<Station>> assignment = new HashMap<>();
+            stations.stream().filter(station -> random.nextInt(3) > 0).forEach(station -> assignment.computeIfAbsent(14 + random.nextInt(6), c -> new HashSet<>()).add(station));
+            final ContainmentCacheSATEntry entry = new ContainmentCacheSATEntry(assignment, permutation);
+            entry.setKey("SAT" + i);
+            entries.add(entry);
+            satisfiabilityCache.add(entry);
+        }
+        final List<Integer> expectedScores = entries.stream().map(entry -> bruteForceScore(entry, instance, permutation)).sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        // Scores only take a few values over 200 entries, so there are ties at every cut-off
+        for (int k : new int[]{0, 1, 10, 50, 200, 500}) {
+            final List<ContainmentCacheSATEntry> result = satisfiabilityCache.findMaxIntersections(instance, k);
+            assertEquals(Math.min(k, entries.size()), result.size());
+            assertEquals(result.size(), result.stream().map(ContainmentCacheSATEntry::getKey).distinct().count());
+            assertEquals(expectedScores.subList(0, result.size()), result.stream().map(entry -> bruteForceScore(entry, instance, permutation)).collect(Collectors.toList()));
+        }
+    }
+
+    private StationPackingInstance randomInstance(Set<Station> stations, Random random) {
+        final Map<Station, Set<Integer>> domains = new HashMap<>();
+        stations.stream().filter(station -> random.nextBoolean()).forEach(station -> domains.put(station, IntStream.range(14, 20).filter(c -> random.nextBoolean()).boxed().collect(Collectors.toSet())));
+        return new StationPackingInstance(domains);
+    }
+
+    // The ranking that findMaxIntersections used before it kept a bounded heap: intersect the bitsets, then drop the stations whose channel is outside of the query's domain
+    private int bruteForceScore(ContainmentCacheSATEntry entry, StationPackingInstance instance, ImmutableBiMap<Station, Integer> permutation) {
+        final BitSet bitSet = (BitSet) entry.getBitSet().clone();
+        bitSet.and(new SimpleCacheSet<>(instance.getStations(), permutation).getBitSet());
+        return (int) bitSet.stream().filter(i -> {
+            final Station station = permutation.inverse().get(i);
+            return instance.getDomains().get(station).contains(entry.getAssignmentStationToChannel().get(station.getID()));
+        }).count();
+    }
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+public class CacheEntryUsageTest {
+
+    private static List<String> leastUseful(CacheEntryUsage<String> usage, int n) {
+        return usage.leastUseful(n).stream().map(CacheEntryUsage.Candidate::getEntry).collect(Collectors.toList());
+    }
+
+    @Test
+    public void fewerHitsAndLargerEntriesGoFirst() {
+        final CacheEntryUsage<String> usage = new CacheEntryUsage<>();
+        usage.added("small", 10);
+        usage.added("large", 100);
+        usage.added("popular", 100);
+        for (int i = 0; i < 20; i++) {
+            usage.hit("popular");
+        }
+        assertEquals(ImmutableList.of("large", "small", "popular"), leastUseful(usage, 3));
+        assertEquals(ImmutableList.of("large"), leastUseful(usage, 1));
+    }
+
+    @Test
+    public void entriesNotHitSinceAnEvictionAgeOut() {
+        final CacheEntryUsage<String> usage = new CacheEntryUsage<>();
+        usage.added("old", 10);
+        for (int i = 0; i < 5; i++) {
+            usage.hit("old");
+        }
+        usage.added("evicted", 1);
+        final CacheEntryUsage.Candidate<String> candidate = usage.leastUseful(3).stream().filter(c -> c.getEntry().equals("evicted")).findFirst().get();
+        usage.removed("evicted");
+        usage.evicted(candidate.getUtility());
+        usage.added("recent", 10);
+        assertEquals(ImmutableList.of("old", "recent"), leastUseful(usage, 2));
+        assertEquals(2, usage.size());
+    }
+
+    @Test
+    public void concurrentHitsAreAllCounted() throws Exception {
+        final CacheEntryUsage<String> usage = new CacheEntryUsage<>();
+        final int numEntries = 3000;
+        // More entries than the initial capacity, so that the arrays are grown while hits are being recorded
+        final List<String> entries = IntStream.range(0, numEntries).mapToObj(i -> "entry" + i).collect(Collectors.toList());
+        entries.subList(0, numEntries / 2).forEach(entry -> usage.added(entry, 1));
+        final int numThreads = 4;
+        final int hitsPerThread = 1000;
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads + 1);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < hitsPerThread; i++) {
+                    usage.hit(entries.get(0));
+                    usage.leastUseful(10);
+                }
+            }));
+        }
+        futures.add(executor.submit(() -> entries.subList(numEntries / 2, numEntries).forEach(entry -> usage.added(entry, 1))));
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertEquals(numEntries, usage.size());
+        // Being added counts as one hit, and a size of 1 makes the utility the number of hits
+        final CacheEntryUsage.Candidate<String> mostUseful = Iterables.getLast(usage.leastUseful(numEntries));
+        assertEquals("entry0", mostUseful.getEntry());
+        assertEquals(1 + numThreads * hitsPerThread, mostUseful.getUtility(), 0);
+    }
+
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import containmentcache.ICacheSet;
+import containmentcache.IContainmentCache;
+
+public class LeftRightContainmentCacheTest {
+
+    private static class IntSet implements ICacheSet<Integer> {
+        private final BitSet bitSet = new BitSet();
+
+        IntSet(int... elements) {
+            for (int e : elements) {
+                bitSet.set(e);
+            }
+        }
+
+        @Override
+        public Set<Integer> getElements() {
+            return bitSet.stream().boxed().collect(Collectors.toSet());
+        }
+
+        @Override
+        public BitSet getBitSet() {
+            return bitSet;
+        }
+    }
+
+    /**
+     * Not thread safe: iterating while another thread writes throws a ConcurrentModificationException (or worse)
+     */
+    private static class ListCache implements IContainmentCache<Integer, IntSet> {
+        private final List<IntSet> sets = new ArrayList<>();
+
+        @Override
+        public void add(IntSet set) {
+            sets.add(set);
+        }
+
+        @Override
+        public void remove(IntSet set) {
+            sets.remove(set);
+        }
+
+        @Override
+        public boolean contains(ICacheSet<Integer> set) {
+            return sets.contains(set);
+        }
+
+        @Override
+        public Iterable<IntSet> getSubsets(ICacheSet<Integer> set) {
+            return sets.stream().filter(s -> set.getElements().containsAll(s.getElements())).collect(Collectors.toList());
+        }
+
+        @Override
+        public int getNumberSubsets(ICacheSet<Integer> set) {
+            return (int) StreamSupport.stream(getSubsets(set).spliterator(), false).count();
+        }
+
+        @Override
+        public Iterable<IntSet> getSupersets(ICacheSet<Integer> set) {
+            return sets.stream().filter(s -> s.getElements().containsAll(set.getElements())).collect(Collectors.toList());
+        }
+
+        @Override
+        public int getNumberSupersets(ICacheSet<Integer> set) {
+            return (int) StreamSupport.stream(getSupersets(set).spliterator(), false).count();
+        }
+
+        @Override
+        public int size() {
+            return sets.size();
+        }
+
+        @Override
+        public Iterable<IntSet> getSets() {
+            return sets;
+        }
+    }
+
+    @Test
+    public void writesAreVisibleToLaterReads() {
+        final LeftRightContainmentCache<Integer, IntSet> cache = new LeftRightContainmentCache<>(ListCache::new);
+        final IntSet set = new IntSet(1, 2);
+        cache.add(set);
+        assertEquals(1, cache.size());
+        assertEquals(ImmutableSet.of(set), cache.read(c -> ImmutableSet.copyOf(c.getSupersets(new IntSet(1)))));
+        cache.remove(set);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void readersAndWritersDoNotCollide() throws Exception {
+        final LeftRightContainmentCache<Integer, IntSet> cache = new LeftRightContainmentCache<>(ListCache::new);
+        final int numWrites = 2000;
+        final ExecutorService executor = Executors.newFixedThreadPool(6);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            final int writer = w;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < numWrites; i++) {
+                    cache.add(new IntSet(writer, i % 64));
+                }
+            }));
+        }
+        for (int r = 0; r < 4; r++) {
+            futures.add(executor.submit(() -> {
+                int seen = 0;
+                while (seen < 2 * numWrites) {
+                    // Walk the whole list: this blows up if a writer touches the copy we are reading
+                    seen = cache.read(c -> {
+                        int count = 0;
+                        for (IntSet ignored : c.getSets()) {
+                            count++;
+                        }
+                        return count;
+                    });
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+        assertEquals(2 * numWrites, cache.size());
+    }
+
+    @Test
+    public void eachWriteIsVisibleWhenItReturns() throws Exception {
+        final LeftRightContainmentCache<Integer, IntSet> cache = new LeftRightContainmentCache<>(ListCache::new);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            final int writer = w;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    // Other writers' batches can pick up this change, it must still be applied by the time add returns
+                    final IntSet set = new IntSet(writer, 100 + i);
+                    cache.add(set);
+                    assertTrue(cache.read(c -> c.contains(set)));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void writingFromAReadFails() {
+        final LeftRightContainmentCache<Integer, IntSet> cache = new LeftRightContainmentCache<>(ListCache::new);
+        cache.read(c -> {
+            cache.add(new IntSet(1));
+            return null;
+        });
+    }
+
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.scripts;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Resources;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.IConstraintManager;
+import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.DataManager;
+import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.ManagerBundle;
+
+public class ConstrainCacheTest {
+
+    @Rule
+    public TemporaryFolder constraintFolder = new TemporaryFolder();
+
+    @Test
+    public void conflictsAreRemovedLikeThePairwiseCheck() throws Exception {
+        final Path testInterference = Paths.get(Resources.getResource("data/testInterference").toURI());
+        Files.copy(testInterference.resolve(DataManager.DOMAIN_FILE), constraintFolder.getRoot().toPath().resolve(DataManager.DOMAIN_FILE));
+        Files.copy(testInterference.resolve("channelspecific").resolve(DataManager.INTERFERENCES_FILE), constraintFolder.getRoot().toPath().resolve(DataManager.INTERFERENCES_FILE));
+        final DataManager dataManager = new DataManager();
+        dataManager.addData(constraintFolder.getRoot().getPath());
+        final ManagerBundle bundle = dataManager.getData(constraintFolder.getRoot().getPath());
+        final IConstraintManager constraintManager = bundle.getConstraintManager();
+        final List<Station> stations = new ArrayList<>(bundle.getStationManager().getStations());
+
+        final Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            final Map<Integer, Integer> assignment = new HashMap<>();
+            for (Station station : stations) {
+                if (random.nextBoolean()) {
+                    final List<Integer> domain = new ArrayList<>(bundle.getStationManager().getDomain(station));
+                    assignment.put(station.getID(), domain.get(random.nextInt(domain.size())));
+                }
+            }
+            final Map<Integer, Integer> expected = new HashMap<>(assignment);
+            final List<Integer> ids = new ArrayList<>(expected.keySet());
+            for (Integer s1 : ids) {
+                for (Integer s2 : ids) {
+                    if (expected.containsKey(s1) && expected.containsKey(s2) && !Objects.equals(s1, s2)
+                            && !constraintManager.isSatisfyingAssignment(new Station(s1), expected.get(s1), new Station(s2), expected.get(s2))) {
+                        expected.remove(s1);
+                    }
+                }
+            }
+            ConstrainCache.removeConflicts(assignment, constraintManager);
+            assertEquals(expected, assignment);
+        }
+    }
+
+}
@@ -22,6 +22,7 @@
 package ca.ubc.cs.beta.stationpacking.execution;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -30,13 +31,25 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.math3.util.Pair;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
 import ca.ubc.cs.beta.aeatk.misc.jcommander.JCommanderHelper;
 import ca.ubc.cs.beta.stationpacking.execution.parameters.solver.base.InstanceParameters;
+import ca.ubc.cs.beta.stationpacking.execution.problemgenerators.SATFCFacadeProblem;
 import ca.ubc.cs.beta.stationpacking.facade.InterruptibleSATFCResult;
 import ca.ubc.cs.beta.stationpacking.facade.SATFCFacade;
 import ca.ubc.cs.beta.stationpacking.facade.SATFCFacadeBuilder;
@@ -178,4 +191,114 @@ public class SATFCFacadeTests {
         }
     }
 
+    @Test
+    public void testSolveAsync() throws Exception {
+        @Cleanup
+        SATFCFacade facade = buildFacade();
+        final Map<InstanceParameters, CompletableFuture<SATFCResult>> futures = new HashMap<>();
+        for (InstanceParameters testCase : TEST_CASES.keySet()) {
+            futures.put(testCase, facade.solveAsync(testCase.getDomains(), testCase.getPreviousAssignment(), testCase.Cutoff, testCase.Seed, testCase.fDataFoldername));
+        }
+        for (Entry<InstanceParameters, CompletableFuture<SATFCResult>> entry : futures.entrySet()) {
+            assertEquals(TEST_CASES.get(entry.getKey()).getFirst(), entry.getValue().get().getResult());
+        }
+    }
+
+    @Test
+    public void testCancelAsync() throws Exception {
+        // A single worker, so the second problem can only start once the first one has been interrupted
+        @Cleanup
+        SATFCFacade facade = new SATFCFacadeBuilder().setNumAsyncWorkers(1).build();
+        for (InstanceParameters testCase : TEST_CASES.keySet()) {
+            final CompletableFuture<SATFCResult> future = facade.solveAsync(testCase.getDomains(), testCase.getPreviousAssignment(), testCase.Cutoff, testCase.Seed, testCase.fDataFoldername);
+            Thread.sleep(100);
+            assertTrue(future.cancel(true));
+            final SATFCResult next = facade.solveAsync(ImmutableMap.of(), ImmutableMap.of(), testCase.Cutoff, testCase.Seed, testCase.fDataFoldername).get((long) testCase.Cutoff / 2, TimeUnit.SECONDS);
+            assertEquals(SATResult.SAT, next.getResult());
+        }
+    }
+
+    @Test
+    public void testSolveAsyncOnExecutor() throws Exception {
+        @Cleanup
+        SATFCFacade facade = buildFacade();
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        final AtomicInteger executed = new AtomicInteger(0);
+        final Executor executor = command -> {
+            executed.incrementAndGet();
+            executorService.execute(command);
+        };
+        try {
+            for (Entry<InstanceParameters, Pair<SATResult, Double>> entry : TEST_CASES.entrySet()) {
+                final InstanceParameters testCase = entry.getKey();
+                final SATFCResult result = facade.solveAsync(testCase.getDomains(), testCase.getPreviousAssignment(), testCase.Cutoff, testCase.Seed, testCase.fDataFoldername, null, executor).get();
+                assertEquals(entry.getValue().getFirst(), result.getResult());
+            }
+            assertEquals(TEST_CASES.size(), executed.get());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private static SATFCFacadeProblem toProblem(InstanceParameters testCase, String name) {
+        return new SATFCFacadeProblem(testCase.getPackingStationIDs(), testCase.getPackingChannels(), testCase.getDomains(), testCase.getPreviousAssignment(), testCase.fDataFoldername, name, testCase.Cutoff);
+    }
+
+    @Test
+    public void testSolveBatch() throws Exception {
+        @Cleanup
+        SATFCFacade facade = buildFacade();
+        // Every problem appears twice, so all of its components are shared
+        final List<SATFCFacadeProblem> problems = new ArrayList<>();
+        final List<SATResult> expected = new ArrayList<>();
+        for (int copy = 0; copy < 2; copy++) {
+            for (Entry<InstanceParameters, Pair<SATResult, Double>> entry : TEST_CASES.entrySet()) {
+                problems.add(toProblem(entry.getKey(), "problem" + problems.size()));
+                expected.add(entry.getValue().getFirst());
+            }
+        }
+        final List<SATFCResult> results = facade.solveBatch(problems, 1);
+        assertEquals(problems.size(), results.size());
+        final Pattern sharing = Pattern.compile("(\\d+) components, (\\d+) shared");
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(expected.get(i), results.get(i).getResult());
+            final Matcher matcher = sharing.matcher(results.get(i).getExtraInfo());
+            assertTrue(results.get(i).getExtraInfo(), matcher.find());
+            assertEquals(matcher.group(1), matcher.group(2));
+        }
+    }
+
+    @Test
+    public void testSolveBatchFailureIsolation() throws Exception {
+        final List<SATFCFacadeProblem> problems = new ArrayList<>();
+        final List<SATResult> expected = new ArrayList<>();
+        for (Entry<InstanceParameters, Pair<SATResult, Double>> entry : TEST_CASES.entrySet()) {
+            problems.add(toProblem(entry.getKey(), "problem" + problems.size()));
+            expected.add(entry.getValue().getFirst());
+            // Same problem, but with a previous assignment that is outside of a station's domain
+            final SATFCFacadeProblem invalid = toProblem(entry.getKey(), "invalid" + problems.size());
+            final Entry<Integer, Set<Integer>> station = invalid.getDomains().entrySet().iterator().next();
+            invalid.setPreviousAssignment(ImmutableMap.of(station.getKey(), station.getValue().stream().mapToInt(Integer::intValue).max().getAsInt() + 1));
+            problems.add(invalid);
+            expected.add(SATResult.CRASHED);
+            // Same problem, with a station that is not in the station config folder
+            final SATFCFacadeProblem unknownStation = toProblem(entry.getKey(), "unknown" + problems.size());
+            final Map<Integer, Set<Integer>> domains = new HashMap<>(unknownStation.getDomains());
+            domains.put(Integer.MAX_VALUE, station.getValue());
+            unknownStation.setDomains(domains);
+            problems.add(unknownStation);
+            expected.add(SATResult.CRASHED);
+        }
+        // The problems are also looked up in the cache first when there is one
+        for (SATFCFacadeBuilder builder : ImmutableList.of(new SATFCFacadeBuilder(), new SATFCFacadeBuilder().setEmbeddedCache(null))) {
+            @Cleanup
+            SATFCFacade facade = builder.build();
+            final List<SATFCResult> results = facade.solveBatch(problems, 1);
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(problems.get(i).getInstanceName(), expected.get(i), results.get(i).getResult());
+            }
+        }
+    }
+
+
 }
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.execution.metricwriters;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ca.ubc.cs.beta.stationpacking.StationPackingTestUtils;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.TestConstraintManager;
+import ca.ubc.cs.beta.stationpacking.metrics.InstanceInfo;
+import ca.ubc.cs.beta.stationpacking.metrics.SATFCMetrics;
+import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
+
+public class FileMetricsWriterTest {
+
+    private File metricsFile;
+
+    @BeforeClass
+    public static void init() {
+        SATFCMetrics.init();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        metricsFile = File.createTempFile("metrics", ".txt");
+    }
+
+    @After
+    public void tearDown() {
+        SATFCMetrics.clear();
+        metricsFile.delete();
+    }
+
+    private void writeProblem(FileMetricsWriter writer) throws Exception {
+        final StationPackingInstance instance = StationPackingTestUtils.getSimpleInstance();
+        SATFCMetrics.postEvent(new SATFCMetrics.NewStationPackingInstanceEvent(instance, new TestConstraintManager(Collections.emptyList())));
+        writer.writeMetrics(instance.getName());
+        SATFCMetrics.clear(instance.getName());
+    }
+
+    @Test
+    public void jsonLinesAreWritten() throws Exception {
+        final FileMetricsWriter writer = new FileMetricsWriter(metricsFile.getAbsolutePath());
+        writeProblem(writer);
+        writeProblem(writer);
+        writer.onFinished();
+        final List<String> lines = Files.readAllLines(metricsFile.toPath());
+        assertEquals(2, lines.size());
+        assertEquals(StationPackingTestUtils.getSimpleInstance().getName(), JSONUtils.toObject(lines.get(0), InstanceInfo.class).getName());
+    }
+
+    @Test
+    public void smileRecordsAreWritten() throws Exception {
+        final FileMetricsWriter writer = new FileMetricsWriter(metricsFile.getAbsolutePath(), true);
+        writeProblem(writer);
+        writer.onFinished();
+        final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(metricsFile.toPath()));
+        final int length = bytes.getInt();
+        assertEquals(bytes.remaining(), length);
+        final InstanceInfo info = JSONUtils.getSmileMapper().readValue(Arrays.copyOfRange(bytes.array(), Integer.BYTES, Integer.BYTES + length), InstanceInfo.class);
+        assertEquals(StationPackingTestUtils.getSimpleInstance().getName(), info.getName());
+    }
+
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.execution.problemgenerators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import ca.ubc.cs.beta.stationpacking.execution.Converter;
+
+public class CorpusProblemReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws Exception {
+        final Path corpus = folder.newFile("test.corpus").toPath();
+        try (ProblemCorpusWriter writer = new ProblemCorpusWriter(corpus)) {
+            writer.add("first", new Converter.StationPackingProblemSpecs("first.srpk",
+                    ImmutableMap.of(100, ImmutableSet.of(14, 15, 51), 25000, ImmutableSet.of(3000)),
+                    ImmutableMap.of(25000, 3000),
+                    "interference",
+                    60.0));
+            writer.add("second", new Converter.StationPackingProblemSpecs(
+                    ImmutableMap.of(7, ImmutableSet.of(20)),
+                    null,
+                    "other"));
+        }
+
+        final CorpusProblemReader reader = new CorpusProblemReader(corpus.toString(), "root");
+        assertEquals(2, reader.size());
+
+        final SATFCFacadeProblem second = reader.getProblem(1);
+        assertEquals("second", second.getInstanceName());
+        assertEquals(ImmutableMap.of(7, ImmutableSet.of(20)), second.getDomains());
+        assertEquals(ImmutableMap.of(), second.getPreviousAssignment());
+        assertEquals(-1, second.getCutoff(), 0);
+
+        final SATFCFacadeProblem first = reader.getNextProblem();
+        assertEquals("first", first.getInstanceName());
+        assertEquals(ImmutableMap.of(100, ImmutableSet.of(14, 15, 51), 25000, ImmutableSet.of(3000)), first.getDomains());
+        assertEquals(ImmutableMap.of(25000, 3000), first.getPreviousAssignment());
+        assertEquals(ImmutableSet.of(100, 25000), first.getStationsToPack());
+        assertEquals(ImmutableSet.of(14, 15, 51, 3000), first.getChannelsToPackOn());
+        assertEquals("root" + File.separator + "interference", first.getStationConfigFolder());
+        assertEquals(60.0, first.getCutoff(), 0);
+        reader.onPostProblem(first, null);
+        assertEquals("second", reader.getNextProblem().getInstanceName());
+        assertNull(reader.getNextProblem());
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.execution.problemgenerators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import ca.ubc.cs.beta.stationpacking.execution.AProblemReader;
+import ca.ubc.cs.beta.stationpacking.facade.SATFCResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+
+public class PrefetchingProblemReaderTest {
+
+    private static class ListProblemReader extends AProblemReader {
+
+        private final int numProblems;
+        private final List<String> done = new ArrayList<>();
+        private int read = 0;
+
+        ListProblemReader(int numProblems) {
+            this.numProblems = numProblems;
+        }
+
+        @Override
+        public SATFCFacadeProblem getNextProblem() {
+            if (read == numProblems) {
+                return null;
+            }
+            read++;
+            return new SATFCFacadeProblem(null, null, ImmutableMap.of(), ImmutableMap.of(), "folder", "problem" + read);
+        }
+
+        @Override
+        public void onPostProblem(SATFCFacadeProblem problem, SATFCResult result) {
+            super.onPostProblem(problem, result);
+            done.add(problem.getInstanceName());
+        }
+    }
+
+    @Test
+    public void problemsAreReadInOrder() {
+        final ListProblemReader reader = new ListProblemReader(10);
+        final PrefetchingProblemReader prefetchingReader = new PrefetchingProblemReader(reader, 3);
+        SATFCFacadeProblem problem;
+        int i = 0;
+        while ((problem = prefetchingReader.getNextProblem()) != null) {
+            i++;
+            assertEquals("problem" + i, problem.getInstanceName());
+            prefetchingReader.onPostProblem(problem, new SATFCResult(SATResult.SAT, 0.0, 0.0, ImmutableMap.of()));
+        }
+        assertEquals(10, i);
+        assertEquals(10, reader.done.size());
+        assertNull(prefetchingReader.getNextProblem());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readerExceptionsAreRethrown() {
+        final PrefetchingProblemReader prefetchingReader = new PrefetchingProblemReader(new AProblemReader() {
+            @Override
+            public SATFCFacadeProblem getNextProblem() {
+                throw new IllegalStateException("Could not read problem");
+            }
+        }, 1);
+        prefetchingReader.getNextProblem();
+    }
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.execution.problemgenerators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import ca.ubc.cs.beta.stationpacking.facade.SATFCResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.utils.InMemoryRedisStore;
+import ca.ubc.cs.beta.stationpacking.utils.RedisUtils;
+
+public class RedisProblemReaderTest {
+
+    @Test
+    public void problemsMoveThroughTheQueues() {
+        final InMemoryRedisStore redis = new InMemoryRedisStore();
+        for (int i = 0; i < 5; i++) {
+            redis.lpush(RedisUtils.makeKey("test"), "problem" + i);
+        }
+        final RedisProblemReader reader = new RedisProblemReader(redis, "test", name -> new SATFCFacadeProblem(null, null, ImmutableMap.of(), ImmutableMap.of(), "folder", name), 2);
+        for (int i = 0; i < 5; i++) {
+            final SATFCFacadeProblem problem = reader.getNextProblem();
+            assertEquals("problem" + i, problem.getInstanceName());
+            final SATResult result = i % 2 == 0 ? SATResult.SAT : SATResult.TIMEOUT;
+            reader.onPostProblem(problem, new SATFCResult(result, 0.0, 0.0, ImmutableMap.of()));
+        }
+        assertNull(reader.getNextProblem());
+        assertEquals(0, redis.llen(RedisUtils.makeKey("test", RedisUtils.PROCESSING_QUEUE)));
+        assertEquals(2, redis.llen(RedisUtils.makeKey("test", RedisUtils.TIMEOUTS_QUEUE)));
+    }
+
+}
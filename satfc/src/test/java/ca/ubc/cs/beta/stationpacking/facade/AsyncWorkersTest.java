@@ -0,0 +1,129 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.facade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class AsyncWorkersTest {
+
+    private static class Resource implements AutoCloseable {
+
+        private boolean closed = false;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void workersRunConcurrentlyWithTheirOwnResource() throws Exception {
+        final List<Resource> created = Collections.synchronizedList(new ArrayList<>());
+        final AsyncWorkers<Resource> workers = new AsyncWorkers<>("test", 2, () -> {
+            final Resource resource = new Resource();
+            created.add(resource);
+            return resource;
+        });
+        // Both tasks must be running at the same time for either of them to finish
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(2);
+        final List<Resource> used = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 2; i++) {
+            workers.submit((resource, abandonWorker) -> {
+                used.add(resource);
+                bothStarted.countDown();
+                try {
+                    if (bothStarted.await(10, TimeUnit.SECONDS)) {
+                        done.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(2, created.size());
+        assertNotSame(used.get(0), used.get(1));
+        workers.close();
+        created.forEach(resource -> assertTrue(resource.closed));
+    }
+
+    @Test
+    public void abandonedWorkerIsReplaced() throws Exception {
+        final AsyncWorkers<Resource> workers = new AsyncWorkers<>("test", 1, Resource::new);
+        final CountDownLatch hung = new CountDownLatch(1);
+        final AtomicReference<Resource> hungResource = new AtomicReference<>();
+        final AtomicReference<Runnable> abandonHungWorker = new AtomicReference<>();
+        final CountDownLatch released = new CountDownLatch(1);
+        workers.submit((resource, abandonWorker) -> {
+            hungResource.set(resource);
+            abandonHungWorker.set(abandonWorker);
+            hung.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        final AtomicReference<Resource> nextResource = new AtomicReference<>();
+        final CountDownLatch nextDone = new CountDownLatch(1);
+        workers.submit((resource, abandonWorker) -> {
+            nextResource.set(resource);
+            nextDone.countDown();
+        });
+        assertTrue(hung.await(10, TimeUnit.SECONDS));
+        // The only worker is stuck, so the second task cannot run until it is abandoned
+        assertEquals(1, nextDone.getCount());
+        abandonHungWorker.get().run();
+        assertTrue(nextDone.await(10, TimeUnit.SECONDS));
+        assertNotSame(hungResource.get(), nextResource.get());
+
+        // Once the abandoned thread comes back, it does not take any more tasks
+        released.countDown();
+        final AtomicInteger runs = new AtomicInteger(0);
+        final CountDownLatch lastDone = new CountDownLatch(1);
+        workers.submit((resource, abandonWorker) -> {
+            assertEquals(nextResource.get(), resource);
+            runs.incrementAndGet();
+            lastDone.countDown();
+        });
+        assertTrue(lastDone.await(10, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+        workers.close();
+        // The abandoned resource might still be in use, so it is left alone
+        assertTrue(!hungResource.get().closed);
+        assertTrue(nextResource.get().closed);
+    }
+
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.metrics.events;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.FileNotFoundException;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ca.ubc.cs.beta.stationpacking.StationPackingTestUtils;
+import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.TestConstraintManager;
+import ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.bundles.yaml.EncodingType;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.SATEncoder;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.base.IdentityBijection;
+
+public class RecordingSolverEventSinkTest {
+
+    @After
+    public void tearDown() {
+        SolverEvents.setSink(null);
+    }
+
+    @Test
+    public void oldEventsAreOverwritten() {
+        final RecordingSolverEventSink sink = new RecordingSolverEventSink(3);
+        for (int i = 0; i < 5; i++) {
+            sink.onEvent(SolverEvents.Type.CACHE_ADD, "cache", "instance" + i);
+        }
+        final List<RecordingSolverEventSink.RecordedEvent> events = sink.getEvents();
+        assertEquals(3, events.size());
+        assertEquals("instance2", events.get(0).getInstanceName());
+        assertEquals("instance4", events.get(2).getInstanceName());
+    }
+
+    @Test
+    public void encoderEmitsEvents() throws FileNotFoundException {
+        final RecordingSolverEventSink sink = new RecordingSolverEventSink();
+        SolverEvents.setSink(sink);
+        new SATEncoder(new TestConstraintManager(Collections.emptyList()), new IdentityBijection<>(), EncodingType.DIRECT).encode(StationPackingTestUtils.getSimpleInstance());
+        final List<RecordingSolverEventSink.RecordedEvent> events = sink.getEvents();
+        assertEquals(2, events.size());
+        assertEquals(SolverEvents.Type.ENCODE_START, events.get(0).getType());
+        assertEquals(SolverEvents.Type.ENCODE_END, events.get(1).getType());
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.composites;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+
+import ca.ubc.cs.beta.stationpacking.StationPackingTestUtils;
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.IConstraintManager;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult.SolvedBy;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.infinite.NeverEndingTerminationCriterion;
+
+public class AdaptivePortfolioCompositeTest {
+
+    @Test
+    public void winningBranchIsPreferred() {
+        final AtomicInteger loserCalls = new AtomicInteger(0);
+        final List<ISolverFactory> solvers = new ArrayList<>();
+        solvers.add(s -> (aInstance, aTerminationCriterion, aSeed) -> {
+            loserCalls.incrementAndGet();
+            return SolverResult.createTimeoutResult(1.0);
+        });
+        solvers.add(s -> (aInstance, aTerminationCriterion, aSeed) -> new SolverResult(SATResult.SAT, 1.0, StationPackingTestUtils.getSimpleInstanceAnswer(), SolvedBy.UNKNOWN));
+        // Only one thread, so the branches run one after the other, in the order chosen by the portfolio
+        final AdaptivePortfolioComposite portfolio = new AdaptivePortfolioComposite(1, solvers, ImmutableList.of("loser", "winner"), 2, 1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(SATResult.SAT, portfolio.solve(StationPackingTestUtils.getSimpleInstance(), new NeverEndingTerminationCriterion(), 1).getResult());
+        }
+        loserCalls.set(0);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(SATResult.SAT, portfolio.solve(StationPackingTestUtils.getSimpleInstance(), new NeverEndingTerminationCriterion(), 1).getResult());
+        }
+        assertTrue("Losing branch was started " + loserCalls.get() + " times", loserCalls.get() < 10);
+        portfolio.notifyShutdown();
+    }
+
+    @Test
+    public void skippedBranchesDoNotLose() {
+        final List<ISolverFactory> solvers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            solvers.add(s -> (aInstance, aTerminationCriterion, aSeed) -> new SolverResult(SATResult.SAT, 1.0, StationPackingTestUtils.getSimpleInstanceAnswer(), SolvedBy.UNKNOWN));
+        }
+        // With one thread, whichever branch goes first wins and the other one never starts
+        final AdaptivePortfolioComposite portfolio = new AdaptivePortfolioComposite(1, solvers, ImmutableList.of("a", "b"), 2, 1);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(SATResult.SAT, portfolio.solve(StationPackingTestUtils.getSimpleInstance(), new NeverEndingTerminationCriterion(), 1).getResult());
+        }
+        portfolio.getStatistics().values().forEach(bucket -> bucket.values().forEach(branch -> assertTrue(branch, branch.contains("losses=0,"))));
+        portfolio.notifyShutdown();
+    }
+
+    @Test
+    public void coldBranchesAreNotStarted() {
+        final AtomicInteger calls = new AtomicInteger(0);
+        final List<ISolverFactory> solvers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            solvers.add(s -> (aInstance, aTerminationCriterion, aSeed) -> {
+                calls.incrementAndGet();
+                return SolverResult.createTimeoutResult(1.0);
+            });
+        }
+        final AdaptivePortfolioComposite portfolio = new AdaptivePortfolioComposite(1, solvers, ImmutableList.of("a", "b", "c", "d", "e"), 2, 1);
+        assertEquals(SATResult.TIMEOUT, portfolio.solve(StationPackingTestUtils.getSimpleInstance(), new NeverEndingTerminationCriterion(), 1).getResult());
+        assertEquals(2, calls.get());
+        portfolio.notifyShutdown();
+    }
+
+    @Test
+    public void branchesLoseWhenNothingWins() {
+        final List<ISolverFactory> solvers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            solvers.add(s -> (aInstance, aTerminationCriterion, aSeed) -> SolverResult.createTimeoutResult(1.0));
+        }
+        final AdaptivePortfolioComposite portfolio = new AdaptivePortfolioComposite(3, solvers, ImmutableList.of("a", "b", "c"), 2, 1);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(SATResult.TIMEOUT, portfolio.solve(StationPackingTestUtils.getSimpleInstance(), new NeverEndingTerminationCriterion(), 1).getResult());
+        }
+        final Map<String, String> bucket = Iterables.getOnlyElement(portfolio.getStatistics().values());
+        // Two branches are started per instance
+        assertEquals(10, bucket.values().stream().mapToInt(branch -> Integer.parseInt(branch.replaceAll(".*losses=(\\d+),.*", "$1"))).sum());
+        bucket.values().forEach(branch -> assertTrue(branch, branch.startsWith("wins=0,")));
+        portfolio.notifyShutdown();
+    }
+
+    @Test
+    public void fasterWinningBranchIsPreferred() {
+        final AtomicInteger slowCalls = new AtomicInteger(0);
+        final List<ISolverFactory> solvers = new ArrayList<>();
+        solvers.add(s -> (aInstance, aTerminationCriterion, aSeed) -> {
+            slowCalls.incrementAndGet();
+            return new SolverResult(SATResult.SAT, 10.0, StationPackingTestUtils.getSimpleInstanceAnswer(), SolvedBy.UNKNOWN);
+        });
+        solvers.add(s -> (aInstance, aTerminationCriterion, aSeed) -> new SolverResult(SATResult.SAT, 0.1, StationPackingTestUtils.getSimpleInstanceAnswer(), SolvedBy.UNKNOWN));
+        // Both branches always win, so only their speed tells them apart
+        final AdaptivePortfolioComposite portfolio = new AdaptivePortfolioComposite(1, solvers, ImmutableList.of("slow", "fast"), 1, 1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(SATResult.SAT, portfolio.solve(StationPackingTestUtils.getSimpleInstance(), new NeverEndingTerminationCriterion(), 1).getResult());
+        }
+        slowCalls.set(0);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(SATResult.SAT, portfolio.solve(StationPackingTestUtils.getSimpleInstance(), new NeverEndingTerminationCriterion(), 1).getResult());
+        }
+        assertTrue("Slow branch was started " + slowCalls.get() + " times", slowCalls.get() < 10);
+        portfolio.notifyShutdown();
+    }
+
+    @Test
+    public void bucketsHaveTheSizeOfTheLargestComponent() {
+        final IConstraintManager constraintManager = mock(IConstraintManager.class);
+        // Without constraints, every station is a component of its own
+        when(constraintManager.getAllRelevantConstraints(any())).thenReturn(Collections.emptyList());
+        final List<ISolverFactory> solvers = ImmutableList.of(s -> (aInstance, aTerminationCriterion, aSeed) -> SolverResult.createTimeoutResult(1.0));
+        final AdaptivePortfolioComposite portfolio = new AdaptivePortfolioComposite(1, solvers, ImmutableList.of("a"), 1, 1, constraintManager);
+        final Map<Station, Set<Integer>> domains = new HashMap<>();
+        for (int i = 0; i < 8; i++) {
+            domains.put(new Station(i), ImmutableSet.of(20));
+        }
+        portfolio.solve(new StationPackingInstance(domains), new NeverEndingTerminationCriterion(), 1);
+        assertEquals(ImmutableSet.of(new AdaptivePortfolioComposite.FeatureBucket("UHF", 4, 1)), portfolio.getStatistics().keySet());
+        portfolio.notifyShutdown();
+    }
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.decorators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import ca.ubc.cs.beta.stationpacking.StationPackingTestUtils;
+import ca.ubc.cs.beta.stationpacking.solvers.VoidSolver;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.walltime.WalltimeTerminationCriterion;
+
+public class TimingSolverDecoratorTest {
+
+    @Test
+    public void nestedTimeIsExcluded() {
+        // warm up, so that class loading does not count as solver time
+        new DelayedSolverDecorator(new VoidSolver(), 0.01).solve(StationPackingTestUtils.getSimpleInstance(), new WalltimeTerminationCriterion(10), 1);
+        final MetricRegistry registry = new MetricRegistry();
+        final Timer innerTimer = registry.timer("inner");
+        final Timer outerTimer = registry.timer("outer");
+        final TimingSolverDecorator inner = new TimingSolverDecorator(new DelayedSolverDecorator(new VoidSolver(), 0.2), innerTimer);
+        final TimingSolverDecorator outer = new TimingSolverDecorator(new DelayedSolverDecorator(inner, 0.1), outerTimer);
+        outer.solve(StationPackingTestUtils.getSimpleInstance(), new WalltimeTerminationCriterion(10), 1);
+
+        assertEquals(1, innerTimer.getCount());
+        assertEquals(1, outerTimer.getCount());
+        final long innerMillis = TimeUnit.NANOSECONDS.toMillis(innerTimer.getSnapshot().getMax());
+        final long outerMillis = TimeUnit.NANOSECONDS.toMillis(outerTimer.getSnapshot().getMax());
+        assertTrue("Inner time was " + innerMillis, innerMillis >= 200);
+        assertTrue("Outer time was " + outerMillis, outerMillis >= 100 && outerMillis < 200);
+    }
+
+}
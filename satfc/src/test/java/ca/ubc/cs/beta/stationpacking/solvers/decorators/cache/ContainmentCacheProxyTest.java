@@ -0,0 +1,85 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.decorators.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheBatchResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.BinaryContainmentCacheRequest;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchQuery;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchRequest;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheRequest;
+import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
+
+public class ContainmentCacheProxyTest {
+
+    @Test
+    public void binaryRequestRoundTrip() throws Exception {
+        final StationPackingInstance instance = new StationPackingInstance(
+                ImmutableMap.of(new Station(1), ImmutableSet.of(14, 15, 51), new Station(2), ImmutableSet.of(2, 20)),
+                ImmutableMap.of(new Station(2), 20),
+                ImmutableMap.of(StationPackingInstance.NAME_KEY, "test"));
+        final ContainmentCacheRequest request = new ContainmentCacheRequest(instance, new CacheCoordinate("domains", "interference"));
+
+        final byte[] bytes = JSONUtils.getSmileMapper().writeValueAsBytes(BinaryContainmentCacheRequest.of(request));
+        final ContainmentCacheRequest decoded = JSONUtils.getSmileMapper().readValue(bytes, BinaryContainmentCacheRequest.class).toRequest();
+
+        assertEquals(request.getCoordinate(), decoded.getCoordinate());
+        assertEquals(instance.getDomains(), decoded.getInstance().getDomains());
+        assertEquals(instance.getPreviousAssignment(), decoded.getInstance().getPreviousAssignment());
+        assertEquals("test", decoded.getInstance().getName());
+    }
+
+    @Test
+    public void batchRoundTrip() throws Exception {
+        final StationPackingInstance instance = new StationPackingInstance(ImmutableMap.of(new Station(1), ImmutableSet.of(14, 15)));
+        final ContainmentCacheBatchRequest request = new ContainmentCacheBatchRequest(ImmutableList.of(
+                new ContainmentCacheBatchQuery(instance, ContainmentCacheProxy.QueryType.SAT),
+                new ContainmentCacheBatchQuery(instance, ContainmentCacheProxy.QueryType.BOTH)),
+                new CacheCoordinate("domains", "interference"));
+        final ContainmentCacheBatchRequest decodedRequest = JSONUtils.toObject(JSONUtils.toString(request), ContainmentCacheBatchRequest.class);
+        assertEquals(2, decodedRequest.getQueries().size());
+        assertFalse(decodedRequest.getQueries().get(0).isUNSATQuery());
+        assertTrue(decodedRequest.getQueries().get(1).isUNSATQuery());
+        assertEquals(instance.getDomains(), decodedRequest.getQueries().get(1).getInstance().getDomains());
+
+        final ContainmentCacheBatchResult result = new ContainmentCacheBatchResult(
+                ImmutableList.of(new ContainmentCacheSATResult(ImmutableMap.of(14, ImmutableSet.of(new Station(1))), "SATkey"), ContainmentCacheSATResult.failure()),
+                ImmutableList.of(ContainmentCacheUNSATResult.failure(), new ContainmentCacheUNSATResult("UNSATkey")));
+        final ContainmentCacheBatchResult decodedResult = JSONUtils.getSmileMapper().readValue(JSONUtils.getSmileMapper().writeValueAsBytes(result), ContainmentCacheBatchResult.class);
+        assertEquals(result, decodedResult);
+    }
+
+}
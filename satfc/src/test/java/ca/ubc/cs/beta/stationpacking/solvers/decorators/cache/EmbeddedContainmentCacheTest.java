@@ -0,0 +1,136 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.decorators.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.EmbeddedCacheLocator;
+import ca.ubc.cs.beta.stationpacking.cache.ISATFCCacheEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheBatchResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.ISatisfiabilityCache;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchQuery;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.QueryType;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.infinite.NeverEndingTerminationCriterion;
+
+public class EmbeddedContainmentCacheTest {
+
+    private static final ImmutableBiMap<Station, Integer> PERMUTATION = ImmutableBiMap.of(new Station(1), 0, new Station(2), 1, new Station(3), 2);
+    private static final CacheCoordinate COORDINATE = new CacheCoordinate("domain", "interference");
+
+    private ISatisfiabilityCache cache;
+    private EmbeddedContainmentCache client;
+
+    @Before
+    public void setUp() {
+        final EmbeddedCacheLocator locator = new EmbeddedCacheLocator(null);
+        cache = locator.getOrCreate(COORDINATE, PERMUTATION);
+        client = new EmbeddedContainmentCache(locator, COORDINATE, cache);
+    }
+
+    static StationPackingInstance instance(int... stations) {
+        final ImmutableMap.Builder<Station, Set<Integer>> domains = ImmutableMap.builder();
+        for (int station : stations) {
+            domains.put(new Station(station), ImmutableSet.of(20, 21, 22));
+        }
+        return new StationPackingInstance(domains.build());
+    }
+
+    static SolverResult SATResultFor(StationPackingInstance instance) {
+        // Every station on its own channel, as the test domains have no constraints anyway
+        final ImmutableMap.Builder<Integer, Set<Station>> assignment = ImmutableMap.builder();
+        int channel = 20;
+        for (Station station : instance.getStations()) {
+            assignment.put(channel++, ImmutableSet.of(station));
+        }
+        return new SolverResult(SATResult.SAT, 1.0, assignment.build(), SolverResult.SolvedBy.UNKNOWN);
+    }
+
+    static SolverResult UNSATResult() {
+        return SolverResult.createNonSATResult(SATResult.UNSAT, 1.0, SolverResult.SolvedBy.UNKNOWN);
+    }
+
+    @Test
+    public void addedResultsAnswerQueries() {
+        client.cacheResult(instance(1, 2), SATResultFor(instance(1, 2)), new NeverEndingTerminationCriterion());
+        client.cacheResult(instance(3), UNSATResult(), new NeverEndingTerminationCriterion());
+
+        assertTrue(client.proveSATBySuperset(instance(1), new NeverEndingTerminationCriterion()).isValid());
+        assertFalse(client.proveSATBySuperset(instance(1, 3), new NeverEndingTerminationCriterion()).isValid());
+        assertTrue(client.proveUNSATBySubset(instance(1, 3), new NeverEndingTerminationCriterion()).isValid());
+        assertFalse(client.proveUNSATBySubset(instance(1, 2), new NeverEndingTerminationCriterion()).isValid());
+
+        final ContainmentCacheBatchResult batch = client.queryBatch(ImmutableList.of(
+                new ContainmentCacheBatchQuery(instance(2), QueryType.BOTH),
+                new ContainmentCacheBatchQuery(instance(2, 3), QueryType.SAT)
+        ), new NeverEndingTerminationCriterion());
+        assertTrue(batch.getSATResults().get(0).isValid());
+        assertFalse(batch.getUNSATResults().get(0).isValid());
+        assertFalse(batch.getSATResults().get(1).isValid());
+        // Not asked for, although the cache could prove it
+        assertFalse(batch.getUNSATResults().get(1).isValid());
+    }
+
+    @Test
+    public void resultsTheCacheCanAlreadyProveAreNotAdded() {
+        client.cacheResult(instance(1, 2), SATResultFor(instance(1, 2)), new NeverEndingTerminationCriterion());
+        client.cacheResult(instance(1), SATResultFor(instance(1)), new NeverEndingTerminationCriterion());
+        assertEquals(1, cache.getNumSATEntries());
+
+        client.cacheResult(instance(3), UNSATResult(), new NeverEndingTerminationCriterion());
+        client.cacheResult(instance(2, 3), UNSATResult(), new NeverEndingTerminationCriterion());
+        assertEquals(1, cache.getNumUNSATEntries());
+
+        // New information is added, with a key of its own
+        client.cacheResult(instance(1, 2, 3), SATResultFor(instance(1, 2, 3)), new NeverEndingTerminationCriterion());
+        assertEquals(2, cache.getNumSATEntries());
+        final Set<String> keys = Stream.<ISATFCCacheEntry>concat(cache.getSATEntries().stream(), cache.getUNSATEntries().stream()).map(ISATFCCacheEntry::getKey).collect(Collectors.toSet());
+        assertEquals(3, keys.size());
+    }
+
+    @Test
+    public void UNSATResultsOutsideOfUHFAreNotAdded() {
+        final StationPackingInstance VHF = new StationPackingInstance(ImmutableMap.of(new Station(1), ImmutableSet.of(5, 6)));
+        client.cacheResult(VHF, UNSATResult(), new NeverEndingTerminationCriterion());
+        assertEquals(0, cache.getNumUNSATEntries());
+        assertFalse(client.proveUNSATBySubset(VHF, new NeverEndingTerminationCriterion()).isValid());
+    }
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.decorators.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.solvers.ISolver;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.infinite.NeverEndingTerminationCriterion;
+
+public class LocalContainmentCacheDecoratorTest {
+
+    private static final ImmutableBiMap<Station, Integer> PERMUTATION = ImmutableBiMap.of(new Station(1), 0, new Station(2), 1, new Station(3), 2);
+
+    private static StationPackingInstance instance(int... stations) {
+        final ImmutableMap.Builder<Station, Set<Integer>> domains = ImmutableMap.builder();
+        for (int station : stations) {
+            domains.put(new Station(station), ImmutableSet.of(20, 21));
+        }
+        return new StationPackingInstance(domains.build());
+    }
+
+    private static SolverResult SATResultFor(StationPackingInstance instance) {
+        // Every station on its own channel, as the test domains have no constraints anyway
+        final ImmutableMap.Builder<Integer, Set<Station>> assignment = ImmutableMap.builder();
+        int channel = 20;
+        for (Station station : instance.getStations()) {
+            assignment.put(channel++, ImmutableSet.of(station));
+        }
+        return new SolverResult(SATResult.SAT, 1.0, assignment.build(), SolverResult.SolvedBy.UNKNOWN);
+    }
+
+    @Test
+    public void localHitsDoNotCallTheDecoratedSolver() {
+        final AtomicInteger calls = new AtomicInteger(0);
+        final ISolver solver = (aInstance, aTerminationCriterion, aSeed) -> {
+            calls.incrementAndGet();
+            return aInstance.getStations().contains(new Station(3)) ? SolverResult.createNonSATResult(SATResult.UNSAT, 1.0, SolverResult.SolvedBy.UNKNOWN) : SATResultFor(aInstance);
+        };
+        final LocalContainmentCacheDecorator decorator = new LocalContainmentCacheDecorator(solver, new LocalContainmentCache(PERMUTATION, 10));
+
+        assertEquals(SATResult.SAT, decorator.solve(instance(1, 2), new NeverEndingTerminationCriterion(), 1).getResult());
+        assertEquals(SATResult.UNSAT, decorator.solve(instance(3), new NeverEndingTerminationCriterion(), 1).getResult());
+        assertEquals(2, calls.get());
+
+        // A subset of a SAT problem, and a superset of an UNSAT problem
+        final SolverResult SATHit = decorator.solve(instance(1), new NeverEndingTerminationCriterion(), 1);
+        assertEquals(SATResult.SAT, SATHit.getResult());
+        assertEquals(SolverResult.SolvedBy.SAT_CACHE, SATHit.getSolvedBy());
+        assertEquals(ImmutableSet.of(new Station(1)), SATHit.getAssignment().values().stream().flatMap(Set::stream).collect(Collectors.toSet()));
+        final SolverResult UNSATHit = decorator.solve(instance(1, 3), new NeverEndingTerminationCriterion(), 1);
+        assertEquals(SATResult.UNSAT, UNSATHit.getResult());
+        assertEquals(SolverResult.SolvedBy.UNSAT_CACHE, UNSATHit.getSolvedBy());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void oldestEntryIsDroppedWhenFull() {
+        final LocalContainmentCache cache = new LocalContainmentCache(PERMUTATION, 2);
+        for (int station = 1; station <= 3; station++) {
+            cache.add(instance(station), SATResultFor(instance(station)));
+        }
+        assertFalse(cache.proveSATBySuperset(instance(1)).isValid());
+        assertTrue(cache.proveSATBySuperset(instance(2)).isValid());
+        assertTrue(cache.proveSATBySuperset(instance(3)).isValid());
+    }
+
+    @Test
+    public void nonUHFUNSATResultsAreNotAdded() {
+        final LocalContainmentCache cache = new LocalContainmentCache(PERMUTATION, 2);
+        final StationPackingInstance VHF = new StationPackingInstance(ImmutableMap.of(new Station(1), ImmutableSet.of(5, 6)));
+        cache.add(VHF, SolverResult.createNonSATResult(SATResult.UNSAT, 1.0, SolverResult.SolvedBy.UNKNOWN));
+        assertFalse(cache.proveUNSATBySubset(VHF).isValid());
+        // Inconclusive results are not added either
+        cache.add(instance(1), SolverResult.createTimeoutResult(1.0));
+        assertFalse(cache.proveUNSATBySubset(instance(1)).isValid());
+        assertFalse(cache.proveSATBySuperset(instance(1)).isValid());
+    }
+
+}
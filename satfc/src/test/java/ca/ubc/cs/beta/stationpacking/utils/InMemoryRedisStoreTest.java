@@ -0,0 +1,114 @@
+/**
+ * Copyright 2016, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+import ca.ubc.cs.beta.stationpacking.utils.IRedisStore.IRedisBatch;
+
+public class InMemoryRedisStoreTest {
+
+    @Test
+    public void listsBehaveLikeRedis() {
+        final InMemoryRedisStore redis = new InMemoryRedisStore();
+        redis.lpush("queue", "a");
+        redis.lpush("queue", "b");
+        redis.rpush("queue", "c");
+        // queue is now b, a, c
+        assertEquals(3, redis.llen("queue"));
+        assertEquals("c", redis.lindex("queue", -1));
+        assertEquals("c", redis.rpoplpush("queue", "processing"));
+        assertEquals("a", redis.rpoplpush("queue", "processing"));
+        assertEquals("a", redis.lindex("processing", 0));
+        assertEquals(1, redis.lrem("processing", 1, "c"));
+        assertEquals("b", redis.lpop("queue"));
+        assertNull(redis.rpoplpush("queue", "processing"));
+        // Empty lists disappear
+        assertEquals(Sets.newHashSet("processing"), keys(redis));
+    }
+
+    @Test
+    public void hashesAndCounters() {
+        final InMemoryRedisStore redis = new InMemoryRedisStore();
+        assertEquals(1, redis.incr("counter"));
+        assertEquals(2, redis.incr("counter"));
+        assertEquals("2", redis.get("counter"));
+        final IRedisBatch multi = redis.multi();
+        multi.hset("hash", "field", new byte[]{1, 2});
+        final Supplier<Map<String, byte[]>> reply = multi.hgetAll("hash");
+        assertTrue(redis.hgetAll("hash").isEmpty());
+        multi.execute();
+        assertArrayEquals(new byte[]{1, 2}, reply.get().get("field"));
+        assertArrayEquals(new byte[]{1, 2}, redis.hget("hash", "field"));
+        assertEquals(2, redis.del("hash", "counter", "missing"));
+        assertTrue(keys(redis).isEmpty());
+    }
+
+    @Test
+    public void transactionsAreDroppedWhenAWatchedKeyChanges() {
+        final InMemoryRedisStore redis = new InMemoryRedisStore();
+        redis.hset("watched", "field", new byte[]{1});
+        redis.watch("watched");
+        redis.hset("watched", "field", new byte[]{2});
+        final IRedisBatch dropped = redis.multi();
+        dropped.hset("watched", "other", new byte[]{3});
+        assertFalse(dropped.execute());
+        assertNull(redis.hget("watched", "other"));
+
+        // The watch ends with the transaction, and keys that did not change let it through
+        final IRedisBatch unwatched = redis.multi();
+        unwatched.hset("watched", "other", new byte[]{3});
+        assertTrue(unwatched.execute());
+        redis.watch("watched", "missing");
+        final IRedisBatch executed = redis.multi();
+        executed.del("watched");
+        assertTrue(executed.execute());
+        assertTrue(keys(redis).isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void wrongTypeFails() {
+        final InMemoryRedisStore redis = new InMemoryRedisStore();
+        redis.set("key", "value");
+        redis.lpush("key", "element");
+    }
+
+    private static Set<String> keys(IRedisStore redis) {
+        final Set<String> keys = new HashSet<>();
+        redis.scan().forEachRemaining(keys::add);
+        return keys;
+    }
+
+}
@@ -21,81 +21,375 @@
  */
 package ca.ubc.cs.beta.stationpacking.webapp;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinateRouter;
+import ca.ubc.cs.beta.stationpacking.cache.CacheSnapshot;
+import ca.ubc.cs.beta.stationpacking.cache.CacheSnapshot.Snapshot;
 import ca.ubc.cs.beta.stationpacking.cache.ICacheLocator;
+import ca.ubc.cs.beta.stationpacking.cache.ISATFCCacheEntry;
 import ca.ubc.cs.beta.stationpacking.cache.ISatisfiabilityCacheFactory;
 import ca.ubc.cs.beta.stationpacking.cache.RedisCacher;
+import ca.ubc.cs.beta.stationpacking.cache.RedisCacher.CacheKeys;
 import ca.ubc.cs.beta.stationpacking.cache.RedisCacher.ContainmentCacheInitData;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
 import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.ISatisfiabilityCache;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.DataManager;
+import ca.ubc.cs.beta.stationpacking.utils.Watch;
 import ca.ubc.cs.beta.stationpacking.webapp.parameters.SATFCServerParameters;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.jcip.annotations.ThreadSafe;
 
 /**
  * Created by newmanne on 25/03/15.
+ * Cache coordinates are spread over shards (see {@link CacheShard}). When several servers share the cache, only the coordinates owned by this server are loaded.
+ * Coordinates are loaded in the background, most recently queried first, so the server can answer queries right after start up (see {@link #isReady(CacheCoordinate)}).
  */
 @Slf4j
 @ThreadSafe
 public class CacheLocator implements ICacheLocator, ApplicationListener<ContextRefreshedEvent> {
 
-    private final Map<CacheCoordinate, ISatisfiabilityCache> caches;
+    private final List<CacheShard> shards;
     private final ISatisfiabilityCacheFactory cacheFactory;
     private final SATFCServerParameters parameters;
+    private final Supplier<RedisCacher> shardCacherFactory;
+    // only used by the snapshot thread (or on shutdown), as redis connections can't be shared between threads
+    private RedisCacher snapshotCacher;
+    private volatile boolean loaded = false;
+    private final Set<CacheCoordinate> pendingCoordinates = new HashSet<>();
+    private final Set<CacheCoordinate> readyCoordinates = Sets.newConcurrentHashSet();
+    private final Map<CacheCoordinate, Long> lastQueried = new ConcurrentHashMap<>();
+    private final AtomicLong queryCounter = new AtomicLong();
+    private ScheduledExecutorService snapshotExecutor;
+    // Held (shared) while an entry is numbered in redis and added to its cache, and (exclusively) while a snapshot reads its stamp
+    private final ReadWriteLock ingestionLock = new ReentrantReadWriteLock();
 
-    public CacheLocator(ISatisfiabilityCacheFactory cacheFactory, SATFCServerParameters parameters) {
+    /**
+     * @param shardCacherFactory creates the redis cacher used by each shard (and by each thread loading the caches, and by the snapshot writer)
+     */
+    public CacheLocator(ISatisfiabilityCacheFactory cacheFactory, SATFCServerParameters parameters, Supplier<RedisCacher> shardCacherFactory) {
         this.cacheFactory = cacheFactory;
         this.parameters = parameters;
-        caches = new HashMap<>();
+        this.shardCacherFactory = shardCacherFactory;
+        shards = IntStream.range(0, parameters.getNumShards())
+                .mapToObj(i -> new CacheShard(i, shardCacherFactory.get()))
+                .collect(Collectors.toList());
     }
 
     @Override
     public ISatisfiabilityCache locate(CacheCoordinate coordinate) {
-        ISatisfiabilityCache cache = caches.get(coordinate);
+        ISatisfiabilityCache cache = getShard(coordinate).getCaches().get(coordinate);
         if (cache == null) {
-            throw new IllegalStateException("No cache was made for coordinate " + coordinate + ". Was the corresponding station configuration folder present at server start up?");
+            throw new IllegalStateException("No cache was made for coordinate " + coordinate + ". Was the corresponding station configuration folder present at server start up" + (parameters.getClusterServerURLs() != null ? ", and is this coordinate owned by this server?" : "?"));
         }
         return cache;
     }
 
+    /**
+     * @return the shard a coordinate belongs to (whether or not a cache exists for it)
+     */
+    public CacheShard getShard(CacheCoordinate coordinate) {
+        return shards.get(CacheCoordinateRouter.shardOf(coordinate, shards.size()));
+    }
+
+    public List<CacheShard> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    /**
+     * Run the addition of an entry: numbering it in redis, then adding it to its cache. Additions run concurrently with each other, but not while a snapshot reads its stamp,
+     * so every entry numbered up to the stamp is in memory by then (the entries numbered after it are read from redis on restore)
+     */
+    public <T> T ingest(Supplier<T> addition) {
+        ingestionLock.readLock().lock();
+        try {
+            return addition.get();
+        } finally {
+            ingestionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the value of {@link RedisCacher#HASH_NUM} once the additions in progress are over
+     */
+    long snapshotStamp(RedisCacher cacher) {
+        ingestionLock.writeLock().lock();
+        try {
+            return cacher.getHashNum();
+        } finally {
+            ingestionLock.writeLock().unlock();
+        }
+    }
+
     // We want this to happen after the context has been brought up (so the error messages aren't horrific)
     // Uses the context to pull out beans / command line arguments
     @Override
     public void onApplicationEvent(ContextRefreshedEvent event) {
         final ApplicationContext context = event.getApplicationContext();
-        final RedisCacher cacher = context.getBean(RedisCacher.class);
         final DataManager dataManager = context.getBean(DataManager.class);
 
         // Set up the data manager
         final String constraintFolder = parameters.getConstraintFolder();
         dataManager.loadMultipleConstraintSets(constraintFolder);
 
+        final CacheCoordinateRouter router = parameters.getClusterRouter();
+        final Predicate<CacheCoordinate> isOwned = router == null ? coordinate -> true : coordinate -> router.route(coordinate).equals(parameters.getClusterSelfURL());
+
+        // The (empty) caches exist right away, so that queries can be answered while they are being filled
         log.info("Beginning to init caches");
-        final ContainmentCacheInitData containmentCacheInitData = cacher.getContainmentCacheInitData(parameters.getCacheSizeLimit(), parameters.isSkipSAT(), parameters.isSkipUNSAT(), parameters.isValidateSAT());
-        dataManager.getCoordinateToBundle().keySet().forEach(cacheCoordinate -> {
+        dataManager.getCoordinateToBundle().keySet().stream().filter(isOwned).forEach(cacheCoordinate -> {
             final ISatisfiabilityCache cache = cacheFactory.create(dataManager.getData(cacheCoordinate).getPermutation());
-            log.info("Cache created for coordinate " + cacheCoordinate);
-            caches.put(cacheCoordinate, cache);
-            if (containmentCacheInitData.getCaches().contains(cacheCoordinate)) {
-                cache.addAllSAT(containmentCacheInitData.getSATResults().get(cacheCoordinate));
-                cache.addAllUNSAT(containmentCacheInitData.getUNSATResults().get(cacheCoordinate));
-            }
+            final CacheShard shard = getShard(cacheCoordinate);
+            log.info("Cache created for coordinate {} in shard {}", cacheCoordinate, shard.getIndex());
+            shard.getCaches().put(cacheCoordinate, cache);
+            pendingCoordinates.add(cacheCoordinate);
         });
+        final Thread loader = new Thread(() -> loadCaches(dataManager, isOwned), "Cache-Loader-Thread");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * @return true if the cache for this coordinate is done loading. Until then, it only holds part of its entries, and nothing should be added to it
+     */
+    public boolean isReady(CacheCoordinate coordinate) {
+        return loaded || readyCoordinates.contains(coordinate);
+    }
+
+    /**
+     * Record that a coordinate was just queried. Coordinates that are still loading are loaded in order of their most recent query
+     */
+    public void prioritize(CacheCoordinate coordinate) {
+        lastQueried.put(coordinate, queryCounter.incrementAndGet());
+    }
+
+    /**
+     * Read the snapshot, if there is one, and then whatever was added to redis since it was taken, most recently queried coordinates first
+     */
+    private void loadCaches(DataManager dataManager, Predicate<CacheCoordinate> isOwned) {
+        final Watch watch = Watch.constructAutoStartWatch();
+        final Predicate<CacheCoordinate> isKnownAndOwned = coordinate -> dataManager.getCoordinateToBundle().containsKey(coordinate) && isOwned.test(coordinate);
+        Snapshot snapshot = null;
+        if (parameters.getSnapshotFile() != null && Files.exists(Paths.get(parameters.getSnapshotFile()))) {
+            try {
+                snapshot = CacheSnapshot.read(Paths.get(parameters.getSnapshotFile()), coordinate -> dataManager.getData(coordinate).getPermutation(), isKnownAndOwned, parameters.isSkipSAT(), parameters.isSkipUNSAT());
+            } catch (IOException | RuntimeException e) {
+                log.error("Could not read cache snapshot {}, reading the whole cache from redis instead", parameters.getSnapshotFile(), e);
+            }
+        }
+        final ContainmentCacheInitData fromSnapshot = snapshot != null ? snapshot.getEntries() : new ContainmentCacheInitData(ArrayListMultimap.create(), ArrayListMultimap.create());
+        final long afterNum = snapshot != null ? snapshot.getHashNum() : 0;
+        final CacheKeys keys;
+        try (RedisCacher scanCacher = shardCacherFactory.get()) {
+            keys = scanCacher.scanKeys(parameters.getCacheSizeLimit(), parameters.isSkipSAT(), parameters.isSkipUNSAT(), isOwned, afterNum);
+        }
+
+        // Coordinates are taken in order of priority and cut into batches of keys. Several batches (of one coordinate or of several) are read at once, each by a thread with its own connection, since jedis connections can't be shared between threads
+        final Map<CacheCoordinate, CoordinateLoad> loads = new ConcurrentHashMap<>();
+        final Iterator<List<String>> keyBatches = new AbstractIterator<List<String>>() {
+
+            private Iterator<List<String>> coordinateBatches = Collections.emptyIterator();
+
+            @Override
+            protected List<String> computeNext() {
+                while (!coordinateBatches.hasNext()) {
+                    final CacheCoordinate coordinate = nextCoordinateToLoad();
+                    if (coordinate == null) {
+                        return endOfData();
+                    }
+                    final List<List<String>> batches = Lists.newArrayList(RedisCacher.batches(keys.forCoordinate(coordinate)));
+                    final CoordinateLoad load = new CoordinateLoad(batches.size());
+                    if (batches.isEmpty()) {
+                        finishCoordinate(coordinate, fromSnapshot, load);
+                    } else {
+                        loads.put(coordinate, load);
+                        coordinateBatches = batches.iterator();
+                    }
+                }
+                return coordinateBatches.next();
+            }
+        };
+        try {
+            RedisCacher.streamEntries(keyBatches, shardCacherFactory, parameters.getNumLoadThreads(), parameters.isValidateSAT(), (batch, entries) -> {
+                final CacheCoordinate coordinate = CacheCoordinate.fromKey(batch.get(0));
+                final CoordinateLoad load = loads.get(coordinate);
+                if (load.batchRead(entries)) {
+                    loads.remove(coordinate);
+                    finishCoordinate(coordinate, fromSnapshot, load);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Whatever made it in is still correct, so keep serving from it rather than missing forever
+            log.error("Could not load the caches, coordinates {} will only hold part of their entries", loads.keySet(), e);
+            loads.forEach((coordinate, load) -> finishCoordinate(coordinate, fromSnapshot, load));
+            synchronized (this) {
+                pendingCoordinates.forEach(coordinate -> finishCoordinate(coordinate, fromSnapshot, new CoordinateLoad(0)));
+                pendingCoordinates.clear();
+            }
+        }
+        loaded = true;
+        log.info("All caches loaded in {}s", watch.getElapsedTime());
+    }
+
+    /**
+     * Add the entries of the snapshot and those read from redis to the cache of a coordinate, which is then ready
+     */
+    private void finishCoordinate(CacheCoordinate coordinate, ContainmentCacheInitData fromSnapshot, CoordinateLoad load) {
+        final ISatisfiabilityCache cache = locate(coordinate);
+        try {
+            cache.addAllSAT(fromSnapshot.getSATResults().get(coordinate));
+            cache.addAllUNSAT(fromSnapshot.getUNSATResults().get(coordinate));
+            synchronized (load) {
+                cache.addAllSAT(load.getSATEntries());
+                cache.addAllUNSAT(load.getUNSATEntries());
+            }
+            log.info("Cache for coordinate {} is ready", coordinate);
+        } catch (RuntimeException e) {
+            // Whatever made it in is still correct, so keep serving from it rather than missing forever
+            log.error("Could not load the cache for coordinate {}, it will only hold part of its entries", coordinate, e);
+        }
+        readyCoordinates.add(coordinate);
+    }
+
+    /**
+     * @return the coordinate that is still waiting to be loaded and was queried most recently, or null if all of them have been taken
+     */
+    private synchronized CacheCoordinate nextCoordinateToLoad() {
+        final CacheCoordinate next = pendingCoordinates.stream()
+                .max(Comparator.comparingLong(coordinate -> lastQueried.getOrDefault(coordinate, 0L)))
+                .orElse(null);
+        if (next != null) {
+            pendingCoordinates.remove(next);
+        }
+        return next;
+    }
+
+    /**
+     * Start writing snapshots periodically, if asked to
+     */
+    @PostConstruct
+    void startSnapshots() {
+        if (parameters.getSnapshotFile() != null && parameters.getSnapshotIntervalMinutes() > 0) {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Cache-Snapshot-Thread").build());
+            final long interval = parameters.getSnapshotIntervalMinutes();
+            snapshotExecutor.scheduleWithFixedDelay(this::writeSnapshot, interval, interval, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    void onShutdown() {
+        if (snapshotExecutor != null) {
+            snapshotExecutor.shutdownNow();
+        }
+        if (parameters.getSnapshotFile() != null) {
+            writeSnapshot();
+        }
+        synchronized (this) {
+            if (snapshotCacher != null) {
+                snapshotCacher.close();
+            }
+        }
+    }
+
+    private synchronized void writeSnapshot() {
+        if (!loaded) {
+            // The caches were never loaded, and an empty snapshot would hide everything in redis on the next start
+            return;
+        }
+        try {
+            // Read the counter first (once the additions in progress are in memory): anything added while we collect entries is numbered after it, and will be read from redis on restore
+            if (snapshotCacher == null) {
+                snapshotCacher = shardCacherFactory.get();
+            }
+            final long hashNum = snapshotStamp(snapshotCacher);
+            final ListMultimap<CacheCoordinate, ContainmentCacheSATEntry> SATEntries = ArrayListMultimap.create();
+            final ListMultimap<CacheCoordinate, ContainmentCacheUNSATEntry> UNSATEntries = ArrayListMultimap.create();
+            for (CacheShard shard : shards) {
+                shard.getCaches().forEach((coordinate, cache) -> {
+                    SATEntries.putAll(coordinate, cache.getSATEntries());
+                    UNSATEntries.putAll(coordinate, cache.getUNSATEntries());
+                });
+            }
+            CacheSnapshot.write(Paths.get(parameters.getSnapshotFile()), hashNum, new ContainmentCacheInitData(SATEntries, UNSATEntries));
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not write cache snapshot {}", parameters.getSnapshotFile(), e);
+        }
+    }
+
+    /**
+     * The entries of a coordinate that were read from redis so far, and how many batches of them are still being read
+     */
+    private static class CoordinateLoad {
+
+        @Getter
+        private final List<ContainmentCacheSATEntry> SATEntries = new ArrayList<>();
+        @Getter
+        private final List<ContainmentCacheUNSATEntry> UNSATEntries = new ArrayList<>();
+        private int remainingBatches;
+
+        CoordinateLoad(int numBatches) {
+            this.remainingBatches = numBatches;
+        }
+
+        /**
+         * @return true if this was the last batch of the coordinate
+         */
+        synchronized boolean batchRead(List<ISATFCCacheEntry> entries) {
+            for (ISATFCCacheEntry entry : entries) {
+                if (entry instanceof ContainmentCacheSATEntry) {
+                    SATEntries.add((ContainmentCacheSATEntry) entry);
+                } else {
+                    UNSATEntries.add((ContainmentCacheUNSATEntry) entry);
+                }
+            }
+            return --remainingBatches == 0;
+        }
     }
 
 	@Override
 	public Set<CacheCoordinate> getCoordinates() {
-		return ImmutableSet.copyOf(caches.keySet());
+		final ImmutableSet.Builder<CacheCoordinate> builder = ImmutableSet.builder();
+		shards.forEach(shard -> builder.addAll(shard.getCaches().keySet()));
+		return builder.build();
 	}
 	
 }
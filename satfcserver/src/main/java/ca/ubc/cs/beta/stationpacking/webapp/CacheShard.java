@@ -0,0 +1,58 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.webapp;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.RedisCacher;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.ISatisfiabilityCache;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheRequest;
+import lombok.Getter;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A group of cache coordinates that are filled independently of the other groups: each shard has its own caches, its own queue of entries waiting to be added and its own connection to redis.
+ */
+@ThreadSafe
+public class CacheShard {
+
+    @Getter
+    private final int index;
+    @Getter
+    private final RedisCacher cacher;
+    @Getter
+    private final Map<CacheCoordinate, ISatisfiabilityCache> caches;
+    @Getter
+    private final Queue<ContainmentCacheRequest> pendingCacheAdditions;
+
+    public CacheShard(int index, RedisCacher cacher) {
+        this.index = index;
+        this.cacher = cacher;
+        caches = new ConcurrentHashMap<>();
+        pendingCacheAdditions = new ConcurrentLinkedQueue<>();
+    }
+
+}
@@ -38,30 +38,35 @@ import org.springframework.boot.context.embedded.ServletRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.util.ReflectionUtils;
 
 import com.beust.jcommander.Parameter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Timer;
 import com.codahale.metrics.servlets.MetricsServlet;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
 
 import ca.ubc.cs.beta.aeatk.misc.jcommander.JCommanderHelper;
 import ca.ubc.cs.beta.stationpacking.cache.ICacheEntryFilter;
-import ca.ubc.cs.beta.stationpacking.cache.ICacheLocator;
 import ca.ubc.cs.beta.stationpacking.cache.ISatisfiabilityCacheFactory;
 import ca.ubc.cs.beta.stationpacking.cache.NewInfoEntryFilter;
 import ca.ubc.cs.beta.stationpacking.cache.RedisCacher;
 import ca.ubc.cs.beta.stationpacking.cache.SatisfiabilityCacheFactory;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.DataManager;
+import ca.ubc.cs.beta.stationpacking.metrics.SATFCMetrics;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy;
+import ca.ubc.cs.beta.stationpacking.utils.IRedisStore;
 import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
+import ca.ubc.cs.beta.stationpacking.utils.JedisRedisStore;
 import ca.ubc.cs.beta.stationpacking.webapp.filters.GzipRequestFilter;
 import ca.ubc.cs.beta.stationpacking.webapp.parameters.SATFCServerParameters;
 import lombok.extern.slf4j.Slf4j;
-import redis.clients.jedis.BinaryJedis;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisShardInfo;
 
 /**
@@ -111,6 +116,14 @@ public class SATFCServerApplication {
         return mappingJacksonHttpMessageConverter;
     }
 
+    // Reads and writes the binary protocol of ContainmentCacheProxy
+    @Bean
+    MappingJackson2HttpMessageConverter smileHttpMessageConverter() {
+        final MappingJackson2HttpMessageConverter smileHttpMessageConverter = new MappingJackson2HttpMessageConverter(JSONUtils.getSmileMapper());
+        smileHttpMessageConverter.setSupportedMediaTypes(Collections.singletonList(MediaType.valueOf(ContainmentCacheProxy.SMILE_CONTENT)));
+        return smileHttpMessageConverter;
+    }
+
     @Bean
     RedisConnectionFactory redisConnectionFactory() {
         return new JedisConnectionFactory(getShardInfo());
@@ -122,24 +135,19 @@ public class SATFCServerApplication {
         return new JedisShardInfo(satfcServerParameters.getRedisURL(), satfcServerParameters.getRedisPort(), timeout);
     }
 
-    @Bean
-    BinaryJedis binaryJedis() {
-        return new BinaryJedis(getShardInfo());
+    private IRedisStore newRedisStore() {
+        return new JedisRedisStore(new Jedis(getShardInfo()));
     }
 
     @Bean
     RedisCacher cacher() {
-        return new RedisCacher(dataManager(), redisTemplate(), binaryJedis());
+        return new RedisCacher(dataManager(), newRedisStore(), satfcServerParameters().isWriteLegacyFields());
     }
 
     @Bean
-    StringRedisTemplate redisTemplate() {
-        return new StringRedisTemplate(redisConnectionFactory());
-    }
-
-    @Bean
-    ICacheLocator containmentCacheLocator() {
-        return new CacheLocator(satisfiabilityCacheFactory(), parameters);
+    CacheLocator containmentCacheLocator() {
+        // Every shard gets its own connection, since jedis connections can't be shared between threads
+        return new CacheLocator(satisfiabilityCacheFactory(), parameters, () -> new RedisCacher(dataManager(), newRedisStore(), parameters.isWriteLegacyFields()));
     }
 
     @Bean
@@ -160,6 +168,13 @@ public class SATFCServerApplication {
 
     @Bean
     public ServletRegistrationBean servletRegistrationBean() {
+        // Also expose the per-solver timers of any SATFC bundle running in this JVM
+        SATFCMetrics.getRegistry().addListener(new MetricRegistryListener.Base() {
+            @Override
+            public void onTimerAdded(String name, Timer timer) {
+                registry.register(name, timer);
+            }
+        });
         return new ServletRegistrationBean(new MetricsServlet(registry), "/metrics/extra/*");
     }
 
@@ -14,6 +14,7 @@ import com.google.common.io.Files;
 
 import ca.ubc.cs.beta.aeatk.misc.options.UsageTextField;
 import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
+import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinateRouter;
 import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
 import lombok.Getter;
 import lombok.ToString;
@@ -46,10 +47,38 @@ public class SATFCServerParameters extends AbstractOptions {
     @Getter
     private int numPermutations = 1;
 
-    @Parameter(names = "--cache.size.limit", description = "Only use the first limit entries from the cache", hidden = true)
+    @Parameter(names = "--cache.shards", description = "Number of shards to split the cache coordinates into. Each shard has its own redis connection and queue of entries to add, and they are filled in parallel")
+    @Getter
+    private int numShards = 1;
+
+    @Parameter(names = "--cluster.servers", description = "Comma separated list of the base URLs of all the servers that share the cache (the same list SATFC is given as its server URL). Each server then only holds the cache coordinates it owns")
+    @Getter
+    private String clusterServerURLs;
+
+    @Parameter(names = "--cluster.self", description = "Base URL of this server, as it appears in --cluster.servers")
+    @Getter
+    private String clusterSelfURL;
+
+    @Parameter(names = "--cache.snapshot", description = "Local file holding a snapshot of the cache. If it exists at start up, the cache is loaded from it and only newer entries are read from redis. It is rewritten on shutdown")
+    @Getter
+    private String snapshotFile;
+
+    @Parameter(names = "--cache.snapshot.interval", description = "Also rewrite the cache snapshot every this many minutes (0 to only write it on shutdown)")
+    @Getter
+    private int snapshotIntervalMinutes = 60;
+
+    @Parameter(names = "--cache.load.threads", description = "Number of threads (each with its own redis connection) reading cache entries from redis at start up. Queries are answered (as misses) for coordinates that are still loading")
+    @Getter
+    private int numLoadThreads = 4;
+
+    @Parameter(names = "--cache.size.limit", description = "Maximum number of entries in the cache. Only the first limit entries are loaded from redis, and once new entries push the cache over the limit, the least useful entries (by hits, recency and size) are evicted from memory and deleted from redis")
     @Getter
     private long cacheSizeLimit = Long.MAX_VALUE;
 
+    @Parameter(names = "--cache.write.legacy", description = "Also write new cache entries in the format used before the encoded entry field, so that servers that have not been upgraded can still read them. Turn it off once every server is upgraded, then run the encoding migration")
+    @Getter
+    private boolean writeLegacyFields = false;
+
     @Parameter(names = "--skipSAT", description = "Do not load SAT entries from redis")
     @Getter
     private boolean skipSAT = false;
@@ -86,8 +115,21 @@ public class SATFCServerParameters extends AbstractOptions {
         NEW_INFO, ADD_EVERYTHING, ADD_NOTHING
     }
 
+    /**
+     * @return a router over the servers of the cluster, or null if this server holds every cache coordinate
+     */
+    public CacheCoordinateRouter getClusterRouter() {
+        return clusterServerURLs != null ? CacheCoordinateRouter.fromServerURLs(clusterServerURLs) : null;
+    }
+
     public void validate() {
         Preconditions.checkArgument(new File(constraintFolder).isDirectory(), "Provided constraint folder is not a directory", constraintFolder);
+        Preconditions.checkArgument(numShards > 0, "Need at least one shard");
+        Preconditions.checkArgument(numLoadThreads > 0, "Need at least one thread to load the cache");
+        if (clusterServerURLs != null) {
+            Preconditions.checkArgument(clusterSelfURL != null, "Must specify --cluster.self when using --cluster.servers");
+            Preconditions.checkArgument(getClusterRouter().getNodes().contains(clusterSelfURL), "This server (%s) is not one of the cluster servers %s", clusterSelfURL, clusterServerURLs);
+        }
         if (badSetFilePath != null) {
             final File badSetFile = new File(badSetFilePath);
             Preconditions.checkArgument(badSetFile.exists(), "Could not locate bad set file", badSetFilePath);
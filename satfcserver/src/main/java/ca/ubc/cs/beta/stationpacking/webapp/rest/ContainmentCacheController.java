@@ -21,18 +21,29 @@
  */
 package ca.ubc.cs.beta.stationpacking.webapp.rest;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import javax.annotation.PostConstruct;
 
 import ca.ubc.cs.beta.stationpacking.cache.containment.transformer.ICacheEntryTransformer;
 import ca.ubc.cs.beta.stationpacking.cache.containment.transformer.InstanceAndResult;
 import ca.ubc.cs.beta.stationpacking.utils.StationPackingUtils;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.apache.catalina.connector.ClientAbortException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
@@ -45,26 +56,37 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.RatioGauge;
 import com.codahale.metrics.Timer;
-import com.google.common.collect.Queues;
 
 import ca.ubc.cs.beta.stationpacking.base.Station;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
 import ca.ubc.cs.beta.stationpacking.cache.ICacheEntryFilter;
-import ca.ubc.cs.beta.stationpacking.cache.ICacheLocator;
+import ca.ubc.cs.beta.stationpacking.cache.ISATFCCacheEntry;
 import ca.ubc.cs.beta.stationpacking.cache.RedisCacher;
+import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheBatchResult;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.CacheEntryUsage;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.CacheFilterProgress;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.CacheQueryStatistics;
 import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.ISatisfiabilityCache;
 import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.DataManager;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.BinaryContainmentCacheRequest;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchQuery;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchRequest;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheRequest;
+import ca.ubc.cs.beta.stationpacking.webapp.CacheLocator;
+import ca.ubc.cs.beta.stationpacking.webapp.CacheShard;
 import ca.ubc.cs.beta.stationpacking.webapp.parameters.SATFCServerParameters;
 import lombok.extern.slf4j.Slf4j;
 
@@ -76,7 +98,7 @@ public class ContainmentCacheController {
     private final String JSON_CONTENT = "application/json";
 
     @Autowired
-    ICacheLocator containmentCacheLocator;
+    CacheLocator containmentCacheLocator;
 
     @Autowired
     RedisCacher cacher;
@@ -101,10 +123,16 @@ public class ContainmentCacheController {
     private Timer satCacheTimer;
     private Meter unsatCacheHits;
     private Timer unsatCacheTimer;
+    private Meter notReadyMisses;
+    private Timer batchCacheTimer;
+    private Meter batchSatCacheHits;
+    private Meter batchUnsatCacheHits;
+    private Meter cacheEvictions;
 
     private volatile Map<Integer, Set<Station>> lastCachedAssignment = new HashMap<>();
-
-    private final Queue<ContainmentCacheRequest> pendingCacheAdditions = Queues.newArrayDeque();
+    private final AtomicBoolean filterRunning = new AtomicBoolean(false);
+    private volatile CacheFilterProgress filterProgress;
+    private final Set<CacheCoordinate> coordinatesWithMetrics = Sets.newConcurrentHashSet();
 
     @PostConstruct
     void init() {
@@ -113,6 +141,12 @@ public class ContainmentCacheController {
         satCacheTimer = registry.timer("cache.sat.timer");
         unsatCacheHits = registry.meter("cache.unsat.hits");
         unsatCacheTimer = registry.timer("cache.unsat.timer");
+        notReadyMisses = registry.meter("cache.notready.misses");
+        batchCacheTimer = registry.timer("cache.batch.timer");
+        // kept apart from the single query meters, which are compared against the single query timers in the hit rates
+        batchSatCacheHits = registry.meter("cache.batch.sat.hits");
+        batchUnsatCacheHits = registry.meter("cache.batch.unsat.hits");
+        cacheEvictions = registry.meter("cache.evictions");
         registry.register("cache.sat.hitrate.fifteenminute", new RatioGauge() {
             @Override
             protected Ratio getRatio() {
@@ -156,28 +190,11 @@ public class ContainmentCacheController {
             final StationPackingInstance instance = request.getInstance();
             final String description = instance.hasName() ? instance.getName() : instance.getInfo();
             log.info("Querying the SAT cache with coordinate {} for entry {}", request.getCoordinate(), description);
-            final ISatisfiabilityCache cache = containmentCacheLocator.locate(request.getCoordinate());
-            final ContainmentCacheSATResult containmentCacheSATResult;
-            if (parameters.getBadsets() != null) {
-                final Map<String, Set<String>> badsets = parameters.getBadsets();
-                final String auction = instance.getAuction();
-                containmentCacheSATResult = cache.proveSATBySuperset(instance, c -> {
-                    if (c.getAuction() != null && auction != null) {
-                        return !badsets.get(auction).contains(c.getAuction());
-                    }
-                    return true;
-                });
-            } else if (parameters.isExcludeSameAuction()) {
-                final String auction = instance.getAuction();
-                containmentCacheSATResult = cache.proveSATBySuperset(instance, c -> {
-                    if (c.getAuction() != null && auction != null) {
-                        return !c.getAuction().equals(auction);
-                    }
-                    return true;
-                });
-            } else {
-                containmentCacheSATResult = cache.proveSATBySuperset(instance);
+            if (!isReady(request.getCoordinate())) {
+                return ContainmentCacheSATResult.failure();
             }
+            final ISatisfiabilityCache cache = locate(request.getCoordinate());
+            final ContainmentCacheSATResult containmentCacheSATResult = proveSATBySuperset(cache, instance);
             if (containmentCacheSATResult.isValid()) {
                 log.info("Query for SAT cache with coordinate {} for entry {} is a hit", request.getCoordinate(), description);
                 satCacheHits.mark();
@@ -202,7 +219,10 @@ public class ContainmentCacheController {
             final StationPackingInstance instance = request.getInstance();
             final String description = instance.hasName() ? instance.getName() : instance.getInfo();
             log.info("Querying the UNSAT cache with coordinate {} for entry {}", request.getCoordinate(), description);
-            final ISatisfiabilityCache cache = containmentCacheLocator.locate(request.getCoordinate());
+            if (!isReady(request.getCoordinate())) {
+                return ContainmentCacheUNSATResult.failure();
+            }
+            final ISatisfiabilityCache cache = locate(request.getCoordinate());
             final ContainmentCacheUNSATResult result = cache.proveUNSATBySubset(instance);
             if (result.isValid()) {
                 log.info("Query for UNSAT cache with coordinate {} for entry {} is a hit", request.getCoordinate(), description);
@@ -216,20 +236,248 @@ public class ContainmentCacheController {
         }
     }
 
+    // Same queries in the binary protocol. The request is converted back and answered exactly like the json one
+    @RequestMapping(value = "/query/SAT", method = RequestMethod.POST, produces = ContainmentCacheProxy.SMILE_CONTENT, consumes = ContainmentCacheProxy.SMILE_CONTENT)
+    @ResponseBody
+    public ContainmentCacheSATResult lookupSATBinary(
+            @RequestBody final BinaryContainmentCacheRequest request
+    ) {
+        return lookupSAT(request.toRequest());
+    }
+
+    @RequestMapping(value = "/query/UNSAT", method = RequestMethod.POST, produces = ContainmentCacheProxy.SMILE_CONTENT, consumes = ContainmentCacheProxy.SMILE_CONTENT)
+    @ResponseBody
+    public ContainmentCacheUNSATResult lookupUNSATBinary(
+            @RequestBody final BinaryContainmentCacheRequest request
+    ) {
+        return lookupUNSAT(request.toRequest());
+    }
+
+    /**
+     * Answer many SAT and UNSAT lookups against the same coordinate in a single request. The lookups are run in parallel
+     */
+    @RequestMapping(value = "/query/batch", method = RequestMethod.POST, produces = JSON_CONTENT, consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ContainmentCacheBatchResult lookupBatch(
+            @RequestBody final ContainmentCacheBatchRequest request
+    ) {
+        final Timer.Context context = batchCacheTimer.time();
+        try {
+            final List<ContainmentCacheBatchQuery> queries = request.getQueries();
+            log.info("Querying the cache with coordinate {} for a batch of {} entries", request.getCoordinate(), queries.size());
+            if (!isReady(request.getCoordinate())) {
+                return ContainmentCacheBatchResult.failure(queries.size());
+            }
+            final ISatisfiabilityCache cache = locate(request.getCoordinate());
+            final ContainmentCacheSATResult[] SATResults = new ContainmentCacheSATResult[queries.size()];
+            final ContainmentCacheUNSATResult[] UNSATResults = new ContainmentCacheUNSATResult[queries.size()];
+            IntStream.range(0, queries.size()).parallel().forEach(i -> {
+                final ContainmentCacheBatchQuery query = queries.get(i);
+                SATResults[i] = query.isSATQuery() ? proveSATBySuperset(cache, query.getInstance()) : ContainmentCacheSATResult.failure();
+                UNSATResults[i] = query.isUNSATQuery() ? cache.proveUNSATBySubset(query.getInstance()) : ContainmentCacheUNSATResult.failure();
+            });
+            final long SATHits = Arrays.stream(SATResults).filter(ContainmentCacheSATResult::isValid).count();
+            final long UNSATHits = Arrays.stream(UNSATResults).filter(ContainmentCacheUNSATResult::isValid).count();
+            batchSatCacheHits.mark(SATHits);
+            batchUnsatCacheHits.mark(UNSATHits);
+            log.info("Batch query for cache with coordinate {} had {} SAT hits and {} UNSAT hits out of {} entries", request.getCoordinate(), SATHits, UNSATHits, queries.size());
+            return new ContainmentCacheBatchResult(Arrays.asList(SATResults), Arrays.asList(UNSATResults));
+        } finally {
+            context.stop();
+        }
+    }
+
+    @RequestMapping(value = "/query/batch", method = RequestMethod.POST, produces = ContainmentCacheProxy.SMILE_CONTENT, consumes = ContainmentCacheProxy.SMILE_CONTENT)
+    @ResponseBody
+    public ContainmentCacheBatchResult lookupBatchBinary(
+            @RequestBody final ContainmentCacheBatchRequest request
+    ) {
+        return lookupBatch(request);
+    }
+
+    /**
+     * Look for a SAT superset, ignoring the entries of auctions that should not be used to answer this instance
+     */
+    private ContainmentCacheSATResult proveSATBySuperset(ISatisfiabilityCache cache, StationPackingInstance instance) {
+        if (parameters.getBadsets() != null) {
+            final Map<String, Set<String>> badsets = parameters.getBadsets();
+            final String auction = instance.getAuction();
+            return cache.proveSATBySuperset(instance, c -> {
+                if (c.getAuction() != null && auction != null) {
+                    return !badsets.get(auction).contains(c.getAuction());
+                }
+                return true;
+            });
+        } else if (parameters.isExcludeSameAuction()) {
+            final String auction = instance.getAuction();
+            return cache.proveSATBySuperset(instance, c -> {
+                if (c.getAuction() != null && auction != null) {
+                    return !c.getAuction().equals(auction);
+                }
+                return true;
+            });
+        } else {
+            return cache.proveSATBySuperset(instance);
+        }
+    }
+
+    /**
+     * Find the cache of a coordinate, registering its metrics the first time it is used. The caches are only made once the context is up, after this controller is initialized
+     */
+    private ISatisfiabilityCache locate(CacheCoordinate coordinate) {
+        final ISatisfiabilityCache cache = containmentCacheLocator.locate(coordinate);
+        if (coordinatesWithMetrics.add(coordinate)) {
+            final String prefix = MetricRegistry.name("cache.coordinate", coordinate.getDomainHash(), coordinate.getInterferenceHash());
+            registerQueryStatistics(prefix + ".sat", cache.getSATStatistics());
+            registerQueryStatistics(prefix + ".unsat", cache.getUNSATStatistics());
+            registry.register(prefix + ".sat.entries", (Gauge<Integer>) cache::getNumSATEntries);
+            registry.register(prefix + ".unsat.entries", (Gauge<Integer>) cache::getNumUNSATEntries);
+            registry.register(prefix + ".heap.bytes", (Gauge<Long>) cache::getApproximateHeapBytes);
+        }
+        return cache;
+    }
+
+    // Whether latency comes from walking many candidates (examined) or from candidates that fail verification (rejected)
+    private void registerQueryStatistics(String prefix, CacheQueryStatistics statistics) {
+        registry.register(prefix + ".hitrate", (Gauge<Double>) statistics::getHitRatio);
+        registry.register(prefix + ".candidates.examined", (Gauge<Long>) statistics::getCandidatesExamined);
+        registry.register(prefix + ".candidates.rejected", (Gauge<Long>) statistics::getCandidatesRejected);
+        registry.register(prefix + ".candidates.perhit", (Gauge<Double>) statistics::getMeanCandidatesPerHit);
+    }
+
+    /**
+     * A coordinate that is still loading answers every query with a miss, and is moved up the loading order
+     */
+    private boolean isReady(CacheCoordinate coordinate) {
+        if (containmentCacheLocator.isReady(coordinate)) {
+            return true;
+        }
+        containmentCacheLocator.prioritize(coordinate);
+        notReadyMisses.mark();
+        log.info("Cache with coordinate {} is still loading, answering with a miss", coordinate);
+        return false;
+    }
+
     @RequestMapping(method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
     public void cache(
             @RequestBody final ContainmentCacheRequest request
     ) {
         // Just dump the entry and return - we don't want to delay the SATFC thread
-        pendingCacheAdditions.add(request);
+        containmentCacheLocator.getShard(request.getCoordinate()).getPendingCacheAdditions().add(request);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, consumes = ContainmentCacheProxy.SMILE_CONTENT)
+    @ResponseBody
+    public void cacheBinary(
+            @RequestBody final BinaryContainmentCacheRequest request
+    ) {
+        cache(request.toRequest());
     }
 
     @Scheduled(fixedDelay = 5000, initialDelay = 5000)
     public void addCacheEntries() {
         log.debug("Waking up to check list of potential cache additions");
+        // Each shard has its own queue and redis connection, so they are processed in parallel
+        containmentCacheLocator.getShards().parallelStream().forEach(this::addCacheEntries);
+        log.debug("Done checking potential cache additions");
+        evictCacheEntries();
+    }
+
+    /**
+     * Bring the number of entries back down to the size limit by evicting the least useful entries over all coordinates, both from memory and from redis.
+     * Does nothing while the caches are loading (the loading respects the limit) or while a filter is running (it removes entries too)
+     */
+    private void evictCacheEntries() {
+        final long limit = parameters.getCacheSizeLimit();
+        if (limit == Long.MAX_VALUE) {
+            return;
+        }
+        final Set<CacheCoordinate> coordinates = containmentCacheLocator.getCoordinates();
+        if (!coordinates.stream().allMatch(containmentCacheLocator::isReady)) {
+            return;
+        }
+        final long numEntries = coordinates.stream().map(containmentCacheLocator::locate).mapToLong(cache -> cache.getNumSATEntries() + cache.getNumUNSATEntries()).sum();
+        if (numEntries <= limit || !filterRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final int numToEvict = (int) Math.min(numEntries - limit, Integer.MAX_VALUE);
+            final ListMultimap<CacheCoordinate, CacheEntryUsage.Candidate<ISATFCCacheEntry>> toEvict = selectEvictions(coordinates, numToEvict, numEntries);
+            for (CacheCoordinate coordinate : toEvict.keySet()) {
+                final List<CacheEntryUsage.Candidate<ISATFCCacheEntry>> evicted = toEvict.get(coordinate);
+                containmentCacheLocator.locate(coordinate).evict(evicted);
+                // Through the shard of the coordinate, which owns the redis connection its entries were written with
+                containmentCacheLocator.getShard(coordinate).getCacher().deleteEntries(evicted.stream().map(CacheEntryUsage.Candidate::getEntry).collect(Collectors.toList()));
+            }
+            cacheEvictions.mark(toEvict.size());
+            log.info("Evicted {} entries to bring the cache down to {} entries", toEvict.size(), limit);
+        } finally {
+            filterRunning.set(false);
+        }
+    }
+
+    /**
+     * Pick the numToEvict least useful entries over all coordinates.
+     * Each cache is first asked for a share of the candidates proportional to its size. A cache whose candidates were all picked may have more that should be, so it is asked again for twice as many, until no cache is in that situation.
+     * This keeps the number of candidates held at once close to numToEvict, instead of numToEvict per coordinate
+     */
+    private ListMultimap<CacheCoordinate, CacheEntryUsage.Candidate<ISATFCCacheEntry>> selectEvictions(Set<CacheCoordinate> coordinates, int numToEvict, long numEntries) {
+        final Map<CacheCoordinate, Integer> quotas = new HashMap<>();
+        final Map<CacheCoordinate, List<CacheEntryUsage.Candidate<ISATFCCacheEntry>>> candidates = new HashMap<>();
+        for (CacheCoordinate coordinate : coordinates) {
+            final ISatisfiabilityCache cache = containmentCacheLocator.locate(coordinate);
+            final long size = cache.getNumSATEntries() + cache.getNumUNSATEntries();
+            quotas.put(coordinate, (int) Math.max(1, Math.min(numToEvict, (numToEvict * size + numEntries - 1) / numEntries)));
+        }
+        Set<CacheCoordinate> toAsk = coordinates;
+        while (true) {
+            for (CacheCoordinate coordinate : toAsk) {
+                candidates.put(coordinate, containmentCacheLocator.locate(coordinate).getEvictionCandidates(quotas.get(coordinate)));
+            }
+            // Max heap of the numToEvict lowest utilities over all the candidates
+            final PriorityQueue<Map.Entry<CacheCoordinate, CacheEntryUsage.Candidate<ISATFCCacheEntry>>> lowest = new PriorityQueue<>(numToEvict + 1, Comparator.comparingDouble((Map.Entry<CacheCoordinate, CacheEntryUsage.Candidate<ISATFCCacheEntry>> entry) -> entry.getValue().getUtility()).reversed());
+            candidates.forEach((coordinate, coordinateCandidates) -> {
+                for (CacheEntryUsage.Candidate<ISATFCCacheEntry> candidate : coordinateCandidates) {
+                    if (lowest.size() < numToEvict) {
+                        lowest.add(Maps.immutableEntry(coordinate, candidate));
+                    } else if (candidate.getUtility() < lowest.peek().getValue().getUtility()) {
+                        lowest.poll();
+                        lowest.add(Maps.immutableEntry(coordinate, candidate));
+                    } else {
+                        // Candidates are sorted, the rest of this coordinate's can't make it either
+                        break;
+                    }
+                }
+            });
+            // Least useful first, as each cache lists them
+            final List<Map.Entry<CacheCoordinate, CacheEntryUsage.Candidate<ISATFCCacheEntry>>> ordered = new ArrayList<>(lowest.size());
+            while (!lowest.isEmpty()) {
+                ordered.add(lowest.poll());
+            }
+            final ListMultimap<CacheCoordinate, CacheEntryUsage.Candidate<ISATFCCacheEntry>> selected = ArrayListMultimap.create();
+            Lists.reverse(ordered).forEach(entry -> selected.put(entry.getKey(), entry.getValue()));
+            toAsk = selected.keySet().stream()
+                    .filter(coordinate -> selected.get(coordinate).size() == quotas.get(coordinate) && quotas.get(coordinate) < numToEvict)
+                    .collect(Collectors.toSet());
+            if (toAsk.isEmpty()) {
+                return selected;
+            }
+            toAsk.forEach(coordinate -> quotas.put(coordinate, (int) Math.min(numToEvict, 2L * quotas.get(coordinate))));
+        }
+    }
+
+    private void addCacheEntries(CacheShard shard) {
+        final Queue<ContainmentCacheRequest> pendingCacheAdditions = shard.getPendingCacheAdditions();
+        final RedisCacher cacher = shard.getCacher();
+        // Entries for coordinates that are still loading wait for the next round, so they are not added twice
+        final List<ContainmentCacheRequest> deferred = new ArrayList<>();
         while (!pendingCacheAdditions.isEmpty()) {
             final ContainmentCacheRequest request = pendingCacheAdditions.poll();
+            if (!containmentCacheLocator.isReady(request.getCoordinate())) {
+                deferred.add(request);
+                continue;
+            }
             final SolverResult result = request.getResult();
             if ((result.getResult().equals(SATResult.UNSAT) && parameters.isSkipUNSAT()) || result.getResult().equals(SATResult.SAT) && parameters.isSkipSAT()) {
                 continue;
@@ -237,7 +485,7 @@ public class ContainmentCacheController {
             final StationPackingInstance instance = request.getInstance();
             final String description = instance.hasName() ? instance.getName() : instance.getInfo();
 
-            final ISatisfiabilityCache cache = containmentCacheLocator.locate(request.getCoordinate());
+            final ISatisfiabilityCache cache = locate(request.getCoordinate());
 
             final InstanceAndResult transformedInstanceAndResult = cacheEntryTransformer.transform(instance, result);
             if (transformedInstanceAndResult != null) {
@@ -248,15 +496,21 @@ public class ContainmentCacheController {
                     final String key;
                     if (result.getResult().equals(SATResult.SAT)) {
                         final ContainmentCacheSATEntry entry = new ContainmentCacheSATEntry(transformedResult.getAssignment(), cache.getPermutation());
-                        key = cacher.cacheResult(request.getCoordinate(), entry, transformedInstance.hasName() ? transformedInstance.getName() : null);
-                        entry.setKey(key);
-                        cache.add(entry);
+                        key = containmentCacheLocator.ingest(() -> {
+                            final String entryKey = cacher.cacheResult(request.getCoordinate(), entry, transformedInstance.hasName() ? transformedInstance.getName() : null);
+                            entry.setKey(entryKey);
+                            cache.add(entry);
+                            return entryKey;
+                        });
                         lastCachedAssignment = transformedResult.getAssignment();
                     } else if (result.getResult().equals(SATResult.UNSAT)) {
                         final ContainmentCacheUNSATEntry entry = new ContainmentCacheUNSATEntry(transformedInstance.getDomains(), cache.getPermutation());
-                        cache.add(entry);
-                        key = cacher.cacheResult(request.getCoordinate(), entry, transformedInstance.hasName() ? transformedInstance.getName() : null);
-                        entry.setKey(key);
+                        key = containmentCacheLocator.ingest(() -> {
+                            final String entryKey = cacher.cacheResult(request.getCoordinate(), entry, transformedInstance.hasName() ? transformedInstance.getName() : null);
+                            entry.setKey(entryKey);
+                            cache.add(entry);
+                            return entryKey;
+                        });
                     } else {
                         throw new IllegalStateException("Tried adding a result that was neither SAT or UNSAT");
                     }
@@ -268,35 +522,91 @@ public class ContainmentCacheController {
                 }
             }
         }
-        log.debug("Done checking potential cache additions");
+        pendingCacheAdditions.addAll(deferred);
     }
 
     @RequestMapping(value = "/filterSAT", method = RequestMethod.POST)
     @ResponseBody
     public void filterSATCache(@RequestParam(value = "strong", required = false, defaultValue = "true") boolean strong) {
-    	containmentCacheLocator.getCoordinates().forEach(cacheCoordinate -> {
-            log.info("Finding SAT entries to be filtered at cacheCoordinate {} ({})", cacheCoordinate, strong);
-            final ISatisfiabilityCache cache = containmentCacheLocator.locate(cacheCoordinate);
-            List<ContainmentCacheSATEntry> SATPrunables = cache.filterSAT(dataManager.getData(cacheCoordinate).getStationManager(), strong);
-            log.info("Pruning {} SAT entries from Redis", SATPrunables.size());
-            cacher.deleteSATCollection(SATPrunables);
-        });
-        log.info("Filter completed");
+        final CacheFilterProgress progress = startFilter();
+        if (progress == null) {
+            return;
+        }
+        try {
+            containmentCacheLocator.getCoordinates().stream().filter(containmentCacheLocator::isReady).forEach(cacheCoordinate -> {
+                if (progress.isCancelled()) {
+                    return;
+                }
+                log.info("Finding SAT entries to be filtered at cacheCoordinate {} ({})", cacheCoordinate, strong);
+                final ISatisfiabilityCache cache = containmentCacheLocator.locate(cacheCoordinate);
+                List<ContainmentCacheSATEntry> SATPrunables = cache.filterSAT(dataManager.getData(cacheCoordinate).getStationManager(), strong, progress);
+                log.info("Pruning {} SAT entries from Redis", SATPrunables.size());
+                cacher.deleteSATCollection(SATPrunables);
+            });
+        } finally {
+            filterRunning.set(false);
+        }
+        log.info("Filter completed. {}", progress);
     }
 
     @RequestMapping(value = "/filterUNSAT", method = RequestMethod.POST)
     @ResponseBody
     public void filterUNSATCache() {
-        containmentCacheLocator.getCoordinates().forEach(cacheCoordinate -> {
-            log.info("Finding UNSAT entries to be filtered at cacheCoordinate {}", cacheCoordinate);
-            final ISatisfiabilityCache cache = containmentCacheLocator.locate(cacheCoordinate);
-            final List<ContainmentCacheUNSATEntry> UNSATPrunables = cache.filterUNSAT();
-            log.info("Pruning {} UNSAT entries from Redis", UNSATPrunables.size());
-            cacher.deleteUNSATCollection(UNSATPrunables);
-        });
-        log.info("Filter completed");
+        final CacheFilterProgress progress = startFilter();
+        if (progress == null) {
+            return;
+        }
+        try {
+            containmentCacheLocator.getCoordinates().stream().filter(containmentCacheLocator::isReady).forEach(cacheCoordinate -> {
+                if (progress.isCancelled()) {
+                    return;
+                }
+                log.info("Finding UNSAT entries to be filtered at cacheCoordinate {}", cacheCoordinate);
+                final ISatisfiabilityCache cache = containmentCacheLocator.locate(cacheCoordinate);
+                final List<ContainmentCacheUNSATEntry> UNSATPrunables = cache.filterUNSAT(progress);
+                log.info("Pruning {} UNSAT entries from Redis", UNSATPrunables.size());
+                cacher.deleteUNSATCollection(UNSATPrunables);
+            });
+        } finally {
+            filterRunning.set(false);
+        }
+        log.info("Filter completed. {}", progress);
+    }
+
+    /**
+     * Only one filter runs at a time
+     * @return the progress of the new filter, or null if a filter is already running
+     */
+    private CacheFilterProgress startFilter() {
+        if (!filterRunning.compareAndSet(false, true)) {
+            log.warn("A filter is already running, ignoring the request. {}", filterProgress);
+            return null;
+        }
+        filterProgress = new CacheFilterProgress();
+        return filterProgress;
     }
 
+    /**
+     * Return the progress of the running (or last) filter
+     */
+    @RequestMapping(value = "/filter/progress", method = RequestMethod.GET)
+    @ResponseBody
+    public CacheFilterProgress getFilterProgress() {
+        return filterProgress;
+    }
+
+    /**
+     * Cancel the running filter. The entries found to be prunable so far are still removed
+     */
+    @RequestMapping(value = "/filter/cancel", method = RequestMethod.POST)
+    @ResponseBody
+    public void cancelFilter() {
+        final CacheFilterProgress progress = filterProgress;
+        if (progress != null && filterRunning.get()) {
+            log.info("Cancelling filter. {}", progress);
+            progress.cancel();
+        }
+    }
 
     /**
      * Return the last solved SAT problem you know about
@@ -314,7 +624,7 @@ public class ContainmentCacheController {
     @RequestMapping(value = "/n_pending_additions", method = RequestMethod.GET)
     @ResponseBody
     public int getNumFiltering() {
-        return pendingCacheAdditions.size();
+        return containmentCacheLocator.getShards().stream().mapToInt(shard -> shard.getPendingCacheAdditions().size()).sum();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.webapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ca.ubc.cs.beta.stationpacking.cache.RedisCacher;
+import ca.ubc.cs.beta.stationpacking.utils.InMemoryRedisStore;
+import ca.ubc.cs.beta.stationpacking.webapp.parameters.SATFCServerParameters;
+
+public class CacheLocatorTest {
+
+    @Test
+    public void snapshotStampWaitsForTheAdditionsInProgress() throws Exception {
+        final InMemoryRedisStore redis = new InMemoryRedisStore();
+        final SATFCServerParameters parameters = mock(SATFCServerParameters.class);
+        when(parameters.getNumShards()).thenReturn(2);
+        final CacheLocator locator = new CacheLocator(null, parameters, () -> new RedisCacher(null, redis));
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final CountDownLatch numbered = new CountDownLatch(1);
+            final CountDownLatch added = new CountDownLatch(1);
+            // An addition that has numbered its entry in redis, but not yet added it to its cache
+            final Future<Long> addition = executor.submit(() -> locator.ingest(() -> {
+                final long num = redis.incr(RedisCacher.HASH_NUM);
+                numbered.countDown();
+                try {
+                    added.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return num;
+            }));
+            numbered.await();
+            final Future<Long> stamp = executor.submit(() -> locator.snapshotStamp(new RedisCacher(null, redis)));
+            Thread.sleep(100);
+            assertFalse(stamp.isDone());
+
+            added.countDown();
+            assertEquals(1, (long) addition.get(1, TimeUnit.MINUTES));
+            assertEquals(1, (long) stamp.get(1, TimeUnit.MINUTES));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
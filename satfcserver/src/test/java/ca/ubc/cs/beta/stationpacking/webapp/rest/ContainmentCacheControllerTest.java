@@ -0,0 +1,159 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Neil Newman, Kevin Leyton-Brown.
+ *
+ * This file is part of SATFC.
+ *
+ * SATFC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SATFC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SATFC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.webapp.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.ISATFCCacheEntry;
+import ca.ubc.cs.beta.stationpacking.cache.RedisCacher;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.CacheEntryUsage;
+import ca.ubc.cs.beta.stationpacking.cache.containment.containmentcache.ISatisfiabilityCache;
+import ca.ubc.cs.beta.stationpacking.webapp.CacheLocator;
+import ca.ubc.cs.beta.stationpacking.webapp.CacheShard;
+import ca.ubc.cs.beta.stationpacking.webapp.parameters.SATFCServerParameters;
+
+public class ContainmentCacheControllerTest {
+
+    private final CacheCoordinate coordinateA = new CacheCoordinate("domainA", "interferenceA");
+    private final CacheCoordinate coordinateB = new CacheCoordinate("domainB", "interferenceB");
+
+    private ContainmentCacheController controller;
+    private RedisCacher sharedCacher;
+    private RedisCacher cacherA;
+    private RedisCacher cacherB;
+    private ISatisfiabilityCache cacheA;
+    private ISatisfiabilityCache cacheB;
+    private List<CacheEntryUsage.Candidate<ISATFCCacheEntry>> candidatesA;
+    private List<CacheEntryUsage.Candidate<ISATFCCacheEntry>> candidatesB;
+
+    @Before
+    public void setUp() {
+        sharedCacher = mock(RedisCacher.class);
+        cacherA = mock(RedisCacher.class);
+        cacherB = mock(RedisCacher.class);
+        candidatesA = candidates(1, 2, 3);
+        candidatesB = candidates(5, 6, 7);
+        cacheA = cache(candidatesA);
+        cacheB = cache(candidatesB);
+
+        final CacheLocator locator = mock(CacheLocator.class);
+        when(locator.getCoordinates()).thenReturn(ImmutableSet.of(coordinateA, coordinateB));
+        when(locator.isReady(any(CacheCoordinate.class))).thenReturn(true);
+        when(locator.getShards()).thenReturn(ImmutableList.of());
+        when(locator.locate(coordinateA)).thenReturn(cacheA);
+        when(locator.locate(coordinateB)).thenReturn(cacheB);
+        when(locator.getShard(coordinateA)).thenReturn(new CacheShard(0, cacherA));
+        when(locator.getShard(coordinateB)).thenReturn(new CacheShard(1, cacherB));
+
+        controller = new ContainmentCacheController();
+        controller.containmentCacheLocator = locator;
+        controller.cacher = sharedCacher;
+        controller.parameters = mock(SATFCServerParameters.class);
+        controller.registry = new MetricRegistry();
+        controller.init();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void leastUsefulEntriesOverAllCoordinatesAreEvicted() {
+        when(controller.parameters.getCacheSizeLimit()).thenReturn(3L);
+        controller.addCacheEntries();
+
+        // All three of A's entries are less useful than B's, although A is first asked for only its share of two
+        final ArgumentCaptor<List> evicted = ArgumentCaptor.forClass(List.class);
+        verify(cacheA).evict(evicted.capture());
+        assertEquals(new HashSet<>(candidatesA), new HashSet<>(evicted.getValue()));
+        verify(cacheB, never()).evict(any(List.class));
+
+        final ArgumentCaptor<Collection> deleted = ArgumentCaptor.forClass(Collection.class);
+        verify(cacherA).deleteEntries(deleted.capture());
+        assertEquals(candidatesA.stream().map(CacheEntryUsage.Candidate::getEntry).collect(Collectors.toSet()), new HashSet<>(deleted.getValue()));
+        verifyZeroInteractions(cacherB, sharedCacher);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void entriesAreEvictedFromTheirOwnCoordinate() {
+        when(controller.parameters.getCacheSizeLimit()).thenReturn(2L);
+        controller.addCacheEntries();
+
+        final ArgumentCaptor<List> evictedB = ArgumentCaptor.forClass(List.class);
+        verify(cacheA).evict(candidatesA);
+        verify(cacheB).evict(evictedB.capture());
+        assertEquals(candidatesB.subList(0, 1), evictedB.getValue());
+        verify(cacherA).deleteEntries(candidatesA.stream().map(CacheEntryUsage.Candidate::getEntry).collect(Collectors.toList()));
+        verify(cacherB).deleteEntries(ImmutableList.of(candidatesB.get(0).getEntry()));
+        verifyZeroInteractions(sharedCacher);
+    }
+
+    @Test
+    public void nothingIsEvictedUnderTheLimit() {
+        when(controller.parameters.getCacheSizeLimit()).thenReturn(6L);
+        controller.addCacheEntries();
+
+        verify(cacheA, never()).getEvictionCandidates(anyInt());
+        verify(cacheB, never()).getEvictionCandidates(anyInt());
+        verifyZeroInteractions(cacherA, cacherB, sharedCacher);
+    }
+
+    private static List<CacheEntryUsage.Candidate<ISATFCCacheEntry>> candidates(double... utilities) {
+        final List<CacheEntryUsage.Candidate<ISATFCCacheEntry>> candidates = new ArrayList<>();
+        for (double utility : utilities) {
+            candidates.add(new CacheEntryUsage.Candidate<>(mock(ISATFCCacheEntry.class), utility));
+        }
+        return candidates;
+    }
+
+    // A cache holding only the given SAT entries, which it offers for eviction in order
+    private static ISatisfiabilityCache cache(List<CacheEntryUsage.Candidate<ISATFCCacheEntry>> candidates) {
+        final ISatisfiabilityCache cache = mock(ISatisfiabilityCache.class);
+        when(cache.getNumSATEntries()).thenReturn(candidates.size());
+        when(cache.getEvictionCandidates(anyInt())).thenAnswer(invocation -> {
+            final int n = (int) invocation.getArguments()[0];
+            return new ArrayList<>(candidates.subList(0, Math.min(n, candidates.size())));
+        });
+        return cache;
+    }
+
+}
@@ -108,6 +108,10 @@ public class MultiBandAuctioneer {
 
         if (!parameters.isGreedyOnly()) {
             tmp = new SequentialSolverDecorator(tmp, parameters.createSolver());
+            final String serverURL = parameters.getFacadeParameters().cachingParams.serverURL;
+            if (parameters.isBatchCacheQueries() && serverURL != null) {
+                tmp = new CacheBatchQueryDecorator(tmp, serverURL, parameters.getCacheCoordinate(), parameters.getFacadeParameters().cachingParams.binaryProtocol);
+            }
         }
 
         GreedyFlaggingDecorator greedyFlaggingDecorator = null;
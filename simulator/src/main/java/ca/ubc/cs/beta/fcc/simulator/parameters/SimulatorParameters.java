@@ -23,6 +23,7 @@ import ca.ubc.cs.beta.fcc.simulator.utils.BandHelper;
 import ca.ubc.cs.beta.fcc.simulator.utils.RandomUtils;
 import ca.ubc.cs.beta.fcc.simulator.utils.SimulatorUtils;
 import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinate;
 import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.IConstraintManager;
 import ca.ubc.cs.beta.stationpacking.datamanagers.stations.IStationManager;
 import ca.ubc.cs.beta.stationpacking.execution.parameters.SATFCFacadeParameters;
@@ -173,6 +174,10 @@ public class SimulatorParameters extends AbstractOptions {
     @Getter
     private boolean greedyOnly = false;
 
+    @Parameter(names = "-BATCH-CACHE-QUERIES", description = "If true and a SATFC server is given, look up all the problems of a round in the server's cache with a single request before solving them")
+    @Getter
+    private boolean batchCacheQueries = true;
+
     @Getter
     @ParametersDelegate
     private SATFCFacadeParameters facadeParameters = new SATFCFacadeParameters();
@@ -305,6 +310,14 @@ public class SimulatorParameters extends AbstractOptions {
         }
     }
 
+    public CacheCoordinate getCacheCoordinate() {
+        try {
+            return dataManager.getData(getStationInfoFolder()).getCacheCoordinate();
+        } catch (FileNotFoundException e) {
+            throw new IllegalStateException();
+        }
+    }
+
     private DataManager dataManager;
     @Getter
     private IStationDB.IModifiableStationDB stationDB;
@@ -319,7 +332,7 @@ public class SimulatorParameters extends AbstractOptions {
                 solver = new LocalFeasibilitySolver(facadeParameters);
                 break;
             case DISTRIBUTED:
-                solver = new DistributedFeasibilitySolver(facadeParameters.fRedisParameters.getJedis(), sendQueue, listenQueue);
+                solver = new DistributedFeasibilitySolver(facadeParameters.fRedisParameters.getRedisStore(), sendQueue, listenQueue);
                 break;
             default:
                 throw new IllegalStateException();
@@ -7,13 +7,13 @@ import ca.ubc.cs.beta.fcc.simulator.solver.problem.SimulatorProblem;
 import ca.ubc.cs.beta.stationpacking.execution.SimulatorProblemReader;
 import ca.ubc.cs.beta.stationpacking.execution.SimulatorProblemReader.SATFCProblemSpecification;
 import ca.ubc.cs.beta.stationpacking.execution.SimulatorProblemReader.SimulatorMessage;
+import ca.ubc.cs.beta.stationpacking.utils.IRedisStore;
 import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
 import ca.ubc.cs.beta.stationpacking.utils.RedisUtils;
 import ca.ubc.cs.beta.stationpacking.utils.Watch;
 import com.google.common.base.Preconditions;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import redis.clients.jedis.Jedis;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
@@ -25,22 +25,22 @@ import java.util.concurrent.atomic.AtomicLong;
 public class DistributedFeasibilitySolver extends AFeasibilitySolver {
 
     private final ConcurrentHashMap<Long, ProblemCallback> callbacks;
-    private final Jedis jedis;
+    private final IRedisStore redis;
     private final String sendQueue;
     private final String replyQueue;
 
     private final AtomicLong id;
 
-    public DistributedFeasibilitySolver(Jedis jedis, String sendQueue, String replyQueue) {
-        this.jedis = jedis;
+    public DistributedFeasibilitySolver(IRedisStore redis, String sendQueue, String replyQueue) {
+        this.redis = redis;
         this.sendQueue = sendQueue;
         this.replyQueue = replyQueue;
         callbacks = new ConcurrentHashMap<>();
         id = new AtomicLong();
         // Empty out the queues
-        jedis.del(replyQueue);
-        jedis.del(sendQueue);
-        jedis.del(RedisUtils.processing(sendQueue));
+        redis.del(replyQueue);
+        redis.del(sendQueue);
+        redis.del(RedisUtils.processing(sendQueue));
     }
 
     private String makeProblemKey(long id) {
@@ -52,8 +52,8 @@ public class DistributedFeasibilitySolver extends AFeasibilitySolver {
         final long problemID = id.getAndIncrement();
         final String json = JSONUtils.toString(new SimulatorMessage(simulatorProblem.getSATFCProblem(), replyQueue, problemID));
         log.trace("Sending problem {} to queue {}", json, sendQueue);
-        jedis.set(makeProblemKey(problemID), json);
-        jedis.lpush(sendQueue, makeProblemKey(problemID));
+        redis.set(makeProblemKey(problemID), json);
+        redis.lpush(sendQueue, makeProblemKey(problemID));
         callbacks.put(problemID, new ProblemCallback(simulatorProblem, callback));
     }
 
@@ -70,7 +70,7 @@ public class DistributedFeasibilitySolver extends AFeasibilitySolver {
                 loggingWatch.start();
             }
             // Poll the reply queue
-            final String answerString = jedis.lpop(replyQueue);
+            final String answerString = redis.lpop(replyQueue);
             if (answerString == null) {
                 try {
                     Thread.sleep(1000);
@@ -82,7 +82,7 @@ public class DistributedFeasibilitySolver extends AFeasibilitySolver {
             final SimulatorProblemReader.SATFCSimulatorReply reply = JSONUtils.toObject(answerString, SimulatorProblemReader.SATFCSimulatorReply.class);
             final String problemKey = makeProblemKey(reply.getId());
             log.trace("Deleting problem at key {}", problemKey);
-            jedis.del(problemKey);
+            redis.del(problemKey);
             final ProblemCallback problemCallback = callbacks.remove(reply.getId());
             if (problemCallback == null) {
                 log.debug("Problem callback did not exist for reply {}. Maybe it was duplicated work?", reply.getId());
@@ -94,8 +94,8 @@ public class DistributedFeasibilitySolver extends AFeasibilitySolver {
 
     @Override
     public void close() throws Exception {
-        jedis.lpush(sendQueue, "DIE");
-        jedis.close();
+        redis.lpush(sendQueue, "DIE");
+        redis.close();
     }
 
     @Data
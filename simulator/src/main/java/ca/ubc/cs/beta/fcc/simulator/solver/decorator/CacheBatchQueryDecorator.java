@@ -0,0 +1,130 @@
+package ca.ubc.cs.beta.fcc.simulator.solver.decorator;
+
+import ca.ubc.cs.beta.fcc.simulator.solver.IFeasibilitySolver;
+import ca.ubc.cs.beta.fcc.simulator.solver.callback.SATFCCallback;
+import ca.ubc.cs.beta.fcc.simulator.solver.callback.SimulatorResult;
+import ca.ubc.cs.beta.fcc.simulator.solver.problem.SimulatorProblem;
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheBatchResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.execution.SimulatorProblemReader;
+import ca.ubc.cs.beta.stationpacking.facade.SATFCResult;
+import ca.ubc.cs.beta.stationpacking.polling.PollingService;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchQuery;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.walltime.WalltimeTerminationCriterion;
+import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
+import ca.ubc.cs.beta.stationpacking.utils.Watch;
+import com.google.common.collect.ImmutableMap;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Holds on to the problems of a round (everything submitted before the next call to waitForAllSubmitted) and looks them all up in the SATFC server's cache with a single request.
+ * Problems that the cache settles are answered right away, the others are passed on to the decorated solver.
+ */
+@Slf4j
+public class CacheBatchQueryDecorator extends AFeasibilitySolverDecorator {
+
+    private final CloseableHttpAsyncClient httpClient;
+    private final PollingService pollingService;
+    private final ContainmentCacheProxy proxy;
+    private final Queue<Submission> pending;
+
+    public CacheBatchQueryDecorator(IFeasibilitySolver decorated, String serverURL, CacheCoordinate coordinate, boolean binaryProtocol) {
+        super(decorated);
+        httpClient = CacheUtils.createHttpClient();
+        pollingService = new PollingService();
+        proxy = new ContainmentCacheProxy(serverURL, coordinate, 1, true, binaryProtocol, pollingService, httpClient);
+        pending = new ConcurrentLinkedQueue<>();
+    }
+
+    @Override
+    public void getFeasibility(SimulatorProblem problem, SATFCCallback callback) {
+        pending.add(new Submission(problem, callback));
+    }
+
+    @Override
+    public void waitForAllSubmitted() {
+        // Callbacks can submit more problems
+        do {
+            queryPending();
+            super.waitForAllSubmitted();
+        } while (!pending.isEmpty());
+    }
+
+    private void queryPending() {
+        while (!pending.isEmpty()) {
+            final List<Submission> submissions = new ArrayList<>();
+            Submission submission;
+            while ((submission = pending.poll()) != null) {
+                submissions.add(submission);
+            }
+            final Watch watch = Watch.constructAutoStartWatch();
+            final List<ContainmentCacheBatchQuery> queries = submissions.stream()
+                    .map(s -> new ContainmentCacheBatchQuery(toInstance(s.getProblem().getSATFCProblem()), ContainmentCacheProxy.QueryType.BOTH))
+                    .collect(Collectors.toList());
+            final double cutoff = submissions.stream().mapToDouble(s -> s.getProblem().getSATFCProblem().getCutoff()).min().getAsDouble();
+            final ContainmentCacheBatchResult batchResult = proxy.queryBatch(queries, new WalltimeTerminationCriterion(cutoff));
+            final double runtime = watch.getElapsedTime();
+            int hits = 0;
+            for (int i = 0; i < submissions.size(); i++) {
+                final SimulatorProblem problem = submissions.get(i).getProblem();
+                final SATFCCallback callback = submissions.get(i).getCallback();
+                final ContainmentCacheSATResult containmentCacheSATResult = batchResult.getSATResults().get(i);
+                if (containmentCacheSATResult.isValid()) {
+                    final Set<Integer> stations = problem.getSATFCProblem().getProblem().getDomains().keySet();
+                    final Map<Integer, Integer> witness = new HashMap<>();
+                    containmentCacheSATResult.getResult().forEach((channel, channelStations) -> channelStations.stream().filter(station -> stations.contains(station.getID())).forEach(station -> witness.put(station.getID(), channel)));
+                    callback.onSuccess(problem, SimulatorResult.fromSATFCResult(new SATFCResult(SATResult.SAT, runtime, witness, 0.0, "Found a superset in the SAT cache: " + containmentCacheSATResult.getKey())));
+                    hits++;
+                } else if (batchResult.getUNSATResults().get(i).isValid()) {
+                    callback.onSuccess(problem, SimulatorResult.fromSATFCResult(new SATFCResult(SATResult.UNSAT, runtime, ImmutableMap.of(), 0.0, "Found a subset in the UNSAT cache: " + batchResult.getUNSATResults().get(i).getKey())));
+                    hits++;
+                } else {
+                    super.getFeasibility(problem, callback);
+                }
+            }
+            log.info("Cache settled {} out of {} problems in {} s", hits, submissions.size(), runtime);
+        }
+    }
+
+    private static StationPackingInstance toInstance(SimulatorProblemReader.SATFCProblemSpecification problem) {
+        final Map<Station, Set<Integer>> domains = new HashMap<>();
+        problem.getProblem().getDomains().forEach((station, domain) -> domains.put(new Station(station), domain));
+        final Map<Station, Integer> previousAssignment = new HashMap<>();
+        problem.getProblem().getPreviousAssignment().forEach((station, channel) -> {
+            if (problem.getProblem().getDomains().containsKey(station)) {
+                previousAssignment.put(new Station(station), channel);
+            }
+        });
+        return new StationPackingInstance(domains, previousAssignment);
+    }
+
+    @Override
+    public void close() throws Exception {
+        super.close();
+        httpClient.close();
+        pollingService.notifyShutdown();
+    }
+
+    @Data
+    private static class Submission {
+        private final SimulatorProblem problem;
+        private final SATFCCallback callback;
+    }
+
+}